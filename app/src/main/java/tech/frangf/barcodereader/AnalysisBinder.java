@@ -0,0 +1,138 @@
+package tech.frangf.barcodereader;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Size;
+
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.Executor;
+
+import tech.frangf.barcodereader.core.AdaptiveScanController;
+import tech.frangf.barcodereader.core.ScanLevel;
+
+/**
+ * Adaptador entre AdaptiveScanController y CameraX. Cuando el controlador cambia de resolución, vuelve a vincular
+ * solo el ImageAnalysis con la nueva resolución objetivo, sin tocar la vista previa.
+ * Los cambios que solo afectan al frameStride no necesitan volver a vincular nada.
+ */
+class AnalysisBinder implements AdaptiveScanController.Listener {
+    private final ProcessCameraProvider cameraProvider;
+    private final LifecycleOwner lifecycleOwner;
+    private final CameraSelector cameraSelector;
+    private final Executor analyzerExecutor;
+    private final ImageAnalysis.Analyzer analyzer;
+    private final int imageQueueDepth;
+    private final boolean portrait;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ImageAnalysis imageAnalysis;
+    private ScanLevel boundLevel;
+    private boolean analyzerEnabled = true;
+
+    /**
+     * @param cameraProvider proceso de la cámara ya obtenido
+     * @param lifecycleOwner ciclo de vida al que se vinculan los casos de uso
+     * @param cameraSelector cámara a utilizar
+     * @param analyzerExecutor executor en el que se ejecuta el analizador
+     * @param analyzer analizador de cada frame
+     * @param imageQueueDepth imágenes que retiene CameraX mientras se analizan otras
+     * @param portrait true si la pantalla está en vertical, para girar la resolución objetivo
+     */
+    AnalysisBinder(ProcessCameraProvider cameraProvider, LifecycleOwner lifecycleOwner, CameraSelector cameraSelector,
+                   Executor analyzerExecutor, ImageAnalysis.Analyzer analyzer, int imageQueueDepth, boolean portrait) {
+        this.cameraProvider = cameraProvider;
+        this.lifecycleOwner = lifecycleOwner;
+        this.cameraSelector = cameraSelector;
+        this.analyzerExecutor = analyzerExecutor;
+        this.analyzer = analyzer;
+        this.imageQueueDepth = imageQueueDepth;
+        this.portrait = portrait;
+    }
+
+    /**
+     * Vincula la vista previa y el análisis al ciclo de vida, desvinculando cualquier caso de uso anterior.
+     * Se debe llamar en el hilo principal.
+     * @param preview vista previa
+     * @param level nivel inicial, o null para dejar que CameraX elija la resolución
+     */
+    void bind(Preview preview, ScanLevel level) {
+        imageAnalysis = build(level);
+        boundLevel = level;
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, preview, imageAnalysis);
+    }
+
+    @Override
+    public void onScanLevelChanged(ScanLevel previous, ScanLevel current) {
+        if (previous.getWidth() == current.getWidth() && previous.getHeight() == current.getHeight()) {
+            return;
+        }
+        mainHandler.post(() -> rebind(current));
+    }
+
+    /**
+     * Sustituye el ImageAnalysis por otro con la resolución del nivel. Se ejecuta en el hilo principal.
+     */
+    private void rebind(ScanLevel level) {
+        if (imageAnalysis == null || level.equals(boundLevel)) {
+            return;
+        }
+        ImageAnalysis previous = imageAnalysis;
+        previous.clearAnalyzer();
+        cameraProvider.unbind(previous);
+        imageAnalysis = build(level);
+        boundLevel = level;
+        cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, imageAnalysis);
+    }
+
+    private ImageAnalysis build(ScanLevel level) {
+        //CameraX retiene hasta imageQueueDepth imágenes y es el FramePipeline quien decide cuáles se analizan
+        ImageAnalysis.Builder builder = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_BLOCK_PRODUCER)
+                .setImageQueueDepth(imageQueueDepth);
+        if (level != null) {
+            //La resolución objetivo se expresa en la orientación de la pantalla
+            builder.setTargetResolution(portrait
+                    ? new Size(level.getHeight(), level.getWidth())
+                    : new Size(level.getWidth(), level.getHeight()));
+        }
+        ImageAnalysis analysis = builder.build();
+        if (analyzerEnabled) {
+            analysis.setAnalyzer(analyzerExecutor, analyzer);
+        }
+        return analysis;
+    }
+
+    /**
+     * Activa o para el analizador, también en los ImageAnalysis que se creen al cambiar de nivel.
+     * @param enabled true para analizar los frames, false para pararlo
+     */
+    void setAnalyzerEnabled(boolean enabled) {
+        analyzerEnabled = enabled;
+        if (imageAnalysis == null) {
+            return;
+        }
+        if (enabled) {
+            imageAnalysis.setAnalyzer(analyzerExecutor, analyzer);
+        } else {
+            imageAnalysis.clearAnalyzer();
+        }
+    }
+
+    /**
+     * Para el analizador, lo desvincula de la cámara y descarta los cambios de nivel pendientes.
+     * Se debe llamar en el hilo principal.
+     */
+    void close() {
+        mainHandler.removeCallbacksAndMessages(null);
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+            cameraProvider.unbind(imageAnalysis);
+        }
+        imageAnalysis = null;
+    }
+}
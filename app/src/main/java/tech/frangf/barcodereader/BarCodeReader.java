@@ -2,66 +2,228 @@ package tech.frangf.barcodereader;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.media.Image;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
 import androidx.lifecycle.LifecycleOwner;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.barcode.Barcode;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
-import com.google.mlkit.vision.common.InputImage;
 
 import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import tech.frangf.barcodereader.core.AdaptiveScanController;
+import tech.frangf.barcodereader.core.BarcodeDecoder;
+import tech.frangf.barcodereader.core.BarcodeDecoderException;
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.BatchCoalescer;
+import tech.frangf.barcodereader.core.BulkDecoder;
+import tech.frangf.barcodereader.core.CodeRegionDetector;
+import tech.frangf.barcodereader.core.CropRect;
+import tech.frangf.barcodereader.core.DecodeScheduler;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.DropPolicy;
+import tech.frangf.barcodereader.core.DuplicateFilter;
+import tech.frangf.barcodereader.core.FormatLearner;
+import tech.frangf.barcodereader.core.FrameBufferPool;
+import tech.frangf.barcodereader.core.FrameGate;
+import tech.frangf.barcodereader.core.FramePipeline;
+import tech.frangf.barcodereader.core.FrameRecorder;
+import tech.frangf.barcodereader.core.LuminanceImage;
+import tech.frangf.barcodereader.core.ParsedPayload;
+import tech.frangf.barcodereader.core.PayloadParser;
+import tech.frangf.barcodereader.core.MultiScaleDecoder;
+import tech.frangf.barcodereader.core.RegionOfInterest;
+import tech.frangf.barcodereader.core.RoiCropper;
+import tech.frangf.barcodereader.core.ScanBatch;
+import tech.frangf.barcodereader.core.ScanJournal;
+import tech.frangf.barcodereader.core.ScanMetrics;
+import tech.frangf.barcodereader.core.ScanMetricsRecorder;
+import tech.frangf.barcodereader.core.ScanMode;
+import tech.frangf.barcodereader.core.ScanModeController;
+import tech.frangf.barcodereader.core.ScanRecord;
+import tech.frangf.barcodereader.core.ScanStage;
 
 @androidx.camera.core.ExperimentalGetImage
 public class BarCodeReader implements Closeable {
+    private static final String TAG = "CAMERAX";
+    private static final String PREFERENCES_NAME = "tech.frangf.barcodereader";
+    private static final String LEARNED_FORMATS_KEY = "learned_formats";
+    private static final long BULK_MAX_PIXELS = 12_000_000L;
+    //Escáneres de formatos aprendidos que se mantienen abiertos, uno por máscara
+    private static final int MAX_LEARNED_DECODERS = 3;
     private static int cameraRequestCode = 100;
     private ExecutorService executorService;
-    private PreviewView previewView;
+    private DecodeScheduler<ImageProxyFrame, DecodedBarcode> decodeScheduler;
+    private int decodeWorkers = 1;
+    private volatile PreviewView previewView;
+    private Preview preview;
+    private ScannerPrewarm prewarmed;
     private Activity activity;
     private BarcodeScannerOptions options;
+    private BarcodeDecoder barcodeDecoder;
+    private volatile FormatLearner formatLearner;
+    //Escáneres del modo de formatos aprendidos por máscara, del menos al más recientemente usado
+    private final Map<Integer, MlKitBarcodeDecoder> learnedFormatsDecoders = new LinkedHashMap<>(8, 0.75f, true);
+    //Formatos de las opciones de escaneo, ALL_FORMATS_MASK si no se conocen o son FORMAT_ALL_FORMATS (0)
+    private int optionsFormatMask = BarcodeFormat.ALL_FORMATS_MASK;
+    private volatile int persistedFormatMask;
+    private boolean multiScaleEnabled;
+    private final Map<BarcodeDecoder, MultiScaleDecoder> multiScaleDecoders = new HashMap<>();
+    private ExecutorService tileExecutor;
     private OnScanCodeReader listener;
-    private ImageAnalysis imageAnalysis;
+    private AnalysisBinder analysisBinder;
+    private boolean analyzerEnabled = true;
+    private volatile AdaptiveScanController adaptiveScanController;
+    private volatile FrameGate frameGate;
+    private volatile ScanModeController scanModeController;
+    //Deja de contar el tiempo de cada modo mientras la actividad no está visible y la cámara está parada
+    private final LifecycleEventObserver lifecycleObserver = (source, event) -> {
+        ScanModeController modes = scanModeController;
+        if (event == Lifecycle.Event.ON_STOP && modes != null) {
+            modes.pause(SystemClock.elapsedRealtimeNanos());
+        }
+    };
+    private final ThreadLocal<CodeRegionDetector> codeRegionDetectors = new ThreadLocal<CodeRegionDetector>() {
+        @Override
+        protected CodeRegionDetector initialValue() {
+            return new CodeRegionDetector();
+        }
+    };
+    private FramePipeline<ImageProxyFrame> framePipeline;
+    private int maxFramesInFlight = 1;
+    private DropPolicy dropPolicy = DropPolicy.KEEP_LATEST;
+    private long frameSequence;
+    private volatile RegionOfInterest regionOfInterest;
+    private volatile CachedCropRect cachedCropRect;
+    private FrameBufferPool frameBufferPool;
+    private final ThreadLocal<LuminanceImage> planeImages = new ThreadLocal<LuminanceImage>() {
+        @Override
+        protected LuminanceImage initialValue() {
+            return new LuminanceImage();
+        }
+    };
+    private volatile ScanJournal scanJournal;
+    private volatile FrameRecorder frameRecorder;
+    private volatile DuplicateFilter duplicateFilter = new DuplicateFilter(64, TimeUnit.SECONDS.toNanos(2), 1);
+    private final AtomicLong decodedFrames = new AtomicLong();
+    private volatile OnBatchScan batchListener;
+    private volatile OnPayloadScan payloadListener;
+    private final PayloadParser payloadParser = new PayloadParser(256);
+    private long batchIntervalMillis;
+    private final BatchCoalescer<DecodedBarcode> batchCoalescer = new BatchCoalescer<>(BarCodeReader::getSessionKey);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable batchDelivery = this::deliverBatch;
+    private final ScanMetricsRecorder metricsRecorder = new ScanMetricsRecorder();
+    private long metricsLogIntervalMillis;
+    private final Runnable metricsLogger = this::logMetrics;
+    //Tiempos del último arranque, desde start(), en SystemClock.elapsedRealtimeNanos()
+    private volatile long startNanos;
+    private volatile boolean warmStart;
+    private volatile long timeToFirstFrameNanos = -1;
+    private final AtomicLong timeToFirstDecodeNanos = new AtomicLong(-1);
 
     /**
      * Listener que se ejecuta cuando escanea
      */
     interface OnScanCodeReader {
         /**
-         * Obtienes el código de barras
+         * Obtienes el código de barras. Se ejecuta en el hilo principal.
+         * Con el decodificador de ML Kit, el Barcode original está disponible en barcode.getEngineResult().
          * @param barcode Código de barras leido
          */
-        void onGetBarcode(Barcode barcode);
+        void onGetBarcode(DecodedBarcode barcode);
         /**
-         * Obtienes la excepción
+         * Obtienes la excepción. Se ejecuta en el hilo principal.
          * @param e excepción recibida
          */
         void onError(Exception e);
     }
 
+    /**
+     * Listener que recibe en una sola llamada todos los códigos leídos en uno o varios frames.
+     */
+    interface OnBatchScan {
+        /**
+         * Obtienes los códigos leídos desde la entrega anterior. Se ejecuta en el hilo principal.
+         * @param batch frames con sus códigos, códigos nuevos de la sesión y todos los códigos distintos de la sesión
+         */
+        void onFrame(ScanBatch<DecodedBarcode> batch);
+    }
+
+    /**
+     * Listener que recibe cada código notificado junto con su contenido ya interpretado.
+     */
+    interface OnPayloadScan {
+        /**
+         * Obtienes el código y su contenido. Se ejecuta en el hilo principal; el contenido se ha interpretado antes,
+         * en el hilo de decodificación.
+         * @param barcode código leído
+         * @param payload contenido del código: TextPayload, UrlPayload, WifiPayload, ContactPayload o Gs1Payload
+         */
+        void onPayload(DecodedBarcode barcode, ParsedPayload payload);
+    }
+
     /**
      * Construye un objeto BarCodeReader que te permite abrir la cámara y escanear códigos de barra y QR.
      * @param activity activity desde la que abres la cámara.
-     * @param listener OnScanCodeReader que ejecuta void onGetBarcode(Barcode barcode) o void onError(Exception e).
+     * @param listener OnScanCodeReader que ejecuta void onGetBarcode(DecodedBarcode barcode) o void onError(Exception e).
      * @param previewView Objeto obtenido del Layout que permite la visualizacion de la camara en su interior.
      */
     public BarCodeReader(Activity activity, OnScanCodeReader listener, PreviewView previewView) {
         this.activity = activity;
         this.listener = listener;
         this.previewView = previewView;
+        //Se adoptan el hilo del analizador y el escáner preparados por prewarm(), si se ha llamado
+        prewarmed = ScannerPrewarm.take();
+        if (prewarmed != null) {
+            executorService = prewarmed.getAnalyzerExecutor();
+        }
+    }
+
+    /**
+     * Prepara por adelantado y a la vez lo que necesita el primer escaneo: inicializa el proceso de la cámara de
+     * CameraX, arranca el hilo del analizador y el de decodificación y crea el escáner de ML Kit cargando su modelo. Se recomienda llamarlo
+     * desde Application.onCreate, sin necesidad de tener aún el permiso de la cámara. Lo preparado lo adopta el primer
+     * BarCodeReader que se crea; el escáner solo si usa las opciones por defecto, aunque el modelo ya queda cargado.
+     * No bloquea: se puede llamar desde el hilo principal.
+     * @param context cualquier contexto de la aplicación
+     */
+    public static void prewarm(Context context) {
+        ScannerPrewarm.start(context);
     }
 
     /**
@@ -88,19 +250,554 @@ public class BarCodeReader implements Closeable {
      */
     public BarcodeScannerOptions getBarcodeScannerOptions() {
         if (options == null) {
-            options = new BarcodeScannerOptions.Builder()
-                    .setBarcodeFormats(Barcode.FORMAT_ALL_FORMATS)
-                    .build();
+            options = ScannerPrewarm.createDefaultOptions();
         }
         return options;
     }
 
     /**
      * Establece las opciones para escanear, en caso de no hacerlo se utilizará FORMAT_ALL_FORMATS.
+     * Si se utiliza el decodificador de ML Kit por defecto, se vuelve a crear con las nuevas opciones.
      * @param barcodeScannerOptions
      */
-    public void setBarcodeScannerOptions(BarcodeScannerOptions barcodeScannerOptions) {
+    public synchronized void setBarcodeScannerOptions(BarcodeScannerOptions barcodeScannerOptions) {
+        setBarcodeScannerOptions(barcodeScannerOptions, Barcode.FORMAT_ALL_FORMATS);
+    }
+
+    /**
+     * Establece los formatos a buscar (Barcode.FORMAT_*). A diferencia de setBarcodeScannerOptions(), en el modo de
+     * formatos aprendidos los escáneres de los formatos aprendidos se limitan también a estos formatos.
+     * @param format un formato
+     * @param moreFormats el resto de formatos
+     */
+    public synchronized void setBarcodeFormats(int format, int... moreFormats) {
+        int mask = format;
+        for (int moreFormat : moreFormats) {
+            mask |= moreFormat;
+        }
+        setBarcodeScannerOptions(new BarcodeScannerOptions.Builder().setBarcodeFormats(format, moreFormats).build(), mask);
+    }
+
+    private void setBarcodeScannerOptions(BarcodeScannerOptions barcodeScannerOptions, int formatMask) {
         this.options = barcodeScannerOptions;
+        this.optionsFormatMask = BarcodeFormat.normalizeMask(formatMask);
+        if (barcodeDecoder instanceof MlKitBarcodeDecoder) {
+            barcodeDecoder.close();
+            barcodeDecoder = null;
+        }
+        closeLearnedFormatsDecoders();
+    }
+
+    /**
+     * Obtiene el motor que decodifica cada frame. Si no se ha establecido ninguno se utiliza ML Kit
+     * con las opciones de getBarcodeScannerOptions().
+     * @return el decodificador establecido y sino el asignado por defecto.
+     */
+    public synchronized BarcodeDecoder getBarcodeDecoder() {
+        if (barcodeDecoder == null) {
+            //El escáner de prewarm() tiene las opciones por defecto
+            if (options == null && prewarmed != null) {
+                barcodeDecoder = prewarmed.takeDecoder();
+            }
+            if (barcodeDecoder == null) {
+                barcodeDecoder = new MlKitBarcodeDecoder(getBarcodeScannerOptions());
+            }
+        }
+        return barcodeDecoder;
+    }
+
+    /**
+     * Establece el motor que decodifica cada frame, por ejemplo ZxingBarcodeDecoder en lugar de ML Kit.
+     * El decodificador se cierra al cerrar el BarCodeReader.
+     * @param barcodeDecoder el nuevo decodificador, o null para volver a utilizar ML Kit.
+     */
+    public synchronized void setBarcodeDecoder(BarcodeDecoder barcodeDecoder) {
+        this.barcodeDecoder = barcodeDecoder;
+    }
+
+    /**
+     * Crea un BulkDecoder para decodificar fotos o ficheros de imagen con el decodificador de este lector,
+     * sin necesidad de iniciar la cámara. Las fotos se leen con BitmapFactory, reducidas si superan 12 megapíxeles.
+     * Se aplican la región de interés de este lector, sobre la foto derecha, y su DuplicateFilter, de forma que un
+     * código ya leído con la cámara o en otro fichero no se vuelve a entregar dentro del ttl del filtro. Los ficheros
+     * no necesitan las confirmaciones del filtro, que solo se piden a los frames consecutivos de la cámara.
+     * Su método decode() bloquea hasta terminar el lote, por lo que no se debe llamar desde el hilo principal.
+     * @param parallelism ficheros que se cargan y decodifican a la vez
+     * @return el BulkDecoder, que deja de funcionar al cerrar este lector
+     */
+    public BulkDecoder createBulkDecoder(int parallelism) {
+        BulkDecoder bulkDecoder = new BulkDecoder(getBarcodeDecoder(), new BitmapImageLoader(BULK_MAX_PIXELS), parallelism);
+        bulkDecoder.setRegionOfInterest(regionOfInterest);
+        bulkDecoder.setDuplicateFilter(duplicateFilter);
+        return bulkDecoder;
+    }
+
+    /**
+     * @return el aprendiz de formatos del modo de formatos aprendidos, o null si está desactivado.
+     */
+    public FormatLearner getFormatLearner() {
+        return formatLearner;
+    }
+
+    /**
+     * Activa el modo de formatos aprendidos: el escáner de ML Kit se vuelve a crear buscando solo los formatos leídos
+     * recientemente, y se vuelven a buscar todos los de getBarcodeScannerOptions() tras varios frames sin lecturas o
+     * cada cierto tiempo, para detectar formatos nuevos. Los formatos aprendidos se guardan en SharedPreferences
+     * y se restauran al activar el modo en la siguiente ejecución.
+     * Solo tiene efecto con el decodificador de ML Kit por defecto.
+     * @param enabled true para activar el modo con los parámetros por defecto de FormatLearner, false para desactivarlo.
+     */
+    public void setLearnedFormatsEnabled(boolean enabled) {
+        setFormatLearner(enabled ? new FormatLearner() : null);
+    }
+
+    /**
+     * Establece el aprendiz de formatos, para ajustar cuándo se vuelven a buscar todos los formatos.
+     * Se restauran en él los formatos guardados en la ejecución anterior.
+     * @param formatLearner el aprendiz, o null para buscar siempre todos los formatos de las opciones.
+     */
+    public void setFormatLearner(FormatLearner formatLearner) {
+        if (formatLearner != null && activity != null) {
+            int persisted = getPreferences().getInt(LEARNED_FORMATS_KEY, 0);
+            formatLearner.restore(persisted);
+            persistedFormatMask = persisted;
+        }
+        this.formatLearner = formatLearner;
+        if (formatLearner == null) {
+            synchronized (this) {
+                closeLearnedFormatsDecoders();
+            }
+        }
+    }
+
+    /**
+     * @return máscara (Barcode.FORMAT_*) de los formatos que se buscan en este momento, BarcodeFormat.ALL_FORMATS_MASK
+     * si son todos, tanto con el modo de formatos aprendidos como sin él.
+     */
+    public int getActiveFormatMask() {
+        FormatLearner learner = formatLearner;
+        return learner == null ? BarcodeFormat.ALL_FORMATS_MASK : learner.getActiveFormatMask();
+    }
+
+    /**
+     * @return fracción de los frames en los que se han vuelto a buscar todos los formatos en el modo de formatos
+     * aprendidos, o 0 si está desactivado.
+     */
+    public double getFormatFallbackRate() {
+        FormatLearner learner = formatLearner;
+        return learner == null ? 0 : learner.getFallbackRate();
+    }
+
+    /**
+     * Olvida los formatos aprendidos, también los guardados, y vuelve a buscar todos los formatos.
+     */
+    public void clearLearnedFormats() {
+        FormatLearner learner = formatLearner;
+        if (learner != null) {
+            learner.clear();
+        }
+        persistLearnedFormats(0);
+    }
+
+    /**
+     * Obtiene el número máximo de frames que se analizan a la vez.
+     * @return el número máximo de frames en proceso, por defecto 1.
+     */
+    public int getMaxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    /**
+     * Establece el número máximo de frames que se analizan a la vez.
+     * Se debe de establecer antes de ejecutar start().
+     * @param maxFramesInFlight número máximo de frames en proceso, al menos 1.
+     */
+    public void setMaxFramesInFlight(int maxFramesInFlight) {
+        if (maxFramesInFlight < 1) {
+            throw new IllegalArgumentException("maxFramesInFlight debe ser al menos 1: " + maxFramesInFlight);
+        }
+        this.maxFramesInFlight = maxFramesInFlight;
+    }
+
+    /**
+     * Obtiene el número de hilos que decodifican frames a la vez.
+     * @return el número de hilos, por defecto 1.
+     */
+    public int getDecodeWorkers() {
+        return decodeWorkers;
+    }
+
+    /**
+     * Establece el número de hilos que decodifican frames a la vez. Los códigos se siguen entregando en el orden
+     * de los frames, descartando los de frames anteriores a uno que ya ha entregado códigos.
+     * Si maxFramesInFlight es menor se aumenta, ya que solo se decodifican en paralelo los frames en proceso.
+     * Se debe de establecer antes de ejecutar start().
+     * @param decodeWorkers número de hilos, al menos 1. Por ejemplo, la mitad de Runtime.availableProcessors().
+     */
+    public void setDecodeWorkers(int decodeWorkers) {
+        if (decodeWorkers < 1) {
+            throw new IllegalArgumentException("decodeWorkers debe ser al menos 1: " + decodeWorkers);
+        }
+        this.decodeWorkers = decodeWorkers;
+        if (maxFramesInFlight < decodeWorkers) {
+            maxFramesInFlight = decodeWorkers;
+        }
+    }
+
+    /**
+     * @return true si los frames se decodifican con MultiScaleDecoder.
+     */
+    public synchronized boolean isMultiScaleEnabled() {
+        return multiScaleEnabled;
+    }
+
+    /**
+     * Activa la búsqueda multiescala: en cada frame una pasada barata busca las zonas con aspecto de código y solo
+     * esas teselas se decodifican a resolución completa, en paralelo. Acelera la lectura de códigos pequeños o lejanos
+     * en resoluciones de análisis altas; con el código ocupando buena parte del frame se decodifica el frame entero.
+     * Las teselas de cada frame se reparten entre los núcleos que no usan los decodeWorkers.
+     * @param enabled true para activarla, false para decodificar siempre el frame entero.
+     */
+    public synchronized void setMultiScaleEnabled(boolean enabled) {
+        multiScaleEnabled = enabled;
+        if (!enabled) {
+            //Un frame que aún los use termina sus teselas en su propio hilo
+            closeMultiScaleDecoders();
+        }
+    }
+
+    /**
+     * @return frames cuyos códigos se han descartado porque un frame posterior ya había entregado los suyos.
+     */
+    public long getStaleFrameCount() {
+        return decodeScheduler == null ? 0 : decodeScheduler.getStaleCount();
+    }
+
+    /**
+     * Obtiene la política que se aplica a los frames que llegan cuando ya se analizan maxFramesInFlight frames.
+     * @return la política establecida, por defecto DropPolicy.KEEP_LATEST.
+     */
+    public DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+
+    /**
+     * Establece la política que se aplica a los frames que llegan cuando ya se analizan maxFramesInFlight frames.
+     * Se debe de establecer antes de ejecutar start().
+     * @param dropPolicy KEEP_LATEST, DROP_NEWEST o BLOCK.
+     */
+    public void setDropPolicy(DropPolicy dropPolicy) {
+        this.dropPolicy = dropPolicy;
+    }
+
+    /**
+     * Obtiene la región de la vista previa que se analiza.
+     * @return la región establecida, o null si se analiza el frame completo.
+     */
+    public RegionOfInterest getRegionOfInterest() {
+        return regionOfInterest;
+    }
+
+    /**
+     * Establece la región de la vista previa que se analiza, por ejemplo la retícula central donde se colocan las etiquetas.
+     * Solo se envía al escáner la luminancia recortada de esa región, por lo que las coordenadas de los códigos
+     * leídos son relativas al recorte. Se puede cambiar mientras la cámara está iniciada.
+     * @param regionOfInterest región normalizada en coordenadas del PreviewView, o null para analizar el frame completo.
+     */
+    public void setRegionOfInterest(RegionOfInterest regionOfInterest) {
+        this.regionOfInterest = regionOfInterest;
+    }
+
+    /**
+     * Obtiene el filtro que evita notificar varias veces el mismo código, con sus estadísticas de aciertos y fallos.
+     * Por defecto recuerda 64 códigos durante 2 segundos y no exige confirmaciones.
+     * @return el filtro establecido, o null si está desactivado.
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    /**
+     * Establece el filtro que evita notificar varias veces el mismo código. Con él se leen códigos distintos seguidos
+     * sin necesidad de parar y reiniciar el analizador.
+     * @param duplicateFilter el nuevo filtro, o null para notificar todas las lecturas.
+     */
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    /**
+     * Obtiene el diario en el que se guardan los códigos leídos.
+     * @return el diario establecido, o null si no se guardan.
+     */
+    public ScanJournal getScanJournal() {
+        return scanJournal;
+    }
+
+    /**
+     * Establece el diario en el que se guardan los códigos notificados al OnScanCodeReader, ya sin repetidos,
+     * para conservarlos sin conexión. La escritura es asíncrona y nunca bloquea el análisis.
+     * El diario no se cierra en close(): lo cierra quien lo ha creado.
+     * @param scanJournal el diario, o null para no guardar los códigos.
+     */
+    public void setScanJournal(ScanJournal scanJournal) {
+        this.scanJournal = scanJournal;
+    }
+
+    /**
+     * Empieza a grabar una muestra de los frames que llegan al analizador (plano Y, marca de tiempo y rotación) para
+     * reproducirlos después en el host con ReplayHarness. La copia del frame se hace en el hilo del analizador y la
+     * compresión y escritura en un hilo propio; si no da abasto los frames se descartan sin retrasar el análisis.
+     * Se graban también los frames que luego descartan el AdaptiveScanController o el FrameGate.
+     * @param file fichero de la grabación; se sobrescribe si existe
+     * @param minIntervalMillis tiempo mínimo entre dos frames grabados, 0 para grabarlos todos
+     * @return la grabación, con sus contadores y su posible error
+     */
+    public FrameRecorder startRecording(File file, long minIntervalMillis) {
+        stopRecording();
+        FrameRecorder recorder = new FrameRecorder(file, TimeUnit.MILLISECONDS.toNanos(minIntervalMillis),
+                FrameRecorder.DEFAULT_QUEUE_CAPACITY, Deflater.BEST_SPEED);
+        frameRecorder = recorder;
+        return recorder;
+    }
+
+    /**
+     * Termina la grabación, esperando a que se escriban los frames pendientes. No hace nada si no se está grabando.
+     */
+    public void stopRecording() {
+        FrameRecorder recorder = frameRecorder;
+        frameRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+            Log.d(TAG, recorder.toString());
+        }
+    }
+
+    /**
+     * @return la grabación en curso, o null si no se está grabando.
+     */
+    public FrameRecorder getFrameRecorder() {
+        return frameRecorder;
+    }
+
+    /**
+     * Olvida los códigos ya leídos, de forma que se vuelven a notificar si se escanean de nuevo.
+     */
+    public void clearScannedCodes() {
+        DuplicateFilter filter = duplicateFilter;
+        if (filter != null) {
+            filter.clear();
+        }
+    }
+
+    /**
+     * Establece el listener que recibe todos los códigos de cada frame juntos, para escanear muchas etiquetas a la vez.
+     * Los frames se agrupan y se entregan en el hilo principal como mucho una vez cada coalescingMillis milisegundos,
+     * en lugar de una llamada por código. Es compatible con OnScanCodeReader, que se sigue ejecutando si no es null.
+     * @param batchListener el listener, o null para desactivar el modo por lotes.
+     * @param coalescingMillis intervalo de agrupación en milisegundos, 0 para entregar cada frame en cuanto se lee.
+     */
+    public void setOnBatchScan(OnBatchScan batchListener, long coalescingMillis) {
+        this.batchIntervalMillis = Math.max(0, coalescingMillis);
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Establece el listener que recibe el contenido interpretado (URL, Wi-Fi, contacto, GS1) de los códigos que se
+     * notifican al OnScanCodeReader, ya sin repetidos. El contenido se interpreta en el hilo de decodificación y se
+     * guarda en la caché del PayloadParser, por lo que volver a leer una etiqueta no la vuelve a analizar.
+     * @param payloadListener el listener, o null para no interpretar los códigos.
+     */
+    public void setOnPayloadScan(OnPayloadScan payloadListener) {
+        this.payloadListener = payloadListener;
+    }
+
+    /**
+     * @return el intérprete del contenido de los códigos, con las estadísticas de su caché.
+     */
+    public PayloadParser getPayloadParser() {
+        return payloadParser;
+    }
+
+    /**
+     * Empieza una nueva sesión de escaneo por lotes, olvidando los códigos distintos acumulados.
+     */
+    public void clearScanSession() {
+        batchCoalescer.clearSession();
+    }
+
+    /**
+     * Obtiene las métricas del escaneo: percentiles de latencia de cada etapa (ScanStage), frames por segundo,
+     * proporción de frames con códigos y frames descartados.
+     * @return una foto de las métricas acumuladas desde el inicio o el último resetScanMetrics().
+     */
+    public ScanMetrics getScanMetrics() {
+        return metricsRecorder.snapshot(getDroppedFrameCount());
+    }
+
+    /**
+     * Obtiene el pool de buffers directos en el que se recorta la región de interés de cada frame.
+     * Sus aciertos, fallos y buffers entregados permiten comprobar que no se reserva memoria en cada frame.
+     * @return el pool de buffers del lector.
+     */
+    public synchronized FrameBufferPool getFrameBufferPool() {
+        if (frameBufferPool == null) {
+            //Un buffer por frame en proceso y otro para el siguiente frame mientras se cierra el anterior
+            frameBufferPool = new FrameBufferPool(getPipelineCapacity() + 1);
+        }
+        return frameBufferPool;
+    }
+
+    /**
+     * Borra las métricas acumuladas. Los frames descartados los sigue contando el FramePipeline.
+     */
+    public void resetScanMetrics() {
+        metricsRecorder.reset();
+    }
+
+    /**
+     * Escribe periódicamente las métricas del escaneo en logcat.
+     * @param intervalMillis intervalo en milisegundos, 0 para dejar de escribirlas.
+     */
+    public void setMetricsLogInterval(long intervalMillis) {
+        metricsLogIntervalMillis = Math.max(0, intervalMillis);
+        mainHandler.removeCallbacks(metricsLogger);
+        if (metricsLogIntervalMillis > 0) {
+            mainHandler.postDelayed(metricsLogger, metricsLogIntervalMillis);
+        }
+    }
+
+    /**
+     * @return número de frames descartados sin analizar.
+     */
+    public long getDroppedFrameCount() {
+        return framePipeline == null ? 0 : framePipeline.getDroppedCount();
+    }
+
+    /**
+     * @return número de frames analizados.
+     */
+    public long getProcessedFrameCount() {
+        return framePipeline == null ? 0 : framePipeline.getProcessedCount();
+    }
+
+    /**
+     * @return el controlador de resolución adaptativa, o null si se analiza siempre a la resolución por defecto de CameraX.
+     */
+    public AdaptiveScanController getAdaptiveScanController() {
+        return adaptiveScanController;
+    }
+
+    /**
+     * Establece el controlador que elige la resolución de análisis y cuántos frames se analizan según los resultados:
+     * empieza a baja resolución, la sube si se ve algo parecido a un código que no se consigue leer y la baja tras
+     * leer códigos de forma continuada o si se supera el presupuesto de tiempo de detector.
+     * Se debe establecer antes de start().
+     * @param adaptiveScanController el controlador, por ejemplo new AdaptiveScanController(TimeUnit.MILLISECONDS.toNanos(500)),
+     *                               o null para no adaptar la resolución.
+     */
+    public void setAdaptiveScanController(AdaptiveScanController adaptiveScanController) {
+        this.adaptiveScanController = adaptiveScanController;
+    }
+
+    /**
+     * @return el filtro de frames movidos, desenfocados o sin cambios, o null si se analizan todos los frames.
+     */
+    public FrameGate getFrameGate() {
+        return frameGate;
+    }
+
+    /**
+     * Establece el filtro que descarta, antes de entrar en el FramePipeline, los frames desenfocados o movidos y los
+     * que no han cambiado desde el último decodificado, de forma que no ocupan el decodificador.
+     * Sus estadísticas de frames descartados se escriben en el log junto a las métricas.
+     * @param frameGate el filtro, por ejemplo new FrameGate(), o null para analizar todos los frames.
+     */
+    public void setFrameGate(FrameGate frameGate) {
+        this.frameGate = frameGate;
+    }
+
+    /**
+     * @return el controlador de modos de escaneo, o null si se escanea siempre igual.
+     */
+    public ScanModeController getScanModeController() {
+        return scanModeController;
+    }
+
+    /**
+     * Establece el controlador que alterna entre el modo en reposo (pocos frames y solo si la escena cambia), el activo
+     * (todos los frames) y la ráfaga tras trigger() (todos los frames con el máximo de hilos), según el movimiento y los
+     * códigos leídos. Los cambios de modo no rehacen la cámara ni el pipeline: se descartan frames en el analizador y se
+     * cambia el límite de frames en proceso del FramePipeline; en el modo activo y en la ráfaga nunca es menor que
+     * maxFramesInFlight.
+     * El tiempo pasado en cada modo y sus frames se escriben en el log junto a las métricas.
+     * Se debe establecer antes de start().
+     * @param scanModeController el controlador, por ejemplo new ScanModeController(), o null para no cambiar de modo.
+     */
+    public void setScanModeController(ScanModeController scanModeController) {
+        this.scanModeController = scanModeController;
+    }
+
+    /**
+     * Pasa a la ráfaga del ScanModeController durante un momento, por ejemplo al pulsar un botón de escaneo.
+     * No hace nada si no hay controlador de modos.
+     */
+    public void trigger() {
+        ScanModeController modes = scanModeController;
+        if (modes != null) {
+            modes.trigger(SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    /**
+     * @return el PreviewView en el que se muestra la cámara, o null si está desconectada de la vista.
+     */
+    public PreviewView getPreviewView() {
+        return previewView;
+    }
+
+    /**
+     * Cambia el PreviewView en el que se muestra la cámara sin parar el análisis ni volver a vincular la cámara:
+     * solo se cambia la superficie del caso de uso Preview. Sirve para pasar la vista previa a otro Fragment o
+     * Layout; la cámara sigue vinculada al ciclo de vida de la Activity con la que se creó el lector.
+     * Se debe llamar en el hilo principal.
+     * @param previewView la nueva vista, o null para desconectar la vista previa y seguir solo analizando.
+     */
+    public void setPreviewView(PreviewView previewView) {
+        this.previewView = previewView;
+        if (preview != null) {
+            preview.setSurfaceProvider(previewView == null ? null : previewView.createSurfaceProvider());
+        }
+    }
+
+    /**
+     * Desconecta la vista previa del PreviewView sin parar el análisis. Equivale a setPreviewView(null).
+     */
+    public void detachPreviewView() {
+        setPreviewView(null);
+    }
+
+    /**
+     * @return true si el último start() encontró el proceso de la cámara ya inicializado, por ejemplo por prewarm().
+     */
+    public boolean isWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * @return nanosegundos desde el último start() hasta que llegó el primer frame al analizador, o -1 si aún no ha
+     * llegado.
+     */
+    public long getTimeToFirstFrameNanos() {
+        return timeToFirstFrameNanos;
+    }
+
+    /**
+     * @return nanosegundos desde el último start() hasta que terminó de decodificarse el primer frame, con o sin
+     * códigos, o -1 si aún no ha terminado ninguno.
+     */
+    public long getTimeToFirstDecodeNanos() {
+        return timeToFirstDecodeNanos.get();
     }
 
     /**
@@ -119,14 +816,24 @@ public class BarCodeReader implements Closeable {
      * Inicia de nuevo el analizador luego de utilizar el método stopAnalyzer().
      */
     public void restartAnalyzer() {
-        imageAnalysis.setAnalyzer(getExecutorService(), getAnalyzer());
+        analyzerEnabled = true;
+        if (analysisBinder != null) {
+            analysisBinder.setAnalyzerEnabled(true);
+        }
     }
 
     /**
      * Para el analizador.
      */
     public void stopAnalyzer() {
-        imageAnalysis.clearAnalyzer();
+        analyzerEnabled = false;
+        if (analysisBinder != null) {
+            analysisBinder.setAnalyzerEnabled(false);
+        }
+        ScanModeController modes = scanModeController;
+        if (modes != null) {
+            modes.pause(SystemClock.elapsedRealtimeNanos());
+        }
     }
 
     /**
@@ -134,11 +841,55 @@ public class BarCodeReader implements Closeable {
      */
     @Override
     public void close() {
-        executorService.shutdown();
-        imageAnalysis.clearAnalyzer();
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        if (analysisBinder != null) {
+            analysisBinder.close();
+        }
+        AdaptiveScanController controller = adaptiveScanController;
+        if (controller != null) {
+            controller.setListener(null);
+        }
+        ScanModeController modes = scanModeController;
+        if (modes != null) {
+            modes.setListener(null);
+        }
+        if (activity != null) {
+            ((LifecycleOwner) activity).getLifecycle().removeObserver(lifecycleObserver);
+        }
+        if (framePipeline != null) {
+            framePipeline.close();
+        }
+        if (decodeScheduler != null) {
+            decodeScheduler.close();
+        }
+        synchronized (this) {
+            if (frameBufferPool != null) {
+                frameBufferPool.clear();
+            }
+            if (barcodeDecoder != null) {
+                barcodeDecoder.close();
+            }
+            barcodeDecoder = null;
+            if (prewarmed != null) {
+                prewarmed.closeDecoder();
+                prewarmed = null;
+            }
+            closeMultiScaleDecoders();
+            closeLearnedFormatsDecoders();
+        }
+        stopRecording();
+        mainHandler.removeCallbacks(batchDelivery);
+        mainHandler.removeCallbacks(metricsLogger);
+        batchListener = null;
+        payloadListener = null;
         previewView = null;
+        preview = null;
+        framePipeline = null;
         executorService = null;
-        imageAnalysis = null;
+        decodeScheduler = null;
+        analysisBinder = null;
         listener = null;
         activity = null;
         options = null;
@@ -152,28 +903,64 @@ public class BarCodeReader implements Closeable {
      * El analizador ejecutará el listener OnScanCodeReader.onError en caso de NO procesar adecuadamente el código de barras o QR.
      */
     public void start() {
+        startNanos = SystemClock.elapsedRealtimeNanos();
+        timeToFirstFrameNanos = -1;
+        timeToFirstDecodeNanos.set(-1);
         //Creamos petición asíncrona para solicitar la cámara.
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(activity);
+        warmStart = cameraProviderFuture.isDone();
+        //Mientras se abre la cámara se arrancan los hilos de decodificación y se carga el escáner en el hilo
+        //del analizador, que está libre hasta que lleguen frames
+        FramePipeline<ImageProxyFrame> pipeline = getFramePipeline();
+        getDecodeScheduler().prestartWorkers();
+        ScanModeController modes = scanModeController;
+        if (modes != null) {
+            modes.reset();
+            modes.setListener(this::onScanModeChanged);
+            pipeline.setMaxInFlight(modes.getMaxInFlight(modes.getMode(), maxFramesInFlight));
+            ((LifecycleOwner) activity).getLifecycle().addObserver(lifecycleObserver);
+        }
+        getExecutorService().execute(this::preloadBarcodeDecoder);
         //Creamos buffer intermedio entre la cámara (hardware) y el componente que lo muestra previewView(View)
-        Preview preview = new Preview.Builder().build();
+        preview = new Preview.Builder().build();
         //Nos subscribimos al listener que nos índica cuando se nos permite el acceso a la cámara
         cameraProviderFuture.addListener(() -> {
             try {
                 //Obtenemos la instancia del proceso de la cámara y establecerlo a un ciclo de vida.
                 ProcessCameraProvider processCameraProvider = cameraProviderFuture.get();
-                //Conectamos el buffer de la cámara con la vista
-                preview.setSurfaceProvider(previewView.createSurfaceProvider());
-
-                //Crear objeto encargado de analizar
-                imageAnalysis = new ImageAnalysis.Builder().build();
-                //Establecer executor y listener al objeto encargado de analizar:
-                //Para ejecutar la tarea en otro hilo
-                //Para obtener cada vez que se obtiene un código de barras
-                imageAnalysis.setAnalyzer(getExecutorService(), getAnalyzer());
-                //Desvinculamos todos los casos del ciclo de vida de CameraX
-                processCameraProvider.unbindAll();
-                //Establecemos el proceso de la cámara con el ciclo de vida actual.
-                processCameraProvider.bindToLifecycle((LifecycleOwner) activity, CameraSelector.DEFAULT_BACK_CAMERA, preview, imageAnalysis);
+                //Conectamos el buffer de la cámara con la vista, si no se ha desconectado
+                PreviewView view = previewView;
+                if (view != null) {
+                    preview.setSurfaceProvider(view.createSurfaceProvider());
+                }
+
+                //Crear objeto encargado de analizar. CameraX retiene una imagen más de las que caben en el pipeline
+                //y es el FramePipeline quien decide cuáles se analizan y cuáles se descartan.
+                //El analizador se ejecuta en otro hilo y se vuelve a vincular al cambiar la resolución adaptativa.
+                boolean portrait = activity.getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+                //Un start() anterior, por ejemplo en onResume, deja su binder con su ImageAnalysis: se libera antes
+                //de sustituirlo para que no se acumulen
+                AdaptiveScanController controller = adaptiveScanController;
+                if (analysisBinder != null) {
+                    if (controller != null) {
+                        controller.setListener(null);
+                    }
+                    analysisBinder.close();
+                }
+                analysisBinder = new AnalysisBinder(processCameraProvider, (LifecycleOwner) activity,
+                        CameraSelector.DEFAULT_BACK_CAMERA, getExecutorService(), getAnalyzer(), getPipelineCapacity() + 1, portrait);
+                analysisBinder.setAnalyzerEnabled(analyzerEnabled);
+                FrameGate gate = frameGate;
+                if (gate != null) {
+                    gate.reset();
+                }
+                if (controller != null) {
+                    controller.reset();
+                    controller.setListener(analysisBinder);
+                }
+                //Desvinculamos todos los casos del ciclo de vida de CameraX y establecemos el proceso de la cámara
+                //con el ciclo de vida actual.
+                analysisBinder.bind(preview, controller == null ? null : controller.getScanLevel());
             } catch (ExecutionException | InterruptedException e) {
                 e.printStackTrace();
             }
@@ -191,38 +978,459 @@ public class BarCodeReader implements Closeable {
     }
 
     /**
-     * Establece el analizador que trabajará con cada frame, con las opciones de escaneo definidas o las establecidas por defecto
+     * Establece el analizador que trabajará con cada frame, entregándolo al FramePipeline.
      * @return ImageAnalysis.Analyzer utilizado para anlizar cada frame.
      */
     private ImageAnalysis.Analyzer getAnalyzer() {
         return imageProxy -> {
-            //Obtener la imagen que se está mostrándo en la cámara
-            Image currentCameraImage = imageProxy.getImage();
-            //Obtener InputImage que nos permite analizar la imagen
-            InputImage image = InputImage.fromMediaImage(currentCameraImage, imageProxy.getImageInfo().getRotationDegrees());
-            //Crear escaner que analizará la imagen
-            BarcodeScanner scanner = BarcodeScanning.getClient(getBarcodeScannerOptions());
-            //Escanear imagen y establecer listeners
-            scanner.process(image)
-                    //Cuando no ocurra ningún error.
-                    .addOnSuccessListener(barcodes -> {
-                        //Leer todos los códigos de barras mostrados
-                        for (Barcode barcode : barcodes) {
-                            if (listener != null) {
-                                listener.onGetBarcode(barcode);
-                            }
+            if (timeToFirstFrameNanos < 0) {
+                timeToFirstFrameNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+            }
+            FrameRecorder recorder = frameRecorder;
+            if (recorder != null) {
+                recorder.record(getPlaneImage(imageProxy), imageProxy.getImageInfo().getTimestamp());
+            }
+            ScanModeController modes = scanModeController;
+            if (modes != null && !modes.onFrame(SystemClock.elapsedRealtimeNanos(), getPlaneImage(imageProxy))) {
+                //El modo actual descarta el frame: en reposo se analizan pocos y solo si la escena ha cambiado
+                imageProxy.close();
+                return;
+            }
+            AdaptiveScanController controller = adaptiveScanController;
+            if (controller != null && !controller.shouldAnalyze()) {
+                //El nivel actual solo analiza uno de cada frameStride frames
+                imageProxy.close();
+                return;
+            }
+            FrameGate gate = frameGate;
+            if (gate != null) {
+                if (gate.evaluate(getPlaneImage(imageProxy)) != FrameGate.Decision.DECODE) {
+                    imageProxy.close();
+                    return;
+                }
+            }
+            getFramePipeline().onFrame(new ImageProxyFrame(imageProxy, frameSequence++, System.nanoTime(), metricsRecorder));
+        };
+    }
+
+    /**
+     * @param imageProxy imagen entregada por CameraX
+     * @return una vista sin copia sobre su plano Y, reutilizada en cada frame del hilo actual
+     */
+    private LuminanceImage getPlaneImage(ImageProxy imageProxy) {
+        ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+        return planeImages.get().set(yPlane.getBuffer(), 0, imageProxy.getWidth(), imageProxy.getHeight(),
+                yPlane.getRowStride(), yPlane.getPixelStride(), imageProxy.getImageInfo().getRotationDegrees());
+    }
+
+    /**
+     * @return frames que pueden estar en proceso a la vez: maxFramesInFlight o, con modos de escaneo, el mayor de ellos.
+     */
+    private int getPipelineCapacity() {
+        ScanModeController modes = scanModeController;
+        return modes == null ? maxFramesInFlight : Math.max(maxFramesInFlight, modes.getMaxInFlight());
+    }
+
+    /**
+     * Aplica el límite de frames en proceso del nuevo modo. Se ejecuta en el hilo que provoca el cambio.
+     */
+    private void onScanModeChanged(ScanMode previous, ScanMode current) {
+        ScanModeController modes = scanModeController;
+        FramePipeline<ImageProxyFrame> pipeline = framePipeline;
+        if (modes != null && pipeline != null) {
+            pipeline.setMaxInFlight(modes.getMaxInFlight(current, maxFramesInFlight));
+        }
+        Log.d(TAG, "scanMode " + previous + " -> " + current);
+    }
+
+    /**
+     * Obtiene el FramePipeline que limita los frames analizados a la vez según maxFramesInFlight y dropPolicy.
+     * @return el FramePipeline del lector.
+     */
+    private FramePipeline<ImageProxyFrame> getFramePipeline() {
+        if (framePipeline == null) {
+            framePipeline = new FramePipeline<>(getPipelineCapacity(), dropPolicy, getDecodeScheduler());
+        }
+        return framePipeline;
+    }
+
+    /**
+     * Obtiene el DecodeScheduler que decodifica los frames en decodeWorkers hilos y entrega los resultados en orden.
+     * Sus hilos son distintos del del analizador para que el analizador pueda esperar hueco en el FramePipeline
+     * (DropPolicy.BLOCK) sin bloquear la decodificación.
+     * @return el DecodeScheduler del lector.
+     */
+    private DecodeScheduler<ImageProxyFrame, DecodedBarcode> getDecodeScheduler() {
+        if (decodeScheduler == null) {
+            //Con modos de escaneo hacen falta tantos hilos como frames en proceso en la ráfaga
+            ScanModeController modes = scanModeController;
+            int workers = modes == null ? decodeWorkers : Math.max(decodeWorkers, modes.getMaxInFlight());
+            //Hilos ya arrancados por prewarm(), si los hay
+            ScannerPrewarm prewarm = prewarmed;
+            ThreadPoolExecutor prestarted = prewarm == null ? null : prewarm.takeDecodeExecutor();
+            decodeScheduler = new DecodeScheduler<>(
+                    prestarted != null ? prestarted : DecodeScheduler.newWorkerExecutor(workers), workers,
+                    this::decodeFrame, new DecodeScheduler.ResultListener<ImageProxyFrame, DecodedBarcode>() {
+                        @Override
+                        public void onResult(ImageProxyFrame frame, List<DecodedBarcode> codes) {
+                            long dispatchStart = System.nanoTime();
+                            dispatch(frame, codes);
+                            metricsRecorder.record(ScanStage.DISPATCH, System.nanoTime() - dispatchStart);
+                        }
+
+                        @Override
+                        public void onError(ImageProxyFrame frame, Exception e) {
+                            mainHandler.post(() -> {
+                                if (listener != null) listener.onError(e);
+                            });
                         }
-                    })
-                    //Cuando ocurre algún error
-                    .addOnFailureListener(e -> {
-                        if (listener != null) listener.onError(e);
-                    })
-                    //Cuando se termina se cierran los flujos
-                    .addOnCompleteListener((barcodes) -> {
-                        currentCameraImage.close();
-                        imageProxy.close();
                     });
-        };
+        }
+        return decodeScheduler;
+    }
+
+    /**
+     * Decodifica un frame con el decodificador establecido. Se ejecuta en los hilos del DecodeScheduler, que entrega
+     * después los códigos a los listeners en orden.
+     * @param frame frame a analizar, abierto hasta que termina la llamada
+     * @return los códigos leídos
+     * @throws BarcodeDecoderException si falla el decodificador
+     */
+    private List<DecodedBarcode> decodeFrame(ImageProxyFrame frame) throws BarcodeDecoderException {
+        long decodeStart = System.nanoTime();
+        metricsRecorder.record(ScanStage.FRAME_ACQUIRE, decodeStart - frame.getArrivalNanos());
+        FrameBufferPool.Lease lease = null;
+        try {
+            ImageProxy imageProxy = frame.getImageProxy();
+            RegionOfInterest roi = regionOfInterest;
+            LuminanceImage image;
+            if (roi == null) {
+                //Vista sobre el plano Y de la imagen de la cámara, sin copiarlo
+                ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+                image = planeImages.get().set(yPlane.getBuffer(), 0, imageProxy.getWidth(), imageProxy.getHeight(),
+                        yPlane.getRowStride(), yPlane.getPixelStride(), frame.getRotationDegrees());
+            } else {
+                //El recorte va a un buffer del pool, que el frame retiene hasta cerrar el ImageProxy
+                lease = getCroppedImage(imageProxy, frame.getRotationDegrees(), roi);
+                frame.attachBuffer(lease);
+                image = lease.getImage();
+            }
+            BarcodeDecoder decoder = getFrameDecoder();
+            //El frame completo va a ML Kit sin copiarse; la vista sobre el plano Y solo la lee CodeRegionDetector
+            Image mediaImage = roi == null && decoder instanceof MlKitBarcodeDecoder ? frame.getMediaImage() : null;
+            long detectStart = System.nanoTime();
+            metricsRecorder.record(ScanStage.INPUT_IMAGE, detectStart - decodeStart);
+            List<DecodedBarcode> barcodes;
+            try {
+                barcodes = mediaImage != null
+                        ? ((MlKitBarcodeDecoder) decoder).decode(mediaImage, frame.getRotationDegrees())
+                        : decoder.decode(image);
+            } catch (BarcodeDecoderException e) {
+                long detectNanos = System.nanoTime() - detectStart;
+                metricsRecorder.record(ScanStage.DETECT, detectNanos);
+                metricsRecorder.onFrameFailed();
+                onFrameAnalyzed(image, detectNanos, 0);
+                throw e;
+            }
+            long detectNanos = System.nanoTime() - detectStart;
+            metricsRecorder.record(ScanStage.DETECT, detectNanos);
+            metricsRecorder.onFrameDecoded(barcodes.size());
+            onFirstDecode();
+            onFormatsAnalyzed(barcodes);
+            onFrameAnalyzed(image, detectNanos, barcodes.size());
+            return barcodes;
+        } finally {
+            //Se libera la referencia del decodificador; la del frame se libera al cerrarlo el DecodeScheduler
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * Registra el tiempo hasta la primera decodificación desde start() y lo escribe en el log junto al del primer frame.
+     */
+    private void onFirstDecode() {
+        if (timeToFirstDecodeNanos.get() >= 0) {
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - startNanos;
+        if (timeToFirstDecodeNanos.compareAndSet(-1, elapsed)) {
+            Log.d(TAG, String.format(Locale.US, "start %s: firstFrame=%.1fms firstDecode=%.1fms",
+                    warmStart ? "warm" : "cold", timeToFirstFrameNanos / 1e6, elapsed / 1e6));
+        }
+    }
+
+    /**
+     * Crea el escáner antes de que llegue el primer frame, si el lector sigue abierto.
+     */
+    private synchronized void preloadBarcodeDecoder() {
+        if (activity != null) {
+            getBarcodeDecoder();
+        }
+    }
+
+    /**
+     * Obtiene el decodificador del frame: el de getFormatsDecoder(), envuelto en un MultiScaleDecoder si la búsqueda
+     * multiescala está activada.
+     * @return el decodificador a utilizar en el siguiente frame
+     */
+    private synchronized BarcodeDecoder getFrameDecoder() {
+        BarcodeDecoder decoder = getFormatsDecoder();
+        if (!multiScaleEnabled) {
+            return decoder;
+        }
+        MultiScaleDecoder multiScaleDecoder = multiScaleDecoders.get(decoder);
+        if (multiScaleDecoder == null) {
+            //Todos los decodificadores multiescala comparten los hilos de las teselas
+            if (tileExecutor == null) {
+                int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / decodeWorkers);
+                tileExecutor = MultiScaleDecoder.newTileExecutor(parallelism);
+            }
+            multiScaleDecoder = new MultiScaleDecoder(decoder, tileExecutor);
+            multiScaleDecoders.put(decoder, multiScaleDecoder);
+        }
+        return multiScaleDecoder;
+    }
+
+    private void closeMultiScaleDecoders() {
+        //No cierran el decodificador que envuelven, que se cierra por separado
+        for (MultiScaleDecoder multiScaleDecoder : multiScaleDecoders.values()) {
+            multiScaleDecoder.close();
+        }
+        multiScaleDecoders.clear();
+        if (tileExecutor != null) {
+            tileExecutor.shutdown();
+            tileExecutor = null;
+        }
+    }
+
+    /**
+     * Obtiene el decodificador de los formatos a buscar: en el modo de formatos aprendidos, un escáner de ML Kit que
+     * solo busca los formatos activos de entre los de setBarcodeFormats(); si no, el establecido o el de por defecto.
+     * @return el decodificador de los formatos activos
+     */
+    private synchronized BarcodeDecoder getFormatsDecoder() {
+        BarcodeDecoder decoder = getBarcodeDecoder();
+        FormatLearner learner = formatLearner;
+        if (learner == null || !(decoder instanceof MlKitBarcodeDecoder)) {
+            return decoder;
+        }
+        int mask = learner.getScannerMask(optionsFormatMask);
+        if (mask == optionsFormatMask) {
+            return decoder;
+        }
+        //Se guardan los escáneres de las últimas máscaras, ya que el fallback alterna entre la aprendida y todas
+        MlKitBarcodeDecoder learnedDecoder = learnedFormatsDecoders.get(mask);
+        if (learnedDecoder == null) {
+            //setBarcodeFormats combina con OR todos los formatos, así que admite una máscara con varios
+            learnedDecoder = new MlKitBarcodeDecoder(new BarcodeScannerOptions.Builder()
+                    .setBarcodeFormats(mask)
+                    .build());
+            learnedFormatsDecoders.put(mask, learnedDecoder);
+            if (learnedFormatsDecoders.size() > MAX_LEARNED_DECODERS) {
+                //El más antiguo se cierra al terminar de decodificar, si aún está en uso en otro hilo
+                Iterator<MlKitBarcodeDecoder> eldest = learnedFormatsDecoders.values().iterator();
+                closeLearnedFormatsDecoder(eldest.next());
+                eldest.remove();
+            }
+        }
+        return learnedDecoder;
+    }
+
+    private void closeLearnedFormatsDecoders() {
+        for (MlKitBarcodeDecoder learnedDecoder : learnedFormatsDecoders.values()) {
+            closeLearnedFormatsDecoder(learnedDecoder);
+        }
+        learnedFormatsDecoders.clear();
+    }
+
+    private void closeLearnedFormatsDecoder(MlKitBarcodeDecoder learnedDecoder) {
+        MultiScaleDecoder multiScaleDecoder = multiScaleDecoders.remove(learnedDecoder);
+        if (multiScaleDecoder != null) {
+            multiScaleDecoder.close();
+        }
+        learnedDecoder.close();
+    }
+
+    /**
+     * Registra en el aprendiz de formatos los formatos leídos en el frame y guarda los aprendidos si han cambiado.
+     * @param barcodes códigos leídos en el frame
+     */
+    private void onFormatsAnalyzed(List<DecodedBarcode> barcodes) {
+        FormatLearner learner = formatLearner;
+        if (learner == null) {
+            return;
+        }
+        int found = 0;
+        for (DecodedBarcode barcode : barcodes) {
+            found |= barcode.getFormat().getMask();
+        }
+        learner.onFrame(SystemClock.elapsedRealtimeNanos(), found);
+        int learned = learner.getLearnedFormatMask();
+        if (learned != persistedFormatMask) {
+            persistLearnedFormats(learned);
+        }
+    }
+
+    private void persistLearnedFormats(int mask) {
+        persistedFormatMask = mask;
+        if (activity != null) {
+            getPreferences().edit().putInt(LEARNED_FORMATS_KEY, mask).apply();
+        }
+    }
+
+    private SharedPreferences getPreferences() {
+        return activity.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Informa al controlador de resolución adaptativa y al de modos de escaneo del resultado del frame. Solo se busca
+     * una zona con aspecto de código cuando no se ha leído ninguno, que es cuando puede hacer falta más resolución o
+     * el usuario está apuntando a un código que aún no se lee.
+     * @param image luminancia analizada
+     * @param detectNanos tiempo que ha tardado el decodificador
+     * @param codes número de códigos leídos
+     */
+    private void onFrameAnalyzed(LuminanceImage image, long detectNanos, int codes) {
+        AdaptiveScanController controller = adaptiveScanController;
+        ScanModeController modes = scanModeController;
+        if (controller == null && modes == null) {
+            return;
+        }
+        boolean codeLikeRegion = codes == 0 && codeRegionDetectors.get().detect(image);
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (controller != null) {
+            controller.onFrameAnalyzed(now, detectNanos, codes, codeLikeRegion);
+        }
+        if (modes != null) {
+            modes.onFrameAnalyzed(now, codes, codeLikeRegion);
+        }
+    }
+
+    /**
+     * Entrega los códigos leídos en un frame: los que no son repetidos al OnScanCodeReader y, con su contenido
+     * interpretado, al OnPayloadScan, en el hilo principal, y el frame completo al OnBatchScan.
+     * @param frame frame analizado
+     * @param barcodes códigos leídos en el frame
+     */
+    private void dispatch(ImageProxyFrame frame, List<DecodedBarcode> barcodes) {
+        long frameIndex = decodedFrames.getAndIncrement();
+        //Mismo reloj que BulkDecoder, que puede compartir el DuplicateFilter
+        long now = System.nanoTime();
+        DuplicateFilter filter = duplicateFilter;
+        //Leer todos los códigos de barras mostrados, descartando los repetidos; se guardan aunque no haya listener
+        if (!barcodes.isEmpty()) {
+            List<DecodedBarcode> accepted = new ArrayList<>(barcodes.size());
+            for (DecodedBarcode barcode : barcodes) {
+                if (filter == null || filter.accept(barcode.getFormat().getMask(), DuplicateFilter.keyOf(barcode), frameIndex, now)) {
+                    accepted.add(barcode);
+                }
+            }
+            ScanJournal journal = scanJournal;
+            if (journal != null && !accepted.isEmpty()) {
+                long timestampMillis = System.currentTimeMillis();
+                for (DecodedBarcode barcode : accepted) {
+                    //Solo encola: si la cola está llena la lectura se descarta y se cuenta en el diario
+                    journal.append(ScanRecord.of(barcode, timestampMillis));
+                }
+            }
+            //El contenido se interpreta aquí para no ocupar el hilo principal
+            List<ParsedPayload> payloads = null;
+            if (payloadListener != null && !accepted.isEmpty()) {
+                payloads = new ArrayList<>(accepted.size());
+                for (DecodedBarcode barcode : accepted) {
+                    payloads.add(payloadParser.parse(barcode));
+                }
+            }
+            List<ParsedPayload> parsed = payloads;
+            if (!accepted.isEmpty() && (listener != null || parsed != null)) {
+                mainHandler.post(() -> {
+                    OnPayloadScan currentPayloadListener = payloadListener;
+                    for (int i = 0; i < accepted.size(); i++) {
+                        DecodedBarcode barcode = accepted.get(i);
+                        if (listener != null) {
+                            listener.onGetBarcode(barcode);
+                        }
+                        if (parsed != null && currentPayloadListener != null) {
+                            currentPayloadListener.onPayload(barcode, parsed.get(i));
+                        }
+                    }
+                });
+            }
+        }
+        //Agrupar el frame completo y programar su entrega si es el primero pendiente
+        if (batchListener != null && batchCoalescer.add(frame.getSequence(), frame.getTimestampNanos(), barcodes)) {
+            mainHandler.postDelayed(batchDelivery, batchIntervalMillis);
+        }
+    }
+
+    /**
+     * Recorta del plano Y del frame la región de interés, transformada de coordenadas del PreviewView a coordenadas del sensor.
+     * @param imageProxy imagen entregada por CameraX
+     * @param rotationDegrees rotación del frame
+     * @param roi región de interés normalizada en coordenadas del PreviewView
+     * @return el buffer del pool con la luminancia recortada en formato NV21, que se debe liberar
+     */
+    private FrameBufferPool.Lease getCroppedImage(ImageProxy imageProxy, int rotationDegrees, RegionOfInterest roi) {
+        PreviewView view = previewView;
+        int viewWidth = view == null ? 0 : view.getWidth();
+        int viewHeight = view == null ? 0 : view.getHeight();
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        //El recorte solo cambia con la región, la resolución, la rotación o el tamaño de la vista
+        CachedCropRect cached = cachedCropRect;
+        if (cached == null || !cached.matches(roi, width, height, rotationDegrees, viewWidth, viewHeight)) {
+            cached = new CachedCropRect(roi, width, height, rotationDegrees, viewWidth, viewHeight,
+                    RoiCropper.mapToSensor(roi, width, height, rotationDegrees, viewWidth, viewHeight));
+            cachedCropRect = cached;
+        }
+        CropRect rect = cached.rect;
+        ImageProxy.PlaneProxy yPlane = imageProxy.getPlanes()[0];
+        return RoiCropper.crop(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(), rect,
+                rotationDegrees, getFrameBufferPool());
+    }
+
+    /**
+     * Escribe las métricas en logcat y programa la siguiente escritura.
+     */
+    private void logMetrics() {
+        Log.d(TAG, getScanMetrics().toString());
+        FrameGate gate = frameGate;
+        if (gate != null) {
+            Log.d(TAG, gate.toString());
+        }
+        ScanModeController modes = scanModeController;
+        if (modes != null) {
+            Log.d(TAG, modes.toString());
+        }
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null) {
+            Log.d(TAG, recorder.toString());
+        }
+        if (metricsLogIntervalMillis > 0) {
+            mainHandler.postDelayed(metricsLogger, metricsLogIntervalMillis);
+        }
+    }
+
+    /**
+     * Entrega al OnBatchScan los frames agrupados desde la entrega anterior.
+     */
+    private void deliverBatch() {
+        ScanBatch<DecodedBarcode> batch = batchCoalescer.drain();
+        OnBatchScan currentBatchListener = batchListener;
+        if (batch != null && currentBatchListener != null) {
+            currentBatchListener.onFrame(batch);
+        }
+    }
+
+    /**
+     * Obtiene la clave que identifica un código dentro de una sesión de escaneo por lotes.
+     * @param barcode código leído
+     * @return formato y valor del código
+     */
+    private static String getSessionKey(DecodedBarcode barcode) {
+        return barcode.getFormat() + ":" + DuplicateFilter.keyOf(barcode);
     }
 
     /**
@@ -235,4 +1443,34 @@ public class BarCodeReader implements Closeable {
         }
         return executorService;
     }
+
+    /**
+     * Recorte del sensor calculado para una región de interés, reutilizado mientras no cambien sus parámetros.
+     */
+    private static final class CachedCropRect {
+        final RegionOfInterest roi;
+        final int width;
+        final int height;
+        final int rotationDegrees;
+        final int viewWidth;
+        final int viewHeight;
+        final CropRect rect;
+
+        CachedCropRect(RegionOfInterest roi, int width, int height, int rotationDegrees, int viewWidth, int viewHeight,
+                       CropRect rect) {
+            this.roi = roi;
+            this.width = width;
+            this.height = height;
+            this.rotationDegrees = rotationDegrees;
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.rect = rect;
+        }
+
+        boolean matches(RegionOfInterest roi, int width, int height, int rotationDegrees, int viewWidth, int viewHeight) {
+            return this.roi == roi && this.width == width && this.height == height
+                    && this.rotationDegrees == rotationDegrees && this.viewWidth == viewWidth
+                    && this.viewHeight == viewHeight;
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package tech.frangf.barcodereader;
+
+import android.app.Application;
+
+/**
+ * Aplicación de ejemplo que prepara la cámara y el escáner al arrancar el proceso, para que MainActivity empiece a
+ * leer códigos antes.
+ */
+public class BarCodeReaderApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        BarCodeReader.prewarm(this);
+    }
+}
@@ -0,0 +1,84 @@
+package tech.frangf.barcodereader;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+
+import tech.frangf.barcodereader.core.ImageLoader;
+import tech.frangf.barcodereader.core.LuminanceImage;
+
+/**
+ * ImageLoader de Android basado en BitmapFactory. Las imágenes con más de maxPixels píxeles se leen reducidas
+ * con inSampleSize, y la orientación EXIF de las fotos se entrega como rotación de la imagen.
+ */
+class BitmapImageLoader implements ImageLoader {
+    private final long maxPixels;
+
+    /**
+     * @param maxPixels píxeles que se leen como mucho de cada imagen
+     */
+    BitmapImageLoader(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    @Override
+    public LuminanceImage load(File file) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("No se puede leer la imagen " + file);
+        }
+        //inSampleSize solo admite potencias de 2
+        int sampleSize = 1;
+        while ((long) (bounds.outWidth / sampleSize) * (bounds.outHeight / sampleSize) > maxPixels) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            throw new IOException("No se puede decodificar la imagen " + file);
+        }
+        try {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            byte[] luminance = new byte[width * height];
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                for (int x = 0; x < width; x++) {
+                    int rgb = row[x];
+                    luminance[y * width + x] = (byte) ((77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF)
+                            + 29 * (rgb & 0xFF)) >> 8);
+                }
+            }
+            return new LuminanceImage(luminance, width, height, getRotationDegrees(file));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static int getRotationDegrees(File file) {
+        try {
+            switch (new ExifInterface(file.getPath()).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            //Sin EXIF (PNG, BMP...) la imagen ya está derecha
+            return 0;
+        }
+    }
+}
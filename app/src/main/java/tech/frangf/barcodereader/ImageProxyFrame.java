@@ -0,0 +1,81 @@
+package tech.frangf.barcodereader;
+
+import android.media.Image;
+
+import androidx.camera.core.ImageProxy;
+
+import tech.frangf.barcodereader.core.Frame;
+import tech.frangf.barcodereader.core.FrameBufferPool;
+import tech.frangf.barcodereader.core.ScanMetricsRecorder;
+import tech.frangf.barcodereader.core.ScanStage;
+
+/**
+ * Frame que envuelve un ImageProxy de CameraX y lo cierra una única vez al cerrarse.
+ * Puede retener un buffer del FrameBufferPool con datos copiados del frame, que se libera después de cerrar el ImageProxy.
+ */
+class ImageProxyFrame extends Frame {
+    private final ImageProxy imageProxy;
+    private final long arrivalNanos;
+    private final ScanMetricsRecorder metrics;
+    private FrameBufferPool.Lease buffer;
+
+    /**
+     * @param imageProxy imagen entregada por el analizador de CameraX.
+     * @param sequence número de secuencia del frame.
+     * @param arrivalNanos instante (System.nanoTime()) en el que el analizador recibió la imagen.
+     * @param metrics métricas en las que se registra el tiempo de cierre.
+     */
+    ImageProxyFrame(ImageProxy imageProxy, long sequence, long arrivalNanos, ScanMetricsRecorder metrics) {
+        super(sequence, imageProxy.getImageInfo().getTimestamp(), imageProxy.getWidth(), imageProxy.getHeight(),
+                imageProxy.getImageInfo().getRotationDegrees());
+        this.imageProxy = imageProxy;
+        this.arrivalNanos = arrivalNanos;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return instante (System.nanoTime()) en el que el analizador recibió la imagen.
+     */
+    long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    /**
+     * @return el ImageProxy de CameraX de este frame.
+     */
+    ImageProxy getImageProxy() {
+        return imageProxy;
+    }
+
+    /**
+     * @return la imagen de la cámara bajo el ImageProxy, para pasarla a ML Kit sin copiarla, o null si no la hay.
+     */
+    @androidx.camera.core.ExperimentalGetImage
+    Image getMediaImage() {
+        return imageProxy.getImage();
+    }
+
+    /**
+     * Añade una referencia al buffer para que no vuelva al pool hasta que se cierre el frame.
+     * @param lease buffer con datos del frame
+     */
+    synchronized void attachBuffer(FrameBufferPool.Lease lease) {
+        if (buffer != null) {
+            buffer.release();
+        }
+        buffer = lease.retain();
+    }
+
+    @Override
+    protected void release() {
+        long start = System.nanoTime();
+        imageProxy.close();
+        metrics.record(ScanStage.CLOSE, System.nanoTime() - start);
+        synchronized (this) {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package tech.frangf.barcodereader;
 
 import android.media.MediaPlayer;
 import android.os.Bundle;
-import android.os.Handler;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.Toast;
@@ -11,11 +10,20 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.view.PreviewView;
 
-import com.google.mlkit.vision.barcode.Barcode;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import tech.frangf.barcodereader.core.AdaptiveScanController;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.FrameGate;
+import tech.frangf.barcodereader.core.ScanJournal;
+import tech.frangf.barcodereader.core.ScanModeController;
+import tech.frangf.barcodereader.core.ScanModeProfile;
 
 @androidx.camera.core.ExperimentalGetImage
 public class MainActivity extends AppCompatActivity {
     private BarCodeReader barCodeReader;
+    private ScanJournal scanJournal;
     private PreviewView previewView;
     private Button btn;
 
@@ -28,12 +36,9 @@ public class MainActivity extends AppCompatActivity {
         final MediaPlayer mediaPlayer = MediaPlayer.create(this,R.raw.beep);
         BarCodeReader.OnScanCodeReader listener = new BarCodeReader.OnScanCodeReader() {
             @Override
-            public void onGetBarcode(Barcode barcode) {
+            public void onGetBarcode(DecodedBarcode barcode) {
                 Log.d("CAMERAX", barcode.getDisplayValue());
                 Toast.makeText(getApplicationContext(),barcode.getDisplayValue(),Toast.LENGTH_SHORT).show();
-                barCodeReader.stopAnalyzer();
-                final Handler handler = new Handler();
-                handler.postDelayed(() -> barCodeReader.restartAnalyzer(), 500);
                 mediaPlayer.start();
             }
 
@@ -43,8 +48,27 @@ public class MainActivity extends AppCompatActivity {
             }
         };
         barCodeReader = new BarCodeReader(this, listener, previewView);
+        //Como mucho medio núcleo ocupado por el detector
+        barCodeReader.setAdaptiveScanController(new AdaptiveScanController(TimeUnit.MILLISECONDS.toNanos(500)));
+        //Buscar solo los formatos que se leen habitualmente
+        barCodeReader.setLearnedFormatsEnabled(true);
+        //Decodificar en varios hilos si el dispositivo tiene núcleos de sobra
+        int cores = Runtime.getRuntime().availableProcessors();
+        int workers = Math.max(1, Math.min(2, cores / 2));
+        barCodeReader.setDecodeWorkers(workers);
+        //En reposo analizar uno de cada 4 frames y solo si algo cambia; tras pulsar el botón, todos los núcleos
+        barCodeReader.setScanModeController(new ScanModeController(new ScanModeProfile(4, 1),
+                new ScanModeProfile(1, workers), new ScanModeProfile(1, Math.max(workers, cores - 1))));
+        //No decodificar frames movidos, desenfocados o iguales al último decodificado
+        barCodeReader.setFrameGate(new FrameGate());
+        //Interpretar el contenido (URL, Wi-Fi, contacto, GS1) fuera del hilo principal
+        barCodeReader.setOnPayloadScan((barcode, payload) -> Log.d("CAMERAX", payload.toString()));
+        //Guardar las lecturas en disco para exportarlas cuando haya conexión
+        scanJournal = new ScanJournal(new File(getFilesDir(), "scans"));
+        barCodeReader.setScanJournal(scanJournal);
         btn.setOnClickListener(v->{
-            barCodeReader.restartAnalyzer();
+            barCodeReader.clearScannedCodes();
+            barCodeReader.trigger();
         });
         barCodeReader.checkPermissionsAndStart();
     }
@@ -64,6 +88,9 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         barCodeReader.close();
+        //close() espera a confirmar en disco las lecturas pendientes, así que no se cierra en el hilo principal
+        ScanJournal journal = scanJournal;
+        new Thread(journal::close, "scan-journal-close").start();
         super.onDestroy();
     }
 }
\ No newline at end of file
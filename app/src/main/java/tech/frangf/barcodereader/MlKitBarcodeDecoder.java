@@ -0,0 +1,171 @@
+package tech.frangf.barcodereader;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.Barcode;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import tech.frangf.barcodereader.core.BarcodeDecoder;
+import tech.frangf.barcodereader.core.BarcodeDecoderException;
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.BoundingBox;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.LuminanceImage;
+
+/**
+ * BarcodeDecoder que utiliza el escáner de ML Kit. El escáner se crea una sola vez y se reutiliza en cada frame.
+ * El Barcode original de ML Kit está disponible en DecodedBarcode.getEngineResult().
+ * Se puede cerrar mientras otro hilo decodifica: el escáner se cierra al terminar la última decodificación.
+ */
+class MlKitBarcodeDecoder implements BarcodeDecoder {
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private final BarcodeScanner scanner;
+    private final ThreadLocal<Nv21Buffer> nv21Buffers = new ThreadLocal<>();
+    //Decodificaciones en curso y si se ha pedido cerrar el escáner, protegidos por this
+    private int decoding;
+    private boolean closed;
+
+    /**
+     * @param options opciones de escaneo, con los formatos a buscar
+     */
+    MlKitBarcodeDecoder(BarcodeScannerOptions options) {
+        scanner = BarcodeScanning.getClient(options);
+    }
+
+    @Override
+    public List<DecodedBarcode> decode(LuminanceImage image) throws BarcodeDecoderException {
+        return process(toInputImage(image));
+    }
+
+    /**
+     * Decodifica la imagen de la cámara tal cual, sin copiar sus planos: ML Kit lee el YUV_420_888 directamente.
+     * Es el camino de los frames completos; los recortes y las teselas pasan por decode(LuminanceImage).
+     * @param mediaImage imagen del ImageProxy, abierta hasta que termina la llamada
+     * @param rotationDegrees rotación del frame
+     * @return los códigos leídos, vacía si no hay ninguno
+     * @throws BarcodeDecoderException si falla ML Kit
+     */
+    List<DecodedBarcode> decode(Image mediaImage, int rotationDegrees) throws BarcodeDecoderException {
+        return process(InputImage.fromMediaImage(mediaImage, rotationDegrees));
+    }
+
+    private List<DecodedBarcode> process(InputImage inputImage) throws BarcodeDecoderException {
+        synchronized (this) {
+            if (closed) {
+                throw new BarcodeDecoderException("El escáner de ML Kit está cerrado", null);
+            }
+            decoding++;
+        }
+        List<Barcode> barcodes;
+        try {
+            barcodes = Tasks.await(scanner.process(inputImage));
+        } catch (ExecutionException e) {
+            throw new BarcodeDecoderException("Error de ML Kit al decodificar la imagen", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BarcodeDecoderException("Decodificación interrumpida", e);
+        } finally {
+            synchronized (this) {
+                if (--decoding == 0 && closed) {
+                    scanner.close();
+                }
+            }
+        }
+        List<DecodedBarcode> decoded = new ArrayList<>(barcodes.size());
+        for (Barcode barcode : barcodes) {
+            decoded.add(toDecodedBarcode(barcode));
+        }
+        return decoded;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (decoding == 0) {
+            scanner.close();
+        }
+    }
+
+    /**
+     * Convierte la luminancia en un InputImage NV21. Si el buffer ya tiene el formato NV21 (como el recorte de RoiCropper),
+     * sea un array o un buffer directo, se utiliza tal cual; en otro caso se copia a un buffer reutilizable del hilo con la crominancia neutra,
+     * que ML Kit lee hasta su límite.
+     * @param image luminancia a analizar
+     * @return InputImage para ML Kit
+     */
+    private InputImage toInputImage(LuminanceImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int nv21Size = width * height * 3 / 2;
+        ByteBuffer buffer = image.getBuffer();
+        if (image.isPacked() && image.getOffset() == 0 && buffer.hasArray() && buffer.arrayOffset() == 0
+                && buffer.array().length == nv21Size) {
+            return InputImage.fromByteArray(buffer.array(), width, height, image.getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+        }
+        if (image.isPacked() && image.getOffset() == 0 && buffer.isDirect() && buffer.position() == 0
+                && buffer.limit() == nv21Size) {
+            //Buffer directo del FrameBufferPool con el recorte NV21, ML Kit lo lee sin copiarlo a un array
+            return InputImage.fromByteBuffer(buffer, width, height, image.getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+        }
+        Nv21Buffer nv21 = nv21Buffers.get();
+        if (nv21 == null) {
+            nv21 = new Nv21Buffer();
+            nv21Buffers.set(nv21);
+        }
+        ByteBuffer nv21Buffer = nv21.prepare(width, height);
+        image.copyPacked(nv21.array);
+        return InputImage.fromByteBuffer(nv21Buffer, width, height, image.getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    /**
+     * Buffer NV21 de un hilo. Se reutiliza mientras sea suficientemente grande, aunque cambie el tamaño del recorte o
+     * de la tesela, y solo se vuelve a rellenar la crominancia cuando cambian las dimensiones.
+     */
+    private static final class Nv21Buffer {
+        byte[] array;
+        ByteBuffer buffer;
+        int width;
+        int height;
+
+        ByteBuffer prepare(int width, int height) {
+            int lumaSize = width * height;
+            int nv21Size = lumaSize * 3 / 2;
+            if (array == null || array.length < nv21Size) {
+                array = new byte[nv21Size];
+                buffer = ByteBuffer.wrap(array);
+                this.width = 0;
+            }
+            if (width != this.width || height != this.height) {
+                Arrays.fill(array, lumaSize, nv21Size, NEUTRAL_CHROMA);
+                this.width = width;
+                this.height = height;
+            }
+            buffer.clear();
+            buffer.limit(nv21Size);
+            return buffer;
+        }
+    }
+
+    private static DecodedBarcode toDecodedBarcode(Barcode barcode) {
+        Rect bounds = barcode.getBoundingBox();
+        BoundingBox boundingBox = bounds == null ? null
+                : new BoundingBox(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        return new DecodedBarcode(BarcodeFormat.fromMask(barcode.getFormat()), barcode.getRawValue(),
+                barcode.getRawBytes(), barcode.getDisplayValue(), boundingBox, barcode);
+    }
+}
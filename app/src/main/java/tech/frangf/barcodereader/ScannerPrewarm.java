@@ -0,0 +1,146 @@
+package tech.frangf.barcodereader;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.camera.lifecycle.ProcessCameraProvider;
+
+import com.google.mlkit.vision.barcode.Barcode;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import tech.frangf.barcodereader.core.BarcodeDecoderException;
+import tech.frangf.barcodereader.core.DecodeScheduler;
+import tech.frangf.barcodereader.core.LuminanceImage;
+
+/**
+ * Recursos que BarCodeReader.prewarm prepara antes de que exista ningún lector, a la vez:
+ * el proceso de la cámara de CameraX, que se inicializa en sus propios hilos, el hilo del analizador, que mientras
+ * no llegan frames crea el escáner de ML Kit y lo calienta decodificando una imagen vacía para cargar el modelo,
+ * y los hilos de decodificación del DecodeScheduler, ya arrancados.
+ * El primer BarCodeReader que se crea adopta los hilos y, si usa las opciones por defecto, el escáner.
+ */
+final class ScannerPrewarm {
+    private static final String TAG = "CAMERAX";
+    private static final int WARM_UP_SIZE = 128;
+    private static ScannerPrewarm pending;
+
+    private final ExecutorService analyzerExecutor;
+    private final Future<MlKitBarcodeDecoder> decoder;
+    private boolean decoderTaken;
+    private ThreadPoolExecutor decodeExecutor;
+
+    private ScannerPrewarm() {
+        analyzerExecutor = Executors.newSingleThreadExecutor();
+        decoder = analyzerExecutor.submit(ScannerPrewarm::createWarmDecoder);
+        //Con un hilo, el valor por defecto de BarCodeReader; el lector lo ajusta a sus decodeWorkers al adoptarlo
+        decodeExecutor = DecodeScheduler.newWorkerExecutor(1);
+        decodeExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Empieza a preparar los recursos si no hay ya unos preparados sin adoptar.
+     * @param context contexto de la aplicación
+     */
+    static synchronized void start(Context context) {
+        if (pending != null) {
+            return;
+        }
+        //La primera llamada inicializa CameraX; las siguientes devuelven el mismo future
+        ProcessCameraProvider.getInstance(context.getApplicationContext());
+        pending = new ScannerPrewarm();
+    }
+
+    /**
+     * @return los recursos preparados, que pasan a ser de quien los recibe, o null si no se han preparado.
+     */
+    static synchronized ScannerPrewarm take() {
+        ScannerPrewarm prewarm = pending;
+        pending = null;
+        return prewarm;
+    }
+
+    /**
+     * El modelo de ML Kit se carga en la primera decodificación, no al crear el escáner.
+     */
+    private static MlKitBarcodeDecoder createWarmDecoder() throws BarcodeDecoderException {
+        long start = System.nanoTime();
+        MlKitBarcodeDecoder warmDecoder = new MlKitBarcodeDecoder(createDefaultOptions());
+        warmDecoder.decode(new LuminanceImage(new byte[WARM_UP_SIZE * WARM_UP_SIZE], WARM_UP_SIZE, WARM_UP_SIZE, 0));
+        Log.d(TAG, "prewarm decoder=" + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return warmDecoder;
+    }
+
+    /**
+     * @return las opciones por defecto de BarCodeReader: todos los formatos.
+     */
+    static BarcodeScannerOptions createDefaultOptions() {
+        return new BarcodeScannerOptions.Builder()
+                .setBarcodeFormats(Barcode.FORMAT_ALL_FORMATS)
+                .build();
+    }
+
+    /**
+     * @return el executor de un hilo, ya arrancado, en el que se ejecuta el analizador.
+     */
+    ExecutorService getAnalyzerExecutor() {
+        return analyzerExecutor;
+    }
+
+    /**
+     * Obtiene los hilos de decodificación ya arrancados. Solo se entregan una vez.
+     * @return el executor para el DecodeScheduler, o null si ya se entregó
+     */
+    synchronized ThreadPoolExecutor takeDecodeExecutor() {
+        ThreadPoolExecutor executor = decodeExecutor;
+        decodeExecutor = null;
+        return executor;
+    }
+
+    /**
+     * @return true si el escáner ya está creado y caliente.
+     */
+    boolean isDecoderReady() {
+        return decoder.isDone();
+    }
+
+    /**
+     * Obtiene el escáner caliente, esperando a que termine de cargarse el modelo. Solo se entrega una vez.
+     * @return el escáner con las opciones por defecto, o null si ya se entregó o no se pudo crear
+     */
+    synchronized MlKitBarcodeDecoder takeDecoder() {
+        if (decoderTaken) {
+            return null;
+        }
+        decoderTaken = true;
+        try {
+            return decoder.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "No se ha podido precalentar el escáner", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Cierra el escáner y los hilos de decodificación si no se han llegado a entregar. El executor del analizador
+     * lo cierra quien lo ha adoptado.
+     */
+    void closeDecoder() {
+        MlKitBarcodeDecoder unused = takeDecoder();
+        if (unused != null) {
+            unused.close();
+        }
+        ThreadPoolExecutor unusedExecutor = takeDecodeExecutor();
+        if (unusedExecutor != null) {
+            unusedExecutor.shutdown();
+        }
+    }
+}
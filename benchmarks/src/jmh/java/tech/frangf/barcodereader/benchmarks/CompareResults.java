@@ -0,0 +1,137 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compara dos ficheros de resultados JSON de JMH, por ejemplo de dos commits distintos.
+ * Uso: CompareResults base.json actual.json [umbral]. Escribe una línea CSV por benchmark y parámetros con el cambio
+ * relativo del throughput y de los bytes reservados por operación (gc.alloc.rate.norm).
+ * Termina con código 1 si algún throughput empeora más que el umbral, 0.1 (10%) por defecto.
+ */
+public final class CompareResults {
+    private static final String ALLOCATION_METRIC = "·gc.alloc.rate.norm";
+
+    private CompareResults() {
+    }
+
+    /**
+     * Resultado de un benchmark con unos parámetros concretos.
+     */
+    static final class Score {
+        final double throughput;
+        final String unit;
+        //Bytes reservados por operación, o NaN si no se ejecutó con el profiler gc
+        final double bytesPerOperation;
+
+        Score(double throughput, String unit, double bytesPerOperation) {
+            this.throughput = throughput;
+            this.unit = unit;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+    }
+
+    /**
+     * Lee un fichero de resultados de JMH.
+     * @param results contenido JSON del fichero
+     * @return los resultados indexados por benchmark y parámetros, en el orden del fichero
+     */
+    static Map<String, Score> parse(Reader results) {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        JsonArray runs = JsonParser.parseReader(results).getAsJsonArray();
+        for (JsonElement element : runs) {
+            JsonObject run = element.getAsJsonObject();
+            JsonObject primary = run.getAsJsonObject("primaryMetric");
+            double bytesPerOperation = Double.NaN;
+            JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+            if (secondary != null && secondary.has(ALLOCATION_METRIC)) {
+                bytesPerOperation = secondary.getAsJsonObject(ALLOCATION_METRIC).get("score").getAsDouble();
+            }
+            scores.put(key(run), new Score(primary.get("score").getAsDouble(),
+                    primary.get("scoreUnit").getAsString(), bytesPerOperation));
+        }
+        return scores;
+    }
+
+    /**
+     * @return nombre del benchmark seguido de sus parámetros ordenados, por ejemplo DecodeBenchmark.decode{codesPerFrame=1,...}
+     */
+    private static String key(JsonObject run) {
+        String benchmark = run.get("benchmark").getAsString();
+        String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+        Map<String, String> params = new TreeMap<>();
+        JsonObject jsonParams = run.getAsJsonObject("params");
+        if (jsonParams != null) {
+            for (Map.Entry<String, JsonElement> param : jsonParams.entrySet()) {
+                params.put(param.getKey(), param.getValue().getAsString());
+            }
+        }
+        return params.isEmpty() ? name : name + params.toString().replace(" ", "");
+    }
+
+    /**
+     * @return cambio relativo de current respecto a baseline, o NaN si no se puede calcular
+     */
+    static double change(double baseline, double current) {
+        if (Double.isNaN(baseline) || Double.isNaN(current) || baseline == 0) {
+            return Double.NaN;
+        }
+        return (current - baseline) / baseline;
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: CompareResults base.json actual.json [umbral]");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> current = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        int regressions = 0;
+        System.out.println("benchmark,unit,baseline,current,throughputChange,baselineBytesPerOp,currentBytesPerOp,allocationChange,status");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format(Locale.US, "\"%s\",%s,,%.3f,,,%.1f,,NEW",
+                        entry.getKey(), after.unit, after.throughput, after.bytesPerOperation));
+                continue;
+            }
+            double throughputChange = change(before.throughput, after.throughput);
+            String status = "OK";
+            if (throughputChange < -threshold) {
+                status = "REGRESSION";
+                regressions++;
+            } else if (throughputChange > threshold) {
+                status = "IMPROVEMENT";
+            }
+            System.out.println(String.format(Locale.US, "\"%s\",%s,%.3f,%.3f,%+.1f%%,%.1f,%.1f,%+.1f%%,%s",
+                    entry.getKey(), after.unit, before.throughput, after.throughput, throughputChange * 100,
+                    before.bytesPerOperation, after.bytesPerOperation,
+                    change(before.bytesPerOperation, after.bytesPerOperation) * 100, status));
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmarks empeoran más de un " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+}
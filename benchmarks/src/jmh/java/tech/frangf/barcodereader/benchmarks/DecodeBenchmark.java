@@ -0,0 +1,60 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+import tech.frangf.barcodereader.core.BarcodeDecoderException;
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.DecoderHarness;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+import tech.frangf.barcodereader.core.ZxingBarcodeDecoder;
+
+/**
+ * Decodificación en Java puro con ZxingBarcodeDecoder de un frame sintético con codesPerFrame códigos.
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+    @Param({Resolution.VGA, Resolution.HD, Resolution.FULL_HD})
+    public String resolution;
+
+    @Param({"1", "4"})
+    public int codesPerFrame;
+
+    @Param({"QR_CODE", "EAN_13"})
+    public BarcodeFormat format;
+
+    @Param({"90"})
+    public int rotationDegrees;
+
+    private ZxingBarcodeDecoder decoder;
+    private SyntheticCodes.Sample sample;
+
+    @Setup
+    public void setUp() throws BarcodeDecoderException {
+        Resolution size = Resolution.parse(resolution);
+        decoder = new ZxingBarcodeDecoder();
+        sample = SyntheticCodes.grid(size.width, size.height, rotationDegrees, format, codesPerFrame, 1);
+        //Si el frame no se decodifica se estaría midiendo una búsqueda fallida
+        if (!DecoderHarness.containsAll(decoder.decode(sample.getImage()), sample.getExpectedValues())) {
+            throw new IllegalStateException("No se decodifican los códigos de " + format + " en " + resolution
+                    + " con " + codesPerFrame + " códigos");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        decoder.close();
+    }
+
+    @Benchmark
+    public List<DecodedBarcode> decode() throws BarcodeDecoderException {
+        return decoder.decode(sample.getImage());
+    }
+}
@@ -0,0 +1,59 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.DuplicateFilter;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+
+/**
+ * Consultas al DuplicateFilter de los códigos leídos en un frame. Cada llamada simula un frame con codesPerFrame
+ * códigos, tomados en orden de un conjunto de distinctCodes: si caben en el filtro casi todas las consultas son
+ * repeticiones suprimidas, y si no caben cada consulta expulsa al código menos usado.
+ */
+@State(Scope.Thread)
+public class DuplicateFilterBenchmark {
+    private static final int CAPACITY = 64;
+    private static final long TTL_NANOS = 2_000_000_000L;
+    //Intervalo entre frames a 30 fps
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Param({"1", "4", "16"})
+    public int codesPerFrame;
+
+    @Param({"32", "256"})
+    public int distinctCodes;
+
+    private DuplicateFilter filter;
+    private String[] values;
+    private int next;
+    private long frameIndex;
+    private long nowNanos;
+
+    @Setup
+    public void setUp() {
+        filter = new DuplicateFilter(CAPACITY, TTL_NANOS, 1);
+        values = new String[distinctCodes];
+        for (int i = 0; i < distinctCodes; i++) {
+            values[i] = SyntheticCodes.sampleContents(BarcodeFormat.EAN_13, i);
+        }
+    }
+
+    @Benchmark
+    public int acceptFrame() {
+        int accepted = 0;
+        frameIndex++;
+        nowNanos += FRAME_NANOS;
+        for (int i = 0; i < codesPerFrame; i++) {
+            if (filter.accept(BarcodeFormat.EAN_13.getMask(), values[next], frameIndex, nowNanos)) {
+                accepted++;
+            }
+            next = next + 1 == values.length ? 0 : next + 1;
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,45 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.FrameGate;
+import tech.frangf.barcodereader.core.LuminanceImage;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+
+/**
+ * Evaluación de un frame en el FrameGate, el coste que se añade a cada frame delante del decodificador.
+ * Se alternan dos frames distintos para que todos se dejen decodificar y se recorra el camino completo.
+ */
+@State(Scope.Thread)
+public class FrameGateBenchmark {
+    @Param({Resolution.VGA, Resolution.HD, Resolution.FULL_HD})
+    public String resolution;
+
+    @Param({"2", "4"})
+    public int sampleStep;
+
+    private FrameGate gate;
+    private final LuminanceImage[] images = new LuminanceImage[2];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Resolution size = Resolution.parse(resolution);
+        gate = new FrameGate(24, 18, sampleStep, 24f, 255f, 10f, 15);
+        for (int i = 0; i < images.length; i++) {
+            images[i] = SyntheticCodes.grid(size.width, size.height, 90, BarcodeFormat.QR_CODE, 1 + 3 * i, i)
+                    .getImage();
+        }
+    }
+
+    @Benchmark
+    public FrameGate.Decision evaluate() {
+        next ^= 1;
+        return gate.evaluate(images[next]);
+    }
+}
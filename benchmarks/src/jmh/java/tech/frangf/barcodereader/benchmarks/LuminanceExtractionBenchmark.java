@@ -0,0 +1,63 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+import tech.frangf.barcodereader.core.LuminanceImage;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+
+/**
+ * Extracción de la luminancia del plano Y de un frame YUV_420_888: la copia sin girar que necesita ML Kit (NV21)
+ * y la copia girada que necesita ZXing. El plano es un ByteBuffer directo con relleno al final de cada fila,
+ * como el que entrega la cámara.
+ */
+@State(Scope.Thread)
+public class LuminanceExtractionBenchmark {
+    @Param({Resolution.VGA, Resolution.HD, Resolution.FULL_HD})
+    public String resolution;
+
+    //Bytes de relleno al final de cada fila del plano
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    @Param({"1", "2"})
+    public int pixelStride;
+
+    @Param({"90"})
+    public int rotationDegrees;
+
+    private LuminanceImage image;
+    private byte[] destination;
+
+    @Setup
+    public void setUp() {
+        Resolution size = Resolution.parse(resolution);
+        int rowStride = size.width * pixelStride + rowPadding;
+        byte[] luminance = SyntheticCodes.canvas(size.width, size.height, 1);
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * size.height);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                plane.put(y * rowStride + x * pixelStride, luminance[y * size.width + x]);
+            }
+        }
+        image = new LuminanceImage().set(plane, 0, size.width, size.height, rowStride, pixelStride, rotationDegrees);
+        destination = new byte[size.width * size.height];
+    }
+
+    @Benchmark
+    public byte[] copyPacked() {
+        image.copyPacked(destination);
+        return destination;
+    }
+
+    @Benchmark
+    public byte[] copyUpright() {
+        image.copyUpright(destination);
+        return destination;
+    }
+}
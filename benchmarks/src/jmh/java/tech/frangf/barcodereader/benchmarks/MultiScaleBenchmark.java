@@ -0,0 +1,90 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.frangf.barcodereader.core.BarcodeDecoderException;
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.DecoderHarness;
+import tech.frangf.barcodereader.core.LuminanceImage;
+import tech.frangf.barcodereader.core.MultiScaleDecoder;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+import tech.frangf.barcodereader.core.ZxingBarcodeDecoder;
+
+/**
+ * Decodificación de un frame grande con códigos diminutos repartidos por la imagen: el frame completo con
+ * ZxingBarcodeDecoder frente a MultiScaleDecoder, que solo decodifica las teselas con aspecto de código.
+ */
+@State(Scope.Thread)
+public class MultiScaleBenchmark {
+    //Códigos por frame y lado de cada código en píxeles, incluida la zona en blanco
+    private static final int CODES = 3;
+    private static final int QR_SIZE = 120;
+    private static final int EAN_WIDTH = 220;
+    private static final int EAN_HEIGHT = 90;
+
+    @Param({Resolution.FULL_HD, "4000x3000"})
+    public String resolution;
+
+    @Param({"QR_CODE", "EAN_13"})
+    public BarcodeFormat format;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"90"})
+    public int rotationDegrees;
+
+    private ZxingBarcodeDecoder decoder;
+    private MultiScaleDecoder multiScaleDecoder;
+    private LuminanceImage image;
+
+    @Setup
+    public void setUp() throws BarcodeDecoderException {
+        Resolution size = Resolution.parse(resolution);
+        byte[] canvas = SyntheticCodes.canvas(size.width, size.height, 1);
+        List<String> values = new ArrayList<>();
+        int codeWidth = format == BarcodeFormat.QR_CODE ? QR_SIZE : EAN_WIDTH;
+        int codeHeight = format == BarcodeFormat.QR_CODE ? QR_SIZE : EAN_HEIGHT;
+        for (int i = 0; i < CODES; i++) {
+            //En diagonal, lejos unos de otros
+            int x = (size.width - codeWidth) * (2 * i + 1) / (2 * CODES);
+            int y = (size.height - codeHeight) * (2 * i + 1) / (2 * CODES);
+            String value = SyntheticCodes.sampleContents(format, i);
+            SyntheticCodes.draw(canvas, size.width, format, value, x, y, codeWidth, codeHeight);
+            values.add(value);
+        }
+        image = SyntheticCodes.toSensor(canvas, size.width, size.height, rotationDegrees);
+        decoder = new ZxingBarcodeDecoder();
+        multiScaleDecoder = new MultiScaleDecoder(decoder, parallelism);
+        //Si no se encuentran los códigos se estaría midiendo una búsqueda fallida
+        if (!DecoderHarness.containsAll(multiScaleDecoder.decode(image), values)) {
+            throw new IllegalStateException("MultiScaleDecoder no decodifica los códigos de " + format + " en "
+                    + resolution);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        multiScaleDecoder.close();
+        decoder.close();
+    }
+
+    @Benchmark
+    public List<DecodedBarcode> fullFrame() throws BarcodeDecoderException {
+        return decoder.decode(image);
+    }
+
+    @Benchmark
+    public List<DecodedBarcode> multiScale() throws BarcodeDecoderException {
+        return multiScaleDecoder.decode(image);
+    }
+}
@@ -0,0 +1,71 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+import tech.frangf.barcodereader.core.BarcodeFormat;
+import tech.frangf.barcodereader.core.DecodedBarcode;
+import tech.frangf.barcodereader.core.ParsedPayload;
+import tech.frangf.barcodereader.core.PayloadParser;
+
+/**
+ * Interpretación del contenido de códigos habituales: el análisis completo frente a una lectura repetida, que se
+ * obtiene de la caché de PayloadParser.
+ */
+@State(Scope.Thread)
+public class PayloadParserBenchmark {
+    @Param({"GS1", "URL", "WIFI", "CONTACT", "TEXT"})
+    public String payload;
+
+    private DecodedBarcode barcode;
+    private PayloadParser parser;
+
+    @Setup
+    public void setUp() {
+        BarcodeFormat format = BarcodeFormat.QR_CODE;
+        String value;
+        switch (payload) {
+            case "GS1":
+                format = BarcodeFormat.CODE_128;
+                value = "]C1001061414123456789080109501101530003172601313103001250" + "10LOT-2024-07\u001D21SN000123";
+                break;
+            case "URL":
+                value = "HTTPS://WWW.EXAMPLE.COM:443/products/item?id=12345&ref=qr";
+                break;
+            case "WIFI":
+                value = "WIFI:T:WPA;S:Almacén 2;P:cl4ve\\;segura;H:false;;";
+                break;
+            case "CONTACT":
+                value = "BEGIN:VCARD\r\nVERSION:3.0\r\nN:García;Ana;;;\r\nFN:Ana García\r\nORG:ACME Logística\r\n"
+                        + "TEL;TYPE=CELL:+34 600 12 34 56\r\nEMAIL:Ana.Garcia@Example.com\r\n"
+                        + "ADR;TYPE=WORK:;;Calle Mayor 1;Madrid;;28001;España\r\nEND:VCARD";
+                break;
+            default:
+                format = BarcodeFormat.EAN_13;
+                value = "8410000000011";
+                break;
+        }
+        barcode = new DecodedBarcode(format, value, value.getBytes(StandardCharsets.UTF_8), value, null, null);
+        parser = new PayloadParser(64);
+        //Comprobación de que el contenido se interpreta con el tipo esperado
+        ParsedPayload parsed = parser.parse(barcode);
+        if (!parsed.getType().name().equals(payload)) {
+            throw new IllegalStateException(payload + " se interpreta como " + parsed.getType());
+        }
+    }
+
+    @Benchmark
+    public ParsedPayload parse() {
+        return PayloadParser.parse(barcode.getFormat(), barcode.getRawValue());
+    }
+
+    @Benchmark
+    public ParsedPayload parseCached() {
+        return parser.parse(barcode);
+    }
+}
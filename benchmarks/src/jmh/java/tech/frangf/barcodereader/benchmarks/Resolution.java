@@ -0,0 +1,27 @@
+package tech.frangf.barcodereader.benchmarks;
+
+/**
+ * Resoluciones de análisis de CameraX que se miden, como parámetro de JMH con el formato "anchoxalto".
+ */
+final class Resolution {
+    static final String VGA = "640x480";
+    static final String HD = "1280x720";
+    static final String FULL_HD = "1920x1080";
+
+    final int width;
+    final int height;
+
+    private Resolution(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    static Resolution parse(String value) {
+        int separator = value.indexOf('x');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Resolución no válida: " + value);
+        }
+        return new Resolution(Integer.parseInt(value.substring(0, separator)),
+                Integer.parseInt(value.substring(separator + 1)));
+    }
+}
@@ -0,0 +1,103 @@
+package tech.frangf.barcodereader.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+import tech.frangf.barcodereader.core.CropRect;
+import tech.frangf.barcodereader.core.FrameBufferPool;
+import tech.frangf.barcodereader.core.LuminanceImage;
+import tech.frangf.barcodereader.core.RegionOfInterest;
+import tech.frangf.barcodereader.core.RoiCropper;
+import tech.frangf.barcodereader.core.SyntheticCodes;
+
+/**
+ * Recorte de la región de interés del plano Y y su giro a la orientación derecha, tal y como se hace en cada frame
+ * con una región de interés establecida.
+ */
+@State(Scope.Thread)
+public class RoiCropBenchmark {
+    private static final int ROW_PADDING = 64;
+    //Vista de 9:16 en vertical, como un móvil con el PreviewView a pantalla completa
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    @Param({Resolution.VGA, Resolution.HD, Resolution.FULL_HD})
+    public String resolution;
+
+    //Fracción del ancho y del alto de la vista que ocupa la región de interés
+    @Param({"0.5", "0.8"})
+    public float roiSize;
+
+    @Param({"90"})
+    public int rotationDegrees;
+
+    private ByteBuffer plane;
+    private int rowStride;
+    private int width;
+    private int height;
+    private RegionOfInterest roi;
+    private RoiCropper cropper;
+    private final FrameBufferPool pool = new FrameBufferPool(2);
+    private final LuminanceImage cropped = new LuminanceImage();
+    private ByteBuffer croppedBuffer = ByteBuffer.allocate(0);
+    private byte[] upright;
+
+    @Setup
+    public void setUp() {
+        Resolution size = Resolution.parse(resolution);
+        width = size.width;
+        height = size.height;
+        rowStride = width + ROW_PADDING;
+        byte[] luminance = SyntheticCodes.canvas(width, height, 1);
+        plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            plane.position(y * rowStride);
+            plane.put(luminance, y * width, width);
+        }
+        plane.clear();
+        roi = RegionOfInterest.centered(roiSize, roiSize);
+        cropper = new RoiCropper();
+        upright = new byte[width * height];
+    }
+
+    @Benchmark
+    public CropRect mapToSensor() {
+        return RoiCropper.mapToSensor(roi, width, height, rotationDegrees, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    @Benchmark
+    public byte[] crop() {
+        CropRect rect = RoiCropper.mapToSensor(roi, width, height, rotationDegrees, VIEW_WIDTH, VIEW_HEIGHT);
+        return cropper.crop(plane, rowStride, 1, rect);
+    }
+
+    /**
+     * Recorte a un buffer directo del FrameBufferPool, como en BarCodeReader. En régimen estable no reserva memoria.
+     */
+    @Benchmark
+    public int pooledCrop() {
+        CropRect rect = RoiCropper.mapToSensor(roi, width, height, rotationDegrees, VIEW_WIDTH, VIEW_HEIGHT);
+        FrameBufferPool.Lease lease = RoiCropper.crop(plane, rowStride, 1, rect, rotationDegrees, pool);
+        int first = lease.getBuffer().get(0);
+        lease.release();
+        return first;
+    }
+
+    @Benchmark
+    public byte[] cropAndRotate() {
+        CropRect rect = RoiCropper.mapToSensor(roi, width, height, rotationDegrees, VIEW_WIDTH, VIEW_HEIGHT);
+        byte[] nv21 = cropper.crop(plane, rowStride, 1, rect);
+        //El buffer del recorte solo cambia si cambia su tamaño; se envuelve una vez para no medir esa reserva
+        if (!croppedBuffer.hasArray() || croppedBuffer.array() != nv21) {
+            croppedBuffer = ByteBuffer.wrap(nv21);
+        }
+        cropped.set(croppedBuffer, 0, rect.getWidth(), rect.getHeight(), rect.getWidth(), 1, rotationDegrees);
+        cropped.copyUpright(upright);
+        return upright;
+    }
+}
@@ -0,0 +1,298 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Máquina de estados que elige el nivel de análisis (resolución y frames analizados) a partir del resultado
+ * de cada frame. Empieza en el nivel más barato y:
+ * <ul>
+ * <li>Sube de nivel cuando varios frames seguidos tienen una zona con aspecto de código pero no se decodifica nada.</li>
+ * <li>Baja de nivel tras muchos frames seguidos con códigos leídos, o sin nada que parezca un código.</li>
+ * <li>Baja de nivel si el tiempo de detector del último segundo supera el presupuesto, y no sube si el nivel
+ * siguiente lo superaría.</li>
+ * </ul>
+ * Tras cada cambio espera minDwellNanos antes de volver a cambiar, porque la cámara tarda en aplicar la nueva resolución.
+ * No depende de Android: recibe el instante de cada frame y se puede probar en el host.
+ */
+public final class AdaptiveScanController {
+    /**
+     * Niveles por defecto, del más barato al más caro.
+     */
+    public static final List<ScanLevel> DEFAULT_LEVELS = Collections.unmodifiableList(Arrays.asList(
+            new ScanLevel(640, 480, 3),
+            new ScanLevel(640, 480, 1),
+            new ScanLevel(1280, 720, 1),
+            new ScanLevel(1920, 1080, 1)));
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int WINDOW_BUCKETS = 10;
+    private static final long BUCKET_NANOS = WINDOW_NANOS / WINDOW_BUCKETS;
+
+    /**
+     * Escucha los cambios de nivel. Se ejecuta en el hilo que llama a onFrameAnalyzed, fuera del bloqueo del controlador.
+     */
+    public interface Listener {
+        void onScanLevelChanged(ScanLevel previous, ScanLevel current);
+    }
+
+    private final List<ScanLevel> levels;
+    private final long maxDetectNanosPerSecond;
+    private int failuresToStepUp = 5;
+    private int successesToStepDown = 60;
+    private int idleFramesToStepDown = 90;
+    private long minDwellNanos = WINDOW_NANOS;
+    private volatile Listener listener;
+
+    private int levelIndex;
+    private long frameCounter;
+    private int failures;
+    private int successes;
+    private int idleFrames;
+    private boolean changed;
+    private long lastChangeNanos;
+    //Tiempo de detector en cubetas de 100 ms del último segundo
+    private final long[] bucketIds = new long[WINDOW_BUCKETS];
+    private final long[] bucketNanos = new long[WINDOW_BUCKETS];
+
+    private long analyzedFrames;
+    private long skippedFrames;
+    private long stepUps;
+    private long stepDowns;
+    private long budgetStepDowns;
+
+    /**
+     * Crea un controlador con los niveles por defecto.
+     * @param maxDetectNanosPerSecond tiempo máximo de detector por segundo, en nanosegundos
+     */
+    public AdaptiveScanController(long maxDetectNanosPerSecond) {
+        this(DEFAULT_LEVELS, maxDetectNanosPerSecond);
+    }
+
+    /**
+     * @param levels niveles de análisis, del más barato al más caro; se empieza en el primero
+     * @param maxDetectNanosPerSecond tiempo máximo de detector por segundo, en nanosegundos. Por ejemplo,
+     *                                500 ms por segundo limita el detector a la mitad de un núcleo.
+     */
+    public AdaptiveScanController(List<ScanLevel> levels, long maxDetectNanosPerSecond) {
+        if (levels.isEmpty() || maxDetectNanosPerSecond <= 0) {
+            throw new IllegalArgumentException("Se necesita al menos un nivel y un presupuesto positivo");
+        }
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        this.maxDetectNanosPerSecond = maxDetectNanosPerSecond;
+        Arrays.fill(bucketIds, Long.MIN_VALUE);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param frames frames seguidos con una zona con aspecto de código sin decodificar tras los que se sube de nivel
+     */
+    public synchronized void setFailuresToStepUp(int frames) {
+        failuresToStepUp = Math.max(1, frames);
+    }
+
+    /**
+     * @param frames frames seguidos con códigos leídos tras los que se baja de nivel
+     */
+    public synchronized void setSuccessesToStepDown(int frames) {
+        successesToStepDown = Math.max(1, frames);
+    }
+
+    /**
+     * @param frames frames seguidos sin nada que parezca un código tras los que se baja de nivel
+     */
+    public synchronized void setIdleFramesToStepDown(int frames) {
+        idleFramesToStepDown = Math.max(1, frames);
+    }
+
+    /**
+     * @param nanos tiempo mínimo entre dos cambios de nivel
+     */
+    public synchronized void setMinDwellNanos(long nanos) {
+        minDwellNanos = Math.max(0, nanos);
+    }
+
+    public List<ScanLevel> getLevels() {
+        return levels;
+    }
+
+    public long getMaxDetectNanosPerSecond() {
+        return maxDetectNanosPerSecond;
+    }
+
+    public synchronized ScanLevel getScanLevel() {
+        return levels.get(levelIndex);
+    }
+
+    public synchronized int getLevelIndex() {
+        return levelIndex;
+    }
+
+    /**
+     * Indica si se debe analizar el siguiente frame recibido según el frameStride del nivel actual.
+     * Se debe llamar una vez por cada frame que entrega la cámara.
+     * @return true si se debe analizar, false si se debe descartar
+     */
+    public synchronized boolean shouldAnalyze() {
+        if (frameCounter++ % levels.get(levelIndex).getFrameStride() == 0) {
+            return true;
+        }
+        skippedFrames++;
+        return false;
+    }
+
+    /**
+     * Registra el resultado de un frame analizado y cambia de nivel si corresponde.
+     * @param nowNanos instante del frame en nanosegundos, de un reloj monótono no negativo
+     * @param detectNanos tiempo que ha tardado el detector en este frame
+     * @param codes número de códigos leídos
+     * @param codeLikeRegion true si el frame tiene alguna zona con aspecto de código, por ejemplo según CodeRegionDetector
+     */
+    public void onFrameAnalyzed(long nowNanos, long detectNanos, int codes, boolean codeLikeRegion) {
+        ScanLevel previous;
+        ScanLevel current;
+        synchronized (this) {
+            analyzedFrames++;
+            addDetectNanos(nowNanos, detectNanos);
+            if (codes > 0) {
+                successes++;
+                failures = 0;
+                idleFrames = 0;
+            } else if (codeLikeRegion) {
+                failures++;
+                successes = 0;
+                idleFrames = 0;
+            } else {
+                idleFrames++;
+                failures = 0;
+                successes = 0;
+            }
+            previous = levels.get(levelIndex);
+            int next = nextLevelIndex(nowNanos);
+            if (next == levelIndex) {
+                return;
+            }
+            if (next > levelIndex) {
+                stepUps++;
+            } else {
+                stepDowns++;
+            }
+            levelIndex = next;
+            current = levels.get(next);
+            changed = true;
+            lastChangeNanos = nowNanos;
+            frameCounter = 0;
+            failures = 0;
+            successes = 0;
+            idleFrames = 0;
+        }
+        Listener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onScanLevelChanged(previous, current);
+        }
+    }
+
+    private int nextLevelIndex(long nowNanos) {
+        if (changed && nowNanos - lastChangeNanos < minDwellNanos) {
+            return levelIndex;
+        }
+        long usage = getDetectNanosPerSecond(nowNanos);
+        if (usage > maxDetectNanosPerSecond) {
+            if (levelIndex > 0) {
+                budgetStepDowns++;
+                return levelIndex - 1;
+            }
+            return levelIndex;
+        }
+        if (failures >= failuresToStepUp && levelIndex + 1 < levels.size()) {
+            //Se estima el uso del siguiente nivel en proporción a los píxeles analizados por segundo
+            double projected = usage * levels.get(levelIndex + 1).getCost() / levels.get(levelIndex).getCost();
+            if (projected <= maxDetectNanosPerSecond) {
+                return levelIndex + 1;
+            }
+        }
+        if ((successes >= successesToStepDown || idleFrames >= idleFramesToStepDown) && levelIndex > 0) {
+            return levelIndex - 1;
+        }
+        return levelIndex;
+    }
+
+    private void addDetectNanos(long nowNanos, long detectNanos) {
+        long id = nowNanos / BUCKET_NANOS;
+        int index = (int) (id % WINDOW_BUCKETS);
+        if (bucketIds[index] != id) {
+            bucketIds[index] = id;
+            bucketNanos[index] = 0;
+        }
+        bucketNanos[index] += detectNanos;
+    }
+
+    /**
+     * @param nowNanos instante actual, del mismo reloj que onFrameAnalyzed
+     * @return tiempo de detector del último segundo, en nanosegundos
+     */
+    public synchronized long getDetectNanosPerSecond(long nowNanos) {
+        long id = nowNanos / BUCKET_NANOS;
+        long total = 0;
+        for (int i = 0; i < WINDOW_BUCKETS; i++) {
+            if (bucketIds[i] > id - WINDOW_BUCKETS && bucketIds[i] <= id) {
+                total += bucketNanos[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return frames analizados desde la creación o el último reset.
+     */
+    public synchronized long getAnalyzedFrames() {
+        return analyzedFrames;
+    }
+
+    /**
+     * @return frames descartados por el frameStride del nivel.
+     */
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public synchronized long getStepUpCount() {
+        return stepUps;
+    }
+
+    public synchronized long getStepDownCount() {
+        return stepDowns;
+    }
+
+    /**
+     * @return bajadas de nivel por superar el presupuesto de tiempo de detector.
+     */
+    public synchronized long getBudgetStepDownCount() {
+        return budgetStepDowns;
+    }
+
+    /**
+     * Vuelve al nivel más barato y olvida el historial, por ejemplo al volver a iniciar la cámara.
+     * No notifica al listener.
+     */
+    public synchronized void reset() {
+        levelIndex = 0;
+        frameCounter = 0;
+        failures = 0;
+        successes = 0;
+        idleFrames = 0;
+        changed = false;
+        Arrays.fill(bucketIds, Long.MIN_VALUE);
+        Arrays.fill(bucketNanos, 0);
+        analyzedFrames = 0;
+        skippedFrames = 0;
+        stepUps = 0;
+        stepDowns = 0;
+        budgetStepDowns = 0;
+    }
+}
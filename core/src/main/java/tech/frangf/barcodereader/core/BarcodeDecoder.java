@@ -0,0 +1,26 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Motor de decodificación de códigos de barras a partir del plano de luminancia de una imagen.
+ * Hay una implementación con ML Kit en la app y otra en Java puro (ZxingBarcodeDecoder) que funciona fuera del dispositivo.
+ * Las implementaciones deben permitir llamadas a decode desde varios hilos a la vez.
+ */
+public interface BarcodeDecoder extends Closeable {
+    /**
+     * Decodifica de forma síncrona todos los códigos de la imagen. No se debe llamar desde el hilo principal.
+     * La imagen solo se lee durante la llamada, por lo que su buffer se puede reutilizar al terminar.
+     * @param image plano de luminancia con su tamaño y rotación
+     * @return los códigos leídos, vacía si no hay ninguno
+     * @throws BarcodeDecoderException si el motor falla
+     */
+    List<DecodedBarcode> decode(LuminanceImage image) throws BarcodeDecoderException;
+
+    /**
+     * Libera los recursos del motor.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,12 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Error del motor de decodificación al analizar una imagen. No se lanza cuando la imagen no contiene códigos.
+ */
+public class BarcodeDecoderException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public BarcodeDecoderException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,79 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Formatos de código de barras reconocidos por los decodificadores.
+ * Cada formato tiene la misma máscara que la constante equivalente de ML Kit (Barcode.FORMAT_*),
+ * de forma que un conjunto de formatos se puede representar con un int.
+ */
+public enum BarcodeFormat {
+    CODE_128(1),
+    CODE_39(2),
+    CODE_93(4),
+    CODABAR(8),
+    DATA_MATRIX(16),
+    EAN_13(32),
+    EAN_8(64),
+    ITF(128),
+    QR_CODE(256),
+    UPC_A(512),
+    UPC_E(1024),
+    PDF417(2048),
+    AZTEC(4096),
+    UNKNOWN(0);
+
+    /**
+     * Máscara con todos los formatos conocidos.
+     */
+    public static final int ALL_FORMATS_MASK = 0xFFFF;
+
+    private final int mask;
+
+    BarcodeFormat(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * @return la máscara del formato, igual a la constante Barcode.FORMAT_* de ML Kit.
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * @param mask máscara con uno o varios formatos, en la que 0, como Barcode.FORMAT_ALL_FORMATS de ML Kit, son todos
+     * @return la misma máscara, o ALL_FORMATS_MASK si es 0
+     */
+    public static int normalizeMask(int mask) {
+        return mask == 0 ? ALL_FORMATS_MASK : mask;
+    }
+
+    /**
+     * @param mask máscara de un único formato
+     * @return el formato con esa máscara, o UNKNOWN si no hay ninguno.
+     */
+    public static BarcodeFormat fromMask(int mask) {
+        for (BarcodeFormat format : values()) {
+            if (format.mask == mask) {
+                return format;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @param mask máscara con uno o varios formatos, como las de BarcodeScannerOptions
+     * @return los formatos conocidos incluidos en la máscara, sin UNKNOWN.
+     */
+    public static Set<BarcodeFormat> setOf(int mask) {
+        Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+        for (BarcodeFormat format : values()) {
+            if (format.mask != 0 && (mask & format.mask) != 0) {
+                formats.add(format);
+            }
+        }
+        return formats;
+    }
+}
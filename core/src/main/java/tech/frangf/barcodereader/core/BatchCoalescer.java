@@ -0,0 +1,76 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Acumula los códigos leídos en cada frame hasta que se entregan juntos en un ScanBatch.
+ * Mantiene además el conjunto de códigos distintos de la sesión, identificados por su KeyFunction.
+ * El hilo que añade frames (el analizador) y el que los entrega (el hilo principal) pueden ser distintos.
+ * @param <T> tipo de código
+ */
+public final class BatchCoalescer<T> {
+    private final KeyFunction<T> keyFunction;
+    private final Map<String, T> session = new LinkedHashMap<>();
+    private List<FrameScan<T>> pendingFrames = new ArrayList<>();
+    private List<T> pendingNewCodes = new ArrayList<>();
+
+    /**
+     * @param keyFunction función que identifica a cada código para no repetirlo en la sesión
+     */
+    public BatchCoalescer(KeyFunction<T> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * Añade los códigos leídos en un frame. Los frames sin códigos se ignoran.
+     * @param sequence número de secuencia del frame
+     * @param timestampNanos marca de tiempo del frame en nanosegundos
+     * @param codes códigos leídos en el frame
+     * @return true si es el primer frame pendiente desde la última entrega, y por tanto hay que programar una entrega
+     */
+    public synchronized boolean add(long sequence, long timestampNanos, List<T> codes) {
+        if (codes.isEmpty()) {
+            return false;
+        }
+        for (T code : codes) {
+            String key = keyFunction.keyOf(code);
+            if (!session.containsKey(key)) {
+                session.put(key, code);
+                pendingNewCodes.add(code);
+            }
+        }
+        pendingFrames.add(new FrameScan<>(sequence, timestampNanos, new ArrayList<>(codes)));
+        return pendingFrames.size() == 1;
+    }
+
+    /**
+     * Obtiene los frames pendientes agrupados en un ScanBatch y vacía la lista de pendientes.
+     * @return el ScanBatch, o null si no hay frames pendientes.
+     */
+    public synchronized ScanBatch<T> drain() {
+        if (pendingFrames.isEmpty()) {
+            return null;
+        }
+        ScanBatch<T> batch = new ScanBatch<>(pendingFrames, pendingNewCodes, new ArrayList<>(session.values()));
+        pendingFrames = new ArrayList<>();
+        pendingNewCodes = new ArrayList<>();
+        return batch;
+    }
+
+    /**
+     * @return número de códigos distintos leídos en la sesión.
+     */
+    public synchronized int getSessionSize() {
+        return session.size();
+    }
+
+    /**
+     * Empieza una nueva sesión olvidando los códigos leídos. Los frames pendientes se conservan.
+     */
+    public synchronized void clearSession() {
+        session.clear();
+    }
+}
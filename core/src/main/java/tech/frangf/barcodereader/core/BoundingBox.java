@@ -0,0 +1,64 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Rectángulo que contiene un código leído, en píxeles de la imagen derecha (ya aplicada la rotación).
+ * Para códigos 1D puede tener alto 0 si el decodificador solo localiza la línea leída.
+ */
+public final class BoundingBox {
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+
+    public BoundingBox(int left, int top, int right, int bottom) {
+        if (right < left || bottom < top) {
+            throw new IllegalArgumentException("Rectángulo no válido: " + left + ", " + top + ", " + right + ", " + bottom);
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getWidth() {
+        return right - left;
+    }
+
+    public int getHeight() {
+        return bottom - top;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BoundingBox)) return false;
+        BoundingBox that = (BoundingBox) o;
+        return left == that.left && top == that.top && right == that.right && bottom == that.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((left * 31 + top) * 31 + right) * 31 + bottom;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox[" + left + ", " + top + ", " + right + ", " + bottom + "]";
+    }
+}
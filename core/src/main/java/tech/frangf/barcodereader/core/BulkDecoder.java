@@ -0,0 +1,458 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodifica lotes de ficheros de imagen (por ejemplo fotos de albaranes) con las mismas etapas que el escaneo
+ * en vivo: BarcodeDecoder, región de interés y DuplicateFilter, sin depender de la cámara.
+ * <p>
+ * Los ficheros se leen del iterador según se van procesando, con como mucho parallelism imágenes cargadas a la vez,
+ * por lo que la memoria está acotada aunque el lote tenga miles de ficheros. Las imágenes mayores que tileSize
+ * se decodifican por teselas solapadas, para que el decodificador trabaje con imágenes de tamaño acotado.
+ * Cada fichero se entrega al Listener en cuanto termina, con sus tiempos de carga y decodificación.
+ */
+public final class BulkDecoder {
+    public static final int DEFAULT_TILE_SIZE = 2048;
+    public static final int DEFAULT_TILE_OVERLAP = 512;
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp", ".gif", ".webp"};
+
+    private final BarcodeDecoder decoder;
+    private final ImageLoader loader;
+    private final int parallelism;
+    private volatile RegionOfInterest regionOfInterest;
+    private volatile DuplicateFilter duplicateFilter;
+    private volatile int tileSize = DEFAULT_TILE_SIZE;
+    private volatile int tileOverlap = DEFAULT_TILE_OVERLAP;
+
+    /**
+     * Recibe el resultado de cada fichero. Las llamadas no son concurrentes, pero se hacen desde los hilos
+     * del BulkDecoder y en el orden en que terminan los ficheros, que puede no ser el del iterador.
+     */
+    public interface Listener {
+        void onFile(FileResult result);
+    }
+
+    /**
+     * Resultado de decodificar un fichero.
+     */
+    public static final class FileResult {
+        private final long index;
+        private final File file;
+        private final int width;
+        private final int height;
+        private final int tiles;
+        private final List<DecodedBarcode> barcodes;
+        private final int duplicates;
+        private final long loadNanos;
+        private final long decodeNanos;
+        private final Exception error;
+
+        FileResult(long index, File file, int width, int height, int tiles, List<DecodedBarcode> barcodes,
+                   int duplicates, long loadNanos, long decodeNanos, Exception error) {
+            this.index = index;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.tiles = tiles;
+            this.barcodes = barcodes;
+            this.duplicates = duplicates;
+            this.loadNanos = loadNanos;
+            this.decodeNanos = decodeNanos;
+            this.error = error;
+        }
+
+        /**
+         * @return posición del fichero en el iterador, empezando en 0.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return ancho de la imagen derecha, o 0 si no se ha podido cargar.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return alto de la imagen derecha, o 0 si no se ha podido cargar.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return teselas decodificadas; 1 si la imagen se ha decodificado entera.
+         */
+        public int getTiles() {
+            return tiles;
+        }
+
+        /**
+         * @return los códigos de la imagen, sin los repetidos entre teselas ni los descartados por el DuplicateFilter.
+         *         Sus rectángulos están en coordenadas de la imagen derecha completa.
+         */
+        public List<DecodedBarcode> getBarcodes() {
+            return barcodes;
+        }
+
+        /**
+         * @return códigos leídos en la imagen que el DuplicateFilter ha descartado por repetidos.
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        public long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        /**
+         * @return el error al cargar o decodificar el fichero, o null si se ha procesado.
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Resumen de un lote.
+     */
+    public static final class Summary {
+        private final long files;
+        private final long failed;
+        private final long barcodes;
+        private final long elapsedNanos;
+
+        Summary(long files, long failed, long barcodes, long elapsedNanos) {
+            this.files = files;
+            this.failed = failed;
+            this.barcodes = barcodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBarcodes() {
+            return barcodes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedNanos == 0 ? 0 : files * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Summary{files=%d, failed=%d, barcodes=%d, %.1f files/s}",
+                    files, failed, barcodes, getFilesPerSecond());
+        }
+    }
+
+    /**
+     * @param decoder decodificador, que debe permitir llamadas desde varios hilos; no se cierra al terminar
+     * @param loader cargador de las imágenes
+     * @param parallelism ficheros que se cargan y decodifican a la vez
+     */
+    public BulkDecoder(BarcodeDecoder decoder, ImageLoader loader, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism debe ser al menos 1: " + parallelism);
+        }
+        this.decoder = decoder;
+        this.loader = loader;
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Establece la región de cada imagen que se decodifica.
+     * @param regionOfInterest región normalizada en coordenadas de la imagen derecha, o null para toda la imagen
+     */
+    public void setRegionOfInterest(RegionOfInterest regionOfInterest) {
+        this.regionOfInterest = regionOfInterest;
+    }
+
+    /**
+     * Establece el filtro de códigos repetidos entre ficheros, que puede ser el mismo que el de la cámara. Cada fichero
+     * se registra con DuplicateFilter.acceptStill(), así que un código se entrega aunque solo aparezca en un fichero y
+     * las lecturas de los ficheros no confirman ni suprimen las de los frames por su índice.
+     * @param duplicateFilter el filtro, o null para entregar todos los códigos de cada fichero
+     */
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    /**
+     * Establece el tamaño de las teselas. Los códigos más pequeños que el solape se leen enteros en alguna tesela.
+     * @param tileSize lado máximo de la imagen que se decodifica entera y de cada tesela
+     * @param overlap píxeles que comparten dos teselas vecinas, menor que tileSize
+     */
+    public void setTileSize(int tileSize, int overlap) {
+        if (tileSize < 1 || overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("Teselas no válidas: tileSize=" + tileSize + " overlap=" + overlap);
+        }
+        this.tileSize = tileSize;
+        this.tileOverlap = overlap;
+    }
+
+    /**
+     * Decodifica todos los ficheros del iterador y espera a que terminen. El iterador se recorre en el hilo que llama,
+     * solo cuando hay hueco para cargar otra imagen. Si el listener lanza una excepción no se cargan más ficheros y,
+     * cuando terminan los que están en proceso, se vuelve a lanzar en el hilo que llama.
+     * @param files ficheros a decodificar
+     * @param listener receptor del resultado de cada fichero
+     * @return el resumen del lote
+     * @throws InterruptedException si se interrumpe la espera; los ficheros en proceso terminan igualmente
+     * @throws RuntimeException la primera excepción lanzada por el listener, con las siguientes como suprimidas
+     */
+    public Summary decode(Iterator<File> files, Listener listener) throws InterruptedException {
+        Semaphore slots = new Semaphore(parallelism);
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bulk-decoder-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Object listenerLock = new Object();
+        long[] totals = new long[2];
+        //Primera excepción del listener, protegida por listenerLock
+        Throwable[] listenerFailure = new Throwable[1];
+        long start = System.nanoTime();
+        long index = 0;
+        try {
+            while (files.hasNext()) {
+                slots.acquire();
+                synchronized (listenerLock) {
+                    if (listenerFailure[0] != null) {
+                        slots.release();
+                        break;
+                    }
+                }
+                File file = files.next();
+                long fileIndex = index++;
+                executor.execute(() -> {
+                    try {
+                        FileResult result = decodeFile(fileIndex, file);
+                        synchronized (listenerLock) {
+                            if (result.getError() != null) {
+                                totals[0]++;
+                            }
+                            totals[1] += result.getBarcodes().size();
+                            try {
+                                listener.onFile(result);
+                            } catch (RuntimeException | Error e) {
+                                if (listenerFailure[0] == null) {
+                                    listenerFailure[0] = e;
+                                } else {
+                                    listenerFailure[0].addSuppressed(e);
+                                }
+                            }
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+        } finally {
+            executor.shutdown();
+        }
+        synchronized (listenerLock) {
+            Throwable failure = listenerFailure[0];
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return new Summary(index, totals[0], totals[1], System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Carga y decodifica un fichero en el hilo que llama.
+     * @param index posición del fichero en el lote
+     * @param file fichero a decodificar
+     * @return el resultado, con el error si no se ha podido procesar
+     */
+    public FileResult decodeFile(long index, File file) {
+        long loadStart = System.nanoTime();
+        LuminanceImage image;
+        try {
+            image = loader.load(file);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(index, file, 0, 0, 0, Collections.<DecodedBarcode>emptyList(), 0,
+                    System.nanoTime() - loadStart, 0, e);
+        }
+        long decodeStart = System.nanoTime();
+        long loadNanos = decodeStart - loadStart;
+        List<CropRect> tiles = tiles(image, regionOfInterest, tileSize, tileOverlap);
+        Map<String, DecodedBarcode> merged = new LinkedHashMap<>();
+        LuminanceImage view = new LuminanceImage();
+        try {
+            for (CropRect tile : tiles) {
+                for (DecodedBarcode barcode : decoder.decode(view(image, tile, view))) {
+                    String key = barcode.getFormat() + ":" + DuplicateFilter.keyOf(barcode);
+                    if (!merged.containsKey(key)) {
+                        merged.put(key, translate(barcode, image, tile));
+                    }
+                }
+            }
+        } catch (BarcodeDecoderException | RuntimeException e) {
+            return new FileResult(index, file, image.getUprightWidth(), image.getUprightHeight(), tiles.size(),
+                    Collections.<DecodedBarcode>emptyList(), 0, loadNanos, System.nanoTime() - decodeStart, e);
+        }
+        List<DecodedBarcode> barcodes = new ArrayList<>(merged.size());
+        int duplicates = 0;
+        DuplicateFilter filter = duplicateFilter;
+        long now = System.nanoTime();
+        for (DecodedBarcode barcode : merged.values()) {
+            if (filter == null || filter.acceptStill(barcode.getFormat().getMask(), DuplicateFilter.keyOf(barcode), now)) {
+                barcodes.add(barcode);
+            } else {
+                duplicates++;
+            }
+        }
+        return new FileResult(index, file, image.getUprightWidth(), image.getUprightHeight(), tiles.size(),
+                Collections.unmodifiableList(barcodes), duplicates, loadNanos, System.nanoTime() - decodeStart, null);
+    }
+
+    /**
+     * Divide la región de interés de la imagen en teselas solapadas, en coordenadas del buffer sin girar.
+     * @param image imagen a dividir
+     * @param roi región de interés en coordenadas de la imagen derecha, o null para toda la imagen
+     * @param tileSize lado máximo de cada tesela
+     * @param overlap píxeles que comparten dos teselas vecinas
+     * @return las teselas; una sola si la región cabe en tileSize x tileSize
+     */
+    public static List<CropRect> tiles(LuminanceImage image, RegionOfInterest roi, int tileSize, int overlap) {
+        CropRect area = roi == null
+                ? new CropRect(0, 0, image.getWidth(), image.getHeight())
+                : RoiCropper.mapToSensor(roi, image.getWidth(), image.getHeight(), image.getRotationDegrees(), 0, 0);
+        List<CropRect> tiles = new ArrayList<>();
+        int step = tileSize - overlap;
+        for (int top = area.getTop(); ; top += step) {
+            int height = Math.min(tileSize, area.getBottom() - top);
+            for (int left = area.getLeft(); ; left += step) {
+                int width = Math.min(tileSize, area.getRight() - left);
+                tiles.add(new CropRect(left, top, width, height));
+                if (left + width >= area.getRight()) {
+                    break;
+                }
+            }
+            if (top + height >= area.getBottom()) {
+                break;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Apunta la vista a una tesela de la imagen, sin copiarla.
+     */
+    static LuminanceImage view(LuminanceImage image, CropRect tile, LuminanceImage view) {
+        int offset = image.getOffset() + tile.getTop() * image.getRowStride() + tile.getLeft() * image.getPixelStride();
+        return view.set(image.getBuffer(), offset, tile.getWidth(), tile.getHeight(), image.getRowStride(),
+                image.getPixelStride(), image.getRotationDegrees());
+    }
+
+    /**
+     * Pasa el rectángulo del código de coordenadas de la tesela derecha a coordenadas de la imagen derecha.
+     */
+    static DecodedBarcode translate(DecodedBarcode barcode, LuminanceImage image, CropRect tile) {
+        BoundingBox box = barcode.getBoundingBox();
+        if (box == null) {
+            return barcode;
+        }
+        int dx;
+        int dy;
+        switch (image.getRotationDegrees()) {
+            case 90:
+                dx = image.getHeight() - tile.getBottom();
+                dy = tile.getLeft();
+                break;
+            case 180:
+                dx = image.getWidth() - tile.getRight();
+                dy = image.getHeight() - tile.getBottom();
+                break;
+            case 270:
+                dx = tile.getTop();
+                dy = image.getWidth() - tile.getRight();
+                break;
+            default:
+                dx = tile.getLeft();
+                dy = tile.getTop();
+                break;
+        }
+        if (dx == 0 && dy == 0) {
+            return barcode;
+        }
+        return new DecodedBarcode(barcode.getFormat(), barcode.getRawValue(), barcode.getRawBytes(),
+                barcode.getDisplayValue(),
+                new BoundingBox(box.getLeft() + dx, box.getTop() + dy, box.getRight() + dx, box.getBottom() + dy),
+                barcode.getEngineResult());
+    }
+
+    /**
+     * Lista los ficheros de imagen de un directorio, ordenados por nombre.
+     * @param directory directorio con las imágenes
+     * @return iterador sobre los ficheros con extensión de imagen
+     * @throws IOException si el directorio no se puede leer
+     */
+    public static Iterator<File> listImages(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("No se puede leer el directorio " + directory);
+        }
+        Arrays.sort(files);
+        List<File> images = new ArrayList<>(files.length);
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.US);
+            for (String extension : IMAGE_EXTENSIONS) {
+                if (file.isFile() && name.endsWith(extension)) {
+                    images.add(file);
+                    break;
+                }
+            }
+        }
+        return images.iterator();
+    }
+}
@@ -0,0 +1,143 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Detector muy barato de zonas con aspecto de código de barras: divide la imagen en bloques y cuenta, sobre una muestra
+ * de sus píxeles, las transiciones fuertes de claro a oscuro en cada línea. Las barras y los módulos de un QR cruzan
+ * cada línea varias veces, mientras que el fondo no tiene transiciones fuertes y el borde de un objeto solo una.
+ * Sirve para distinguir un frame sin código de un frame con un código que el decodificador no ha podido leer.
+ * No reserva memoria, pero no es seguro llamarlo desde varios hilos a la vez.
+ */
+public final class CodeRegionDetector {
+    private final int blockSize;
+    private final int sampleStep;
+    private final int minContrast;
+    private final float minEdgesPerLine;
+    private final int minBlocks;
+
+    private int lastBlockCount;
+
+    /**
+     * Crea un detector con bloques de 64 píxeles muestreados cada 2 píxeles.
+     */
+    public CodeRegionDetector() {
+        this(64, 2, 48, 1.5f, 1);
+    }
+
+    /**
+     * @param blockSize lado de cada bloque en píxeles del sensor
+     * @param sampleStep distancia en píxeles entre las muestras de un bloque
+     * @param minContrast diferencia de luminancia (0 a 255) entre dos muestras vecinas que cuenta como transición
+     * @param minEdgesPerLine transiciones medias por línea del bloque a partir de las que parece parte de un código
+     * @param minBlocks bloques que deben parecer parte de un código para detectar una región
+     */
+    public CodeRegionDetector(int blockSize, int sampleStep, int minContrast, float minEdgesPerLine, int minBlocks) {
+        if (sampleStep < 1 || blockSize < sampleStep * 2 || minContrast < 1 || minEdgesPerLine <= 0 || minBlocks < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: blockSize=" + blockSize + ", sampleStep="
+                    + sampleStep + ", minContrast=" + minContrast + ", minEdgesPerLine=" + minEdgesPerLine
+                    + ", minBlocks=" + minBlocks);
+        }
+        this.blockSize = blockSize;
+        this.sampleStep = sampleStep;
+        this.minContrast = minContrast;
+        this.minEdgesPerLine = minEdgesPerLine;
+        this.minBlocks = minBlocks;
+    }
+
+    /**
+     * @param image luminancia a analizar
+     * @return true si hay al menos minBlocks bloques con aspecto de código
+     */
+    public boolean detect(LuminanceImage image) {
+        return countCodeBlocks(image) >= minBlocks;
+    }
+
+    /**
+     * Cuenta los bloques con aspecto de código.
+     * @param image luminancia a analizar
+     * @return número de bloques con al menos minEdgesPerLine transiciones por línea
+     */
+    public int countCodeBlocks(LuminanceImage image) {
+        return markCodeBlocks(image, null);
+    }
+
+    /**
+     * Marca los bloques con aspecto de código en una rejilla de getColumns() x getRows() bloques, fila a fila.
+     * Los bloques incompletos del borde derecho e inferior no se analizan.
+     * @param image luminancia a analizar
+     * @param marks rejilla de al menos getColumns(image) * getRows(image) posiciones, o null para solo contarlos
+     * @return número de bloques con al menos minEdgesPerLine transiciones por línea
+     */
+    public int markCodeBlocks(LuminanceImage image, boolean[] marks) {
+        int columns = getColumns(image);
+        int rows = getRows(image);
+        int lines = (blockSize - sampleStep) / sampleStep + ((blockSize - sampleStep) % sampleStep == 0 ? 0 : 1);
+        int minEdges = (int) Math.ceil(minEdgesPerLine * lines);
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                boolean code = blockEdges(image, column * blockSize, row * blockSize) >= minEdges;
+                if (code) {
+                    count++;
+                }
+                if (marks != null) {
+                    marks[row * columns + column] = code;
+                }
+            }
+        }
+        lastBlockCount = count;
+        return count;
+    }
+
+    /**
+     * @return lado de cada bloque en píxeles del sensor
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param image luminancia a analizar
+     * @return bloques completos en horizontal
+     */
+    public int getColumns(LuminanceImage image) {
+        return image.getWidth() / blockSize;
+    }
+
+    /**
+     * @param image luminancia a analizar
+     * @return bloques completos en vertical
+     */
+    public int getRows(LuminanceImage image) {
+        return image.getHeight() / blockSize;
+    }
+
+    /**
+     * @return bloques con aspecto de código encontrados en la última llamada a countCodeBlocks o detect.
+     */
+    public int getLastBlockCount() {
+        return lastBlockCount;
+    }
+
+    /**
+     * @return el mayor de los números de transiciones en horizontal y en vertical del bloque. Se usa el mayor para que
+     * los códigos lineales, que solo tienen transiciones en una dirección, no queden diluidos.
+     */
+    private int blockEdges(LuminanceImage image, int left, int top) {
+        int horizontal = 0;
+        int vertical = 0;
+        int right = left + blockSize - sampleStep;
+        int bottom = top + blockSize - sampleStep;
+        for (int y = top; y < bottom; y += sampleStep) {
+            for (int x = left; x < right; x += sampleStep) {
+                int value = image.getLuminance(x, y);
+                if (Math.abs(image.getLuminance(x + sampleStep, y) - value) >= minContrast) {
+                    horizontal++;
+                }
+                if (Math.abs(image.getLuminance(x, y + sampleStep) - value) >= minContrast) {
+                    vertical++;
+                }
+            }
+        }
+        return Math.max(horizontal, vertical);
+    }
+}
@@ -0,0 +1,309 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tarjeta de contacto en formato vCard (BEGIN:VCARD) o MECARD. El nombre se da como "Nombre Apellidos", los teléfonos
+ * se normalizan a sus dígitos con el '+' inicial si lo tienen y los correos a minúsculas.
+ */
+public final class ContactPayload extends ParsedPayload {
+    private final String name;
+    private final String organization;
+    private final String title;
+    private final List<String> phones;
+    private final List<String> emails;
+    private final List<String> urls;
+    private final List<String> addresses;
+    private final String note;
+
+    private ContactPayload(String rawValue, String name, String organization, String title, List<String> phones,
+                           List<String> emails, List<String> urls, List<String> addresses, String note) {
+        super(rawValue);
+        this.name = name;
+        this.organization = organization;
+        this.title = title;
+        this.phones = Collections.unmodifiableList(phones);
+        this.emails = Collections.unmodifiableList(emails);
+        this.urls = Collections.unmodifiableList(urls);
+        this.addresses = Collections.unmodifiableList(addresses);
+        this.note = note;
+    }
+
+    /**
+     * @param text valor del código, que empieza por MECARD: o BEGIN:VCARD
+     * @return el contacto, o null si no tiene ningún dato.
+     */
+    static ContactPayload parse(String text) {
+        return text.regionMatches(true, 0, "MECARD:", 0, 7) ? parseMeCard(text) : parseVCard(text);
+    }
+
+    private static ContactPayload parseMeCard(String text) {
+        Builder builder = new Builder();
+        for (String[] field : PayloadParser.splitFields(text.substring(7))) {
+            String value = field[1].trim();
+            switch (field[0].toUpperCase(Locale.ROOT)) {
+                case "N":
+                    //Apellidos,Nombre
+                    int comma = value.indexOf(',');
+                    builder.name = comma < 0 ? value
+                            : (value.substring(comma + 1).trim() + " " + value.substring(0, comma).trim()).trim();
+                    break;
+                case "ORG":
+                    builder.organization = value;
+                    break;
+                case "TEL":
+                    builder.addPhone(value);
+                    break;
+                case "EMAIL":
+                    builder.addEmail(value);
+                    break;
+                case "URL":
+                    builder.addUrl(value);
+                    break;
+                case "ADR":
+                    builder.addAddress(value);
+                    break;
+                case "NOTE":
+                    builder.note = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return builder.build(text);
+    }
+
+    private static ContactPayload parseVCard(String text) {
+        Builder builder = new Builder();
+        String structuredName = null;
+        //Las líneas que empiezan por espacio o tabulador continúan la anterior
+        String[] lines = text.replace("\r\n", "\n").replace("\n ", "").replace("\n\t", "").split("[\r\n]");
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            //Los parámetros van tras el nombre separados por ';', como en TEL;TYPE=CELL
+            int semicolon = line.indexOf(';');
+            String property = line.substring(0, semicolon > 0 && semicolon < colon ? semicolon : colon)
+                    .toUpperCase(Locale.ROOT);
+            //Los grupos van delante separados por '.', como en item1.EMAIL
+            property = property.substring(property.lastIndexOf('.') + 1);
+            String value = line.substring(colon + 1);
+            switch (property) {
+                case "FN":
+                    builder.name = unescape(value).trim();
+                    break;
+                case "N":
+                    structuredName = value;
+                    break;
+                case "ORG":
+                    builder.organization = joinComponents(value, " ");
+                    break;
+                case "TITLE":
+                    builder.title = unescape(value).trim();
+                    break;
+                case "TEL":
+                    builder.addPhone(unescape(value));
+                    break;
+                case "EMAIL":
+                    builder.addEmail(unescape(value));
+                    break;
+                case "URL":
+                    builder.addUrl(unescape(value).trim());
+                    break;
+                case "ADR":
+                    builder.addAddress(joinComponents(value, ", "));
+                    break;
+                case "NOTE":
+                    builder.note = unescape(value).trim();
+                    break;
+                default:
+                    break;
+            }
+        }
+        if ((builder.name == null || builder.name.isEmpty()) && structuredName != null) {
+            //Apellidos;Nombre;Otros nombres;Prefijo;Sufijo
+            String[] parts = structuredName.split(";", -1);
+            String given = parts.length > 1 ? unescape(parts[1]).trim() : "";
+            builder.name = (given + " " + unescape(parts[0]).trim()).trim();
+        }
+        return builder.build(text);
+    }
+
+    /**
+     * Une los componentes separados por ';' de un valor estructurado de vCard, sin los vacíos.
+     */
+    private static String joinComponents(String value, String separator) {
+        StringBuilder joined = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i == value.length() || (value.charAt(i) == ';' && (i == 0 || value.charAt(i - 1) != '\\'))) {
+                String component = unescape(value.substring(start, i)).trim();
+                if (!component.isEmpty()) {
+                    if (joined.length() > 0) {
+                        joined.append(separator);
+                    }
+                    joined.append(component);
+                }
+                start = i + 1;
+            }
+        }
+        return joined.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public Type getType() {
+        return Type.CONTACT;
+    }
+
+    /**
+     * @return el nombre como "Nombre Apellidos", o null si no lo tiene.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getOrganization() {
+        return organization;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return los teléfonos normalizados, por ejemplo "+34600123456".
+     */
+    public List<String> getPhones() {
+        return phones;
+    }
+
+    /**
+     * @return los correos en minúsculas.
+     */
+    public List<String> getEmails() {
+        return emails;
+    }
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    /**
+     * @return las direcciones postales, con sus partes separadas por comas.
+     */
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContactPayload)) return false;
+        ContactPayload that = (ContactPayload) o;
+        return equal(name, that.name) && equal(organization, that.organization) && equal(title, that.title)
+                && phones.equals(that.phones) && emails.equals(that.emails) && urls.equals(that.urls)
+                && addresses.equals(that.addresses) && equal(note, that.note);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return (name == null ? 0 : name.hashCode()) * 31 + phones.hashCode() * 17 + emails.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ContactPayload[" + name + ", phones=" + phones + ", emails=" + emails + "]";
+    }
+
+    /**
+     * Datos del contacto mientras se leen.
+     */
+    private static final class Builder {
+        String name;
+        String organization;
+        String title;
+        String note;
+        final List<String> phones = new ArrayList<>();
+        final List<String> emails = new ArrayList<>();
+        final List<String> urls = new ArrayList<>();
+        final List<String> addresses = new ArrayList<>();
+
+        void addPhone(String value) {
+            StringBuilder phone = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if ((c >= '0' && c <= '9') || (c == '+' && phone.length() == 0)) {
+                    phone.append(c);
+                }
+            }
+            if (phone.length() > 0) {
+                phones.add(phone.toString());
+            }
+        }
+
+        void addEmail(String value) {
+            String email = value.trim().toLowerCase(Locale.ROOT);
+            if (!email.isEmpty()) {
+                emails.add(email);
+            }
+        }
+
+        void addUrl(String value) {
+            if (!value.isEmpty()) {
+                urls.add(value);
+            }
+        }
+
+        void addAddress(String value) {
+            if (!value.isEmpty()) {
+                addresses.add(value);
+            }
+        }
+
+        ContactPayload build(String rawValue) {
+            if (name != null && name.isEmpty()) {
+                name = null;
+            }
+            if (name == null && organization == null && phones.isEmpty() && emails.isEmpty() && urls.isEmpty()
+                    && addresses.isEmpty()) {
+                return null;
+            }
+            return new ContactPayload(rawValue, name, emptyToNull(organization), emptyToNull(title), phones, emails,
+                    urls, addresses, emptyToNull(note));
+        }
+
+        private static String emptyToNull(String value) {
+            return value == null || value.isEmpty() ? null : value;
+        }
+    }
+}
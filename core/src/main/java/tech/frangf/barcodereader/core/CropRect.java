@@ -0,0 +1,63 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Rectángulo en píxeles sobre el buffer del sensor (sin girar).
+ */
+public final class CropRect {
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+
+    public CropRect(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Rectángulo no válido: " + left + ", " + top + ", " + width + "x" + height);
+        }
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRight() {
+        return left + width;
+    }
+
+    public int getBottom() {
+        return top + height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CropRect)) return false;
+        CropRect that = (CropRect) o;
+        return left == that.left && top == that.top && width == that.width && height == that.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((left * 31 + top) * 31 + width) * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+        return "CropRect[" + left + ", " + top + ", " + width + "x" + height + "]";
+    }
+}
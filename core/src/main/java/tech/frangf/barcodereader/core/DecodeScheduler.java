@@ -0,0 +1,343 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodifica los frames del FramePipeline en varios hilos a la vez y entrega los resultados en orden de secuencia.
+ * Cada frame se libera (onDone) en cuanto termina su decodificación, antes de entregar el resultado, para devolver
+ * cuanto antes el buffer a la cámara. Los resultados esperan a los de los frames anteriores, salvo cuando un frame
+ * posterior lee algún código: entonces se entrega sin esperar y los resultados de los frames anteriores que aún
+ * no se han entregado se descartan por obsoletos.
+ * Para decodificar en paralelo, el maxInFlight del FramePipeline debe ser al menos el número de hilos.
+ * @param <F> tipo de frame
+ * @param <T> tipo de cada código leído
+ */
+public final class DecodeScheduler<F extends Frame, T> implements FrameProcessor<F>, Closeable {
+    /**
+     * Decodificación de un frame. Se ejecuta en los hilos del scheduler, varios a la vez.
+     */
+    public interface DecodeTask<F, T> {
+        /**
+         * @param frame frame a decodificar, abierto hasta que termine la llamada
+         * @return los códigos leídos, vacío si no hay ninguno
+         * @throws Exception si falla la decodificación
+         */
+        List<T> decode(F frame) throws Exception;
+    }
+
+    /**
+     * Recibe los resultados en orden de secuencia. Se ejecuta en el hilo que termina la decodificación, con el
+     * bloqueo del scheduler, por lo que debe ser rápido. El frame ya está cerrado: solo se pueden leer sus datos.
+     */
+    public interface ResultListener<F, T> {
+        void onResult(F frame, List<T> codes);
+
+        void onError(F frame, Exception e);
+    }
+
+    private final int workers;
+    private final DecodeTask<F, T> task;
+    private final ResultListener<F, T> listener;
+    private final ThreadPoolExecutor executor;
+    private final Object lock = new Object();
+    //Frames en decodificación o pendientes de entregar, en orden de secuencia
+    private Slot head;
+    private Slot tail;
+    private int pending;
+    //Slots ya entregados o descartados, que se reutilizan para no reservar memoria en cada frame
+    private Slot free;
+    private long delivered;
+    private long stale;
+    private long errors;
+
+    /**
+     * @param workers número de hilos de decodificación, al menos 1
+     * @param task decodificación de cada frame
+     * @param listener receptor de los resultados en orden
+     */
+    public DecodeScheduler(int workers, DecodeTask<F, T> task, ResultListener<F, T> listener) {
+        this(newWorkerExecutor(workers), workers, task, listener);
+    }
+
+    /**
+     * Crea un scheduler sobre hilos ya creados con newWorkerExecutor(), por ejemplo arrancados al precalentar la
+     * aplicación antes de saber cuántos hilos se van a usar. El executor se ajusta a workers hilos y pasa a ser del
+     * scheduler, que lo para en close().
+     * @param executor executor de newWorkerExecutor()
+     * @param workers número de hilos de decodificación, al menos 1
+     * @param task decodificación de cada frame
+     * @param listener receptor de los resultados en orden
+     */
+    public DecodeScheduler(ThreadPoolExecutor executor, int workers, DecodeTask<F, T> task,
+                           ResultListener<F, T> listener) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers debe ser al menos 1: " + workers);
+        }
+        this.workers = workers;
+        this.task = task;
+        this.listener = listener;
+        this.executor = executor;
+        //El máximo no puede quedar por debajo del núcleo, así que el orden depende de si crece o decrece
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+
+    /**
+     * Crea los hilos de decodificación de un scheduler, sin arrancarlos.
+     * @param workers número de hilos, al menos 1
+     * @return el executor, que se puede arrancar con prestartAllCoreThreads() antes de crear el scheduler
+     */
+    public static ThreadPoolExecutor newWorkerExecutor(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers debe ser al menos 1: " + workers);
+        }
+        //Equivalente a Executors.newFixedThreadPool, con el tipo concreto para poder arrancar los hilos por adelantado
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "decode-worker-" + count.incrementAndGet());
+                    }
+                });
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Arranca ya todos los hilos de decodificación, para que el primer frame no espere a que se creen.
+     */
+    public void prestartWorkers() {
+        executor.prestartAllCoreThreads();
+    }
+
+    @Override
+    public void process(F frame, Runnable onDone) {
+        Slot slot;
+        synchronized (lock) {
+            slot = obtain(frame, onDone);
+            link(slot);
+        }
+        try {
+            executor.execute(slot);
+        } catch (RejectedExecutionException e) {
+            //El scheduler se ha cerrado
+            synchronized (lock) {
+                unlink(slot);
+                recycle(slot);
+            }
+            onDone.run();
+        }
+    }
+
+    private void decode(Slot slot) {
+        List<T> codes = null;
+        Exception error = null;
+        try {
+            codes = task.decode(slot.frame);
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            slot.onDone.run();
+        }
+        complete(slot, codes, error);
+    }
+
+    private void complete(Slot slot, List<T> codes, Exception error) {
+        synchronized (lock) {
+            slot.done = true;
+            slot.codes = codes;
+            slot.error = error;
+            if (!slot.linked) {
+                //Un frame posterior ya ha entregado códigos
+                stale++;
+                recycle(slot);
+                return;
+            }
+            if (codes != null && !codes.isEmpty()) {
+                //Se entregan en orden los anteriores ya terminados y se descartan los que siguen decodificándose
+                while (head != slot) {
+                    Slot previous = head;
+                    unlink(previous);
+                    if (previous.done) {
+                        deliver(previous);
+                        recycle(previous);
+                    }
+                }
+            }
+            //Se entregan en orden todos los terminados al principio de la cola
+            while (head != null && head.done) {
+                Slot first = head;
+                unlink(first);
+                deliver(first);
+                recycle(first);
+            }
+        }
+    }
+
+    private Slot obtain(F frame, Runnable onDone) {
+        Slot slot = free;
+        if (slot == null) {
+            slot = new Slot();
+        } else {
+            free = slot.next;
+            slot.next = null;
+        }
+        slot.frame = frame;
+        slot.onDone = onDone;
+        return slot;
+    }
+
+    private void recycle(Slot slot) {
+        slot.frame = null;
+        slot.onDone = null;
+        slot.codes = null;
+        slot.error = null;
+        slot.done = false;
+        slot.next = free;
+        free = slot;
+    }
+
+    /**
+     * Inserta el slot en orden de secuencia, buscando desde el final porque los frames llegan casi siempre en orden.
+     */
+    private void link(Slot slot) {
+        long sequence = slot.frame.getSequence();
+        Slot previous = tail;
+        while (previous != null && previous.frame.getSequence() > sequence) {
+            previous = previous.previous;
+        }
+        Slot next = previous == null ? head : previous.next;
+        slot.previous = previous;
+        slot.next = next;
+        if (previous == null) {
+            head = slot;
+        } else {
+            previous.next = slot;
+        }
+        if (next == null) {
+            tail = slot;
+        } else {
+            next.previous = slot;
+        }
+        slot.linked = true;
+        pending++;
+    }
+
+    private void unlink(Slot slot) {
+        if (slot.previous == null) {
+            head = slot.next;
+        } else {
+            slot.previous.next = slot.next;
+        }
+        if (slot.next == null) {
+            tail = slot.previous;
+        } else {
+            slot.next.previous = slot.previous;
+        }
+        slot.previous = null;
+        slot.next = null;
+        slot.linked = false;
+        pending--;
+    }
+
+    private void deliver(Slot slot) {
+        if (slot.error != null) {
+            errors++;
+            listener.onError(slot.frame, slot.error);
+        } else {
+            delivered++;
+            listener.onResult(slot.frame, slot.codes);
+        }
+    }
+
+    /**
+     * @return frames cuyo resultado se ha entregado.
+     */
+    public long getDeliveredCount() {
+        synchronized (lock) {
+            return delivered;
+        }
+    }
+
+    /**
+     * @return frames cuyo resultado se ha descartado porque un frame posterior ya había leído códigos.
+     */
+    public long getStaleCount() {
+        synchronized (lock) {
+            return stale;
+        }
+    }
+
+    /**
+     * @return frames cuya decodificación ha fallado y se ha notificado con onError.
+     */
+    public long getErrorCount() {
+        synchronized (lock) {
+            return errors;
+        }
+    }
+
+    /**
+     * @return frames en decodificación o esperando a que se entreguen los anteriores.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Para los hilos sin esperar a los frames en decodificación, que se liberan igualmente al terminar.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Espera a que terminen los frames en decodificación tras close().
+     * @param timeout tiempo máximo de espera
+     * @param unit unidad de timeout
+     * @return true si han terminado todos
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Frame en decodificación o pendiente de entregar. Es también la tarea de su decodificación.
+     */
+    private final class Slot implements Runnable {
+        F frame;
+        Runnable onDone;
+        boolean done;
+        List<T> codes;
+        Exception error;
+        //Posición en la cola de pendientes, o siguiente slot libre
+        boolean linked;
+        Slot previous;
+        Slot next;
+
+        @Override
+        public void run() {
+            decode(this);
+        }
+    }
+}
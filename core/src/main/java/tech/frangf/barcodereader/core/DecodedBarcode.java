@@ -0,0 +1,63 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Código leído por un BarcodeDecoder, independiente del motor utilizado.
+ */
+public final class DecodedBarcode {
+    private final BarcodeFormat format;
+    private final String rawValue;
+    private final byte[] rawBytes;
+    private final String displayValue;
+    private final BoundingBox boundingBox;
+    private final Object engineResult;
+
+    /**
+     * @param format formato del código
+     * @param rawValue valor del código tal y como está codificado, o null si no es texto
+     * @param rawBytes bytes del contenido del código, o null si el motor no los proporciona
+     * @param displayValue valor legible del código
+     * @param boundingBox rectángulo del código en la imagen derecha, o null si el motor no lo proporciona
+     * @param engineResult resultado original del motor (por ejemplo el Barcode de ML Kit), o null
+     */
+    public DecodedBarcode(BarcodeFormat format, String rawValue, byte[] rawBytes, String displayValue,
+                          BoundingBox boundingBox, Object engineResult) {
+        this.format = format;
+        this.rawValue = rawValue;
+        this.rawBytes = rawBytes;
+        this.displayValue = displayValue;
+        this.boundingBox = boundingBox;
+        this.engineResult = engineResult;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    public byte[] getRawBytes() {
+        return rawBytes;
+    }
+
+    public String getDisplayValue() {
+        return displayValue;
+    }
+
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * @return el resultado original del motor, por ejemplo el Barcode de ML Kit con su información de tipo, o null.
+     */
+    public Object getEngineResult() {
+        return engineResult;
+    }
+
+    @Override
+    public String toString() {
+        return format + ":" + displayValue;
+    }
+}
@@ -0,0 +1,19 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Política del FramePipeline cuando llega un frame y ya se ha alcanzado el máximo de frames en proceso.
+ */
+public enum DropPolicy {
+    /**
+     * Se guarda el último frame recibido para procesarlo en cuanto haya hueco, descartando el que estuviese esperando.
+     */
+    KEEP_LATEST,
+    /**
+     * Se descarta el frame recibido.
+     */
+    DROP_NEWEST,
+    /**
+     * Se bloquea el hilo productor hasta que haya hueco.
+     */
+    BLOCK
+}
@@ -0,0 +1,316 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Filtro de lecturas repetidas que se coloca delante del listener.
+ * Recuerda los últimos códigos leídos (formato + valor) en una caché LRU de tamaño fijo y solo deja pasar un código
+ * cuando se ha visto en minConfirmations frames consecutivos y no se ha notificado ya dentro del tiempo ttl.
+ * Un código que sigue delante de la cámara renueva su ttl en cada frame, por lo que no se repite mientras no desaparezca.
+ * Las entradas se guardan en arrays reservados en el constructor, por lo que no se reserva memoria al filtrar.
+ */
+public final class DuplicateFilter {
+    private static final int NONE = -1;
+    //Frame de las lecturas de acceptStill(), que no es consecutivo ni igual a ningún frame de accept()
+    private static final long NO_FRAME = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final int minConfirmations;
+
+    //Tabla hash con encadenamiento por índices
+    private final int[] buckets;
+    private final int[] chain;
+    //Datos de cada entrada
+    private final int[] formats;
+    private final String[] values;
+    private final int[] hashes;
+    private final long[] lastSeenNanos;
+    private final long[] lastFrames;
+    private final int[] confirmations;
+    private final boolean[] reported;
+    //Lista doblemente enlazada en orden de uso, head es el más reciente
+    private final int[] newer;
+    private final int[] older;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    private long hits;
+    private long misses;
+    private long accepted;
+    private long suppressed;
+    private long evictions;
+
+    /**
+     * @param capacity número máximo de códigos recordados
+     * @param ttlNanos tiempo en nanosegundos desde la última vez que se vio un código tras el que se vuelve a notificar
+     * @param minConfirmations número de frames consecutivos en los que se debe leer un código antes de notificarlo
+     */
+    public DuplicateFilter(int capacity, long ttlNanos, int minConfirmations) {
+        if (capacity < 1 || ttlNanos < 0 || minConfirmations < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: capacity=" + capacity + ", ttlNanos=" + ttlNanos
+                    + ", minConfirmations=" + minConfirmations);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlNanos;
+        this.minConfirmations = minConfirmations;
+        int bucketCount = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, NONE);
+        chain = new int[capacity];
+        formats = new int[capacity];
+        values = new String[capacity];
+        hashes = new int[capacity];
+        lastSeenNanos = new long[capacity];
+        lastFrames = new long[capacity];
+        confirmations = new int[capacity];
+        reported = new boolean[capacity];
+        newer = new int[capacity];
+        older = new int[capacity];
+    }
+
+    /**
+     * Obtiene el valor con el que se identifica un código en el filtro, el mismo para la cámara y para los ficheros.
+     * @param barcode código leído
+     * @return el valor en bruto, o sus bytes en ISO-8859-1 si no es texto UTF-8.
+     */
+    public static String keyOf(DecodedBarcode barcode) {
+        String rawValue = barcode.getRawValue();
+        if (rawValue != null) {
+            return rawValue;
+        }
+        byte[] rawBytes = barcode.getRawBytes();
+        return rawBytes == null ? "" : new String(rawBytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Registra la lectura de un código en un frame e indica si se debe notificar.
+     * @param format formato del código
+     * @param value valor del código
+     * @param frameIndex índice del frame analizado; dos frames son consecutivos si sus índices difieren en 1
+     * @param nowNanos instante de la lectura en nanosegundos, de un reloj monótono
+     * @return true si el código se debe notificar, false si es una repetición o aún no está confirmado
+     */
+    public synchronized boolean accept(int format, String value, long frameIndex, long nowNanos) {
+        int hash = hash(format, value);
+        int index = find(format, value, hash);
+        if (index == NONE || nowNanos - lastSeenNanos[index] > ttlNanos) {
+            misses++;
+            if (index == NONE) {
+                index = insert(format, value, hash);
+            } else {
+                moveToHead(index);
+            }
+            confirmations[index] = 1;
+            reported[index] = false;
+        } else {
+            hits++;
+            moveToHead(index);
+            if (lastFrames[index] == frameIndex) {
+                //Mismo código repetido dentro del mismo frame
+                suppressed++;
+                return false;
+            }
+            confirmations[index] = lastFrames[index] == frameIndex - 1 ? confirmations[index] + 1 : 1;
+        }
+        lastSeenNanos[index] = nowNanos;
+        lastFrames[index] = frameIndex;
+        if (!reported[index] && confirmations[index] >= minConfirmations) {
+            reported[index] = true;
+            accepted++;
+            return true;
+        }
+        suppressed++;
+        return false;
+    }
+
+    /**
+     * Registra la lectura de un código en una imagen suelta, como una foto o un fichero, e indica si se debe notificar.
+     * No hay frames consecutivos que lo confirmen, así que se notifica a la primera salvo que ya se haya notificado
+     * dentro del ttl, con accept() o con este método. La lectura no cuenta como frame para las confirmaciones de
+     * accept(), por lo que las imágenes y los frames de la cámara no se confirman ni se suprimen por su índice.
+     * @param format formato del código
+     * @param value valor del código
+     * @param nowNanos instante de la lectura en nanosegundos, del mismo reloj que accept()
+     * @return true si el código se debe notificar, false si ya se ha notificado
+     */
+    public synchronized boolean acceptStill(int format, String value, long nowNanos) {
+        int hash = hash(format, value);
+        int index = find(format, value, hash);
+        if (index == NONE || nowNanos - lastSeenNanos[index] > ttlNanos) {
+            misses++;
+            if (index == NONE) {
+                index = insert(format, value, hash);
+            } else {
+                moveToHead(index);
+            }
+            reported[index] = false;
+        } else {
+            hits++;
+            moveToHead(index);
+        }
+        lastSeenNanos[index] = nowNanos;
+        lastFrames[index] = NO_FRAME;
+        confirmations[index] = 0;
+        if (!reported[index]) {
+            reported[index] = true;
+            accepted++;
+            return true;
+        }
+        suppressed++;
+        return false;
+    }
+
+    /**
+     * Olvida todos los códigos, de forma que la siguiente lectura de cualquiera de ellos se vuelve a notificar.
+     */
+    public synchronized void clear() {
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(values, null);
+        head = NONE;
+        tail = NONE;
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTtlNanos() {
+        return ttlNanos;
+    }
+
+    public int getMinConfirmations() {
+        return minConfirmations;
+    }
+
+    /**
+     * @return número de códigos recordados actualmente.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return lecturas de códigos que estaban en la caché y no habían caducado.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return lecturas de códigos nuevos o caducados.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return lecturas notificadas.
+     */
+    public synchronized long getAcceptedCount() {
+        return accepted;
+    }
+
+    /**
+     * @return lecturas descartadas por repetidas o por no estar aún confirmadas.
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    /**
+     * @return códigos expulsados de la caché por falta de espacio.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private static int hash(int format, String value) {
+        int h = value.hashCode() * 31 + format;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int format, String value, int hash) {
+        int index = buckets[hash & (buckets.length - 1)];
+        while (index != NONE) {
+            if (hashes[index] == hash && formats[index] == format && values[index].equals(value)) {
+                return index;
+            }
+            index = chain[index];
+        }
+        return NONE;
+    }
+
+    private int insert(int format, String value, int hash) {
+        int index;
+        if (size < capacity) {
+            index = size++;
+        } else {
+            //Se reutiliza la entrada menos usada
+            index = tail;
+            unlinkBucket(index);
+            unlinkLru(index);
+            evictions++;
+        }
+        formats[index] = format;
+        values[index] = value;
+        hashes[index] = hash;
+        int bucket = hash & (buckets.length - 1);
+        chain[index] = buckets[bucket];
+        buckets[bucket] = index;
+        linkHead(index);
+        return index;
+    }
+
+    private void unlinkBucket(int index) {
+        int bucket = hashes[index] & (buckets.length - 1);
+        int current = buckets[bucket];
+        int previous = NONE;
+        while (current != index) {
+            previous = current;
+            current = chain[current];
+        }
+        if (previous == NONE) {
+            buckets[bucket] = chain[index];
+        } else {
+            chain[previous] = chain[index];
+        }
+    }
+
+    private void moveToHead(int index) {
+        if (index != head) {
+            unlinkLru(index);
+            linkHead(index);
+        }
+    }
+
+    private void unlinkLru(int index) {
+        int n = newer[index];
+        int o = older[index];
+        if (n == NONE) {
+            head = o;
+        } else {
+            older[n] = o;
+        }
+        if (o == NONE) {
+            tail = n;
+        } else {
+            newer[o] = n;
+        }
+    }
+
+    private void linkHead(int index) {
+        newer[index] = NONE;
+        older[index] = head;
+        if (head != NONE) {
+            newer[head] = index;
+        }
+        head = index;
+        if (tail == NONE) {
+            tail = index;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Aprende qué formatos aparecen en las lecturas recientes para buscar solo esos, ya que buscar todas las
+ * simbologías cuesta bastante más por frame que buscar las dos o tres que se usan en un almacén concreto.
+ * Para seguir detectando formatos nuevos vuelve a buscar todos durante unos frames (fallback) tras varios
+ * frames seguidos sin lecturas o cada cierto tiempo. Los formatos leídos durante el fallback se aprenden.
+ * Las máscaras son las de BarcodeFormat, iguales a las de ML Kit.
+ */
+public final class FormatLearner {
+    private final int allFormatsMask;
+    private final int emptyFramesBeforeFallback;
+    private final long fallbackIntervalNanos;
+    private final int fallbackFrames;
+
+    //Máscara de formatos de cada uno de los últimos frames con lecturas
+    private final int[] history;
+    private int historyNext;
+    private int historySize;
+    private int learnedMask;
+
+    private int emptyFrames;
+    private int fallbackRemaining;
+    private boolean started;
+    //Último frame analizado con todos los formatos, o el primer frame si se empezó con formatos restaurados
+    private long lastFullScanNanos;
+
+    private long frames;
+    private long fallbacks;
+    private long framesInFallback;
+
+    /**
+     * Crea un aprendiz sobre todos los formatos que recuerda los 32 últimos frames con lecturas y busca todos
+     * los formatos durante 5 frames tras 30 frames vacíos o cada 10 segundos.
+     */
+    public FormatLearner() {
+        this(BarcodeFormat.ALL_FORMATS_MASK, 32, 30, 10_000_000_000L, 5);
+    }
+
+    /**
+     * @param allFormatsMask formatos que se buscan sin aprendizaje o durante el fallback
+     * @param historySize número de frames con lecturas que se recuerdan
+     * @param emptyFramesBeforeFallback frames seguidos sin lecturas tras los que se buscan todos los formatos
+     * @param fallbackIntervalNanos tiempo máximo sin buscar todos los formatos
+     * @param fallbackFrames frames que dura cada fallback
+     */
+    public FormatLearner(int allFormatsMask, int historySize, int emptyFramesBeforeFallback, long fallbackIntervalNanos,
+                         int fallbackFrames) {
+        if (allFormatsMask == 0 || historySize < 1 || emptyFramesBeforeFallback < 1 || fallbackIntervalNanos <= 0
+                || fallbackFrames < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: historySize=" + historySize
+                    + ", emptyFramesBeforeFallback=" + emptyFramesBeforeFallback + ", fallbackIntervalNanos="
+                    + fallbackIntervalNanos + ", fallbackFrames=" + fallbackFrames);
+        }
+        this.allFormatsMask = allFormatsMask;
+        this.history = new int[historySize];
+        this.emptyFramesBeforeFallback = emptyFramesBeforeFallback;
+        this.fallbackIntervalNanos = fallbackIntervalNanos;
+        this.fallbackFrames = fallbackFrames;
+    }
+
+    /**
+     * Registra el resultado de un frame analizado con getActiveFormatMask().
+     * @param nowNanos instante del frame, de un reloj monótono
+     * @param foundFormatsMask máscara con los formatos leídos en el frame, 0 si no se leyó ninguno
+     * @return true si cambia la máscara activa y hay que reconstruir el escáner
+     */
+    public synchronized boolean onFrame(long nowNanos, int foundFormatsMask) {
+        int previousMask = getActiveFormatMask();
+        frames++;
+        boolean full = previousMask == allFormatsMask;
+        if (full || !started) {
+            started = true;
+            lastFullScanNanos = nowNanos;
+        }
+        if (fallbackRemaining > 0) {
+            framesInFallback++;
+        }
+        int found = foundFormatsMask & allFormatsMask;
+        if (found != 0) {
+            learn(found);
+            emptyFrames = 0;
+        } else if (!full) {
+            emptyFrames++;
+        }
+        if (fallbackRemaining > 0) {
+            fallbackRemaining--;
+        } else if (learnedMask != 0 && (emptyFrames >= emptyFramesBeforeFallback
+                || nowNanos - lastFullScanNanos >= fallbackIntervalNanos)) {
+            fallbackRemaining = fallbackFrames;
+            fallbacks++;
+            emptyFrames = 0;
+        }
+        return getActiveFormatMask() != previousMask;
+    }
+
+    private void learn(int mask) {
+        history[historyNext] = mask;
+        historyNext = (historyNext + 1) % history.length;
+        historySize = Math.min(historySize + 1, history.length);
+        int learned = 0;
+        for (int i = 0; i < historySize; i++) {
+            learned |= history[i];
+        }
+        learnedMask = learned;
+    }
+
+    /**
+     * @return máscara de formatos que se deben buscar en el siguiente frame: los aprendidos, o todos si aún no se ha
+     * aprendido ninguno o se está en un fallback.
+     */
+    public synchronized int getActiveFormatMask() {
+        return learnedMask == 0 || fallbackRemaining > 0 ? allFormatsMask : learnedMask;
+    }
+
+    /**
+     * Formatos del escáner que se debe usar en el siguiente frame cuando las opciones del escáner limitan los formatos.
+     * @param optionsMask formatos de las opciones; 0, como Barcode.FORMAT_ALL_FORMATS de ML Kit, son todos
+     * @return los formatos activos que admiten las opciones, o las opciones normalizadas si se deben buscar todas:
+     * en un fallback, sin formatos aprendidos o si ninguno de los aprendidos está en las opciones
+     */
+    public int getScannerMask(int optionsMask) {
+        int options = BarcodeFormat.normalizeMask(optionsMask);
+        int active = getActiveFormatMask();
+        int mask = active & options;
+        return active == allFormatsMask || mask == 0 ? options : mask;
+    }
+
+    /**
+     * @return máscara de los formatos leídos en los últimos frames con lecturas, 0 si no hay ninguno.
+     */
+    public synchronized int getLearnedFormatMask() {
+        return learnedMask;
+    }
+
+    public int getAllFormatsMask() {
+        return allFormatsMask;
+    }
+
+    /**
+     * @return true si se están buscando todos los formatos por un fallback.
+     */
+    public synchronized boolean isFallback() {
+        return fallbackRemaining > 0;
+    }
+
+    /**
+     * Restaura los formatos aprendidos, por ejemplo los guardados en la ejecución anterior de la app.
+     * Se olvidan a medida que se leen otros, como cualquier lectura del historial.
+     * @param learnedMask máscara devuelta por getLearnedFormatMask()
+     */
+    public synchronized void restore(int learnedMask) {
+        clearHistory();
+        if ((learnedMask & allFormatsMask) != 0) {
+            learn(learnedMask & allFormatsMask);
+        }
+    }
+
+    /**
+     * Olvida los formatos aprendidos y vuelve a buscar todos.
+     */
+    public synchronized void clear() {
+        clearHistory();
+    }
+
+    private void clearHistory() {
+        historyNext = 0;
+        historySize = 0;
+        learnedMask = 0;
+        emptyFrames = 0;
+        fallbackRemaining = 0;
+    }
+
+    /**
+     * @return frames registrados con onFrame.
+     */
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * @return veces que se ha vuelto a buscar todos los formatos.
+     */
+    public synchronized long getFallbackCount() {
+        return fallbacks;
+    }
+
+    /**
+     * @return fracción de los frames analizados durante un fallback, entre 0 y 1.
+     */
+    public synchronized double getFallbackRate() {
+        return frames == 0 ? 0 : (double) framesInFallback / frames;
+    }
+}
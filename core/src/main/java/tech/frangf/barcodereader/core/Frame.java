@@ -0,0 +1,75 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Frame de análisis independiente de Android. Cada fuente (CameraX, frames sintéticos, grabaciones...)
+ * lo extiende para liberar su recurso subyacente.
+ * Garantiza que el recurso se libera una única vez aunque close() se llame varias veces.
+ */
+public abstract class Frame implements Closeable {
+    private final long sequence;
+    private final long timestampNanos;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param sequence número de secuencia del frame dentro de su fuente.
+     * @param timestampNanos marca de tiempo del frame en nanosegundos.
+     * @param width ancho en píxeles.
+     * @param height alto en píxeles.
+     * @param rotationDegrees rotación (0, 90, 180 o 270) necesaria para ver el frame derecho.
+     */
+    protected Frame(long sequence, long timestampNanos, int width, int height, int rotationDegrees) {
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * @return true si el frame ya se ha cerrado.
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Cierra el frame. Solo la primera llamada libera el recurso, el resto se ignoran.
+     */
+    @Override
+    public final void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * Libera el recurso subyacente. Se ejecuta exactamente una vez.
+     */
+    protected abstract void release();
+}
@@ -0,0 +1,242 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool de ByteBuffer directos para copiar o recortar frames sin reservar memoria en cada frame.
+ * Cada buffer se entrega en un Lease con contador de referencias: vuelve al pool cuando lo liberan todos sus
+ * usuarios, por ejemplo el decodificador y el cierre del frame del que se ha copiado.
+ * Los buffers se dimensionan con la primera resolución que se pide; si la resolución crece, los buffers que se
+ * quedan pequeños se descartan y se reservan otros nuevos, que cuentan como fallos del pool.
+ * Es thread-safe.
+ */
+public final class FrameBufferPool {
+    private final int maxPooled;
+    private final ArrayDeque<Lease> free = new ArrayDeque<>();
+    private long hits;
+    private long misses;
+    private int outstanding;
+
+    /**
+     * @param maxPooled buffers libres que se conservan como mucho; el resto se descartan al liberarse.
+     *                  Lo normal es el número de frames en proceso más uno.
+     */
+    public FrameBufferPool(int maxPooled) {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("maxPooled debe ser al menos 1: " + maxPooled);
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Obtiene un buffer de al menos capacity bytes, con posición 0 y límite capacity, y una referencia.
+     * @param capacity bytes necesarios
+     * @return el Lease del buffer, que se debe liberar con release()
+     */
+    public synchronized Lease acquire(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity debe ser positiva: " + capacity);
+        }
+        Lease lease = null;
+        //Se recorre la cola rotándola en lugar de con un Iterator, que reservaría memoria en cada frame
+        for (int i = free.size(); i > 0; i--) {
+            Lease candidate = free.pollFirst();
+            if (candidate.buffer.capacity() >= capacity) {
+                lease = candidate;
+                break;
+            }
+            free.addLast(candidate);
+        }
+        if (lease != null) {
+            hits++;
+        } else {
+            misses++;
+            //Los buffers libres más pequeños ya no sirven para esta resolución, se descartan
+            free.clear();
+            lease = new Lease(this, ByteBuffer.allocateDirect(capacity));
+        }
+        outstanding++;
+        synchronized (lease) {
+            lease.refCount = 1;
+        }
+        lease.buffer.clear();
+        lease.buffer.limit(capacity);
+        return lease;
+    }
+
+    private synchronized void recycle(Lease lease) {
+        outstanding--;
+        if (free.size() < maxPooled) {
+            free.push(lease);
+        }
+    }
+
+    /**
+     * @return veces que acquire() ha reutilizado un buffer del pool.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return veces que acquire() ha tenido que reservar un buffer nuevo.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return buffers entregados que todavía no se han liberado.
+     */
+    public synchronized int getOutstandingLeases() {
+        return outstanding;
+    }
+
+    /**
+     * @return buffers libres en el pool.
+     */
+    public synchronized int getPooledCount() {
+        return free.size();
+    }
+
+    /**
+     * Descarta los buffers libres, por ejemplo al parar el escaneo. Los entregados vuelven al pool al liberarse.
+     */
+    public synchronized void clear() {
+        free.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameBufferPool{hits=" + hits + ", misses=" + misses + ", outstanding=" + outstanding
+                + ", pooled=" + free.size() + '}';
+    }
+
+    /**
+     * Buffer del pool con contador de referencias. El Lease y su LuminanceImage se reutilizan con el buffer,
+     * por lo que no se deben usar después de la última llamada a release().
+     */
+    public static final class Lease {
+        private final FrameBufferPool pool;
+        private final ByteBuffer buffer;
+        private final LuminanceImage image = new LuminanceImage();
+        //Se modifica siempre con el lock del propio Lease
+        private int refCount;
+
+        private Lease(FrameBufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return el buffer directo, con posición 0 y límite igual a la capacidad pedida.
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * @return la imagen de la última llamada a copyFrom() o setImage(), una vista sobre el buffer.
+         */
+        public LuminanceImage getImage() {
+            return image;
+        }
+
+        /**
+         * Apunta la imagen del Lease a una luminancia sin relleno entre filas al principio del buffer.
+         * @param width ancho en píxeles
+         * @param height alto en píxeles
+         * @param rotationDegrees rotación (0, 90, 180 o 270) necesaria para ver la imagen derecha
+         * @return la imagen del Lease
+         */
+        public LuminanceImage setImage(int width, int height, int rotationDegrees) {
+            if ((long) width * height > buffer.limit()) {
+                throw new IllegalArgumentException("La imagen " + width + "x" + height + " no cabe en "
+                        + buffer.limit() + " bytes");
+            }
+            return image.set(buffer, 0, width, height, width, 1, rotationDegrees);
+        }
+
+        /**
+         * Copia la luminancia de otra imagen al buffer sin relleno entre filas, respetando su rowStride y pixelStride.
+         * @param source imagen a copiar, por ejemplo la vista sobre el plano Y de un frame que se va a cerrar
+         * @return la imagen del Lease con la copia
+         */
+        public LuminanceImage copyFrom(LuminanceImage source) {
+            int width = source.getWidth();
+            int height = source.getHeight();
+            LuminanceImage copy = setImage(width, height, source.getRotationDegrees());
+            ByteBuffer src = source.getBuffer();
+            if (source.isPacked()) {
+                copyRange(src, source.getOffset(), buffer, 0, width * height);
+            } else if (source.getPixelStride() == 1) {
+                for (int y = 0; y < height; y++) {
+                    copyRange(src, source.getOffset() + y * source.getRowStride(), buffer, y * width, width);
+                }
+            } else {
+                int out = 0;
+                for (int y = 0; y < height; y++) {
+                    int in = source.getOffset() + y * source.getRowStride();
+                    for (int x = 0; x < width; x++) {
+                        buffer.put(out++, src.get(in));
+                        in += source.getPixelStride();
+                    }
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * Añade una referencia, que se debe liberar con su propia llamada a release().
+         * @return este mismo Lease
+         */
+        public synchronized Lease retain() {
+            if (refCount <= 0) {
+                throw new IllegalStateException("El buffer ya se ha devuelto al pool");
+            }
+            refCount++;
+            return this;
+        }
+
+        /**
+         * Libera una referencia. Con la última, el buffer vuelve al pool.
+         */
+        public void release() {
+            synchronized (this) {
+                if (refCount <= 0) {
+                    throw new IllegalStateException("El buffer ya se ha devuelto al pool");
+                }
+                if (--refCount > 0) {
+                    return;
+                }
+            }
+            pool.recycle(this);
+        }
+
+        /**
+         * @return referencias sin liberar; 0 si el buffer ya está en el pool.
+         */
+        public synchronized int getRefCount() {
+            return refCount;
+        }
+    }
+
+    /**
+     * Copia length bytes entre dos buffers con una copia en bloque, restaurando la posición y el límite de ambos.
+     */
+    static void copyRange(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int length) {
+        int srcPosition = src.position();
+        int srcLimit = src.limit();
+        int dstPosition = dst.position();
+        int dstLimit = dst.limit();
+        try {
+            src.limit(srcOffset + length).position(srcOffset);
+            dst.limit(dstOffset + length).position(dstOffset);
+            dst.put(src);
+        } finally {
+            src.limit(srcLimit).position(srcPosition);
+            dst.limit(dstLimit).position(dstPosition);
+        }
+    }
+}
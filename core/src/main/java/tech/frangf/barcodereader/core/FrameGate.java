@@ -0,0 +1,339 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Filtro previo a la decodificación que descarta los frames en los que no merece la pena llamar al decodificador:
+ * los movidos o desenfocados y los iguales al último frame decodificado, como los de una escena quieta ya leída.
+ * La imagen se divide en una rejilla de celdas y sobre una muestra de sus píxeles se calcula, por celda, la
+ * luminancia media (una miniatura de la imagen) y el gradiente cuadrático medio entre píxeles vecinos.
+ * La nitidez del frame es la de su celda más nítida, para que un código pequeño enfocado sobre un fondo liso pase.
+ * El movimiento es la diferencia media de la miniatura con la del frame anterior, y el cambio la mayor diferencia
+ * de una celda con la del último frame que se dejó decodificar, para que un código nuevo en una esquina cuente.
+ * Tras maxConsecutiveSkips frames descartados seguidos se deja pasar uno, para no quedarse sin leer un código con
+ * poco contraste. Las miniaturas se guardan en arrays reservados en el constructor, por lo que no se reserva memoria
+ * al evaluar un frame.
+ */
+public final class FrameGate {
+    /**
+     * Resultado de evaluar un frame.
+     */
+    public enum Decision {
+        /**
+         * El frame se debe decodificar.
+         */
+        DECODE,
+        /**
+         * Descartado por no tener ninguna zona nítida.
+         */
+        BLURRY,
+        /**
+         * Descartado por haber cambiado demasiado respecto al frame anterior: la cámara o el código se mueven.
+         */
+        MOVING,
+        /**
+         * Descartado por ser casi igual al último frame decodificado.
+         */
+        UNCHANGED
+    }
+
+    private final int columns;
+    private final int rows;
+    private final int sampleStep;
+    private final float minSharpness;
+    private final float maxMotion;
+    private final float minChange;
+    private final int maxConsecutiveSkips;
+
+    //Miniaturas del frame actual, del anterior y del último decodificado
+    private int[] current;
+    private int[] previous;
+    private final int[] reference;
+    private boolean hasPrevious;
+    private boolean hasReference;
+    private int consecutiveSkips;
+
+    private float lastSharpness;
+    private float lastMotion;
+    private float lastChange;
+    private long evaluated;
+    private long decoded;
+    private long forced;
+    private long blurry;
+    private long moving;
+    private long unchanged;
+
+    /**
+     * Crea un filtro con una rejilla de 24x18 celdas muestreadas cada 2 píxeles, nitidez mínima de 24, movimiento
+     * máximo de 40 y cambio mínimo de 10 niveles de luminancia, y como mucho 15 frames descartados seguidos.
+     * Con celdas más grandes un código pequeño que aparece entre cuatro celdas apenas cambia la miniatura.
+     */
+    public FrameGate() {
+        this(24, 18, 2, 24f, 40f, 10f, 15);
+    }
+
+    /**
+     * @param columns celdas de la rejilla en horizontal, en coordenadas del sensor
+     * @param rows celdas de la rejilla en vertical, en coordenadas del sensor
+     * @param sampleStep distancia en píxeles entre las muestras de cada celda. Con más de 2 algunos bordes no se miden
+     *                   y la miniatura varía con movimientos de pocos píxeles, por lo que hace falta un minChange mayor
+     * @param minSharpness gradiente cuadrático medio (0 a 255) de la celda más nítida por debajo del que el frame está
+     *                     desenfocado, o 0 para no descartar frames desenfocados
+     * @param maxMotion diferencia media de luminancia (0 a 255) con el frame anterior por encima de la que hay
+     *                  movimiento, o 255 para no descartar frames movidos
+     * @param minChange diferencia de luminancia (0 a 255) de la celda que más ha cambiado desde el último frame
+     *                  decodificado por debajo de la que el frame no ha cambiado, o 0 para no descartar frames iguales
+     * @param maxConsecutiveSkips frames descartados seguidos tras los que se deja pasar uno
+     */
+    public FrameGate(int columns, int rows, int sampleStep, float minSharpness, float maxMotion, float minChange,
+                     int maxConsecutiveSkips) {
+        if (columns < 1 || rows < 1 || sampleStep < 1 || minSharpness < 0 || maxMotion < 0 || minChange < 0
+                || maxConsecutiveSkips < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: columns=" + columns + ", rows=" + rows
+                    + ", sampleStep=" + sampleStep + ", minSharpness=" + minSharpness + ", maxMotion=" + maxMotion
+                    + ", minChange=" + minChange + ", maxConsecutiveSkips=" + maxConsecutiveSkips);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.sampleStep = sampleStep;
+        this.minSharpness = minSharpness;
+        this.maxMotion = maxMotion;
+        this.minChange = minChange;
+        this.maxConsecutiveSkips = maxConsecutiveSkips;
+        current = new int[columns * rows];
+        previous = new int[columns * rows];
+        reference = new int[columns * rows];
+    }
+
+    /**
+     * Evalúa un frame y decide si se decodifica. Los frames se deben evaluar en el orden en el que llegan.
+     * @param image luminancia del frame
+     * @return DECODE si se debe decodificar, o el motivo por el que se descarta
+     */
+    public synchronized Decision evaluate(LuminanceImage image) {
+        evaluated++;
+        int cellWidth = image.getWidth() / columns;
+        int cellHeight = image.getHeight() / rows;
+        if (cellWidth <= sampleStep + 2 || cellHeight <= sampleStep + 2) {
+            //Imagen demasiado pequeña para la rejilla: no se puede juzgar
+            hasPrevious = false;
+            hasReference = false;
+            return pass();
+        }
+        float sharpness = measure(image, cellWidth, cellHeight);
+        float motion = hasPrevious ? difference(current, previous) : 0;
+        float change = hasReference ? maxDifference(current, reference) : Float.MAX_VALUE;
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+        lastSharpness = sharpness;
+        lastMotion = motion;
+        lastChange = change;
+
+        Decision decision;
+        if (sharpness < minSharpness) {
+            decision = Decision.BLURRY;
+        } else if (motion > maxMotion) {
+            decision = Decision.MOVING;
+        } else if (change < minChange) {
+            decision = Decision.UNCHANGED;
+        } else {
+            return pass();
+        }
+        if (consecutiveSkips >= maxConsecutiveSkips) {
+            forced++;
+            return pass();
+        }
+        consecutiveSkips++;
+        switch (decision) {
+            case BLURRY:
+                blurry++;
+                break;
+            case MOVING:
+                moving++;
+                break;
+            default:
+                unchanged++;
+                break;
+        }
+        return decision;
+    }
+
+    /**
+     * Deja pasar el frame, cuya miniatura (ya en previous) pasa a ser la referencia del cambio.
+     */
+    private Decision pass() {
+        decoded++;
+        consecutiveSkips = 0;
+        if (hasPrevious) {
+            System.arraycopy(previous, 0, reference, 0, reference.length);
+            hasReference = true;
+        }
+        return Decision.DECODE;
+    }
+
+    /**
+     * Calcula la miniatura del frame en current y devuelve la nitidez de la celda más nítida.
+     * El gradiente es la diferencia centrada entre los vecinos a un lado y a otro de cada muestra: con muestras cada
+     * 2 píxeles ningún borde queda entre dos muestras sin medirse.
+     */
+    private float measure(LuminanceImage image, int cellWidth, int cellHeight) {
+        ByteBuffer buffer = image.getBuffer();
+        int rowStride = image.getRowStride();
+        int pixelStride = image.getPixelStride();
+        int sampleStride = sampleStep * pixelStride;
+        long maxGradient = 0;
+        long maxSamples = 1;
+        for (int row = 0; row < rows; row++) {
+            //Las muestras necesitan un vecino a cada lado dentro de la celda
+            int top = row * cellHeight + 1;
+            int bottom = row * cellHeight + cellHeight - 1;
+            for (int column = 0; column < columns; column++) {
+                int left = column * cellWidth + 1;
+                int right = column * cellWidth + cellWidth - 1;
+                long sum = 0;
+                long gradient = 0;
+                int samples = 0;
+                for (int y = top; y < bottom; y += sampleStep) {
+                    int rowStart = image.getOffset() + y * rowStride;
+                    int end = rowStart + right * pixelStride;
+                    for (int index = rowStart + left * pixelStride; index < end; index += sampleStride) {
+                        int dx = (buffer.get(index + pixelStride) & 0xFF) - (buffer.get(index - pixelStride) & 0xFF);
+                        int dy = (buffer.get(index + rowStride) & 0xFF) - (buffer.get(index - rowStride) & 0xFF);
+                        sum += buffer.get(index) & 0xFF;
+                        gradient += dx * dx + dy * dy;
+                        samples++;
+                    }
+                }
+                current[row * columns + column] = (int) (sum / samples);
+                //gradient / samples > maxGradient / maxSamples, sin dividir
+                if (gradient * maxSamples > maxGradient * samples) {
+                    maxGradient = gradient;
+                    maxSamples = samples;
+                }
+            }
+        }
+        //Raíz del gradiente cuadrático medio, con la diferencia centrada dividida entre los 2 píxeles que abarca
+        return (float) Math.sqrt((double) maxGradient / maxSamples) / 2;
+    }
+
+    private static float difference(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (float) sum / a.length;
+    }
+
+    private static float maxDifference(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    /**
+     * Olvida el frame anterior y el último decodificado, por ejemplo al reiniciar la cámara, de forma que el siguiente
+     * frame nítido se decodifica.
+     */
+    public synchronized void reset() {
+        hasPrevious = false;
+        hasReference = false;
+        consecutiveSkips = 0;
+    }
+
+    public float getMinSharpness() {
+        return minSharpness;
+    }
+
+    public float getMaxMotion() {
+        return maxMotion;
+    }
+
+    public float getMinChange() {
+        return minChange;
+    }
+
+    public int getMaxConsecutiveSkips() {
+        return maxConsecutiveSkips;
+    }
+
+    /**
+     * @return nitidez del último frame evaluado: el gradiente cuadrático medio de su celda más nítida.
+     */
+    public synchronized float getLastSharpness() {
+        return lastSharpness;
+    }
+
+    /**
+     * @return diferencia media de la miniatura del último frame evaluado con la del anterior.
+     */
+    public synchronized float getLastMotion() {
+        return lastMotion;
+    }
+
+    /**
+     * @return mayor diferencia de una celda de la miniatura del último frame evaluado con la del último decodificado,
+     * o Float.MAX_VALUE si no había ninguno.
+     */
+    public synchronized float getLastChange() {
+        return lastChange;
+    }
+
+    /**
+     * @return frames evaluados.
+     */
+    public synchronized long getEvaluatedCount() {
+        return evaluated;
+    }
+
+    /**
+     * @return frames que se han dejado decodificar, incluidos los forzados.
+     */
+    public synchronized long getDecodeCount() {
+        return decoded;
+    }
+
+    /**
+     * @return frames que se han dejado decodificar por llevar maxConsecutiveSkips frames descartados seguidos.
+     */
+    public synchronized long getForcedCount() {
+        return forced;
+    }
+
+    /**
+     * @return frames descartados por estar desenfocados.
+     */
+    public synchronized long getBlurryCount() {
+        return blurry;
+    }
+
+    /**
+     * @return frames descartados por movimiento.
+     */
+    public synchronized long getMovingCount() {
+        return moving;
+    }
+
+    /**
+     * @return frames descartados por no haber cambiado desde el último decodificado.
+     */
+    public synchronized long getUnchangedCount() {
+        return unchanged;
+    }
+
+    /**
+     * @return frames descartados por cualquier motivo.
+     */
+    public synchronized long getSkippedCount() {
+        return blurry + moving + unchanged;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameGate{evaluated=" + evaluated + ", decoded=" + decoded + ", forced=" + forced + ", blurry="
+                + blurry + ", moving=" + moving + ", unchanged=" + unchanged + '}';
+    }
+}
@@ -0,0 +1,208 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Etapa intermedia entre el productor de frames (el analizador de CameraX) y el decodificador.
+ * Limita el número de frames en proceso a la vez y aplica una DropPolicy cuando se alcanza ese límite,
+ * evitando que los frames se acumulen detrás del decodificador y la latencia crezca.
+ * Todo frame recibido se cierra exactamente una vez: al terminar de procesarse, al descartarse o al cerrar el pipeline.
+ * El siguiente frame en espera se procesa en el hilo que ejecuta el onDone del frame anterior.
+ * @param <F> tipo de frame
+ */
+public class FramePipeline<F extends Frame> implements FrameSink<F>, Closeable {
+    private int maxInFlight;
+    private final DropPolicy dropPolicy;
+    private final FrameProcessor<F> processor;
+    private final Object lock = new Object();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private int inFlight;
+    private F pending;
+    private boolean closed;
+
+    /**
+     * @param maxInFlight número máximo de frames que se procesan a la vez, al menos 1.
+     * @param dropPolicy política a aplicar cuando no hay hueco para un nuevo frame.
+     * @param processor etapa que procesa cada frame.
+     */
+    public FramePipeline(int maxInFlight, DropPolicy dropPolicy, FrameProcessor<F> processor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight debe ser al menos 1: " + maxInFlight);
+        }
+        if (dropPolicy == null || processor == null) {
+            throw new NullPointerException("dropPolicy y processor son obligatorios");
+        }
+        this.maxInFlight = maxInFlight;
+        this.dropPolicy = dropPolicy;
+        this.processor = processor;
+    }
+
+    /**
+     * Recibe un frame y lo procesa, lo deja en espera o lo descarta según la política establecida.
+     * Con DropPolicy.BLOCK bloquea el hilo actual hasta que haya hueco.
+     * @param frame frame recibido
+     */
+    @Override
+    public void onFrame(F frame) {
+        received.incrementAndGet();
+        F toDrop = null;
+        boolean dispatch = false;
+        synchronized (lock) {
+            if (dropPolicy == DropPolicy.BLOCK) {
+                boolean interrupted = false;
+                while (!closed && inFlight >= maxInFlight) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (closed) {
+                toDrop = frame;
+            } else if (inFlight < maxInFlight) {
+                inFlight++;
+                dispatch = true;
+            } else if (dropPolicy == DropPolicy.KEEP_LATEST) {
+                toDrop = pending;
+                pending = frame;
+            } else {
+                toDrop = frame;
+            }
+        }
+        if (toDrop != null) {
+            drop(toDrop);
+        }
+        if (dispatch) {
+            dispatch(frame);
+        }
+    }
+
+    /**
+     * @return número máximo de frames en proceso a la vez.
+     */
+    public int getMaxInFlight() {
+        synchronized (lock) {
+            return maxInFlight;
+        }
+    }
+
+    /**
+     * Cambia el número máximo de frames en proceso a la vez sin rehacer el pipeline, por ejemplo al cambiar de
+     * ScanMode. Si se reduce, los frames ya en proceso terminan y sus huecos no se vuelven a ocupar hasta quedar por
+     * debajo del nuevo límite.
+     * @param maxInFlight número máximo de frames que se procesan a la vez, al menos 1.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight debe ser al menos 1: " + maxInFlight);
+        }
+        synchronized (lock) {
+            this.maxInFlight = maxInFlight;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return política aplicada cuando no hay hueco para un nuevo frame.
+     */
+    public DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+
+    /**
+     * @return frames recibidos desde la creación del pipeline.
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * @return frames que han terminado de procesarse.
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * @return frames descartados sin procesar.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return frames que se están procesando en este momento.
+     */
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Cierra el pipeline: descarta el frame en espera, despierta a los productores bloqueados
+     * y descarta cualquier frame que llegue después. Los frames en proceso se cierran al terminar.
+     */
+    @Override
+    public void close() {
+        F toDrop;
+        synchronized (lock) {
+            closed = true;
+            toDrop = pending;
+            pending = null;
+            lock.notifyAll();
+        }
+        if (toDrop != null) {
+            drop(toDrop);
+        }
+    }
+
+    private void dispatch(F frame) {
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable onDone = () -> {
+            if (done.compareAndSet(false, true)) {
+                finish(frame);
+            }
+        };
+        try {
+            processor.process(frame, onDone);
+        } catch (RuntimeException e) {
+            onDone.run();
+            throw e;
+        }
+    }
+
+    private void finish(F frame) {
+        frame.close();
+        processed.incrementAndGet();
+        F next;
+        synchronized (lock) {
+            //Si se ha reducido el límite, el hueco se libera aunque haya un frame en espera
+            next = inFlight > maxInFlight ? null : pending;
+            if (next == null) {
+                inFlight--;
+                lock.notifyAll();
+            } else {
+                pending = null;
+            }
+        }
+        // El hueco liberado pasa directamente al frame en espera
+        if (next != null) {
+            dispatch(next);
+        }
+    }
+
+    private void drop(F frame) {
+        frame.close();
+        dropped.incrementAndGet();
+    }
+}
@@ -0,0 +1,15 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Etapa que procesa los frames entregados por el FramePipeline, normalmente el decodificador.
+ * @param <F> tipo de frame
+ */
+public interface FrameProcessor<F extends Frame> {
+    /**
+     * Procesa un frame, de forma síncrona o asíncrona.
+     * El procesador NO debe cerrar el frame: debe ejecutar onDone cuando termine y el pipeline se encarga de cerrarlo.
+     * @param frame frame a procesar
+     * @param onDone callback que indica al pipeline que el frame ya no se utiliza
+     */
+    void process(F frame, Runnable onDone);
+}
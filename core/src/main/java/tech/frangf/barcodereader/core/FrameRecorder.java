@@ -0,0 +1,325 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Graba en un fichero una muestra de los frames analizados, con su plano Y, su marca de tiempo y su rotación, para
+ * reproducir en el host lo que vio la cámara (ReplayFrameSource, ReplayHarness).
+ * record() copia el plano a un buffer y lo encola sin bloquear; un hilo propio lo comprime y lo escribe. Si la cola
+ * está llena el frame se descarta y se cuenta, para no retrasar nunca el análisis.
+ * <p>
+ * El fichero empieza con una cabecera (MAGIC, VERSION) seguida de un registro por frame:
+ * [marca de tiempo][ancho][alto][rotación][CRC32 del plano][longitud comprimida][plano comprimido]. Antes de
+ * comprimirlo con Deflater, cada píxel se sustituye por su diferencia con el de su izquierda (el filtro Sub de PNG),
+ * que en los degradados suaves de una imagen de cámara deja valores pequeños y repetidos que se comprimen mejor.
+ * Cada frame se escribe completo y se vuelca al disco, por lo que si la aplicación se cierra de golpe solo se pierde
+ * el último.
+ */
+public final class FrameRecorder implements Closeable {
+    public static final long DEFAULT_MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    static final int MAGIC = 0x53434E52;
+    static final int VERSION = 1;
+    static final int RECORD_HEADER_BYTES = 28;
+
+    private final File file;
+    private final long minIntervalNanos;
+    private final int compressionLevel;
+    private final BlockingQueue<Pending> queue;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+    private final int maxBuffers;
+    private final Thread writer;
+
+    //Estado de record(), que se llama desde un único hilo
+    private long lastRecordedNanos;
+    private boolean hasRecorded;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile long rawBytes;
+    private volatile long fileBytes;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * Frame copiado y pendiente de escribir. Un frame sin datos indica al escritor que termine.
+     */
+    private static final class Pending {
+        final byte[] data;
+        final int width;
+        final int height;
+        final int rotationDegrees;
+        final long timestampNanos;
+
+        Pending(byte[] data, int width, int height, int rotationDegrees, long timestampNanos) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.rotationDegrees = rotationDegrees;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
+    private static final Pending CLOSE = new Pending(null, 0, 0, 0, 0);
+
+    /**
+     * Crea una grabación que guarda como mucho un frame cada 200 ms, con compresión rápida.
+     * @param file fichero de la grabación; se sobrescribe si existe
+     */
+    public FrameRecorder(File file) {
+        this(file, DEFAULT_MIN_INTERVAL_NANOS, DEFAULT_QUEUE_CAPACITY, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Crea una grabación. El fichero se abre en el hilo escritor, por lo que el constructor no accede al disco y se
+     * puede llamar desde el hilo principal; si falla al abrirlo o al escribir, getFailure() devuelve el error.
+     * @param file fichero de la grabación; se sobrescribe si existe
+     * @param minIntervalNanos tiempo mínimo entre dos frames grabados, según sus marcas de tiempo; 0 para grabarlos
+     *                         todos
+     * @param queueCapacity frames copiados pendientes de escribir como mucho; con la cola llena se descartan
+     * @param compressionLevel nivel de Deflater, de Deflater.BEST_SPEED a Deflater.BEST_COMPRESSION
+     */
+    public FrameRecorder(File file, long minIntervalNanos, int queueCapacity, int compressionLevel) {
+        if (minIntervalNanos < 0 || queueCapacity < 1 || compressionLevel < Deflater.BEST_SPEED
+                || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Configuración no válida: minIntervalNanos=" + minIntervalNanos
+                    + " queueCapacity=" + queueCapacity + " compressionLevel=" + compressionLevel);
+        }
+        this.file = file;
+        this.minIntervalNanos = minIntervalNanos;
+        this.compressionLevel = compressionLevel;
+        //Un buffer más que la cola para el frame que se está escribiendo
+        this.maxBuffers = queueCapacity + 1;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity + 1);
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+        writer = new Thread(this::run, "frame-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Graba el frame si ha pasado minIntervalNanos desde el último grabado. No bloquea: copia el plano a un buffer
+     * y lo encola. Se debe llamar siempre desde el mismo hilo, normalmente el del analizador.
+     * @param image plano Y del frame, que se puede liberar en cuanto vuelve la llamada
+     * @param timestampNanos marca de tiempo del frame en nanosegundos, de un reloj monótono
+     * @return true si el frame se ha encolado para grabarlo
+     */
+    public boolean record(LuminanceImage image, long timestampNanos) {
+        if (closed || failure != null) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (hasRecorded && timestampNanos - lastRecordedNanos < minIntervalNanos) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        int size = image.getWidth() * image.getHeight();
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null) {
+            if (allocatedBuffers.get() >= maxBuffers) {
+                //Todos los buffers están en la cola o escribiéndose: el escritor no da abasto
+                dropped.incrementAndGet();
+                return false;
+            }
+            allocatedBuffers.incrementAndGet();
+            buffer = new byte[size];
+        } else if (buffer.length < size) {
+            //Ha cambiado la resolución
+            buffer = new byte[size];
+        }
+        image.copyPacked(buffer);
+        queue.add(new Pending(buffer, image.getWidth(), image.getHeight(), image.getRotationDegrees(), timestampNanos));
+        hasRecorded = true;
+        lastRecordedNanos = timestampNanos;
+        queued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Escribe los frames encolados y cierra el fichero. Espera a que termine el hilo escritor.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        try {
+            //Si el escritor ha fallado ya no vacía la cola
+            while (writer.isAlive() && !queue.offer(CLOSE, 100, TimeUnit.MILLISECONDS)) {
+                // Se reintenta mientras el escritor siga vivo
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return frames encolados para grabar.
+     */
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return frames escritos en el fichero.
+     */
+    public long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * @return frames no grabados por llegar antes de minIntervalNanos desde el último grabado.
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return frames descartados por tener la cola llena o la grabación cerrada o con fallo.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return bytes de luminancia de los frames escritos, sin comprimir.
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return bytes escritos en el fichero.
+     */
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * @return el error que ha detenido la grabación, o null si no ha fallado.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameRecorder{written=" + written + ", skipped=" + skipped + ", dropped=" + dropped + ", rawBytes="
+                + rawBytes + ", fileBytes=" + fileBytes + '}';
+    }
+
+    private void run() {
+        Deflater deflater = new Deflater(compressionLevel);
+        CRC32 crc = new CRC32();
+        byte[] filtered = new byte[0];
+        byte[] compressed = new byte[0];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+            fileBytes = 8;
+            while (true) {
+                Pending pending = queue.take();
+                if (pending == CLOSE) {
+                    break;
+                }
+                int size = pending.width * pending.height;
+                if (filtered.length < size) {
+                    filtered = new byte[size];
+                    //Deflate puede crecer algo con datos incompresibles
+                    compressed = new byte[size + size / 100 + 64];
+                }
+                crc.reset();
+                crc.update(pending.data, 0, size);
+                filterSub(pending.data, filtered, pending.width, pending.height);
+                deflater.reset();
+                deflater.setInput(filtered, 0, size);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        byte[] larger = new byte[compressed.length * 2];
+                        System.arraycopy(compressed, 0, larger, 0, length);
+                        compressed = larger;
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                //El buffer vuelve al pool en cuanto está filtrado
+                freeBuffers.offer(pending.data);
+                out.writeLong(pending.timestampNanos);
+                out.writeInt(pending.width);
+                out.writeInt(pending.height);
+                out.writeInt(pending.rotationDegrees);
+                out.writeInt((int) crc.getValue());
+                out.writeInt(length);
+                out.write(compressed, 0, length);
+                out.flush();
+                written++;
+                rawBytes += size;
+                fileBytes += RECORD_HEADER_BYTES + length;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deflater.end();
+            closed = true;
+        }
+    }
+
+    /**
+     * Filtro Sub de PNG: cada píxel menos el de su izquierda, y el primero de cada fila menos el de encima.
+     */
+    static void filterSub(byte[] image, byte[] filtered, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            filtered[row] = (byte) (image[row] - (y == 0 ? 0 : image[row - width]));
+            for (int i = row + 1; i < row + width; i++) {
+                filtered[i] = (byte) (image[i] - image[i - 1]);
+            }
+        }
+    }
+
+    /**
+     * Deshace filterSub sobre el mismo array.
+     */
+    static void unfilterSub(byte[] data, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            if (y > 0) {
+                data[row] = (byte) (data[row] + data[row - width]);
+            }
+            for (int i = row + 1; i < row + width; i++) {
+                data[i] = (byte) (data[i] + data[i - 1]);
+            }
+        }
+    }
+}
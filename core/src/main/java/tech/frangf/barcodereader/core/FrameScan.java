@@ -0,0 +1,37 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Todos los códigos leídos en un frame.
+ * @param <T> tipo de código
+ */
+public final class FrameScan<T> {
+    private final long sequence;
+    private final long timestampNanos;
+    private final List<T> codes;
+
+    /**
+     * @param sequence número de secuencia del frame
+     * @param timestampNanos marca de tiempo del frame en nanosegundos
+     * @param codes códigos leídos en el frame
+     */
+    public FrameScan(long sequence, long timestampNanos, List<T> codes) {
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+        this.codes = Collections.unmodifiableList(codes);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public List<T> getCodes() {
+        return codes;
+    }
+}
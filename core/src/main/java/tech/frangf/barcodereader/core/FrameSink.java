@@ -0,0 +1,14 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Destino de los frames producidos por un FrameSource.
+ * Quien recibe el frame pasa a ser responsable de cerrarlo.
+ * @param <F> tipo de frame
+ */
+public interface FrameSink<F extends Frame> {
+    /**
+     * Recibe un nuevo frame.
+     * @param frame frame recibido, que debe cerrarse cuando deje de utilizarse.
+     */
+    void onFrame(F frame);
+}
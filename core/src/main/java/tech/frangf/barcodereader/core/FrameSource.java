@@ -0,0 +1,18 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Origen de frames: la cámara, un generador sintético o una grabación.
+ * @param <F> tipo de frame
+ */
+public interface FrameSource<F extends Frame> {
+    /**
+     * Empieza a entregar frames al destino indicado.
+     * @param sink destino de los frames
+     */
+    void start(FrameSink<? super F> sink);
+
+    /**
+     * Deja de entregar frames.
+     */
+    void stop();
+}
@@ -0,0 +1,303 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analizador de cadenas de identificadores de aplicación (AI) GS1, como las de las etiquetas logísticas GS1-128 o los
+ * DataMatrix de GS1. Acepta la cadena tal y como la entrega el decodificador, con o sin el identificador de simbología
+ * (]C1, ]d2, ]Q3, ]e0) y con los campos de longitud variable separados por FNC1 (carácter GS, 0x1D), y también la
+ * forma legible con los AI entre paréntesis. Solo reconoce los AI de su tabla, que incluye los habituales en
+ * logística y trazabilidad; una cadena con un AI desconocido no es válida, porque sin conocer su longitud no se puede
+ * seguir leyendo.
+ */
+public final class Gs1Parser {
+    /**
+     * Separador FNC1 de los campos de longitud variable.
+     */
+    public static final char GS = '\u001D';
+
+    private static final String[] SYMBOLOGY_IDENTIFIERS = {"]C1", "]d2", "]Q3", "]e0"};
+    //Dígitos del código de moneda ISO 4217 de los importes 391n y 393n
+    private static final int CURRENCY_LENGTH = 3;
+
+    //AI, longitud del dato (F fija, V máxima), N numérico o X alfanumérico, decimales en el último dígito (D, o I si
+    //el importe va precedido del código de moneda ISO 4217 de 3 dígitos) y nombre
+    private static final String[][] TABLE = {
+            {"00", "F18", "N", "", "SSCC"},
+            {"01", "F14", "N", "", "GTIN"},
+            {"02", "F14", "N", "", "CONTENT"},
+            {"10", "V20", "X", "", "BATCH/LOT"},
+            {"11", "F6", "N", "", "PROD DATE"},
+            {"12", "F6", "N", "", "DUE DATE"},
+            {"13", "F6", "N", "", "PACK DATE"},
+            {"15", "F6", "N", "", "BEST BEFORE"},
+            {"16", "F6", "N", "", "SELL BY"},
+            {"17", "F6", "N", "", "USE BY"},
+            {"20", "F2", "N", "", "VARIANT"},
+            {"21", "V20", "X", "", "SERIAL"},
+            {"22", "V20", "X", "", "CPV"},
+            {"240", "V30", "X", "", "ADDITIONAL ID"},
+            {"241", "V30", "X", "", "CUST. PART No."},
+            {"250", "V30", "X", "", "SECONDARY SERIAL"},
+            {"251", "V30", "X", "", "REF. TO SOURCE"},
+            {"253", "V30", "X", "", "GDTI"},
+            {"254", "V20", "X", "", "GLN EXTENSION COMPONENT"},
+            {"30", "V8", "N", "", "VAR. COUNT"},
+            {"310", "F6", "N", "D", "NET WEIGHT (kg)"},
+            {"311", "F6", "N", "D", "LENGTH (m)"},
+            {"312", "F6", "N", "D", "WIDTH (m)"},
+            {"313", "F6", "N", "D", "HEIGHT (m)"},
+            {"314", "F6", "N", "D", "AREA (m2)"},
+            {"315", "F6", "N", "D", "NET VOLUME (l)"},
+            {"316", "F6", "N", "D", "NET VOLUME (m3)"},
+            {"320", "F6", "N", "D", "NET WEIGHT (lb)"},
+            {"330", "F6", "N", "D", "GROSS WEIGHT (kg)"},
+            {"37", "V8", "N", "", "COUNT"},
+            {"390", "V15", "N", "D", "AMOUNT"},
+            {"391", "V18", "N", "I", "AMOUNT ISO"},
+            {"392", "V15", "N", "D", "PRICE"},
+            {"393", "V18", "N", "I", "PRICE ISO"},
+            {"400", "V30", "X", "", "ORDER NUMBER"},
+            {"401", "V30", "X", "", "GINC"},
+            {"402", "F17", "N", "", "GSIN"},
+            {"403", "V30", "X", "", "ROUTE"},
+            {"410", "F13", "N", "", "SHIP TO LOC"},
+            {"411", "F13", "N", "", "BILL TO"},
+            {"412", "F13", "N", "", "PURCHASE FROM"},
+            {"413", "F13", "N", "", "SHIP FOR LOC"},
+            {"414", "F13", "N", "", "LOC No."},
+            {"415", "F13", "N", "", "PAY TO"},
+            {"420", "V20", "X", "", "SHIP TO POST"},
+            {"421", "V12", "X", "", "SHIP TO POST ISO"},
+            {"422", "F3", "N", "", "ORIGIN"},
+            {"7003", "F10", "N", "", "EXPIRY TIME"},
+            {"8004", "V30", "X", "", "GIAI"},
+            {"8020", "V25", "X", "", "REF No."},
+            {"90", "V30", "X", "", "INTERNAL"},
+    };
+
+    //AI con dígito de control módulo 10 en su último dígito
+    private static final String[] CHECK_DIGIT_AIS = {"00", "01", "02", "410", "411", "412", "413", "414", "415"};
+
+    private static final Map<String, Definition> DEFINITIONS = new HashMap<>();
+
+    static {
+        for (String[] row : TABLE) {
+            Definition definition = new Definition(row[1].charAt(0) == 'F', Integer.parseInt(row[1].substring(1)),
+                    row[2].equals("N"), !row[3].isEmpty(), row[3].equals("I"), row[4], false);
+            if (definition.decimal) {
+                //El último dígito del AI es el número de decimales
+                for (int n = 0; n <= 9; n++) {
+                    DEFINITIONS.put(row[0] + n, definition);
+                }
+            } else {
+                DEFINITIONS.put(row[0], definition);
+            }
+        }
+        for (String ai : CHECK_DIGIT_AIS) {
+            DEFINITIONS.put(ai, DEFINITIONS.get(ai).withCheckDigit());
+        }
+        for (int ai = 91; ai <= 99; ai++) {
+            DEFINITIONS.put(String.valueOf(ai), new Definition(false, 90, false, false, false, "INTERNAL", false));
+        }
+    }
+
+    private Gs1Parser() {
+    }
+
+    /**
+     * @param text valor de un código
+     * @return true si el valor se declara GS1: empieza por un identificador de simbología GS1, por FNC1 o por un AI
+     * entre paréntesis. Un valor sin marca también puede ser GS1, pero solo se sabe intentando analizarlo.
+     */
+    public static boolean isMarked(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        char first = text.charAt(0);
+        if (first == GS || first == '(') {
+            return first == GS || (text.length() > 3 && Character.isDigit(text.charAt(1)));
+        }
+        for (String identifier : SYMBOLOGY_IDENTIFIERS) {
+            if (text.startsWith(identifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analiza una cadena GS1.
+     * @param text valor del código
+     * @return los elementos de la cadena, o null si no es una cadena GS1 válida: AI desconocido, longitud incorrecta,
+     * caracteres no numéricos en un dato numérico o dígito de control erróneo.
+     */
+    public static Gs1Payload parse(String text) {
+        int start = 0;
+        for (String identifier : SYMBOLOGY_IDENTIFIERS) {
+            if (text.startsWith(identifier)) {
+                start = identifier.length();
+                break;
+            }
+        }
+        if (start < text.length() && text.charAt(start) == GS) {
+            start++;
+        }
+        if (start >= text.length()) {
+            return null;
+        }
+        List<Gs1Payload.Element> elements = text.charAt(start) == '('
+                ? parseHumanReadable(text, start) : parseElementString(text, start);
+        return elements == null || elements.isEmpty() ? null : new Gs1Payload(text, elements);
+    }
+
+    /**
+     * Lee la cadena tal y como está codificada: cada AI seguido de su dato, y los datos de longitud variable
+     * terminados en FNC1 salvo el último.
+     */
+    private static List<Gs1Payload.Element> parseElementString(String text, int position) {
+        List<Gs1Payload.Element> elements = new ArrayList<>();
+        int length = text.length();
+        while (position < length) {
+            String ai = null;
+            Definition definition = null;
+            //Ningún AI es prefijo de otro, por lo que el primero que se encuentra es el correcto
+            for (int aiLength = 2; aiLength <= 4 && position + aiLength <= length; aiLength++) {
+                String candidate = text.substring(position, position + aiLength);
+                definition = DEFINITIONS.get(candidate);
+                if (definition != null) {
+                    ai = candidate;
+                    break;
+                }
+            }
+            if (definition == null) {
+                return null;
+            }
+            position += ai.length();
+            int end;
+            if (definition.fixed) {
+                end = position + definition.length;
+                if (end > length) {
+                    return null;
+                }
+            } else {
+                int separator = text.indexOf(GS, position);
+                end = separator < 0 ? length : separator;
+            }
+            Gs1Payload.Element element = createElement(ai, definition, text.substring(position, end));
+            if (element == null) {
+                return null;
+            }
+            elements.add(element);
+            position = end;
+            //Tras un dato de longitud fija también puede haber FNC1 si el AI no es de longitud predefinida
+            if (position < length && text.charAt(position) == GS) {
+                position++;
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Lee la forma legible, con cada AI entre paréntesis delante de su dato.
+     */
+    private static List<Gs1Payload.Element> parseHumanReadable(String text, int position) {
+        List<Gs1Payload.Element> elements = new ArrayList<>();
+        int length = text.length();
+        while (position < length) {
+            int close = text.indexOf(')', position);
+            if (text.charAt(position) != '(' || close < 0) {
+                return null;
+            }
+            String ai = text.substring(position + 1, close);
+            Definition definition = DEFINITIONS.get(ai);
+            if (definition == null) {
+                return null;
+            }
+            int end = text.indexOf('(', close + 1);
+            if (end < 0) {
+                end = length;
+            }
+            Gs1Payload.Element element = createElement(ai, definition, text.substring(close + 1, end));
+            if (element == null) {
+                return null;
+            }
+            elements.add(element);
+            position = end;
+        }
+        return elements;
+    }
+
+    private static Gs1Payload.Element createElement(String ai, Definition definition, String value) {
+        if (value.isEmpty() || value.length() > definition.length
+                || (definition.fixed && value.length() != definition.length)) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            //GS1 solo permite caracteres imprimibles de ASCII
+            if (c < 0x21 || c > 0x7E || (definition.numeric && (c < '0' || c > '9'))) {
+                return null;
+            }
+        }
+        if (definition.checkDigit && !isCheckDigitValid(value)) {
+            return null;
+        }
+        //El código de moneda va delante de un importe de al menos un dígito
+        if (definition.currency && value.length() <= CURRENCY_LENGTH) {
+            return null;
+        }
+        int decimals = definition.decimal ? ai.charAt(ai.length() - 1) - '0' : -1;
+        return new Gs1Payload.Element(ai, definition.title, value, decimals,
+                definition.currency ? value.substring(0, CURRENCY_LENGTH) : null);
+    }
+
+    /**
+     * @param digits número GS1 (GTIN, SSCC, GLN) con su dígito de control al final
+     * @return true si el dígito de control módulo 10 es correcto
+     */
+    public static boolean isCheckDigitValid(String digits) {
+        int sum = 0;
+        int last = digits.length() - 1;
+        for (int i = last - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            //Peso 3 para el dígito junto al de control y alternando hacia la izquierda
+            sum += (last - i) % 2 == 1 ? digit * 3 : digit;
+        }
+        return (10 - sum % 10) % 10 == digits.charAt(last) - '0';
+    }
+
+    /**
+     * Definición de un AI en la tabla.
+     */
+    private static final class Definition {
+        final boolean fixed;
+        final int length;
+        final boolean numeric;
+        final boolean decimal;
+        final boolean currency;
+        final String title;
+        final boolean checkDigit;
+
+        Definition(boolean fixed, int length, boolean numeric, boolean decimal, boolean currency, String title,
+                   boolean checkDigit) {
+            this.fixed = fixed;
+            this.length = length;
+            this.numeric = numeric;
+            this.decimal = decimal;
+            this.currency = currency;
+            this.title = title;
+            this.checkDigit = checkDigit;
+        }
+
+        Definition withCheckDigit() {
+            return new Definition(fixed, length, numeric, decimal, currency, title, true);
+        }
+    }
+}
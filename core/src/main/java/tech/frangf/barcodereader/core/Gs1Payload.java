@@ -0,0 +1,200 @@
+package tech.frangf.barcodereader.core;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cadena GS1 analizada por Gs1Parser: la lista de identificadores de aplicación (AI) con sus datos, en el orden en
+ * que aparecen en el código.
+ */
+public final class Gs1Payload extends ParsedPayload {
+    /**
+     * Un AI con su dato.
+     */
+    public static final class Element {
+        private final String ai;
+        private final String title;
+        private final String value;
+        private final int decimals;
+        private final String currency;
+
+        Element(String ai, String title, String value, int decimals, String currency) {
+            this.ai = ai;
+            this.title = title;
+            this.value = value;
+            this.decimals = decimals;
+            this.currency = currency;
+        }
+
+        /**
+         * @return el identificador de aplicación, por ejemplo "01" o "3103".
+         */
+        public String getAi() {
+            return ai;
+        }
+
+        /**
+         * @return el nombre abreviado del AI según GS1, por ejemplo "GTIN" o "NET WEIGHT (kg)".
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return los decimales implícitos del dato, indicados por el último dígito del AI en las medidas e importes,
+         * o -1 si el dato no es una cantidad.
+         */
+        public int getDecimals() {
+            return decimals;
+        }
+
+        /**
+         * @return el código de moneda ISO 4217 con el que empieza el dato de los importes 391n y 393n, por ejemplo
+         * "978" para euros, o null si el AI no lo lleva.
+         */
+        public String getCurrency() {
+            return currency;
+        }
+
+        /**
+         * @return el dato como cantidad con sus decimales, por ejemplo 1.250 para el AI 3103 con dato 001250, sin el
+         * código de moneda en los AI que lo llevan, o null si el dato no es una cantidad.
+         */
+        public BigDecimal getDecimalValue() {
+            if (decimals < 0) {
+                return null;
+            }
+            String amount = currency == null ? value : value.substring(currency.length());
+            return new BigDecimal(amount).movePointLeft(decimals);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Element)) return false;
+            Element that = (Element) o;
+            return ai.equals(that.ai) && value.equals(that.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return ai.hashCode() * 31 + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + ai + ")" + value;
+        }
+    }
+
+    private final List<Element> elements;
+
+    Gs1Payload(String rawValue, List<Element> elements) {
+        super(rawValue);
+        this.elements = Collections.unmodifiableList(elements);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.GS1;
+    }
+
+    /**
+     * @return los AI con sus datos, en el orden del código.
+     */
+    public List<Element> getElements() {
+        return elements;
+    }
+
+    /**
+     * @param ai identificador de aplicación, con el dígito de decimales incluido si lo tiene (por ejemplo "3103")
+     * @return el primer elemento con ese AI, o null si no está.
+     */
+    public Element getElement(String ai) {
+        for (Element element : elements) {
+            if (element.ai.equals(ai)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param ai identificador de aplicación
+     * @return el dato del primer elemento con ese AI, o null si no está.
+     */
+    public String get(String ai) {
+        Element element = getElement(ai);
+        return element == null ? null : element.value;
+    }
+
+    /**
+     * @return el GTIN del artículo (AI 01), o null si no está.
+     */
+    public String getGtin() {
+        return get("01");
+    }
+
+    /**
+     * @return el SSCC de la unidad logística (AI 00), o null si no está.
+     */
+    public String getSscc() {
+        return get("00");
+    }
+
+    /**
+     * @return el lote (AI 10), o null si no está.
+     */
+    public String getBatch() {
+        return get("10");
+    }
+
+    /**
+     * @return el número de serie (AI 21), o null si no está.
+     */
+    public String getSerial() {
+        return get("21");
+    }
+
+    /**
+     * @return la fecha de caducidad (AI 17) en formato AAMMDD, donde el día 00 es el último del mes, o null si no
+     * está.
+     */
+    public String getExpiryDate() {
+        return get("17");
+    }
+
+    /**
+     * @return la cadena normalizada en su forma legible, con cada AI entre paréntesis, por ejemplo
+     * "(01)09501101530003(10)AB12".
+     */
+    public String toHumanReadable() {
+        StringBuilder builder = new StringBuilder();
+        for (Element element : elements) {
+            builder.append('(').append(element.ai).append(')').append(element.value);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Gs1Payload)) return false;
+        return elements.equals(((Gs1Payload) o).elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return elements.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Gs1Payload[" + toHumanReadable() + "]";
+    }
+}
@@ -0,0 +1,18 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Carga la luminancia de un fichero de imagen para decodificarla con BulkDecoder.
+ * En el host se usa ImageIoImageLoader; en Android, uno basado en BitmapFactory.
+ * Las implementaciones deben permitir llamadas a load desde varios hilos a la vez.
+ */
+public interface ImageLoader {
+    /**
+     * @param file fichero de imagen
+     * @return la luminancia de la imagen, con la rotación necesaria para verla derecha
+     * @throws IOException si el fichero no se puede leer o no es una imagen
+     */
+    LuminanceImage load(File file) throws IOException;
+}
@@ -0,0 +1,13 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Obtiene la clave que identifica a un código leído, por ejemplo su formato y valor.
+ * @param <T> tipo de código
+ */
+public interface KeyFunction<T> {
+    /**
+     * @param code código leído
+     * @return clave que identifica al código
+     */
+    String keyOf(T code);
+}
@@ -0,0 +1,176 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plano de luminancia (Y) de una imagen tal y como lo entrega el sensor, sin girar, con su rotación.
+ * Es una vista sobre un buffer que no se copia: respeta rowStride y pixelStride, como los planos de YUV_420_888.
+ * Se puede reutilizar entre frames con set() para no reservar memoria.
+ */
+public final class LuminanceImage {
+    private ByteBuffer buffer;
+    private int offset;
+    private int width;
+    private int height;
+    private int rowStride;
+    private int pixelStride;
+    private int rotationDegrees;
+
+    /**
+     * Crea una imagen vacía que se debe inicializar con set().
+     */
+    public LuminanceImage() {
+    }
+
+    /**
+     * Crea una imagen sobre un array de luminancia sin relleno entre filas.
+     * @param data luminancia, width * height bytes fila a fila
+     * @param width ancho en píxeles
+     * @param height alto en píxeles
+     * @param rotationDegrees rotación (0, 90, 180 o 270) necesaria para ver la imagen derecha
+     */
+    public LuminanceImage(byte[] data, int width, int height, int rotationDegrees) {
+        set(ByteBuffer.wrap(data), 0, width, height, width, 1, rotationDegrees);
+    }
+
+    /**
+     * Apunta la imagen a un nuevo buffer.
+     * @param buffer buffer con la luminancia; se lee con accesos absolutos, sin modificar su posición
+     * @param offset posición del primer píxel dentro del buffer
+     * @param width ancho en píxeles
+     * @param height alto en píxeles
+     * @param rowStride bytes entre el inicio de dos filas consecutivas
+     * @param pixelStride bytes entre dos píxeles consecutivos de una fila
+     * @param rotationDegrees rotación (0, 90, 180 o 270) necesaria para ver la imagen derecha
+     * @return esta misma imagen
+     */
+    public LuminanceImage set(ByteBuffer buffer, int offset, int width, int height, int rowStride, int pixelStride,
+                              int rotationDegrees) {
+        if (width <= 0 || height <= 0 || rowStride < width * pixelStride || pixelStride < 1) {
+            throw new IllegalArgumentException("Dimensiones no válidas: " + width + "x" + height
+                    + " rowStride=" + rowStride + " pixelStride=" + pixelStride);
+        }
+        if (rotationDegrees % 90 != 0 || rotationDegrees < 0 || rotationDegrees >= 360) {
+            throw new IllegalArgumentException("Rotación no soportada: " + rotationDegrees);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.rotationDegrees = rotationDegrees;
+        return this;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * @return ancho de la imagen derecha, una vez aplicada la rotación.
+     */
+    public int getUprightWidth() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+    }
+
+    /**
+     * @return alto de la imagen derecha, una vez aplicada la rotación.
+     */
+    public int getUprightHeight() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    }
+
+    /**
+     * @return true si las filas están contiguas y sin relleno, de forma que el buffer se puede usar tal cual.
+     */
+    public boolean isPacked() {
+        return rowStride == width && pixelStride == 1;
+    }
+
+    /**
+     * @param x columna en coordenadas del sensor
+     * @param y fila en coordenadas del sensor
+     * @return la luminancia del píxel, entre 0 y 255
+     */
+    public int getLuminance(int x, int y) {
+        return buffer.get(offset + y * rowStride + x * pixelStride) & 0xFF;
+    }
+
+    /**
+     * Copia la luminancia sin girar ni relleno entre filas.
+     * @param dst destino de al menos width * height bytes
+     */
+    public void copyPacked(byte[] dst) {
+        if (pixelStride == 1) {
+            ByteBuffer source = buffer.duplicate();
+            for (int y = 0; y < height; y++) {
+                source.position(offset + y * rowStride);
+                source.get(dst, y * width, width);
+            }
+        } else {
+            int out = 0;
+            for (int y = 0; y < height; y++) {
+                int in = offset + y * rowStride;
+                for (int x = 0; x < width; x++) {
+                    dst[out++] = buffer.get(in);
+                    in += pixelStride;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copia la luminancia aplicando la rotación, de forma que el destino contiene la imagen derecha
+     * de getUprightWidth() x getUprightHeight() píxeles.
+     * @param dst destino de al menos width * height bytes
+     */
+    public void copyUpright(byte[] dst) {
+        if (rotationDegrees == 0) {
+            copyPacked(dst);
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            int in = offset + y * rowStride;
+            for (int x = 0; x < width; x++) {
+                byte value = buffer.get(in);
+                in += pixelStride;
+                switch (rotationDegrees) {
+                    case 90:
+                        dst[x * height + (height - 1 - y)] = value;
+                        break;
+                    case 180:
+                        dst[(height - 1 - y) * width + (width - 1 - x)] = value;
+                        break;
+                    default:
+                        dst[(width - 1 - x) * height + y] = value;
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BarcodeDecoder en dos escalas para códigos pequeños o lejanos en frames grandes.
+ * Primero una pasada barata sobre una muestra de los píxeles (CodeRegionDetector) marca los bloques con aspecto de
+ * código; los bloques vecinos se agrupan en teselas, con un bloque de margen para la zona en blanco, y solo esas
+ * teselas se decodifican a resolución completa, en paralelo. Las teselas que se solapan o se tocan se unen antes de
+ * decodificar y los códigos repetidos con el mismo valor y rectángulos que se cortan se entregan una sola vez, con
+ * las coordenadas de la imagen derecha completa.
+ * Si las teselas cubren buena parte del frame se decodifica el frame entero, que es más barato.
+ * No cierra el decodificador que envuelve.
+ */
+public final class MultiScaleDecoder implements BarcodeDecoder {
+    /**
+     * Lado de los bloques de la pasada de detección, en píxeles del sensor.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+    /**
+     * Fracción del frame a partir de la cual las teselas se sustituyen por el frame entero.
+     */
+    public static final float DEFAULT_MAX_TILE_AREA = 0.5f;
+    public static final int DEFAULT_MAX_TILES = 16;
+
+    private final BarcodeDecoder decoder;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int blockSize;
+    private final float maxTileArea;
+    private final int maxTiles;
+    private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong emptyFrames = new AtomicLong();
+    private final AtomicLong fullFrameDecodes = new AtomicLong();
+    private final AtomicLong tilesDecoded = new AtomicLong();
+    private final AtomicLong tilePixels = new AtomicLong();
+    private final AtomicLong framePixels = new AtomicLong();
+
+    /**
+     * Crea un decodificador multiescala con la configuración por defecto.
+     * @param decoder decodificador de cada tesela, que debe permitir llamadas desde varios hilos
+     * @param parallelism teselas que se decodifican a la vez; con 1 se decodifican en el hilo que llama
+     */
+    public MultiScaleDecoder(BarcodeDecoder decoder, int parallelism) {
+        this(decoder, parallelism, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_TILE_AREA, DEFAULT_MAX_TILES);
+    }
+
+    /**
+     * @param decoder decodificador de cada tesela, que debe permitir llamadas desde varios hilos
+     * @param parallelism teselas que se decodifican a la vez; con 1 se decodifican en el hilo que llama
+     * @param blockSize lado de los bloques de la pasada de detección
+     * @param maxTileArea fracción del frame a partir de la cual se decodifica el frame entero
+     * @param maxTiles teselas a partir de las cuales se decodifica el frame entero
+     */
+    public MultiScaleDecoder(BarcodeDecoder decoder, int parallelism, int blockSize, float maxTileArea, int maxTiles) {
+        this(decoder, newTileExecutor(parallelism), true, blockSize, maxTileArea, maxTiles);
+    }
+
+    /**
+     * Crea un decodificador multiescala con la configuración por defecto que decodifica las teselas en un executor
+     * compartido, por ejemplo entre los decodificadores de varios escáneres. close() no lo para.
+     * @param decoder decodificador de cada tesela, que debe permitir llamadas desde varios hilos
+     * @param tileExecutor executor de newTileExecutor(), o null para decodificar las teselas en el hilo que llama
+     */
+    public MultiScaleDecoder(BarcodeDecoder decoder, ExecutorService tileExecutor) {
+        this(decoder, tileExecutor, false, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_TILE_AREA, DEFAULT_MAX_TILES);
+    }
+
+    private MultiScaleDecoder(BarcodeDecoder decoder, ExecutorService executor, boolean ownsExecutor, int blockSize,
+                              float maxTileArea, int maxTiles) {
+        if (blockSize < 8 || maxTileArea <= 0 || maxTiles < 1) {
+            throw new IllegalArgumentException("Parámetros no válidos: blockSize=" + blockSize + ", maxTileArea="
+                    + maxTileArea + ", maxTiles=" + maxTiles);
+        }
+        this.decoder = decoder;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.blockSize = blockSize;
+        this.maxTileArea = maxTileArea;
+        this.maxTiles = maxTiles;
+    }
+
+    /**
+     * Crea los hilos de las teselas. El hilo que llama a decode también decodifica una tesela, por lo que tiene
+     * parallelism - 1 hilos.
+     * @param parallelism teselas que se decodifican a la vez, al menos 1
+     * @return el executor, que se debe parar con shutdown(), o null si parallelism es 1
+     */
+    public static ExecutorService newTileExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism debe ser al menos 1: " + parallelism);
+        }
+        if (parallelism == 1) {
+            return null;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism - 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "tile-decoder-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return el decodificador que se utiliza en cada tesela.
+     */
+    public BarcodeDecoder getDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public List<DecodedBarcode> decode(LuminanceImage image) throws BarcodeDecoderException {
+        frames.incrementAndGet();
+        framePixels.addAndGet((long) image.getWidth() * image.getHeight());
+        List<CropRect> tiles = searches.get().findTiles(image, blockSize);
+        if (tiles.isEmpty()) {
+            emptyFrames.incrementAndGet();
+            return new ArrayList<>();
+        }
+        long area = 0;
+        for (CropRect tile : tiles) {
+            area += (long) tile.getWidth() * tile.getHeight();
+        }
+        if (tiles.size() > maxTiles || area > maxTileArea * image.getWidth() * image.getHeight()) {
+            fullFrameDecodes.incrementAndGet();
+            tilePixels.addAndGet((long) image.getWidth() * image.getHeight());
+            return decoder.decode(image);
+        }
+        tilesDecoded.addAndGet(tiles.size());
+        tilePixels.addAndGet(area);
+        List<List<DecodedBarcode>> results = decodeTiles(image, tiles);
+        List<DecodedBarcode> merged = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            for (DecodedBarcode barcode : results.get(i)) {
+                DecodedBarcode translated = BulkDecoder.translate(barcode, image, tiles.get(i));
+                if (!isDuplicate(merged, translated)) {
+                    merged.add(translated);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Obtiene las teselas que se decodificarían en la imagen, sin decodificarlas.
+     * @param image luminancia a analizar
+     * @return las teselas en coordenadas del buffer sin girar, separadas entre sí
+     */
+    public List<CropRect> findTiles(LuminanceImage image) {
+        return new ArrayList<>(searches.get().findTiles(image, blockSize));
+    }
+
+    private List<List<DecodedBarcode>> decodeTiles(LuminanceImage image, List<CropRect> tiles)
+            throws BarcodeDecoderException {
+        List<List<DecodedBarcode>> results = new ArrayList<>(tiles.size());
+        if (executor == null || tiles.size() == 1) {
+            LuminanceImage view = new LuminanceImage();
+            for (CropRect tile : tiles) {
+                results.add(decoder.decode(BulkDecoder.view(image, tile, view)));
+            }
+            return results;
+        }
+        List<Future<List<DecodedBarcode>>> futures = new ArrayList<>(tiles.size() - 1);
+        for (int i = 1; i < tiles.size(); i++) {
+            CropRect tile = tiles.get(i);
+            Callable<List<DecodedBarcode>> task =
+                    () -> decoder.decode(BulkDecoder.view(image, tile, new LuminanceImage()));
+            try {
+                futures.add(executor.submit(task));
+            } catch (RejectedExecutionException e) {
+                //Decodificador cerrado mientras se usaba: se termina el frame en este hilo
+                futures.add(null);
+            }
+        }
+        results.add(decoder.decode(BulkDecoder.view(image, tiles.get(0), new LuminanceImage())));
+        BarcodeDecoderException error = null;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<DecodedBarcode>> future = futures.get(i);
+            try {
+                results.add(future != null ? future.get()
+                        : decoder.decode(BulkDecoder.view(image, tiles.get(i + 1), new LuminanceImage())));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (error == null) {
+                    error = cause instanceof BarcodeDecoderException ? (BarcodeDecoderException) cause
+                            : new BarcodeDecoderException("Error al decodificar una tesela", cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BarcodeDecoderException("Decodificación interrumpida", e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    /**
+     * @return true si ya hay un código con el mismo formato y valor cuyo rectángulo se corta con el del nuevo.
+     */
+    private static boolean isDuplicate(List<DecodedBarcode> barcodes, DecodedBarcode candidate) {
+        for (DecodedBarcode barcode : barcodes) {
+            if (barcode.getFormat() != candidate.getFormat() || !sameValue(barcode, candidate)) {
+                continue;
+            }
+            BoundingBox a = barcode.getBoundingBox();
+            BoundingBox b = candidate.getBoundingBox();
+            if (a == null || b == null || (a.getLeft() <= b.getRight() && b.getLeft() <= a.getRight()
+                    && a.getTop() <= b.getBottom() && b.getTop() <= a.getBottom())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameValue(DecodedBarcode a, DecodedBarcode b) {
+        if (a.getRawValue() != null || b.getRawValue() != null) {
+            return a.getRawValue() != null && a.getRawValue().equals(b.getRawValue());
+        }
+        return Arrays.equals(a.getRawBytes(), b.getRawBytes());
+    }
+
+    /**
+     * @return frames decodificados.
+     */
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * @return frames sin ninguna zona con aspecto de código, en los que no se ha llamado al decodificador.
+     */
+    public long getEmptyFrameCount() {
+        return emptyFrames.get();
+    }
+
+    /**
+     * @return frames en los que se ha decodificado el frame entero por tener demasiadas teselas.
+     */
+    public long getFullFrameDecodeCount() {
+        return fullFrameDecodes.get();
+    }
+
+    /**
+     * @return teselas decodificadas a resolución completa.
+     */
+    public long getTileCount() {
+        return tilesDecoded.get();
+    }
+
+    /**
+     * @return fracción de los píxeles de los frames que ha recibido el decodificador, entre 0 y 1.
+     */
+    public double getDecodedPixelRatio() {
+        long total = framePixels.get();
+        return total == 0 ? 0 : (double) tilePixels.get() / total;
+    }
+
+    /**
+     * Para los hilos de las teselas, salvo si el executor es compartido. El decodificador envuelto no se cierra.
+     */
+    @Override
+    public void close() {
+        if (executor != null && ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Estado de la pasada de detección de cada hilo, reutilizado entre frames.
+     */
+    private static final class Search {
+        private CodeRegionDetector detector;
+        private boolean[] marks = new boolean[0];
+        private boolean[] visited = new boolean[0];
+        private int[] stack = new int[0];
+        private final List<CropRect> tiles = new ArrayList<>();
+
+        List<CropRect> findTiles(LuminanceImage image, int blockSize) {
+            if (detector == null || detector.getBlockSize() != blockSize) {
+                detector = new CodeRegionDetector(blockSize, 2, 48, 1.5f, 1);
+            }
+            tiles.clear();
+            int columns = detector.getColumns(image);
+            int rows = detector.getRows(image);
+            int blocks = columns * rows;
+            if (marks.length < blocks) {
+                marks = new boolean[blocks];
+                visited = new boolean[blocks];
+                stack = new int[blocks];
+            }
+            if (detector.markCodeBlocks(image, marks) == 0) {
+                return tiles;
+            }
+            Arrays.fill(visited, 0, blocks, false);
+            for (int start = 0; start < blocks; start++) {
+                if (!marks[start] || visited[start]) {
+                    continue;
+                }
+                //Relleno por inundación de los bloques marcados vecinos, incluidas las diagonales
+                int minColumn = columns;
+                int maxColumn = -1;
+                int minRow = rows;
+                int maxRow = -1;
+                int size = 0;
+                stack[size++] = start;
+                visited[start] = true;
+                while (size > 0) {
+                    int block = stack[--size];
+                    int row = block / columns;
+                    int column = block % columns;
+                    minColumn = Math.min(minColumn, column);
+                    maxColumn = Math.max(maxColumn, column);
+                    minRow = Math.min(minRow, row);
+                    maxRow = Math.max(maxRow, row);
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int dx = -1; dx <= 1; dx++) {
+                            int r = row + dy;
+                            int c = column + dx;
+                            if (r < 0 || r >= rows || c < 0 || c >= columns) {
+                                continue;
+                            }
+                            int next = r * columns + c;
+                            if (marks[next] && !visited[next]) {
+                                visited[next] = true;
+                                stack[size++] = next;
+                            }
+                        }
+                    }
+                }
+                //Un bloque de margen alrededor para la zona en blanco y las partes del código sin transiciones
+                int left = Math.max(0, (minColumn - 1) * blockSize);
+                int top = Math.max(0, (minRow - 1) * blockSize);
+                int right = Math.min(image.getWidth(), (maxColumn + 2) * blockSize);
+                int bottom = Math.min(image.getHeight(), (maxRow + 2) * blockSize);
+                add(new CropRect(left, top, right - left, bottom - top));
+            }
+            return tiles;
+        }
+
+        /**
+         * Añade la tesela uniéndola con las que se solapan o se tocan, ya que un código puede quedar partido entre
+         * dos teselas vecinas. Se repite hasta que ninguna tesela se solapa ni se toca con otra.
+         */
+        private void add(CropRect tile) {
+            CropRect merged = tile;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = 0; i < tiles.size(); i++) {
+                    CropRect other = tiles.get(i);
+                    if (merged.getLeft() <= other.getRight() && other.getLeft() <= merged.getRight()
+                            && merged.getTop() <= other.getBottom() && other.getTop() <= merged.getBottom()) {
+                        int left = Math.min(merged.getLeft(), other.getLeft());
+                        int top = Math.min(merged.getTop(), other.getTop());
+                        merged = new CropRect(left, top, Math.max(merged.getRight(), other.getRight()) - left,
+                                Math.max(merged.getBottom(), other.getBottom()) - top);
+                        tiles.remove(i);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            tiles.add(merged);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Contenido de un código leído interpretado según su tipo: texto, URL, red Wi-Fi, contacto o cadena GS1.
+ * Lo obtiene PayloadParser a partir del valor en bruto del código. Las subclases son inmutables y se pueden
+ * compartir entre hilos, por lo que PayloadParser entrega la misma instancia a todas las lecturas del mismo código.
+ */
+public abstract class ParsedPayload {
+    /**
+     * Tipo de contenido.
+     */
+    public enum Type {
+        /**
+         * Texto sin estructura reconocida: TextPayload.
+         */
+        TEXT,
+        /**
+         * Dirección web: UrlPayload.
+         */
+        URL,
+        /**
+         * Configuración de una red Wi-Fi: WifiPayload.
+         */
+        WIFI,
+        /**
+         * Tarjeta de contacto vCard o MECARD: ContactPayload.
+         */
+        CONTACT,
+        /**
+         * Cadena de identificadores de aplicación GS1: Gs1Payload.
+         */
+        GS1
+    }
+
+    private final String rawValue;
+
+    ParsedPayload(String rawValue) {
+        this.rawValue = rawValue;
+    }
+
+    /**
+     * @return el tipo de contenido, que indica la subclase.
+     */
+    public abstract Type getType();
+
+    /**
+     * @return el valor del código tal y como se ha interpretado.
+     */
+    public String getRawValue() {
+        return rawValue;
+    }
+}
@@ -0,0 +1,208 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interpreta el contenido de los códigos leídos como texto, URL, red Wi-Fi, contacto o cadena GS1 (ParsedPayload).
+ * Los resultados se guardan en una caché LRU de tamaño fijo cuya clave son el formato y los bytes en bruto del
+ * código, de forma que las lecturas repetidas de la misma etiqueta no se vuelven a analizar. Es seguro llamarlo
+ * desde varios hilos, y está pensado para llamarse en el hilo de decodificación y no en el principal.
+ */
+public final class PayloadParser {
+    private final int capacity;
+    private final Map<Key, ParsedPayload> cache;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity número máximo de códigos analizados que se recuerdan
+     */
+    public PayloadParser(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity debe ser mayor que 0: " + capacity);
+        }
+        this.capacity = capacity;
+        cache = new LinkedHashMap<Key, ParsedPayload>(capacity * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ParsedPayload> eldest) {
+                if (size() > PayloadParser.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Interpreta un código, usando el resultado de la caché si ya se ha analizado.
+     * @param barcode código leído
+     * @return el contenido interpretado; nunca null, como mucho un TextPayload
+     */
+    public ParsedPayload parse(DecodedBarcode barcode) {
+        String rawValue = barcode.getRawValue();
+        byte[] rawBytes = barcode.getRawBytes();
+        Key key = new Key(barcode.getFormat(), rawBytes != null ? rawBytes
+                : rawValue == null ? new byte[0] : rawValue.getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            ParsedPayload payload = cache.get(key);
+            if (payload != null) {
+                hits++;
+                return payload;
+            }
+            misses++;
+        }
+        //Se analiza fuera del bloqueo; si dos hilos analizan a la vez el mismo código el resultado es el mismo
+        String text = rawValue != null ? rawValue
+                : rawBytes == null ? "" : new String(rawBytes, StandardCharsets.ISO_8859_1);
+        ParsedPayload payload = parse(barcode.getFormat(), text);
+        synchronized (this) {
+            //Copia de los bytes por si el motor reutiliza el array
+            cache.put(rawBytes != null ? new Key(barcode.getFormat(), rawBytes.clone()) : key, payload);
+        }
+        return payload;
+    }
+
+    /**
+     * Interpreta el valor de un código, sin caché.
+     * @param format formato del código; en CODE_128 y DATA_MATRIX un valor sin marca GS1 que empieza por SSCC o GTIN
+     *               con dígito de control correcto se interpreta como GS1
+     * @param text valor del código
+     * @return el contenido interpretado; nunca null, como mucho un TextPayload
+     */
+    public static ParsedPayload parse(BarcodeFormat format, String text) {
+        ParsedPayload payload = null;
+        if (Gs1Parser.isMarked(text)) {
+            payload = Gs1Parser.parse(text);
+        } else if (text.regionMatches(true, 0, "WIFI:", 0, 5)) {
+            payload = WifiPayload.parse(text);
+        } else if (text.regionMatches(true, 0, "MECARD:", 0, 7) || text.regionMatches(true, 0, "BEGIN:VCARD", 0, 11)) {
+            payload = ContactPayload.parse(text);
+        } else if (format == BarcodeFormat.CODE_128 || format == BarcodeFormat.DATA_MATRIX) {
+            Gs1Payload gs1 = Gs1Parser.parse(text);
+            //Sin marca solo se acepta si empieza por un AI con dígito de control, que descarta casi todo el texto libre
+            if (gs1 != null && gs1.getElements().get(0).getAi().startsWith("0")) {
+                payload = gs1;
+            }
+        }
+        if (payload == null) {
+            payload = UrlPayload.parse(text);
+        }
+        return payload == null ? new TextPayload(text) : payload;
+    }
+
+    /**
+     * Separa los campos de un valor con el formato CLAVE:valor;CLAVE:valor;; de MECARD y WIFI, en el que '\' escapa
+     * los caracteres especiales.
+     * @param body valor sin el prefijo (MECARD:, WIFI:)
+     * @return pares {clave, valor} con el valor ya sin escapes
+     */
+    static List<String[]> splitFields(String body) {
+        List<String[]> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        String key = null;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\' && i + 1 < body.length()) {
+                current.append(body.charAt(++i));
+            } else if (c == ':' && key == null) {
+                key = current.toString();
+                current.setLength(0);
+            } else if (c == ';') {
+                if (key != null) {
+                    fields.add(new String[]{key, current.toString()});
+                }
+                key = null;
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (key != null) {
+            fields.add(new String[]{key, current.toString()});
+        }
+        return fields;
+    }
+
+    /**
+     * Olvida todos los códigos analizados.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return número de códigos analizados que se recuerdan actualmente.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return códigos cuyo contenido se ha obtenido de la caché.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return códigos que se han tenido que analizar.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return códigos expulsados de la caché por falta de espacio.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PayloadParser{size=" + cache.size() + ", hits=" + hits + ", misses=" + misses + ", evictions="
+                + evictions + '}';
+    }
+
+    /**
+     * Clave de la caché: formato y bytes en bruto del código.
+     */
+    private static final class Key {
+        private final BarcodeFormat format;
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(BarcodeFormat format, byte[] bytes) {
+            this.format = format;
+            this.bytes = bytes;
+            hash = Arrays.hashCode(bytes) * 31 + format.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return hash == that.hash && format == that.format && Arrays.equals(bytes, that.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
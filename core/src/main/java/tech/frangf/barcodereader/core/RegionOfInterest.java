@@ -0,0 +1,84 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Región de interés normalizada (valores entre 0 y 1) en coordenadas de la vista previa, es decir,
+ * sobre la imagen ya girada tal y como la ve el usuario.
+ */
+public final class RegionOfInterest {
+    /**
+     * Región que ocupa todo el frame.
+     */
+    public static final RegionOfInterest FULL = new RegionOfInterest(0f, 0f, 1f, 1f);
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+
+    /**
+     * @param left borde izquierdo normalizado
+     * @param top borde superior normalizado
+     * @param right borde derecho normalizado, mayor que left
+     * @param bottom borde inferior normalizado, mayor que top
+     */
+    public RegionOfInterest(float left, float top, float right, float bottom) {
+        if (!(left >= 0f && top >= 0f && right <= 1f && bottom <= 1f && left < right && top < bottom)) {
+            throw new IllegalArgumentException(
+                    "Región normalizada no válida: [" + left + ", " + top + ", " + right + ", " + bottom + "]");
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * Crea una región centrada, como la de una retícula en el centro de la vista previa.
+     * @param width ancho normalizado de la región
+     * @param height alto normalizado de la región
+     * @return la región centrada
+     */
+    public static RegionOfInterest centered(float width, float height) {
+        float horizontalMargin = (1f - width) / 2f;
+        float verticalMargin = (1f - height) / 2f;
+        return new RegionOfInterest(horizontalMargin, verticalMargin, 1f - horizontalMargin, 1f - verticalMargin);
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RegionOfInterest)) return false;
+        RegionOfInterest that = (RegionOfInterest) o;
+        return left == that.left && top == that.top && right == that.right && bottom == that.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(left);
+        result = 31 * result + Float.floatToIntBits(top);
+        result = 31 * result + Float.floatToIntBits(right);
+        result = 31 * result + Float.floatToIntBits(bottom);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionOfInterest[" + left + ", " + top + ", " + right + ", " + bottom + "]";
+    }
+}
@@ -0,0 +1,221 @@
+package tech.frangf.barcodereader.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Recorta la región de interés del plano de luminancia (Y) de un frame YUV_420_888.
+ * El resultado se escribe en un buffer reutilizable con formato NV21: la luminancia recortada seguida de un plano
+ * de crominancia neutro, de forma que se puede pasar directamente al decodificador sin reservar memoria en cada frame.
+ * No es thread-safe: cada frame en proceso necesita su propio RoiCropper.
+ */
+public final class RoiCropper {
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+    private static final byte[] NEUTRAL_CHROMA_BLOCK = new byte[4096];
+    static {
+        Arrays.fill(NEUTRAL_CHROMA_BLOCK, NEUTRAL_CHROMA);
+    }
+    //Margen para que los errores de redondeo de float no desplacen un píxel los bordes exactos
+    private static final float EPSILON = 1e-3f;
+
+    private byte[] buffer = new byte[0];
+    private int width;
+    private int height;
+
+    /**
+     * Transforma una región normalizada de la vista previa en un rectángulo sobre el buffer del sensor.
+     * Tiene en cuenta la rotación del frame y que la vista previa muestra la imagen escalada para rellenar
+     * la vista y centrada (FILL_CENTER), por lo que parte de la imagen queda fuera de la vista.
+     * El rectángulo resultante tiene origen y tamaño pares, como exige el submuestreo de crominancia de NV21.
+     * @param roi región normalizada en coordenadas de la vista previa
+     * @param imageWidth ancho del buffer del sensor
+     * @param imageHeight alto del buffer del sensor
+     * @param rotationDegrees rotación del frame (0, 90, 180 o 270)
+     * @param viewWidth ancho de la vista previa, o 0 si la vista muestra el frame completo
+     * @param viewHeight alto de la vista previa, o 0 si la vista muestra el frame completo
+     * @return el rectángulo a recortar en coordenadas del sensor
+     */
+    public static CropRect mapToSensor(RegionOfInterest roi, int imageWidth, int imageHeight, int rotationDegrees,
+                                       int viewWidth, int viewHeight) {
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = swapped ? imageHeight : imageWidth;
+        int uprightHeight = swapped ? imageWidth : imageHeight;
+
+        float left = roi.getLeft();
+        float top = roi.getTop();
+        float right = roi.getRight();
+        float bottom = roi.getBottom();
+        if (viewWidth > 0 && viewHeight > 0) {
+            //La vista muestra la parte central de la imagen escalada, se pasa de coordenadas de la vista a la imagen
+            float scale = Math.max((float) viewWidth / uprightWidth, (float) viewHeight / uprightHeight);
+            float offsetX = (uprightWidth * scale - viewWidth) / 2f;
+            float offsetY = (uprightHeight * scale - viewHeight) / 2f;
+            float scaledWidth = uprightWidth * scale;
+            float scaledHeight = uprightHeight * scale;
+            left = (left * viewWidth + offsetX) / scaledWidth;
+            right = (right * viewWidth + offsetX) / scaledWidth;
+            top = (top * viewHeight + offsetY) / scaledHeight;
+            bottom = (bottom * viewHeight + offsetY) / scaledHeight;
+        }
+
+        //Se deshace la rotación: de la imagen derecha al buffer del sensor
+        float sensorLeft;
+        float sensorTop;
+        float sensorRight;
+        float sensorBottom;
+        switch (rotationDegrees) {
+            case 0:
+                sensorLeft = left;
+                sensorTop = top;
+                sensorRight = right;
+                sensorBottom = bottom;
+                break;
+            case 90:
+                sensorLeft = top;
+                sensorTop = 1f - right;
+                sensorRight = bottom;
+                sensorBottom = 1f - left;
+                break;
+            case 180:
+                sensorLeft = 1f - right;
+                sensorTop = 1f - bottom;
+                sensorRight = 1f - left;
+                sensorBottom = 1f - top;
+                break;
+            case 270:
+                sensorLeft = 1f - bottom;
+                sensorTop = left;
+                sensorRight = 1f - top;
+                sensorBottom = right;
+                break;
+            default:
+                throw new IllegalArgumentException("Rotación no soportada: " + rotationDegrees);
+        }
+
+        int x0 = clamp((int) Math.floor(sensorLeft * imageWidth + EPSILON), 0, imageWidth) & ~1;
+        int y0 = clamp((int) Math.floor(sensorTop * imageHeight + EPSILON), 0, imageHeight) & ~1;
+        int x1 = clamp((int) Math.ceil(sensorRight * imageWidth - EPSILON), 0, imageWidth);
+        int y1 = clamp((int) Math.ceil(sensorBottom * imageHeight - EPSILON), 0, imageHeight);
+        int cropWidth = Math.max(2, (x1 - x0) & ~1);
+        int cropHeight = Math.max(2, (y1 - y0) & ~1);
+        x0 = Math.min(x0, (imageWidth - cropWidth) & ~1);
+        y0 = Math.min(y0, (imageHeight - cropHeight) & ~1);
+        return new CropRect(x0, y0, cropWidth, cropHeight);
+    }
+
+    /**
+     * Copia la región indicada del plano Y al buffer interno, fila a fila, respetando rowStride y pixelStride.
+     * @param plane plano Y del frame; al terminar conserva su posición
+     * @param rowStride bytes entre el inicio de dos filas consecutivas
+     * @param pixelStride bytes entre dos píxeles consecutivos de una fila
+     * @param rect rectángulo a recortar en coordenadas del sensor
+     * @return el buffer interno en formato NV21, válido hasta la siguiente llamada a crop
+     */
+    public byte[] crop(ByteBuffer plane, int rowStride, int pixelStride, CropRect rect) {
+        int cropWidth = rect.getWidth();
+        int cropHeight = rect.getHeight();
+        int lumaSize = cropWidth * cropHeight;
+        int required = lumaSize + lumaSize / 2;
+        //El buffer tiene exactamente el tamaño NV21 del recorte, solo se vuelve a reservar si cambia su tamaño
+        if (buffer.length != required) {
+            buffer = new byte[required];
+            width = 0;
+        }
+        if (cropWidth != width || cropHeight != height) {
+            Arrays.fill(buffer, lumaSize, required, NEUTRAL_CHROMA);
+            width = cropWidth;
+            height = cropHeight;
+        }
+
+        int rowStart = rect.getTop() * rowStride + rect.getLeft() * pixelStride;
+        if (pixelStride == 1) {
+            //Copia en bloque de cada fila; se restaura la posición para no alterar el plano
+            int originalPosition = plane.position();
+            for (int row = 0; row < cropHeight; row++) {
+                plane.position(rowStart + row * rowStride);
+                plane.get(buffer, row * cropWidth, cropWidth);
+            }
+            plane.position(originalPosition);
+        } else {
+            int out = 0;
+            for (int row = 0; row < cropHeight; row++) {
+                int in = rowStart + row * rowStride;
+                for (int col = 0; col < cropWidth; col++) {
+                    buffer[out++] = plane.get(in);
+                    in += pixelStride;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Copia la región indicada del plano Y a un buffer del pool en formato NV21, con la crominancia neutra.
+     * A diferencia de crop(), el recorte sigue siendo válido mientras el Lease tenga referencias, por lo que
+     * no hace falta un RoiCropper por frame en proceso.
+     * @param plane plano Y del frame; al terminar conserva su posición
+     * @param rowStride bytes entre el inicio de dos filas consecutivas
+     * @param pixelStride bytes entre dos píxeles consecutivos de una fila
+     * @param rect rectángulo a recortar en coordenadas del sensor
+     * @param rotationDegrees rotación del frame
+     * @param pool pool del que se obtiene el buffer
+     * @return el Lease con el recorte en su imagen; se debe liberar con release()
+     */
+    public static FrameBufferPool.Lease crop(ByteBuffer plane, int rowStride, int pixelStride, CropRect rect,
+                                             int rotationDegrees, FrameBufferPool pool) {
+        int cropWidth = rect.getWidth();
+        int cropHeight = rect.getHeight();
+        int lumaSize = cropWidth * cropHeight;
+        FrameBufferPool.Lease lease = pool.acquire(lumaSize + lumaSize / 2);
+        ByteBuffer buffer = lease.getBuffer();
+        int rowStart = rect.getTop() * rowStride + rect.getLeft() * pixelStride;
+        if (pixelStride == 1) {
+            for (int row = 0; row < cropHeight; row++) {
+                FrameBufferPool.copyRange(plane, rowStart + row * rowStride, buffer, row * cropWidth, cropWidth);
+            }
+        } else {
+            int out = 0;
+            for (int row = 0; row < cropHeight; row++) {
+                int in = rowStart + row * rowStride;
+                for (int col = 0; col < cropWidth; col++) {
+                    buffer.put(out++, plane.get(in));
+                    in += pixelStride;
+                }
+            }
+        }
+        //El buffer del pool puede tener otro contenido, la crominancia se vuelve a escribir en cada recorte
+        int limit = buffer.limit();
+        for (int i = lumaSize; i < limit; i += NEUTRAL_CHROMA_BLOCK.length) {
+            buffer.position(i);
+            buffer.put(NEUTRAL_CHROMA_BLOCK, 0, Math.min(NEUTRAL_CHROMA_BLOCK.length, limit - i));
+        }
+        buffer.position(0);
+        lease.setImage(cropWidth, cropHeight, rotationDegrees);
+        return lease;
+    }
+
+    /**
+     * @return el buffer interno con el último recorte en formato NV21.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return ancho del último recorte.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return alto del último recorte.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,49 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lecturas agrupadas que se entregan al listener en una sola llamada: los frames analizados desde la entrega anterior,
+ * los códigos vistos por primera vez en la sesión y el conjunto de códigos distintos de toda la sesión.
+ * @param <T> tipo de código
+ */
+public final class ScanBatch<T> {
+    private final List<FrameScan<T>> frames;
+    private final List<T> newCodes;
+    private final List<T> sessionCodes;
+
+    ScanBatch(List<FrameScan<T>> frames, List<T> newCodes, List<T> sessionCodes) {
+        this.frames = Collections.unmodifiableList(frames);
+        this.newCodes = Collections.unmodifiableList(newCodes);
+        this.sessionCodes = Collections.unmodifiableList(sessionCodes);
+    }
+
+    /**
+     * @return los frames con códigos agrupados en esta entrega, en el orden en que se analizaron.
+     */
+    public List<FrameScan<T>> getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return el último frame agrupado en esta entrega.
+     */
+    public FrameScan<T> getLastFrame() {
+        return frames.get(frames.size() - 1);
+    }
+
+    /**
+     * @return los códigos que se han leído por primera vez en la sesión dentro de esta entrega.
+     */
+    public List<T> getNewCodes() {
+        return newCodes;
+    }
+
+    /**
+     * @return todos los códigos distintos leídos en la sesión, en orden de primera lectura.
+     */
+    public List<T> getSessionCodes() {
+        return sessionCodes;
+    }
+}
@@ -0,0 +1,720 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de lecturas en disco, de solo añadir, para guardar los códigos leídos sin conexión.
+ * append() no bloquea nunca: encola la lectura y un hilo propio la escribe con un FileChannel y confirma
+ * en grupo (group commit) con un único force() cada groupCommitRecords registros o groupCommitNanos nanosegundos.
+ * <p>
+ * El diario es un directorio de segmentos "&lt;primera secuencia&gt;.journal". Cada segmento empieza con una cabecera
+ * (MAGIC, VERSION) seguida de registros [longitud][CRC32][contenido]. Al abrirse se valida el último segmento y se
+ * trunca en el último registro completo, de forma que una escritura cortada por un cierre inesperado no corrompe
+ * el diario. Cuando el segmento activo supera segmentBytes se empieza otro; compact() borra o reescribe los
+ * segmentos cerrados ya exportados y openReader() los recorre en orden sin cargarlos en memoria. Antes de publicar
+ * un segmento reescrito se deja una marca "&lt;segmento original&gt;.&lt;nueva secuencia&gt;.compacting", para que
+ * al abrirse tras un cierre inesperado se borre el original en lugar de repetir sus lecturas.
+ * <p>
+ * Solo usa java.io y FileChannel, sin java.nio.file, por lo que funciona en Android desde la API 21 y en el host.
+ */
+public final class ScanJournal implements Closeable {
+    public static final int DEFAULT_GROUP_COMMIT_RECORDS = 32;
+    public static final long DEFAULT_GROUP_COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final long DEFAULT_SEGMENT_BYTES = 4L * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    static final int MAGIC = 0x53434E4A;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_HEADER_BYTES = 8;
+    static final int MAX_PAYLOAD_BYTES = 1 << 20;
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final String COMPACTION_SUFFIX = ".compacting";
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final Object FLUSH = new Object();
+    private static final Object CLOSE = new Object();
+
+    private final File directory;
+    private final int groupCommitRecords;
+    private final long groupCommitNanos;
+    private final long segmentBytes;
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+    private final CountDownLatch opened = new CountDownLatch(1);
+
+    //Segmentos por primera secuencia y tamaño confirmado del activo (el último), protegidos por segmentsLock
+    private final Object segmentsLock = new Object();
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private long committedSize;
+
+    //Estado del hilo escritor
+    private FileChannel channel;
+    private ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long nextSequence = 1;
+    private int uncommittedRecords;
+    private long firstUncommittedNanos;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    //Registros confirmados en disco y registros procesados (confirmados o perdidos por un error), protegidos por this
+    private long committedRecords;
+    private long processedRecords;
+    private long commits;
+    private volatile long discardedBytes;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * Abre o crea un diario con la configuración por defecto.
+     * @param directory directorio de los segmentos; se crea si no existe
+     */
+    public ScanJournal(File directory) {
+        this(directory, DEFAULT_GROUP_COMMIT_RECORDS, DEFAULT_GROUP_COMMIT_NANOS, DEFAULT_SEGMENT_BYTES,
+                DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Abre o crea un diario. La recuperación del último segmento se hace en el hilo escritor, por lo que
+     * el constructor no accede al disco y se puede llamar desde el hilo principal.
+     * @param directory directorio de los segmentos; se crea si no existe
+     * @param groupCommitRecords registros pendientes que fuerzan la confirmación en disco
+     * @param groupCommitNanos tiempo máximo que un registro espera a confirmarse en disco
+     * @param segmentBytes tamaño a partir del cual se empieza un segmento nuevo
+     * @param queueCapacity lecturas encoladas como mucho; si la cola está llena append() las descarta
+     */
+    public ScanJournal(File directory, int groupCommitRecords, long groupCommitNanos, long segmentBytes,
+                       int queueCapacity) {
+        if (groupCommitRecords < 1 || groupCommitNanos < 0 || segmentBytes <= HEADER_BYTES || queueCapacity < 1) {
+            throw new IllegalArgumentException("Configuración no válida: groupCommitRecords=" + groupCommitRecords
+                    + " groupCommitNanos=" + groupCommitNanos + " segmentBytes=" + segmentBytes
+                    + " queueCapacity=" + queueCapacity);
+        }
+        this.directory = directory;
+        this.groupCommitRecords = groupCommitRecords;
+        this.groupCommitNanos = groupCommitNanos;
+        this.segmentBytes = segmentBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::run, "scan-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Encola una lectura para escribirla en el diario. No bloquea: si la cola está llena, el diario
+     * está cerrado o ha fallado, la lectura se descarta y se cuenta en getDroppedCount().
+     * @param record lectura a guardar; el número de secuencia lo asigna el diario
+     * @return true si se ha encolado
+     */
+    public boolean append(ScanRecord record) {
+        if (closed || failure != null || !queue.offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        appended.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Espera a que las lecturas encoladas hasta ahora estén confirmadas en disco, sin esperar al group commit.
+     * No se debe llamar desde el hilo del analizador.
+     * @throws IOException si el diario ha fallado al escribir
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public void flush() throws IOException, InterruptedException {
+        long target = appended.get();
+        opened.await();
+        //Con la cola llena el escritor está ocupado y confirmará igualmente al llegar a groupCommitRecords
+        while (!closed && writer.isAlive() && !queue.offer(FLUSH, 100, TimeUnit.MILLISECONDS)) {
+            // Se reintenta mientras el escritor siga vivo
+        }
+        synchronized (this) {
+            while (processedRecords < target && writer.isAlive()) {
+                wait(100);
+            }
+        }
+        IOException error = failure;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Recorre las lecturas confirmadas en disco a partir de una secuencia, segmento a segmento.
+     * Las lecturas que se confirmen después de abrirlo no se incluyen.
+     * @param fromSequence primera secuencia a leer; 0 o 1 para leer todo el diario
+     * @return el lector, que se debe cerrar
+     * @throws InterruptedException si se interrumpe la espera a la apertura del diario
+     */
+    public ScanJournalReader openReader(long fromSequence) throws InterruptedException {
+        opened.await();
+        List<ScanJournalReader.Segment> snapshot = new ArrayList<>();
+        synchronized (segmentsLock) {
+            Map.Entry<Long, File> last = segments.lastEntry();
+            for (Map.Entry<Long, File> entry : segments.entrySet()) {
+                Long next = segments.higherKey(entry.getKey());
+                if (next != null && next <= fromSequence) {
+                    continue;
+                }
+                long limit = entry.getKey().equals(last.getKey()) ? committedSize : Long.MAX_VALUE;
+                snapshot.add(new ScanJournalReader.Segment(entry.getValue(), limit));
+            }
+        }
+        return new ScanJournalReader(snapshot, fromSequence);
+    }
+
+    /**
+     * Libera el espacio de las lecturas ya exportadas: borra los segmentos cerrados cuyas lecturas son todas
+     * anteriores o iguales a exportedSequence y reescribe sin ellas el segmento cerrado que las contiene en parte.
+     * El segmento activo no se modifica.
+     * @param exportedSequence última secuencia exportada
+     * @return bytes liberados
+     * @throws IOException si falla la lectura o la escritura de un segmento
+     * @throws InterruptedException si se interrumpe la espera a la apertura del diario
+     */
+    public long compact(long exportedSequence) throws IOException, InterruptedException {
+        opened.await();
+        List<Map.Entry<Long, File>> closedSegments = new ArrayList<>();
+        List<Long> lastSequences = new ArrayList<>();
+        synchronized (segmentsLock) {
+            for (Map.Entry<Long, File> entry : segments.headMap(segments.lastKey()).entrySet()) {
+                closedSegments.add(entry);
+                lastSequences.add(segments.higherKey(entry.getKey()) - 1);
+            }
+        }
+        long freed = 0;
+        for (int i = 0; i < closedSegments.size(); i++) {
+            long first = closedSegments.get(i).getKey();
+            File file = closedSegments.get(i).getValue();
+            long last = lastSequences.get(i);
+            if (last <= exportedSequence) {
+                freed += file.length();
+                synchronized (segmentsLock) {
+                    segments.remove(first);
+                }
+                if (!file.delete() && file.exists()) {
+                    throw new IOException("No se puede borrar " + file);
+                }
+            } else if (first <= exportedSequence) {
+                freed += rewrite(first, file, exportedSequence + 1);
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Reescribe un segmento cerrado con sus lecturas a partir de firstKept, con el nombre de esa secuencia.
+     * @return bytes liberados
+     */
+    private long rewrite(long first, File file, long firstKept) throws IOException {
+        File target = segmentFile(firstKept);
+        File temp = new File(directory, target.getName() + ".tmp");
+        long before = file.length();
+        List<ScanJournalReader.Segment> source = new ArrayList<>();
+        source.add(new ScanJournalReader.Segment(file, Long.MAX_VALUE));
+        try (ScanJournalReader reader = new ScanJournalReader(source, firstKept);
+             RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BATCH_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            CRC32 checksum = new CRC32();
+            ScanRecord record;
+            while ((record = reader.next()) != null) {
+                byte[] value = utf8(record.getRawValue());
+                int size = encodedSize(value, record.getRawBytes());
+                if (buffer.remaining() < size) {
+                    buffer.flip();
+                    writeFully(outChannel, buffer);
+                    buffer = buffer.capacity() < size ? ByteBuffer.allocate(size) : buffer;
+                    buffer.clear();
+                }
+                encode(record, value, buffer, checksum);
+            }
+            buffer.flip();
+            writeFully(outChannel, buffer);
+            outChannel.force(true);
+        }
+        //Si se corta entre el renombrado y el borrado, recover() termina la compactación con la marca
+        File marker = compactionMarker(first, firstKept);
+        if (!marker.createNewFile() && !marker.exists()) {
+            throw new IOException("No se puede crear " + marker);
+        }
+        synchronized (segmentsLock) {
+            if (!temp.renameTo(target)) {
+                throw new IOException("No se puede renombrar " + temp + " a " + target);
+            }
+            segments.remove(first);
+            segments.put(firstKept, target);
+            if (!target.equals(file) && !file.delete() && file.exists()) {
+                throw new IOException("No se puede borrar " + file);
+            }
+        }
+        marker.delete();
+        return before - target.length();
+    }
+
+    /**
+     * Confirma en disco las lecturas pendientes y para el hilo escritor. Las lecturas que se añadan después se descartan.
+     * Espera al disco, por lo que no se debe llamar desde el hilo principal.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return lecturas encoladas con append().
+     */
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * @return lecturas descartadas por append() con la cola llena, el diario cerrado o con fallo.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return lecturas confirmadas en disco desde la apertura.
+     */
+    public synchronized long getCommittedCount() {
+        return committedRecords;
+    }
+
+    /**
+     * @return confirmaciones en disco (llamadas a force()) desde la apertura.
+     */
+    public synchronized long getCommitCount() {
+        return commits;
+    }
+
+    /**
+     * @return bytes del final del último segmento descartados al abrir el diario por estar incompletos o corruptos.
+     */
+    public long getRecoveredDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * @return número de segmentos del diario, incluido el activo.
+     */
+    public int getSegmentCount() {
+        synchronized (segmentsLock) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * @return el error de escritura que ha parado el diario, o null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void run() {
+        try {
+            recover();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            opened.countDown();
+        }
+        try {
+            while (true) {
+                Object item;
+                if (uncommittedRecords == 0) {
+                    item = queue.take();
+                } else {
+                    long wait = firstUncommittedNanos + groupCommitNanos - System.nanoTime();
+                    item = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+                if (item instanceof ScanRecord) {
+                    write((ScanRecord) item);
+                    //Se escriben en el mismo lote las lecturas que ya están en la cola
+                    while (uncommittedRecords < groupCommitRecords && queue.peek() instanceof ScanRecord) {
+                        write((ScanRecord) queue.poll());
+                    }
+                }
+                if (item == null || item == FLUSH || item == CLOSE || uncommittedRecords >= groupCommitRecords) {
+                    commit();
+                }
+                if (item == CLOSE) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            commit();
+        } finally {
+            closeChannel();
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Carga la lista de segmentos y valida el último, truncándolo en el último registro completo.
+     */
+    private void recover() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("No se puede crear el directorio " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(COMPACTION_SUFFIX)) {
+                    finishCompaction(file);
+                }
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (!file.exists()) {
+                    //Segmento original de una compactación ya terminada
+                    continue;
+                }
+                if (name.endsWith(SEGMENT_SUFFIX + ".tmp")) {
+                    //Restos de una compactación interrumpida
+                    file.delete();
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        putSegment(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException e) {
+                        // No es un segmento del diario
+                    }
+                }
+            }
+        }
+        Map.Entry<Long, File> last;
+        synchronized (segmentsLock) {
+            last = segments.lastEntry();
+        }
+        if (last == null) {
+            openSegment(1);
+            return;
+        }
+        channel = new RandomAccessFile(last.getValue(), "rw").getChannel();
+        long size = channel.size();
+        long position = HEADER_BYTES;
+        long lastSequence = last.getKey() - 1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (size < HEADER_BYTES || readFully(channel, header, 0) < HEADER_BYTES
+                || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            //Cabecera incompleta: el segmento se creó pero no llegó a escribirse
+            position = 0;
+        } else {
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            ByteBuffer payload = ByteBuffer.allocate(256);
+            while (position + RECORD_HEADER_BYTES <= size) {
+                recordHeader.clear();
+                if (readFully(channel, recordHeader, position) < RECORD_HEADER_BYTES) {
+                    break;
+                }
+                int length = recordHeader.getInt(0);
+                if (length <= 0 || length > MAX_PAYLOAD_BYTES || position + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+                if (payload.capacity() < length) {
+                    payload = ByteBuffer.allocate(length);
+                }
+                payload.clear();
+                payload.limit(length);
+                if (readFully(channel, payload, position + RECORD_HEADER_BYTES) < length) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != recordHeader.getInt(4)) {
+                    break;
+                }
+                lastSequence = payload.getLong(0);
+                position += RECORD_HEADER_BYTES + length;
+            }
+        }
+        if (position < size) {
+            discardedBytes = size - position;
+            channel.truncate(position);
+        }
+        if (position == 0) {
+            header.clear();
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.position(0);
+            writeFully(channel, header);
+            position = HEADER_BYTES;
+        }
+        channel.force(true);
+        channel.position(position);
+        nextSequence = lastSequence + 1;
+        synchronized (segmentsLock) {
+            committedSize = position;
+        }
+    }
+
+    /**
+     * Termina una compactación interrumpida: si el segmento reescrito llegó a publicarse se borra el original,
+     * que repetiría sus lecturas; si no, el original sigue siendo válido y el temporal se borra después.
+     */
+    private void finishCompaction(File marker) throws IOException {
+        String name = marker.getName();
+        int separator = name.indexOf(SEGMENT_SUFFIX + ".");
+        int end = name.length() - COMPACTION_SUFFIX.length();
+        if (separator < 0 || separator + SEGMENT_SUFFIX.length() + 1 >= end) {
+            return;
+        }
+        long first;
+        long firstKept;
+        try {
+            first = Long.parseLong(name.substring(0, separator));
+            firstKept = Long.parseLong(name.substring(separator + SEGMENT_SUFFIX.length() + 1, end));
+        } catch (NumberFormatException e) {
+            // No es una marca del diario
+            return;
+        }
+        File source = segmentFile(first);
+        if (segmentFile(firstKept).exists() && !source.delete() && source.exists()) {
+            throw new IOException("No se puede borrar " + source);
+        }
+        marker.delete();
+    }
+
+    private void putSegment(long firstSequence, File file) {
+        synchronized (segmentsLock) {
+            segments.put(firstSequence, file);
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        File file = segmentFile(firstSequence);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        writeFully(channel, header);
+        channel.force(true);
+        synchronized (segmentsLock) {
+            segments.put(firstSequence, file);
+            committedSize = HEADER_BYTES;
+        }
+    }
+
+    private File segmentFile(long firstSequence) {
+        return new File(directory, String.format(Locale.US, "%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private File compactionMarker(long first, long firstKept) {
+        return new File(directory, segmentFile(first).getName() + "." + firstKept + COMPACTION_SUFFIX);
+    }
+
+    /**
+     * Añade la lectura al lote en memoria; se escribe en el canal al llenarse el lote o al confirmar.
+     */
+    private void write(ScanRecord record) {
+        if (failure != null) {
+            synchronized (this) {
+                processedRecords++;
+                notifyAll();
+            }
+            return;
+        }
+        ScanRecord sequenced = record.withSequence(nextSequence);
+        byte[] value = utf8(sequenced.getRawValue());
+        int size = encodedSize(value, sequenced.getRawBytes());
+        try {
+            if (size > MAX_PAYLOAD_BYTES + RECORD_HEADER_BYTES) {
+                throw new IOException("Lectura demasiado grande: " + size + " bytes");
+            }
+            if (batch.remaining() < size) {
+                writeBatch();
+                if (batch.capacity() < size) {
+                    batch = ByteBuffer.allocate(size);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        encode(sequenced, value, batch, crc);
+        nextSequence++;
+        if (uncommittedRecords++ == 0) {
+            firstUncommittedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Escribe el lote y confirma en disco con un único force(). Si el segmento supera segmentBytes, empieza otro.
+     */
+    private void commit() {
+        if (uncommittedRecords == 0 || failure != null) {
+            return;
+        }
+        try {
+            writeBatch();
+            channel.force(false);
+            long size = channel.position();
+            synchronized (segmentsLock) {
+                committedSize = size;
+            }
+            synchronized (this) {
+                committedRecords += uncommittedRecords;
+                processedRecords += uncommittedRecords;
+                commits++;
+                notifyAll();
+            }
+            uncommittedRecords = 0;
+            if (size >= segmentBytes) {
+                channel.close();
+                openSegment(nextSequence);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        batch.flip();
+        writeFully(channel, batch);
+        batch.clear();
+    }
+
+    private void fail(IOException e) {
+        failure = e;
+        batch.clear();
+        synchronized (this) {
+            processedRecords += uncommittedRecords;
+            notifyAll();
+        }
+        uncommittedRecords = 0;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ya se ha confirmado todo lo escrito
+        }
+        channel = null;
+    }
+
+    /**
+     * Escribe la lectura como [longitud][CRC32][secuencia, instante, formato, valor, bytes].
+     * @param out buffer con array y al menos RECORD_HEADER_BYTES + encodedSize() bytes libres
+     */
+    static void encode(ScanRecord record, byte[] value, ByteBuffer out, CRC32 checksum) {
+        int start = out.position();
+        out.position(start + RECORD_HEADER_BYTES);
+        out.putLong(record.getSequence());
+        out.putLong(record.getTimestampMillis());
+        out.putInt(record.getFormat().getMask());
+        putBytes(out, value);
+        putBytes(out, record.getRawBytes());
+        int length = out.position() - start - RECORD_HEADER_BYTES;
+        checksum.reset();
+        checksum.update(out.array(), out.arrayOffset() + start + RECORD_HEADER_BYTES, length);
+        out.putInt(start, length);
+        out.putInt(start + 4, (int) checksum.getValue());
+    }
+
+    /**
+     * @param value valor de la lectura en UTF-8, o null
+     * @param rawBytes bytes de la lectura, o null
+     * @return bytes del registro, incluida la cabecera de longitud y CRC
+     */
+    static int encodedSize(byte[] value, byte[] rawBytes) {
+        return RECORD_HEADER_BYTES + 8 + 8 + 4 + 4 + 4
+                + (value == null ? 0 : value.length) + (rawBytes == null ? 0 : rawBytes.length);
+    }
+
+    static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lee el contenido de una lectura ya validado con su CRC.
+     */
+    static ScanRecord decode(ByteBuffer payload) {
+        long sequence = payload.getLong();
+        long timestamp = payload.getLong();
+        BarcodeFormat format = BarcodeFormat.fromMask(payload.getInt());
+        byte[] value = getBytes(payload);
+        byte[] rawBytes = getBytes(payload);
+        return new ScanRecord(sequence, timestamp, format,
+                value == null ? null : new String(value, StandardCharsets.UTF_8), rawBytes);
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+}
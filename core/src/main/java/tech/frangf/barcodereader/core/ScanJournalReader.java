@@ -0,0 +1,142 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Lector secuencial de las lecturas de un ScanJournal, para exportarlas sin cargar el diario en memoria.
+ * Se obtiene con ScanJournal.openReader() y solo ve las lecturas confirmadas en disco en ese momento.
+ * Si un segmento tiene un registro corrupto, se salta el resto de ese segmento y se cuenta en getSkippedSegments().
+ * No es thread-safe.
+ */
+public final class ScanJournalReader implements Closeable {
+    private final List<Segment> segments;
+    private final long fromSequence;
+    private final CRC32 crc = new CRC32();
+    private int segmentIndex;
+    private DataInputStream in;
+    private long remaining;
+    private byte[] payload = new byte[256];
+    private int skippedSegments;
+
+    /**
+     * Segmento a leer y bytes que se pueden leer de él.
+     */
+    static final class Segment {
+        final File file;
+        final long limit;
+
+        Segment(File file, long limit) {
+            this.file = file;
+            this.limit = limit;
+        }
+    }
+
+    ScanJournalReader(List<Segment> segments, long fromSequence) {
+        this.segments = segments;
+        this.fromSequence = fromSequence;
+    }
+
+    /**
+     * @return la siguiente lectura con secuencia igual o posterior a la inicial, o null al llegar al final.
+     * @throws IOException si falla la lectura de un segmento
+     */
+    public ScanRecord next() throws IOException {
+        while (true) {
+            if (in == null && !openNextSegment()) {
+                return null;
+            }
+            ScanRecord record = readRecord();
+            if (record == null) {
+                closeSegment();
+            } else if (record.getSequence() >= fromSequence) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * @return segmentos que no se han leído enteros por tener un registro corrupto.
+     */
+    public int getSkippedSegments() {
+        return skippedSegments;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.size();
+    }
+
+    private boolean openNextSegment() throws IOException {
+        while (segmentIndex < segments.size()) {
+            Segment segment = segments.get(segmentIndex++);
+            DataInputStream stream;
+            try {
+                stream = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 64 * 1024));
+            } catch (FileNotFoundException e) {
+                //Borrado por una compactación después de abrir el lector
+                continue;
+            }
+            long length = Math.min(segment.file.length(), segment.limit);
+            try {
+                if (length < ScanJournal.HEADER_BYTES || stream.readInt() != ScanJournal.MAGIC
+                        || stream.readInt() != ScanJournal.VERSION) {
+                    stream.close();
+                    continue;
+                }
+            } catch (EOFException e) {
+                stream.close();
+                continue;
+            }
+            in = stream;
+            remaining = length - ScanJournal.HEADER_BYTES;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return el siguiente registro del segmento abierto, o null si se ha terminado o está corrupto.
+     */
+    private ScanRecord readRecord() throws IOException {
+        if (remaining < ScanJournal.RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length <= 0 || length > ScanJournal.MAX_PAYLOAD_BYTES
+                || length > remaining - ScanJournal.RECORD_HEADER_BYTES) {
+            skippedSegments++;
+            return null;
+        }
+        if (payload.length < length) {
+            payload = new byte[length];
+        }
+        in.readFully(payload, 0, length);
+        remaining -= ScanJournal.RECORD_HEADER_BYTES + length;
+        crc.reset();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            skippedSegments++;
+            return null;
+        }
+        return ScanJournal.decode(ByteBuffer.wrap(payload, 0, length));
+    }
+
+    private void closeSegment() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Nivel de análisis: resolución pedida a la cámara y cada cuántos frames se analiza uno.
+ * La resolución se expresa con el lado largo primero, como la entrega el sensor.
+ */
+public final class ScanLevel {
+    private final int width;
+    private final int height;
+    private final int frameStride;
+
+    /**
+     * @param width ancho en píxeles, en orientación del sensor
+     * @param height alto en píxeles, en orientación del sensor
+     * @param frameStride se analiza uno de cada frameStride frames, al menos 1
+     */
+    public ScanLevel(int width, int height, int frameStride) {
+        if (width <= 0 || height <= 0 || frameStride < 1) {
+            throw new IllegalArgumentException("Nivel no válido: " + width + "x" + height + " cada " + frameStride);
+        }
+        this.width = width;
+        this.height = height;
+        this.frameStride = frameStride;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameStride() {
+        return frameStride;
+    }
+
+    /**
+     * @return píxeles analizados por frame recibido, proporcional al coste del detector en este nivel.
+     */
+    public double getCost() {
+        return (double) width * height / frameStride;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScanLevel)) return false;
+        ScanLevel that = (ScanLevel) o;
+        return width == that.width && height == that.height && frameStride == that.frameStride;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + frameStride;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "/" + frameStride;
+    }
+}
@@ -0,0 +1,90 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Foto inmutable de las métricas del escaneo obtenida con ScanMetricsRecorder.snapshot().
+ */
+public final class ScanMetrics {
+    private final Map<ScanStage, StageStats> stages;
+    private final long decodedFrames;
+    private final long framesWithCodes;
+    private final long failedFrames;
+    private final long droppedFrames;
+    private final double framesPerSecond;
+
+    ScanMetrics(Map<ScanStage, StageStats> stages, long decodedFrames, long framesWithCodes, long failedFrames,
+                long droppedFrames, double framesPerSecond) {
+        this.stages = new EnumMap<>(stages);
+        this.decodedFrames = decodedFrames;
+        this.framesWithCodes = framesWithCodes;
+        this.failedFrames = failedFrames;
+        this.droppedFrames = droppedFrames;
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /**
+     * @param stage etapa del análisis
+     * @return las latencias de la etapa
+     */
+    public StageStats getStage(ScanStage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return frames que el decodificador ha analizado correctamente.
+     */
+    public long getDecodedFrames() {
+        return decodedFrames;
+    }
+
+    /**
+     * @return frames en los que se ha leído al menos un código.
+     */
+    public long getFramesWithCodes() {
+        return framesWithCodes;
+    }
+
+    /**
+     * @return frames en los que el decodificador ha fallado.
+     */
+    public long getFailedFrames() {
+        return failedFrames;
+    }
+
+    /**
+     * @return frames descartados sin analizar.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return frames analizados por segundo desde el inicio o el último reset.
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * @return proporción de frames analizados en los que se ha leído al menos un código, entre 0 y 1.
+     */
+    public double getDecodeSuccessRatio() {
+        long analyzed = decodedFrames + failedFrames;
+        return analyzed == 0 ? 0 : (double) framesWithCodes / analyzed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "fps=%.1f decoded=%d withCodes=%d failed=%d dropped=%d success=%.1f%%",
+                framesPerSecond, decodedFrames, framesWithCodes, failedFrames, droppedFrames,
+                getDecodeSuccessRatio() * 100));
+        for (Map.Entry<ScanStage, StageStats> entry : stages.entrySet()) {
+            builder.append('\n').append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
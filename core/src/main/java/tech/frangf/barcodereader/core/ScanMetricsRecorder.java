@@ -0,0 +1,97 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registra los tiempos de cada etapa del análisis y los contadores de frames sin bloqueos,
+ * de forma que se puede llamar desde cualquier hilo del pipeline.
+ */
+public final class ScanMetricsRecorder {
+    private final LatencyHistogram[] histograms = new LatencyHistogram[ScanStage.values().length];
+    private final AtomicLong decodedFrames = new AtomicLong();
+    private final AtomicLong framesWithCodes = new AtomicLong();
+    private final AtomicLong failedFrames = new AtomicLong();
+    private volatile long startNanos;
+
+    public ScanMetricsRecorder() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Registra el tiempo de una etapa.
+     * @param stage etapa del análisis
+     * @param nanos duración en nanosegundos
+     */
+    public void record(ScanStage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Registra que el decodificador ha analizado un frame.
+     * @param codes número de códigos leídos en el frame
+     */
+    public void onFrameDecoded(int codes) {
+        decodedFrames.incrementAndGet();
+        if (codes > 0) {
+            framesWithCodes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registra que el decodificador ha fallado al analizar un frame.
+     */
+    public void onFrameFailed() {
+        failedFrames.incrementAndGet();
+    }
+
+    /**
+     * @param stage etapa del análisis
+     * @return el histograma de la etapa
+     */
+    public LatencyHistogram getHistogram(ScanStage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Obtiene una foto de las métricas actuales.
+     * @param droppedFrames frames descartados, que lleva la cuenta el FramePipeline
+     * @return las métricas
+     */
+    public ScanMetrics snapshot(long droppedFrames) {
+        return snapshot(droppedFrames, System.nanoTime());
+    }
+
+    ScanMetrics snapshot(long droppedFrames, long nowNanos) {
+        Map<ScanStage, StageStats> stages = new EnumMap<>(ScanStage.class);
+        for (ScanStage stage : ScanStage.values()) {
+            stages.put(stage, new StageStats(histograms[stage.ordinal()]));
+        }
+        long decoded = decodedFrames.get();
+        long failed = failedFrames.get();
+        double elapsedSeconds = (nowNanos - startNanos) / 1e9;
+        double fps = elapsedSeconds <= 0 ? 0 : (decoded + failed) / elapsedSeconds;
+        return new ScanMetrics(stages, decoded, framesWithCodes.get(), failed, droppedFrames, fps);
+    }
+
+    /**
+     * Borra todos los tiempos y contadores y reinicia el cálculo de frames por segundo.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        decodedFrames.set(0);
+        framesWithCodes.set(0);
+        failedFrames.set(0);
+        startNanos = System.nanoTime();
+    }
+
+    void setStartNanos(long startNanos) {
+        this.startNanos = startNanos;
+    }
+}
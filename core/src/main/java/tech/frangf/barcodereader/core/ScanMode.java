@@ -0,0 +1,19 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Modo de funcionamiento del lector que elige el ScanModeController, de menor a mayor consumo.
+ */
+public enum ScanMode {
+    /**
+     * En reposo: se analizan pocos frames y solo si la escena ha cambiado, a la espera de que el usuario apunte a algo.
+     */
+    IDLE,
+    /**
+     * Escaneando: se analizan todos los frames.
+     */
+    ACTIVE,
+    /**
+     * Ráfaga tras un disparo explícito: todos los frames con el máximo de hilos durante un tiempo corto.
+     */
+    BURST
+}
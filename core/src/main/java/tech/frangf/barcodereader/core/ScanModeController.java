@@ -0,0 +1,376 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Locale;
+
+/**
+ * Máquina de estados que elige el ScanMode del lector según la actividad, sin rehacer la cámara ni el pipeline:
+ * quien la usa aplica el frameStride del modo descartando frames y su maxInFlight con FramePipeline.setMaxInFlight.
+ * <ul>
+ * <li>Empieza en ACTIVE y pasa a IDLE tras idleTimeoutNanos sin leer ningún código ni ver nada parecido a uno.</li>
+ * <li>En IDLE cada frame analizable pasa antes por un FrameGate ligero (muestras cada 4 píxeles), que descarta los
+ * frames sin cambios. Si la escena cambia respecto al último frame analizado se vuelve a ACTIVE.</li>
+ * <li>Leer un código o ver algo parecido a uno vuelve a ACTIVE desde IDLE.</li>
+ * <li>trigger() pasa a BURST durante burstNanos y después vuelve a ACTIVE.</li>
+ * </ul>
+ * Lleva la cuenta del tiempo pasado en cada modo y de los frames recibidos, analizados y con códigos en cada uno,
+ * para ajustar el equilibrio entre batería y rapidez de lectura. El tiempo se cuenta entre llamadas, por lo que pause()
+ * deja de contarlo mientras la cámara está parada. No depende de Android: recibe el instante de cada evento y se
+ * puede probar en el host.
+ */
+public final class ScanModeController {
+    public static final long DEFAULT_IDLE_TIMEOUT_NANOS = 3_000_000_000L;
+    public static final long DEFAULT_BURST_NANOS = 1_500_000_000L;
+
+    private static final ScanMode[] MODES = ScanMode.values();
+
+    /**
+     * Escucha los cambios de modo. Se ejecuta en el hilo que provoca el cambio, fuera del bloqueo del controlador.
+     */
+    public interface Listener {
+        void onScanModeChanged(ScanMode previous, ScanMode current);
+    }
+
+    private final ScanModeProfile[] profiles = new ScanModeProfile[MODES.length];
+    private final FrameGate idleGate;
+    private final long idleTimeoutNanos;
+    private final long burstNanos;
+    private volatile Listener listener;
+
+    private ScanMode mode = ScanMode.ACTIVE;
+    private long frameCounter;
+    private boolean running;
+    private long lastEventNanos;
+    private long lastActivityNanos;
+    private long burstEndNanos;
+
+    private final long[] residencyNanos = new long[MODES.length];
+    private final long[] receivedFrames = new long[MODES.length];
+    private final long[] analyzedFrames = new long[MODES.length];
+    private final long[] framesWithCodes = new long[MODES.length];
+    private final long[] entries = new long[MODES.length];
+    private long wakeUps;
+    private long triggers;
+
+    /**
+     * Crea un controlador que en IDLE analiza uno de cada 4 frames, en ACTIVE todos de uno en uno y en BURST todos
+     * con la mitad de los núcleos (al menos 2) a la vez, con los tiempos por defecto.
+     */
+    public ScanModeController() {
+        this(new ScanModeProfile(4, 1), new ScanModeProfile(1, 1),
+                new ScanModeProfile(1, Math.max(2, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * Crea un controlador con los perfiles indicados y los tiempos por defecto. El filtro de reposo es una rejilla de
+     * 24x18 celdas muestreadas cada 4 píxeles que despierta con un cambio de 16 niveles de luminancia en una celda.
+     * @param idle perfil en reposo
+     * @param active perfil escaneando
+     * @param burst perfil durante una ráfaga
+     */
+    public ScanModeController(ScanModeProfile idle, ScanModeProfile active, ScanModeProfile burst) {
+        this(idle, active, burst, new FrameGate(24, 18, 4, 24f, 40f, 16f, 30), DEFAULT_IDLE_TIMEOUT_NANOS,
+                DEFAULT_BURST_NANOS);
+    }
+
+    /**
+     * @param idle perfil en reposo
+     * @param active perfil escaneando
+     * @param burst perfil durante una ráfaga
+     * @param idleGate filtro de los frames en reposo; su minChange es también el cambio de escena que vuelve a ACTIVE
+     * @param idleTimeoutNanos tiempo sin actividad tras el que se pasa de ACTIVE a IDLE
+     * @param burstNanos duración de una ráfaga
+     */
+    public ScanModeController(ScanModeProfile idle, ScanModeProfile active, ScanModeProfile burst, FrameGate idleGate,
+                              long idleTimeoutNanos, long burstNanos) {
+        if (idle == null || active == null || burst == null || idleGate == null) {
+            throw new NullPointerException("Los perfiles y el filtro de reposo son obligatorios");
+        }
+        if (idleTimeoutNanos <= 0 || burstNanos <= 0) {
+            throw new IllegalArgumentException("Tiempos no válidos: idleTimeoutNanos=" + idleTimeoutNanos
+                    + ", burstNanos=" + burstNanos);
+        }
+        profiles[ScanMode.IDLE.ordinal()] = idle;
+        profiles[ScanMode.ACTIVE.ordinal()] = active;
+        profiles[ScanMode.BURST.ordinal()] = burst;
+        this.idleGate = idleGate;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.burstNanos = burstNanos;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized ScanMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return el perfil del modo actual.
+     */
+    public synchronized ScanModeProfile getProfile() {
+        return profiles[mode.ordinal()];
+    }
+
+    public ScanModeProfile getProfile(ScanMode mode) {
+        return profiles[mode.ordinal()];
+    }
+
+    /**
+     * Límite de frames en proceso de un modo cuando quien lo usa ya tiene configurado uno propio. ACTIVE y BURST no
+     * bajan de ese valor, para que los modos no reduzcan el paralelismo configurado; IDLE usa siempre su perfil.
+     * @param mode modo
+     * @param minInFlight frames en proceso configurados fuera de los modos, al menos 1
+     * @return el maxInFlight del perfil del modo o, salvo en IDLE, minInFlight si es mayor
+     */
+    public int getMaxInFlight(ScanMode mode, int minInFlight) {
+        int maxInFlight = getProfile(mode).getMaxInFlight();
+        return mode == ScanMode.IDLE ? maxInFlight : Math.max(maxInFlight, minInFlight);
+    }
+
+    /**
+     * @return el mayor maxInFlight de los perfiles: la capacidad que necesitan el pipeline y el decodificador.
+     */
+    public int getMaxInFlight() {
+        int max = 1;
+        for (ScanModeProfile profile : profiles) {
+            max = Math.max(max, profile.getMaxInFlight());
+        }
+        return max;
+    }
+
+    public FrameGate getIdleGate() {
+        return idleGate;
+    }
+
+    public long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    public long getBurstNanos() {
+        return burstNanos;
+    }
+
+    /**
+     * Indica si se debe analizar un frame recibido según el frameStride del modo actual y, en reposo, el filtro de
+     * reposo, y vuelve a ACTIVE si en reposo la escena ha cambiado. Se debe llamar una vez por cada frame que entrega
+     * la cámara, en el orden en el que llegan.
+     * @param nowNanos instante del frame en nanosegundos, de un reloj monótono
+     * @param image luminancia del frame, que solo se lee en reposo
+     * @return true si se debe analizar, false si se debe descartar
+     */
+    public boolean onFrame(long nowNanos, LuminanceImage image) {
+        ScanMode previous;
+        ScanMode current;
+        boolean analyze;
+        synchronized (this) {
+            previous = mode;
+            update(nowNanos);
+            receivedFrames[mode.ordinal()]++;
+            analyze = frameCounter++ % profiles[mode.ordinal()].getFrameStride() == 0;
+            if (analyze && mode == ScanMode.IDLE) {
+                analyze = idleGate.evaluate(image) == FrameGate.Decision.DECODE;
+                //Sin referencia getLastChange() es Float.MAX_VALUE: el primer frame en reposo no despierta
+                float change = idleGate.getLastChange();
+                if (change != Float.MAX_VALUE && change >= idleGate.getMinChange()) {
+                    wakeUps++;
+                    lastActivityNanos = nowNanos;
+                    enter(ScanMode.ACTIVE);
+                    analyze = true;
+                }
+            }
+            if (analyze) {
+                analyzedFrames[mode.ordinal()]++;
+            }
+            current = mode;
+        }
+        notifyChange(previous, current);
+        return analyze;
+    }
+
+    /**
+     * Registra el resultado de un frame analizado. Los códigos leídos o una zona con aspecto de código cuentan como
+     * actividad y vuelven a ACTIVE desde IDLE. Como la decodificación es asíncrona, el frame se atribuye al modo en el
+     * que termina.
+     * @param nowNanos instante actual, del mismo reloj que onFrame
+     * @param codes número de códigos leídos
+     * @param codeLikeRegion true si el frame tiene alguna zona con aspecto de código, por ejemplo según CodeRegionDetector
+     */
+    public void onFrameAnalyzed(long nowNanos, int codes, boolean codeLikeRegion) {
+        ScanMode previous;
+        ScanMode current;
+        synchronized (this) {
+            previous = mode;
+            update(nowNanos);
+            if (codes > 0) {
+                framesWithCodes[mode.ordinal()]++;
+            }
+            if (codes > 0 || codeLikeRegion) {
+                lastActivityNanos = nowNanos;
+                if (mode == ScanMode.IDLE) {
+                    enter(ScanMode.ACTIVE);
+                }
+            }
+            current = mode;
+        }
+        notifyChange(previous, current);
+    }
+
+    /**
+     * Pasa a BURST durante burstNanos, o alarga la ráfaga en curso, por ejemplo al pulsar un botón de escaneo.
+     * @param nowNanos instante actual, del mismo reloj que onFrame
+     */
+    public void trigger(long nowNanos) {
+        ScanMode previous;
+        ScanMode current;
+        synchronized (this) {
+            previous = mode;
+            update(nowNanos);
+            triggers++;
+            burstEndNanos = nowNanos + burstNanos;
+            lastActivityNanos = nowNanos;
+            enter(ScanMode.BURST);
+            current = mode;
+        }
+        notifyChange(previous, current);
+    }
+
+    /**
+     * Deja de contar el tiempo hasta el siguiente evento, por ejemplo al parar la cámara. Se vuelve en ACTIVE, ya que
+     * al volver el usuario va a escanear.
+     * @param nowNanos instante actual, del mismo reloj que onFrame
+     */
+    public synchronized void pause(long nowNanos) {
+        if (running) {
+            residencyNanos[mode.ordinal()] += Math.max(0, nowNanos - lastEventNanos);
+            running = false;
+        }
+    }
+
+    /**
+     * Acumula el tiempo del modo actual hasta nowNanos y aplica los cambios de modo por tiempo.
+     */
+    private void update(long nowNanos) {
+        if (!running) {
+            //Primer evento, o el primero tras pause()
+            running = true;
+            lastEventNanos = nowNanos;
+            lastActivityNanos = nowNanos;
+            if (mode != ScanMode.ACTIVE) {
+                enter(ScanMode.ACTIVE);
+            }
+            return;
+        }
+        residencyNanos[mode.ordinal()] += Math.max(0, nowNanos - lastEventNanos);
+        lastEventNanos = Math.max(lastEventNanos, nowNanos);
+        if (mode == ScanMode.BURST && nowNanos - burstEndNanos >= 0) {
+            lastActivityNanos = nowNanos;
+            enter(ScanMode.ACTIVE);
+        } else if (mode == ScanMode.ACTIVE && nowNanos - lastActivityNanos >= idleTimeoutNanos) {
+            enter(ScanMode.IDLE);
+        }
+    }
+
+    private void enter(ScanMode next) {
+        if (next == mode) {
+            return;
+        }
+        mode = next;
+        entries[next.ordinal()]++;
+        frameCounter = 0;
+        if (next == ScanMode.IDLE) {
+            //La referencia pasa a ser el primer frame en reposo
+            idleGate.reset();
+        }
+    }
+
+    private void notifyChange(ScanMode previous, ScanMode current) {
+        Listener currentListener = listener;
+        if (current != previous && currentListener != null) {
+            currentListener.onScanModeChanged(previous, current);
+        }
+    }
+
+    /**
+     * @param mode modo
+     * @return tiempo pasado en el modo hasta el último evento o pause(), en nanosegundos.
+     */
+    public synchronized long getResidencyNanos(ScanMode mode) {
+        return residencyNanos[mode.ordinal()];
+    }
+
+    /**
+     * @param mode modo
+     * @return frames recibidos en el modo.
+     */
+    public synchronized long getReceivedFrames(ScanMode mode) {
+        return receivedFrames[mode.ordinal()];
+    }
+
+    /**
+     * @param mode modo
+     * @return frames que se han dejado analizar en el modo.
+     */
+    public synchronized long getAnalyzedFrames(ScanMode mode) {
+        return analyzedFrames[mode.ordinal()];
+    }
+
+    /**
+     * @param mode modo
+     * @return frames con algún código leído que han terminado en el modo.
+     */
+    public synchronized long getFramesWithCodes(ScanMode mode) {
+        return framesWithCodes[mode.ordinal()];
+    }
+
+    /**
+     * @param mode modo
+     * @return veces que se ha entrado en el modo, sin contar el ACTIVE inicial.
+     */
+    public synchronized long getEntryCount(ScanMode mode) {
+        return entries[mode.ordinal()];
+    }
+
+    /**
+     * @return veces que se ha pasado de IDLE a ACTIVE por un cambio en la escena.
+     */
+    public synchronized long getWakeUpCount() {
+        return wakeUps;
+    }
+
+    public synchronized long getTriggerCount() {
+        return triggers;
+    }
+
+    /**
+     * Vuelve a ACTIVE y olvida el historial y los contadores, por ejemplo al volver a iniciar la cámara.
+     * No notifica al listener.
+     */
+    public synchronized void reset() {
+        mode = ScanMode.ACTIVE;
+        frameCounter = 0;
+        running = false;
+        idleGate.reset();
+        for (int i = 0; i < MODES.length; i++) {
+            residencyNanos[i] = 0;
+            receivedFrames[i] = 0;
+            analyzedFrames[i] = 0;
+            framesWithCodes[i] = 0;
+            entries[i] = 0;
+        }
+        wakeUps = 0;
+        triggers = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("ScanModeController{mode=").append(mode);
+        for (ScanMode each : MODES) {
+            int i = each.ordinal();
+            builder.append(String.format(Locale.US, ", %s={%.1fs, received=%d, analyzed=%d, withCodes=%d}",
+                    each, residencyNanos[i] / 1e9, receivedFrames[i], analyzedFrames[i], framesWithCodes[i]));
+        }
+        return builder.append(", wakeUps=").append(wakeUps).append(", triggers=").append(triggers).append('}')
+                .toString();
+    }
+}
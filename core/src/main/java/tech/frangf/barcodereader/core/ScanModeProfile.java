@@ -0,0 +1,48 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Configuración de un ScanMode: cada cuántos frames se analiza uno y cuántos se decodifican a la vez.
+ */
+public final class ScanModeProfile {
+    private final int frameStride;
+    private final int maxInFlight;
+
+    /**
+     * @param frameStride se analiza uno de cada frameStride frames, al menos 1
+     * @param maxInFlight frames que se decodifican a la vez en el FramePipeline, al menos 1
+     */
+    public ScanModeProfile(int frameStride, int maxInFlight) {
+        if (frameStride < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Perfil no válido: cada " + frameStride + " frames, " + maxInFlight
+                    + " a la vez");
+        }
+        this.frameStride = frameStride;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getFrameStride() {
+        return frameStride;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScanModeProfile)) return false;
+        ScanModeProfile that = (ScanModeProfile) o;
+        return frameStride == that.frameStride && maxInFlight == that.maxInFlight;
+    }
+
+    @Override
+    public int hashCode() {
+        return frameStride * 31 + maxInFlight;
+    }
+
+    @Override
+    public String toString() {
+        return "1/" + frameStride + "x" + maxInFlight;
+    }
+}
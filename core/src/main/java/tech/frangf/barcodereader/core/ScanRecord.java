@@ -0,0 +1,108 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Arrays;
+
+/**
+ * Lectura guardada en el ScanJournal: el código leído y el instante de la lectura.
+ * El número de secuencia lo asigna el diario al escribir el registro.
+ */
+public final class ScanRecord {
+    private final long sequence;
+    private final long timestampMillis;
+    private final BarcodeFormat format;
+    private final String rawValue;
+    private final byte[] rawBytes;
+
+    /**
+     * Crea una lectura sin número de secuencia, para añadirla al diario con ScanJournal.append().
+     * @param timestampMillis instante de la lectura (System.currentTimeMillis())
+     * @param format formato del código
+     * @param rawValue valor del código, o null si no es texto
+     * @param rawBytes bytes del contenido del código, o null
+     */
+    public ScanRecord(long timestampMillis, BarcodeFormat format, String rawValue, byte[] rawBytes) {
+        this(0, timestampMillis, format, rawValue, rawBytes);
+    }
+
+    /**
+     * @param sequence número de secuencia en el diario, empezando en 1; 0 si todavía no se ha escrito
+     * @param timestampMillis instante de la lectura (System.currentTimeMillis())
+     * @param format formato del código
+     * @param rawValue valor del código, o null si no es texto
+     * @param rawBytes bytes del contenido del código, o null
+     */
+    public ScanRecord(long sequence, long timestampMillis, BarcodeFormat format, String rawValue, byte[] rawBytes) {
+        if (format == null) {
+            throw new IllegalArgumentException("format no puede ser null");
+        }
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.format = format;
+        this.rawValue = rawValue;
+        this.rawBytes = rawBytes;
+    }
+
+    /**
+     * @param barcode código leído
+     * @param timestampMillis instante de la lectura (System.currentTimeMillis())
+     * @return la lectura del código, sin número de secuencia
+     */
+    public static ScanRecord of(DecodedBarcode barcode, long timestampMillis) {
+        return new ScanRecord(timestampMillis, barcode.getFormat(), barcode.getRawValue(), barcode.getRawBytes());
+    }
+
+    /**
+     * @param sequence número de secuencia asignado por el diario
+     * @return una copia de la lectura con ese número de secuencia
+     */
+    ScanRecord withSequence(long sequence) {
+        return new ScanRecord(sequence, timestampMillis, format, rawValue, rawBytes);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    public byte[] getRawBytes() {
+        return rawBytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScanRecord that = (ScanRecord) o;
+        return sequence == that.sequence
+                && timestampMillis == that.timestampMillis
+                && format == that.format
+                && (rawValue == null ? that.rawValue == null : rawValue.equals(that.rawValue))
+                && Arrays.equals(rawBytes, that.rawBytes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (sequence ^ (sequence >>> 32));
+        result = 31 * result + (int) (timestampMillis ^ (timestampMillis >>> 32));
+        result = 31 * result + format.hashCode();
+        result = 31 * result + (rawValue == null ? 0 : rawValue.hashCode());
+        result = 31 * result + Arrays.hashCode(rawBytes);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanRecord{" + sequence + ", " + timestampMillis + ", " + format + ", " + rawValue + '}';
+    }
+}
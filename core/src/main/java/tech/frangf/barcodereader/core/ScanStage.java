@@ -0,0 +1,27 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Etapas del análisis de un frame cuyos tiempos se registran en ScanMetricsRecorder.
+ */
+public enum ScanStage {
+    /**
+     * Desde que el analizador recibe el frame hasta que empieza a decodificarse, incluida la espera en el FramePipeline.
+     */
+    FRAME_ACQUIRE,
+    /**
+     * Preparación de la imagen para el decodificador, incluido el recorte de la región de interés.
+     */
+    INPUT_IMAGE,
+    /**
+     * Decodificación de la imagen.
+     */
+    DETECT,
+    /**
+     * Entrega de los códigos leídos a los listeners.
+     */
+    DISPATCH,
+    /**
+     * Cierre del frame y liberación de su imagen.
+     */
+    CLOSE
+}
@@ -0,0 +1,54 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Locale;
+
+/**
+ * Estadísticas de latencia de una etapa, en nanosegundos.
+ */
+public final class StageStats {
+    private final long count;
+    private final long p50Nanos;
+    private final long p95Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+    private final double meanNanos;
+
+    StageStats(LatencyHistogram histogram) {
+        this.count = histogram.getCount();
+        this.p50Nanos = histogram.getValueAtPercentile(50);
+        this.p95Nanos = histogram.getValueAtPercentile(95);
+        this.p99Nanos = histogram.getValueAtPercentile(99);
+        this.maxNanos = histogram.getMax();
+        this.meanNanos = histogram.getMean();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP95Nanos() {
+        return p95Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                count, p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+    }
+}
@@ -0,0 +1,32 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Contenido sin estructura reconocida, como el número de un EAN-13 o un texto libre.
+ */
+public final class TextPayload extends ParsedPayload {
+    TextPayload(String rawValue) {
+        super(rawValue);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.TEXT;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TextPayload)) return false;
+        return getRawValue().equals(((TextPayload) o).getRawValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return getRawValue().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TextPayload[" + getRawValue() + "]";
+    }
+}
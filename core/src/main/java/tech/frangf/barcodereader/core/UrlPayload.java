@@ -0,0 +1,149 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Locale;
+
+/**
+ * Dirección web http o https, en texto directo, con el prefijo URLTO: o como marcador MEBKM.
+ * La URL se normaliza: esquema y host en minúsculas, sin el puerto por defecto y con la ruta "/" si no tiene ruta,
+ * de forma que las variantes de una misma dirección se pueden comparar.
+ */
+public final class UrlPayload extends ParsedPayload {
+    private final String url;
+    private final String title;
+    private final String scheme;
+    private final String host;
+
+    private UrlPayload(String rawValue, String url, String title, String scheme, String host) {
+        super(rawValue);
+        this.url = url;
+        this.title = title;
+        this.scheme = scheme;
+        this.host = host;
+    }
+
+    /**
+     * @param text valor del código
+     * @return la URL, o null si el valor no es una URL http o https válida.
+     */
+    static UrlPayload parse(String text) {
+        String url = text.trim();
+        String title = null;
+        if (url.regionMatches(true, 0, "URLTO:", 0, 6)) {
+            url = url.substring(6);
+        } else if (url.regionMatches(true, 0, "MEBKM:", 0, 6)) {
+            url = null;
+            for (String[] field : PayloadParser.splitFields(text.trim().substring(6))) {
+                if (field[0].equalsIgnoreCase("URL")) {
+                    url = field[1].trim();
+                } else if (field[0].equalsIgnoreCase("TITLE")) {
+                    title = field[1];
+                }
+            }
+            if (url == null) {
+                return null;
+            }
+        }
+        if (url.regionMatches(true, 0, "www.", 0, 4)) {
+            url = "http://" + url;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0) {
+            return null;
+        }
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+        for (int i = 0; i < url.length(); i++) {
+            if (Character.isWhitespace(url.charAt(i))) {
+                return null;
+            }
+        }
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < url.length() && "/?#".indexOf(url.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        String authority = url.substring(authorityStart, authorityEnd);
+        int at = authority.lastIndexOf('@');
+        String userInfo = at < 0 ? "" : authority.substring(0, at + 1);
+        String hostPort = authority.substring(at + 1);
+        //El host IPv6 va entre corchetes y tiene ':'
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < hostPort.lastIndexOf(']')) {
+            colon = -1;
+        }
+        String host = (colon < 0 ? hostPort : hostPort.substring(0, colon)).toLowerCase(Locale.ROOT);
+        if (host.isEmpty()) {
+            return null;
+        }
+        String port = "";
+        if (colon >= 0) {
+            String digits = hostPort.substring(colon + 1);
+            for (int i = 0; i < digits.length(); i++) {
+                if (!Character.isDigit(digits.charAt(i))) {
+                    return null;
+                }
+            }
+            boolean defaultPort = digits.isEmpty() || (scheme.equals("http") && digits.equals("80"))
+                    || (scheme.equals("https") && digits.equals("443"));
+            port = defaultPort ? "" : ":" + digits;
+        }
+        String rest = url.substring(authorityEnd);
+        if (rest.isEmpty() || rest.charAt(0) != '/') {
+            rest = "/" + rest;
+        }
+        return new UrlPayload(text, scheme + "://" + userInfo + host + port + rest, title, scheme, host);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.URL;
+    }
+
+    /**
+     * @return la URL normalizada.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return el título del marcador MEBKM, o null si no lo tiene.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return "http" o "https".
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * @return el host en minúsculas.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UrlPayload)) return false;
+        UrlPayload that = (UrlPayload) o;
+        return url.equals(that.url) && (title == null ? that.title == null : title.equals(that.title));
+    }
+
+    @Override
+    public int hashCode() {
+        return url.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "UrlPayload[" + url + "]";
+    }
+}
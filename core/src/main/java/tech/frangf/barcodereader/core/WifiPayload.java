@@ -0,0 +1,121 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.Locale;
+
+/**
+ * Configuración de una red Wi-Fi en el formato WIFI:T:WPA;S:red;P:clave;H:true;; que usan los códigos QR para
+ * conectarse a una red.
+ */
+public final class WifiPayload extends ParsedPayload {
+    /**
+     * Tipo de seguridad de la red, con los mismos valores que Barcode.WiFi de ML Kit.
+     */
+    public enum Encryption {
+        OPEN,
+        WPA,
+        WEP
+    }
+
+    private final String ssid;
+    private final String password;
+    private final Encryption encryption;
+    private final boolean hidden;
+
+    private WifiPayload(String rawValue, String ssid, String password, Encryption encryption, boolean hidden) {
+        super(rawValue);
+        this.ssid = ssid;
+        this.password = password;
+        this.encryption = encryption;
+        this.hidden = hidden;
+    }
+
+    /**
+     * @param text valor del código, que empieza por WIFI:
+     * @return la red, o null si no tiene SSID.
+     */
+    static WifiPayload parse(String text) {
+        String ssid = null;
+        String password = null;
+        String type = null;
+        boolean hidden = false;
+        for (String[] field : PayloadParser.splitFields(text.substring(5))) {
+            switch (field[0].toUpperCase(Locale.ROOT)) {
+                case "S":
+                    ssid = field[1];
+                    break;
+                case "P":
+                    password = field[1].isEmpty() ? null : field[1];
+                    break;
+                case "T":
+                    type = field[1].toUpperCase(Locale.ROOT);
+                    break;
+                case "H":
+                    hidden = field[1].equalsIgnoreCase("true");
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (ssid == null || ssid.isEmpty()) {
+            return null;
+        }
+        Encryption encryption;
+        if (type == null || type.isEmpty()) {
+            //Sin tipo, una red con clave es WPA
+            encryption = password == null ? Encryption.OPEN : Encryption.WPA;
+        } else if (type.equals("WEP")) {
+            encryption = Encryption.WEP;
+        } else if (type.startsWith("WPA") || type.equals("SAE")) {
+            encryption = Encryption.WPA;
+        } else {
+            encryption = Encryption.OPEN;
+        }
+        return new WifiPayload(text, ssid, encryption == Encryption.OPEN ? null : password, encryption, hidden);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.WIFI;
+    }
+
+    public String getSsid() {
+        return ssid;
+    }
+
+    /**
+     * @return la clave, o null si la red es abierta.
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    public Encryption getEncryption() {
+        return encryption;
+    }
+
+    /**
+     * @return true si la red no anuncia su SSID.
+     */
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WifiPayload)) return false;
+        WifiPayload that = (WifiPayload) o;
+        return ssid.equals(that.ssid) && (password == null ? that.password == null : password.equals(that.password))
+                && encryption == that.encryption && hidden == that.hidden;
+    }
+
+    @Override
+    public int hashCode() {
+        return ssid.hashCode() * 31 + encryption.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "WifiPayload[" + ssid + ", " + encryption + (hidden ? ", hidden" : "") + "]";
+    }
+}
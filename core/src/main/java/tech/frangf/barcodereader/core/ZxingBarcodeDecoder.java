@@ -0,0 +1,274 @@
+package tech.frangf.barcodereader.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BarcodeDecoder en Java puro basado en ZXing, sin dependencias de Android ni de red.
+ * Permite ejecutar y medir el pipeline de escaneo en el host, por ejemplo en integración continua con Linux.
+ * Cada hilo utiliza su propio lector de ZXing, por lo que decode se puede llamar desde varios hilos a la vez.
+ */
+public final class ZxingBarcodeDecoder implements BarcodeDecoder {
+    /**
+     * Formatos que se buscan por defecto.
+     */
+    public static final Set<BarcodeFormat> DEFAULT_FORMATS = Collections.unmodifiableSet(
+            EnumSet.of(BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE));
+
+    private final Set<BarcodeFormat> formats;
+    private final boolean multiple;
+    private final Map<DecodeHintType, Object> hints;
+    //Pistas sin QR: los QR se buscan con QRCodeMultiReader, que separa varios QR en la misma imagen
+    private final Map<DecodeHintType, Object> nonQrHints;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * Crea un decodificador de los formatos por defecto que lee todos los códigos de cada imagen.
+     */
+    public ZxingBarcodeDecoder() {
+        this(DEFAULT_FORMATS, true, false);
+    }
+
+    /**
+     * @param formats formatos a buscar
+     * @param multiple true para leer todos los códigos de la imagen, false para quedarse con el primero
+     * @param tryHarder true para buscar con más detalle a costa de más tiempo por imagen
+     */
+    public ZxingBarcodeDecoder(Set<BarcodeFormat> formats, boolean multiple, boolean tryHarder) {
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("Se debe indicar al menos un formato");
+        }
+        this.formats = Collections.unmodifiableSet(EnumSet.copyOf(formats));
+        this.multiple = multiple;
+        List<com.google.zxing.BarcodeFormat> zxingFormats = new ArrayList<>();
+        for (BarcodeFormat format : formats) {
+            com.google.zxing.BarcodeFormat zxingFormat = toZxing(format);
+            if (zxingFormat == null) {
+                throw new IllegalArgumentException("Formato no soportado por ZXing: " + format);
+            }
+            zxingFormats.add(zxingFormat);
+        }
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, zxingFormats);
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        //Sin esta pista ZXing descarta los FNC1 de Code 128 y los campos GS1 de longitud variable quedan pegados
+        hints.put(DecodeHintType.ASSUME_GS1, Boolean.TRUE);
+        List<com.google.zxing.BarcodeFormat> nonQrFormats = new ArrayList<>(zxingFormats);
+        nonQrFormats.remove(com.google.zxing.BarcodeFormat.QR_CODE);
+        if (nonQrFormats.isEmpty()) {
+            nonQrHints = null;
+        } else {
+            nonQrHints = new EnumMap<>(hints);
+            nonQrHints.put(DecodeHintType.POSSIBLE_FORMATS, nonQrFormats);
+        }
+    }
+
+    /**
+     * @return los formatos que se buscan.
+     */
+    public Set<BarcodeFormat> getFormats() {
+        return formats;
+    }
+
+    @Override
+    public List<DecodedBarcode> decode(LuminanceImage image) throws BarcodeDecoderException {
+        State current = state.get();
+        int width = image.getUprightWidth();
+        int height = image.getUprightHeight();
+        byte[] upright = current.buffer(width * height);
+        image.copyUpright(upright);
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(
+                new PlanarYUVLuminanceSource(upright, width, height, 0, 0, width, height, false)));
+        try {
+            if (multiple) {
+                List<DecodedBarcode> barcodes = new ArrayList<>();
+                if (current.qrReader != null) {
+                    addAll(barcodes, current.qrReader, bitmap);
+                }
+                if (current.nonQrReader != null) {
+                    addAll(barcodes, current.nonQrReader, bitmap);
+                }
+                return barcodes;
+            }
+            return Collections.singletonList(toDecodedBarcode(current.reader.decodeWithState(bitmap)));
+        } catch (NotFoundException e) {
+            return Collections.emptyList();
+        } catch (RuntimeException e) {
+            throw new BarcodeDecoderException("Error de ZXing al decodificar la imagen", e);
+        } finally {
+            current.reset();
+        }
+    }
+
+    private void addAll(List<DecodedBarcode> barcodes, MultipleBarcodeReader reader,
+                        BinaryBitmap bitmap) {
+        try {
+            for (Result result : reader.decodeMultiple(bitmap, hints)) {
+                barcodes.add(toDecodedBarcode(result));
+            }
+        } catch (NotFoundException e) {
+            // Ningún código de este lector
+        }
+    }
+
+    @Override
+    public void close() {
+        // ZXing no mantiene recursos nativos
+    }
+
+    private static DecodedBarcode toDecodedBarcode(Result result) {
+        String text = result.getText();
+        byte[] rawBytes = null;
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        if (metadata != null && metadata.get(ResultMetadataType.BYTE_SEGMENTS) instanceof List) {
+            List<?> segments = (List<?>) metadata.get(ResultMetadataType.BYTE_SEGMENTS);
+            if (segments.size() == 1 && segments.get(0) instanceof byte[]) {
+                rawBytes = (byte[]) segments.get(0);
+            }
+        }
+        if (rawBytes == null && text != null) {
+            rawBytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+        return new DecodedBarcode(fromZxing(result.getBarcodeFormat()), text, rawBytes, text,
+                toBoundingBox(result.getResultPoints()), result);
+    }
+
+    private static BoundingBox toBoundingBox(ResultPoint[] points) {
+        if (points == null || points.length == 0) {
+            return null;
+        }
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            left = Math.min(left, point.getX());
+            top = Math.min(top, point.getY());
+            right = Math.max(right, point.getX());
+            bottom = Math.max(bottom, point.getY());
+        }
+        if (left > right) {
+            return null;
+        }
+        return new BoundingBox(Math.round(left), Math.round(top), Math.round(right), Math.round(bottom));
+    }
+
+    static com.google.zxing.BarcodeFormat toZxing(BarcodeFormat format) {
+        switch (format) {
+            case CODE_128: return com.google.zxing.BarcodeFormat.CODE_128;
+            case CODE_39: return com.google.zxing.BarcodeFormat.CODE_39;
+            case CODE_93: return com.google.zxing.BarcodeFormat.CODE_93;
+            case CODABAR: return com.google.zxing.BarcodeFormat.CODABAR;
+            case DATA_MATRIX: return com.google.zxing.BarcodeFormat.DATA_MATRIX;
+            case EAN_13: return com.google.zxing.BarcodeFormat.EAN_13;
+            case EAN_8: return com.google.zxing.BarcodeFormat.EAN_8;
+            case ITF: return com.google.zxing.BarcodeFormat.ITF;
+            case QR_CODE: return com.google.zxing.BarcodeFormat.QR_CODE;
+            case UPC_A: return com.google.zxing.BarcodeFormat.UPC_A;
+            case UPC_E: return com.google.zxing.BarcodeFormat.UPC_E;
+            case PDF417: return com.google.zxing.BarcodeFormat.PDF_417;
+            case AZTEC: return com.google.zxing.BarcodeFormat.AZTEC;
+            default: return null;
+        }
+    }
+
+    static BarcodeFormat fromZxing(com.google.zxing.BarcodeFormat format) {
+        switch (format) {
+            case CODE_128: return BarcodeFormat.CODE_128;
+            case CODE_39: return BarcodeFormat.CODE_39;
+            case CODE_93: return BarcodeFormat.CODE_93;
+            case CODABAR: return BarcodeFormat.CODABAR;
+            case DATA_MATRIX: return BarcodeFormat.DATA_MATRIX;
+            case EAN_13: return BarcodeFormat.EAN_13;
+            case EAN_8: return BarcodeFormat.EAN_8;
+            case ITF: return BarcodeFormat.ITF;
+            case QR_CODE: return BarcodeFormat.QR_CODE;
+            case UPC_A: return BarcodeFormat.UPC_A;
+            case UPC_E: return BarcodeFormat.UPC_E;
+            case PDF_417: return BarcodeFormat.PDF417;
+            case AZTEC: return BarcodeFormat.AZTEC;
+            default: return BarcodeFormat.UNKNOWN;
+        }
+    }
+
+    /**
+     * Estado de ZXing de cada hilo: los lectores con las pistas ya configuradas y el buffer de la imagen derecha.
+     */
+    private final class State {
+        final MultiFormatReader reader = new MultiFormatReader();
+        final MultiFormatReader nonQrFormatReader = new MultiFormatReader();
+        final QRCodeMultiReader qrReader;
+        final GenericMultipleBarcodeReader nonQrReader;
+        byte[] upright = new byte[0];
+
+        State() {
+            reader.setHints(hints);
+            qrReader = formats.contains(BarcodeFormat.QR_CODE) ? new QRCodeMultiReader() : null;
+            if (nonQrHints == null) {
+                nonQrReader = null;
+                return;
+            }
+            nonQrFormatReader.setHints(nonQrHints);
+            //MultiFormatReader.decode(image, hints) vuelve a crear sus lectores en cada llamada,
+            //por eso el lector múltiple usa decodeWithState con las pistas ya configuradas.
+            nonQrReader = new GenericMultipleBarcodeReader(new Reader() {
+                @Override
+                public Result decode(BinaryBitmap image) throws NotFoundException {
+                    return nonQrFormatReader.decodeWithState(image);
+                }
+
+                @Override
+                public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> ignored) throws NotFoundException {
+                    return nonQrFormatReader.decodeWithState(image);
+                }
+
+                @Override
+                public void reset() {
+                    nonQrFormatReader.reset();
+                }
+            });
+        }
+
+        void reset() {
+            reader.reset();
+            nonQrFormatReader.reset();
+        }
+
+        byte[] buffer(int size) {
+            if (upright.length < size) {
+                upright = new byte[size];
+            }
+            return upright;
+        }
+    }
+}
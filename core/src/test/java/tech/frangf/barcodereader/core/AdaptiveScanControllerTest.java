@@ -0,0 +1,158 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveScanControllerTest {
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 33 * MS;
+    private static final List<ScanLevel> LEVELS = Arrays.asList(
+            new ScanLevel(640, 480, 2),
+            new ScanLevel(640, 480, 1),
+            new ScanLevel(1280, 720, 1));
+
+    private static AdaptiveScanController controller(long budgetMillis) {
+        AdaptiveScanController controller = new AdaptiveScanController(LEVELS, budgetMillis * MS);
+        controller.setFailuresToStepUp(3);
+        controller.setSuccessesToStepDown(5);
+        controller.setIdleFramesToStepDown(10);
+        controller.setMinDwellNanos(200 * MS);
+        return controller;
+    }
+
+    @Test
+    public void startsAtCheapestLevelAndSkipsFramesByStride() {
+        AdaptiveScanController controller = controller(1000);
+        assertEquals(LEVELS.get(0), controller.getScanLevel());
+        int analyzed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (controller.shouldAnalyze()) analyzed++;
+        }
+        assertEquals(5, analyzed);
+        assertEquals(5, controller.getSkippedFrames());
+    }
+
+    @Test
+    public void stepsUpWhenCodeLikeRegionIsNotDecoded() {
+        AdaptiveScanController controller = controller(1000);
+        List<ScanLevel> changes = new ArrayList<>();
+        controller.setListener((previous, current) -> changes.add(current));
+        long now = 0;
+        controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        assertEquals(0, controller.getLevelIndex());
+        controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        assertEquals(1, controller.getLevelIndex());
+        assertEquals(Arrays.asList(LEVELS.get(1)), changes);
+        //No vuelve a subir hasta que pasa el tiempo mínimo en el nivel
+        for (int i = 0; i < 5; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        controller.onFrameAnalyzed(now += 200 * MS, MS, 0, true);
+        assertEquals(2, controller.getLevelIndex());
+        assertEquals(2, controller.getStepUpCount());
+    }
+
+    @Test
+    public void failuresWithoutCodeLikeRegionDoNotStepUp() {
+        AdaptiveScanController controller = controller(1000);
+        long now = 0;
+        for (int i = 0; i < 9; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 0, false);
+        }
+        assertEquals(0, controller.getLevelIndex());
+    }
+
+    @Test
+    public void stepsDownAfterSustainedSuccess() {
+        AdaptiveScanController controller = controller(1000);
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        now += 200 * MS;
+        for (int i = 0; i < 4; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 1, true);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        controller.onFrameAnalyzed(now += FRAME, MS, 1, true);
+        assertEquals(0, controller.getLevelIndex());
+        assertEquals(1, controller.getStepDownCount());
+    }
+
+    @Test
+    public void stepsDownWhenIdle() {
+        AdaptiveScanController controller = controller(1000);
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        }
+        now += 200 * MS;
+        for (int i = 0; i < 10; i++) {
+            controller.onFrameAnalyzed(now += FRAME, MS, 0, false);
+        }
+        assertEquals(0, controller.getLevelIndex());
+    }
+
+    @Test
+    public void stepsDownWhenOverBudget() {
+        AdaptiveScanController controller = controller(100);
+        controller.setFailuresToStepUp(1);
+        long now = 0;
+        controller.onFrameAnalyzed(now += FRAME, MS, 0, true);
+        assertEquals(1, controller.getLevelIndex());
+        now += 200 * MS;
+        //30 ms por frame a 30 fps son 900 ms de detector por segundo
+        for (int i = 0; i < 5; i++) {
+            controller.onFrameAnalyzed(now += FRAME, 30 * MS, 0, false);
+        }
+        assertEquals(0, controller.getLevelIndex());
+        assertEquals(1, controller.getBudgetStepDownCount());
+        assertTrue(controller.getDetectNanosPerSecond(now) > 100 * MS);
+    }
+
+    @Test
+    public void doesNotStepUpIfNextLevelWouldExceedBudget() {
+        AdaptiveScanController controller = controller(100);
+        long now = 0;
+        //6 ms por frame caben en el presupuesto, pero 1280x720 costaría el triple y lo superaría
+        for (int i = 0; i < 3; i++) {
+            controller.onFrameAnalyzed(now += FRAME, 6 * MS, 0, true);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        now += 200 * MS;
+        for (int i = 0; i < 10; i++) {
+            controller.onFrameAnalyzed(now += FRAME, 6 * MS, 0, true);
+        }
+        assertEquals(1, controller.getLevelIndex());
+        assertEquals(0, controller.getBudgetStepDownCount());
+    }
+
+    @Test
+    public void budgetWindowForgetsOldFrames() {
+        AdaptiveScanController controller = controller(1000);
+        controller.onFrameAnalyzed(100 * MS, 50 * MS, 0, false);
+        controller.onFrameAnalyzed(600 * MS, 20 * MS, 0, false);
+        assertEquals(70 * MS, controller.getDetectNanosPerSecond(600 * MS));
+        assertEquals(20 * MS, controller.getDetectNanosPerSecond(1150 * MS));
+        assertEquals(0, controller.getDetectNanosPerSecond(1700 * MS));
+    }
+
+    @Test
+    public void resetReturnsToCheapestLevel() {
+        AdaptiveScanController controller = controller(1000);
+        controller.setFailuresToStepUp(1);
+        controller.onFrameAnalyzed(FRAME, MS, 0, true);
+        assertEquals(1, controller.getLevelIndex());
+        controller.reset();
+        assertEquals(0, controller.getLevelIndex());
+        assertEquals(0, controller.getAnalyzedFrames());
+    }
+}
@@ -0,0 +1,76 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchCoalescerTest {
+
+    private static BatchCoalescer<String> coalescer() {
+        return new BatchCoalescer<>(code -> code);
+    }
+
+    @Test
+    public void coalescesFramesUntilDrained() {
+        BatchCoalescer<String> coalescer = coalescer();
+        assertTrue(coalescer.add(1, 100, Arrays.asList("A", "B")));
+        assertFalse(coalescer.add(2, 200, Arrays.asList("A", "B", "C")));
+
+        ScanBatch<String> batch = coalescer.drain();
+        assertEquals(2, batch.getFrames().size());
+        assertEquals(1, batch.getFrames().get(0).getSequence());
+        assertEquals(200, batch.getLastFrame().getTimestampNanos());
+        assertEquals(Arrays.asList("A", "B", "C"), batch.getLastFrame().getCodes());
+        assertEquals(Arrays.asList("A", "B", "C"), batch.getNewCodes());
+        assertNull(coalescer.drain());
+    }
+
+    @Test
+    public void sessionSetIsDeduplicatedAcrossBatches() {
+        BatchCoalescer<String> coalescer = coalescer();
+        coalescer.add(1, 100, Arrays.asList("A", "B"));
+        coalescer.drain();
+        assertTrue(coalescer.add(2, 200, Arrays.asList("B", "C")));
+        ScanBatch<String> batch = coalescer.drain();
+
+        assertEquals(Collections.singletonList("C"), batch.getNewCodes());
+        assertEquals(Arrays.asList("A", "B", "C"), batch.getSessionCodes());
+        assertEquals(3, coalescer.getSessionSize());
+    }
+
+    @Test
+    public void emptyFramesAreIgnored() {
+        BatchCoalescer<String> coalescer = coalescer();
+        assertFalse(coalescer.add(1, 100, Collections.<String>emptyList()));
+        assertNull(coalescer.drain());
+    }
+
+    @Test
+    public void deliveredBatchIsNotAffectedByLaterFrames() {
+        BatchCoalescer<String> coalescer = coalescer();
+        List<String> codes = new ArrayList<>(Arrays.asList("A"));
+        coalescer.add(1, 100, codes);
+        codes.add("B");
+        ScanBatch<String> batch = coalescer.drain();
+        coalescer.add(2, 200, Arrays.asList("C"));
+
+        assertEquals(1, batch.getFrames().size());
+        assertEquals(Collections.singletonList("A"), batch.getLastFrame().getCodes());
+        assertEquals(Collections.singletonList("A"), batch.getSessionCodes());
+    }
+
+    @Test
+    public void clearSessionReportsCodesAsNewAgain() {
+        BatchCoalescer<String> coalescer = coalescer();
+        coalescer.add(1, 100, Arrays.asList("A"));
+        coalescer.drain();
+        coalescer.clearSession();
+        coalescer.add(2, 200, Arrays.asList("A"));
+        assertEquals(Collections.singletonList("A"), coalescer.drain().getNewCodes());
+    }
+}
@@ -0,0 +1,263 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class BulkDecoderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Cargador en memoria que cuenta las imágenes cargadas a la vez, hasta que el test las da por liberadas.
+     */
+    private static final class MapLoader implements ImageLoader {
+        final Map<File, LuminanceImage> images = new HashMap<>();
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicInteger maxLoaded = new AtomicInteger();
+
+        @Override
+        public LuminanceImage load(File file) throws FileNotFoundException {
+            LuminanceImage image = images.get(file);
+            if (image == null) {
+                throw new FileNotFoundException(file.getName());
+            }
+            int now = loaded.incrementAndGet();
+            maxLoaded.accumulateAndGet(now, Math::max);
+            return image;
+        }
+    }
+
+    /**
+     * Imagen grande con códigos pequeños en posiciones conocidas de la imagen derecha.
+     */
+    private static byte[] largeCanvas(int width, int height, int[][] positions, String[] values) {
+        byte[] canvas = SyntheticCodes.canvas(width, height, 7);
+        for (int i = 0; i < positions.length; i++) {
+            SyntheticCodes.draw(canvas, width, BarcodeFormat.QR_CODE, values[i], positions[i][0], positions[i][1],
+                    300, 300);
+        }
+        return canvas;
+    }
+
+    @Test
+    public void tilesCoverAreaWithOverlap() {
+        LuminanceImage image = new LuminanceImage(new byte[5000 * 3000], 5000, 3000, 0);
+        List<CropRect> tiles = BulkDecoder.tiles(image, null, 2048, 512);
+        assertEquals(6, tiles.size());
+        assertEquals(new CropRect(0, 0, 2048, 2048), tiles.get(0));
+        assertEquals(new CropRect(1536, 0, 2048, 2048), tiles.get(1));
+        assertEquals(new CropRect(3072, 0, 1928, 2048), tiles.get(2));
+        assertEquals(new CropRect(3072, 1536, 1928, 1464), tiles.get(5));
+
+        LuminanceImage small = new LuminanceImage(new byte[640 * 480], 640, 480, 90);
+        assertEquals(Collections.singletonList(new CropRect(0, 0, 640, 480)), BulkDecoder.tiles(small, null, 2048, 512));
+    }
+
+    @Test
+    public void decodeFileFindsSmallCodesInLargeImageByTiles() {
+        int width = 4000;
+        int height = 3000;
+        String[] values = {"https://example.com/a", "https://example.com/b", "https://example.com/c"};
+        //El segundo código cruza el borde entre dos teselas
+        int[][] positions = {{100, 100}, {1900, 1200}, {3600, 2600}};
+        byte[] upright = largeCanvas(width, height, positions, values);
+        for (int rotation : new int[]{0, 90}) {
+            MapLoader loader = new MapLoader();
+            File file = new File("large.png");
+            loader.images.put(file, SyntheticCodes.toSensor(upright, width, height, rotation));
+            BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), loader, 1);
+            bulkDecoder.setTileSize(1024, 400);
+            BulkDecoder.FileResult result = bulkDecoder.decodeFile(0, file);
+            assertNull(result.getError());
+            assertTrue(result.getTiles() > 1);
+            assertEquals(width, result.getWidth());
+            assertEquals(height, result.getHeight());
+            Set<String> found = new HashSet<>();
+            for (DecodedBarcode barcode : result.getBarcodes()) {
+                found.add(barcode.getRawValue());
+                //El rectángulo está en coordenadas de la imagen derecha completa
+                int index = Arrays.asList(values).indexOf(barcode.getRawValue());
+                BoundingBox box = barcode.getBoundingBox();
+                assertTrue("rotación " + rotation + ": " + box, box.getLeft() >= positions[index][0]
+                        && box.getRight() <= positions[index][0] + 300
+                        && box.getTop() >= positions[index][1]
+                        && box.getBottom() <= positions[index][1] + 300);
+            }
+            assertEquals("rotación " + rotation, new HashSet<>(Arrays.asList(values)), found);
+        }
+    }
+
+    @Test
+    public void decodeFileRegionOfInterestLimitsSearch() {
+        int width = 2000;
+        int height = 1000;
+        String[] values = {"https://example.com/left", "https://example.com/right"};
+        byte[] upright = largeCanvas(width, height, new int[][]{{200, 300}, {1500, 300}}, values);
+        MapLoader loader = new MapLoader();
+        File file = new File("roi.png");
+        loader.images.put(file, new LuminanceImage(upright, width, height, 0));
+        BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), loader, 1);
+        bulkDecoder.setRegionOfInterest(new RegionOfInterest(0.5f, 0f, 1f, 1f));
+        BulkDecoder.FileResult result = bulkDecoder.decodeFile(0, file);
+        assertEquals(1, result.getBarcodes().size());
+        assertEquals(values[1], result.getBarcodes().get(0).getRawValue());
+        //Los puntos de ZXing son los centros de los patrones de posición, dentro del código dibujado
+        BoundingBox box = result.getBarcodes().get(0).getBoundingBox();
+        assertTrue(box.toString(), box.getLeft() >= 1500 && box.getRight() <= 1800);
+    }
+
+    @Test
+    public void decodeStreamsResultsWithBoundedParallelismAndDedupe() throws Exception {
+        MapLoader loader = new MapLoader();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            File file = new File("note-" + i + ".png");
+            //Cada código aparece en dos fotos del mismo albarán
+            loader.images.put(file, SyntheticCodes.grid(800, 600, 0, BarcodeFormat.QR_CODE, 1, i / 2).getImage());
+            files.add(file);
+        }
+        files.add(new File("missing.png"));
+        BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), loader, 3);
+        bulkDecoder.setDuplicateFilter(new DuplicateFilter(1024, Long.MAX_VALUE, 1));
+        List<BulkDecoder.FileResult> results = new ArrayList<>();
+        BulkDecoder.Summary summary = bulkDecoder.decode(files.iterator(), result -> {
+            results.add(result);
+            //La imagen deja de estar cargada cuando se entrega su resultado
+            loader.loaded.decrementAndGet();
+        });
+        assertEquals(25, summary.getFiles());
+        assertEquals(25, results.size());
+        assertEquals(1, summary.getFailed());
+        assertEquals(12, summary.getBarcodes());
+        assertTrue("maxLoaded=" + loader.maxLoaded.get(), loader.maxLoaded.get() <= 3);
+        int duplicates = 0;
+        for (BulkDecoder.FileResult result : results) {
+            duplicates += result.getDuplicates();
+            if (result.getFile().getName().equals("missing.png")) {
+                assertTrue(result.getError() instanceof FileNotFoundException);
+            } else {
+                assertNull(result.getError());
+                assertTrue(result.getDecodeNanos() > 0);
+            }
+        }
+        assertEquals(12, duplicates);
+    }
+
+    @Test
+    public void decodeDeliversCodesFromASingleFileWithCameraFilter() throws Exception {
+        //Filtro compartido con la cámara, que pide dos frames consecutivos
+        DuplicateFilter filter = new DuplicateFilter(64, Long.MAX_VALUE, 2);
+        MapLoader loader = new MapLoader();
+        List<File> files = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File file = new File("photo-" + i + ".png");
+            SyntheticCodes.Sample sample = SyntheticCodes.grid(800, 600, 0, BarcodeFormat.QR_CODE, 1, i % 2);
+            loader.images.put(file, sample.getImage());
+            files.add(file);
+            values.add(sample.getExpectedValues().get(0));
+        }
+        int format = BarcodeFormat.QR_CODE.getMask();
+        //La cámara ha visto el segundo código en un solo frame, con el mismo índice que su fichero
+        assertFalse(filter.accept(format, values.get(1), 1, 0));
+
+        BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), loader, 1);
+        bulkDecoder.setDuplicateFilter(filter);
+        List<String> delivered = new ArrayList<>();
+        int[] duplicates = new int[1];
+        bulkDecoder.decode(files.iterator(), result -> {
+            for (DecodedBarcode barcode : result.getBarcodes()) {
+                delivered.add(barcode.getRawValue());
+            }
+            duplicates[0] += result.getDuplicates();
+        });
+        //Cada código se entrega desde un único fichero; el tercero repite el primero
+        assertEquals(Arrays.asList(values.get(0), values.get(1)), delivered);
+        assertEquals(1, duplicates[0]);
+        //Y la cámara no vuelve a notificar el código entregado desde un fichero
+        assertFalse(filter.accept(format, values.get(1), 2, 1));
+        assertFalse(filter.accept(format, values.get(1), 3, 2));
+    }
+
+    @Test
+    public void decodeRethrowsListenerFailureAndStopsLoading() throws Exception {
+        MapLoader loader = new MapLoader();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File file = new File("note-" + i + ".png");
+            loader.images.put(file, SyntheticCodes.grid(320, 240, 0, BarcodeFormat.QR_CODE, 1, i).getImage());
+            files.add(file);
+        }
+        BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), loader, 2);
+        AtomicInteger delivered = new AtomicInteger();
+        try {
+            bulkDecoder.decode(files.iterator(), result -> {
+                delivered.incrementAndGet();
+                throw new IllegalStateException("listener " + result.getIndex());
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("listener "));
+        }
+        //Solo terminan los ficheros que ya estaban en proceso
+        assertTrue("loaded=" + loader.loaded.get(), loader.loaded.get() <= 2);
+        assertEquals(loader.loaded.get(), delivered.get());
+    }
+
+    @Test
+    public void imageIoLoaderDecodesFilesFromDirectory() throws Exception {
+        File dir = folder.newFolder();
+        for (int i = 0; i < 3; i++) {
+            SyntheticCodes.Sample sample = SyntheticCodes.grid(640, 480, 0, BarcodeFormat.EAN_13, 1, i);
+            BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+            LuminanceImage luminance = sample.getImage();
+            for (int y = 0; y < 480; y++) {
+                for (int x = 0; x < 640; x++) {
+                    int value = luminance.getLuminance(x, y);
+                    image.setRGB(x, y, (value << 16) | (value << 8) | value);
+                }
+            }
+            ImageIO.write(image, "png", new File(dir, "scan-" + i + ".png"));
+        }
+        assertTrue(new File(dir, "notes.txt").createNewFile());
+
+        BulkDecoder bulkDecoder = new BulkDecoder(new ZxingBarcodeDecoder(), new ImageIoImageLoader(), 2);
+        List<String> values = Collections.synchronizedList(new ArrayList<String>());
+        BulkDecoder.Summary summary = bulkDecoder.decode(BulkDecoder.listImages(dir), result -> {
+            assertNull(result.getError());
+            for (DecodedBarcode barcode : result.getBarcodes()) {
+                values.add(barcode.getRawValue());
+            }
+        });
+        assertEquals(3, summary.getFiles());
+        assertEquals(3, values.size());
+        assertTrue(values.contains(SyntheticCodes.sampleContents(BarcodeFormat.EAN_13, 0)));
+    }
+
+    @Test
+    public void imageIoLoaderSubsamplesLargeImages() throws Exception {
+        File file = new File(folder.getRoot(), "large.png");
+        ImageIO.write(new BufferedImage(1000, 800, BufferedImage.TYPE_BYTE_GRAY), "png", file);
+        LuminanceImage image = new ImageIoImageLoader(200_000).load(file);
+        assertTrue((long) image.getWidth() * image.getHeight() <= 200_000);
+        assertEquals(500, image.getWidth());
+    }
+}
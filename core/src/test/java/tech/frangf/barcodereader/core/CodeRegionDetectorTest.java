@@ -0,0 +1,45 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CodeRegionDetectorTest {
+    @Test
+    public void plainBackgroundIsNotCodeLike() {
+        CodeRegionDetector detector = new CodeRegionDetector();
+        LuminanceImage image = new LuminanceImage(SyntheticCodes.canvas(640, 480, 1), 640, 480, 0);
+        assertFalse(detector.detect(image));
+        assertEquals(0, detector.getLastBlockCount());
+    }
+
+    @Test
+    public void singleObjectEdgeIsNotCodeLike() {
+        byte[] canvas = SyntheticCodes.canvas(640, 480, 1);
+        for (int y = 0; y < 480; y++) {
+            for (int x = 300; x < 640; x++) {
+                canvas[y * 640 + x] = 20;
+            }
+        }
+        assertFalse(new CodeRegionDetector().detect(new LuminanceImage(canvas, 640, 480, 0)));
+    }
+
+    @Test
+    public void detectsLinearAndMatrixCodesInAnyRotation() {
+        CodeRegionDetector detector = new CodeRegionDetector();
+        for (BarcodeFormat format : new BarcodeFormat[]{BarcodeFormat.EAN_13, BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE}) {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                SyntheticCodes.Sample sample = SyntheticCodes.grid(640, 480, rotation, format, 1, 3);
+                assertTrue(format + " " + rotation, detector.detect(sample.getImage()));
+            }
+        }
+    }
+
+    @Test
+    public void smallCodeInLargeFrameIsStillDetected() {
+        //Código lejano que el decodificador puede no leer a esta resolución
+        byte[] canvas = SyntheticCodes.canvas(1280, 720, 2);
+        SyntheticCodes.draw(canvas, 1280, BarcodeFormat.QR_CODE, "https://example.com/far", 600, 320, 80, 80);
+        assertTrue(new CodeRegionDetector().detect(new LuminanceImage(canvas, 1280, 720, 0)));
+    }
+}
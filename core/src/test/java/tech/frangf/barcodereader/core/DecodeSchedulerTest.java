@@ -0,0 +1,240 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tech.frangf.barcodereader.core.FramePipelineTest.SyntheticFrame;
+
+import static org.junit.Assert.*;
+
+public class DecodeSchedulerTest {
+
+    /**
+     * Guarda las secuencias entregadas en orden.
+     */
+    static class RecordingListener<T> implements DecodeScheduler.ResultListener<SyntheticFrame, T> {
+        final List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> errors = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onResult(SyntheticFrame frame, List<T> codes) {
+            assertTrue("El frame se debe liberar antes de entregar su resultado", frame.isClosed());
+            sequences.add(frame.getSequence());
+        }
+
+        @Override
+        public void onError(SyntheticFrame frame, Exception e) {
+            errors.add(frame.getSequence());
+        }
+    }
+
+    @Test
+    public void resultsAreDeliveredInSequenceOrder() throws Exception {
+        ConcurrentHashMap<Long, CountDownLatch> gates = new ConcurrentHashMap<>();
+        for (long i = 0; i < 3; i++) {
+            gates.put(i, new CountDownLatch(1));
+        }
+        RecordingListener<String> listener = new RecordingListener<>();
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(3, frame -> {
+            gates.get(frame.getSequence()).await();
+            return Collections.emptyList();
+        }, listener);
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(3, DropPolicy.BLOCK, scheduler);
+        for (long i = 0; i < 3; i++) {
+            pipeline.onFrame(new SyntheticFrame(i));
+        }
+        //Los frames 2 y 1 terminan antes que el 0, pero sin códigos esperan a que termine
+        gates.get(2L).countDown();
+        gates.get(1L).countDown();
+        waitFor(() -> pipeline.getInFlightCount() == 1);
+        assertTrue(listener.sequences.isEmpty());
+        gates.get(0L).countDown();
+        waitFor(() -> listener.sequences.size() == 3);
+        assertEquals(Arrays.asList(0L, 1L, 2L), listener.sequences);
+        assertEquals(0, scheduler.getStaleCount());
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.close();
+    }
+
+    @Test
+    public void newerFrameWithCodesMakesOlderPendingFramesStale() throws Exception {
+        CountDownLatch slowFrame = new CountDownLatch(1);
+        RecordingListener<String> listener = new RecordingListener<>();
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(2, frame -> {
+            if (frame.getSequence() == 0) {
+                slowFrame.await();
+            }
+            return Collections.singletonList("code-" + frame.getSequence());
+        }, listener);
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(2, DropPolicy.BLOCK, scheduler);
+        SyntheticFrame first = new SyntheticFrame(0);
+        pipeline.onFrame(first);
+        pipeline.onFrame(new SyntheticFrame(1));
+        waitFor(() -> listener.sequences.size() == 1);
+        assertEquals(Collections.singletonList(1L), listener.sequences);
+        slowFrame.countDown();
+        waitFor(() -> scheduler.getStaleCount() == 1);
+        assertEquals(Collections.singletonList(1L), listener.sequences);
+        //El frame obsoleto también se libera
+        waitFor(first::isClosed);
+        assertEquals(1, first.releases.get());
+        scheduler.close();
+    }
+
+    @Test
+    public void errorsAreDeliveredInOrder() throws Exception {
+        RecordingListener<String> listener = new RecordingListener<>();
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(1, frame -> {
+            if (frame.getSequence() == 1) {
+                throw new BarcodeDecoderException("fallo", null);
+            }
+            return Collections.emptyList();
+        }, listener);
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.BLOCK, scheduler);
+        for (long i = 0; i < 3; i++) {
+            pipeline.onFrame(new SyntheticFrame(i));
+        }
+        waitFor(() -> listener.sequences.size() == 2);
+        assertEquals(Arrays.asList(0L, 2L), listener.sequences);
+        assertEquals(Collections.singletonList(1L), listener.errors);
+        assertEquals(1, scheduler.getErrorCount());
+        scheduler.close();
+    }
+
+    @Test
+    public void framesAreReleasedAfterClose() throws Exception {
+        RecordingListener<String> listener = new RecordingListener<>();
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(1,
+                frame -> Collections.emptyList(), listener);
+        scheduler.close();
+        SyntheticFrame frame = new SyntheticFrame(0);
+        AtomicInteger done = new AtomicInteger();
+        scheduler.process(frame, done::incrementAndGet);
+        assertEquals(1, done.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void prestartWorkersStartsThreadsBeforeFirstFrame() throws Exception {
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(2,
+                frame -> Collections.emptyList(), new RecordingListener<>());
+        try {
+            //Puede haber hilos de otros schedulers que aún no han terminado
+            Set<Thread> before = Thread.getAllStackTraces().keySet();
+            scheduler.prestartWorkers();
+            int started = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("decode-worker-") && !before.contains(thread)) {
+                    started++;
+                }
+            }
+            assertEquals(2, started);
+        } finally {
+            scheduler.close();
+            assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void adoptsPrestartedExecutorWithTheRequestedWorkers() throws Exception {
+        ThreadPoolExecutor executor = DecodeScheduler.newWorkerExecutor(1);
+        executor.prestartAllCoreThreads();
+        assertEquals(1, executor.getPoolSize());
+        RecordingListener<String> listener = new RecordingListener<>();
+        DecodeScheduler<SyntheticFrame, String> scheduler = new DecodeScheduler<>(executor, 3,
+                frame -> Collections.emptyList(), listener);
+        try {
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(3, executor.getMaximumPoolSize());
+            scheduler.prestartWorkers();
+            assertEquals(3, executor.getPoolSize());
+            FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(3, DropPolicy.BLOCK, scheduler);
+            for (long i = 0; i < 3; i++) {
+                pipeline.onFrame(new SyntheticFrame(i));
+            }
+            waitFor(() -> listener.sequences.size() == 3);
+        } finally {
+            scheduler.close();
+        }
+        assertTrue(executor.isShutdown());
+    }
+
+    /**
+     * Decodifica con ZXing el mismo flujo de frames con 1, 2 y 4 hilos. Todos los frames se deben entregar en orden
+     * y, si la máquina tiene varios núcleos, el throughput debe crecer con el número de hilos.
+     */
+    @Test
+    public void throughputScalesWithWorkers() throws Exception {
+        List<SyntheticCodes.Sample> corpus = DecoderHarness.corpus(BarcodeFormat.QR_CODE, 640, 480, 8);
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        int frames = 96;
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int workers : new int[]{1, 2, 4}) {
+            double framesPerSecond = run(decoder, corpus, workers, frames);
+            if (workers == 1) {
+                baseline = framesPerSecond;
+            } else if (workers == 2 && cores >= 2) {
+                assertTrue("2 hilos deberían decodificar más rápido que 1: " + framesPerSecond + " vs " + baseline,
+                        framesPerSecond > baseline * 1.3);
+            }
+        }
+    }
+
+    private static double run(ZxingBarcodeDecoder decoder, List<SyntheticCodes.Sample> corpus, int workers,
+                              int frames) throws Exception {
+        RecordingListener<DecodedBarcode> listener = new RecordingListener<>();
+        AtomicInteger decoded = new AtomicInteger();
+        DecodeScheduler<SyntheticFrame, DecodedBarcode> scheduler = new DecodeScheduler<>(workers, frame -> {
+            SyntheticCodes.Sample sample = corpus.get((int) (frame.getSequence() % corpus.size()));
+            List<DecodedBarcode> barcodes = decoder.decode(sample.getImage());
+            if (DecoderHarness.containsAll(barcodes, sample.getExpectedValues())) {
+                decoded.incrementAndGet();
+            }
+            return barcodes;
+        }, listener);
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(workers, DropPolicy.BLOCK, scheduler);
+        //Calentamiento
+        for (int i = 0; i < corpus.size(); i++) {
+            decoder.decode(corpus.get(i).getImage());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            pipeline.onFrame(new SyntheticFrame(i));
+        }
+        waitFor(() -> scheduler.getDeliveredCount() + scheduler.getStaleCount() == frames);
+        long elapsed = System.nanoTime() - start;
+        scheduler.close();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(frames, decoded.get());
+        List<Long> sequences = new ArrayList<>(listener.sequences);
+        for (int i = 1; i < sequences.size(); i++) {
+            assertTrue("Entrega fuera de orden: " + sequences, sequences.get(i) > sequences.get(i - 1));
+        }
+        return frames * 1e9 / elapsed;
+    }
+
+    interface Condition {
+        boolean isMet();
+    }
+
+    static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.isMet()) {
+            if (System.nanoTime() > deadline) {
+                fail("Tiempo de espera agotado");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
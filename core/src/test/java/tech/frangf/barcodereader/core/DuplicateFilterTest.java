@@ -0,0 +1,132 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTest {
+    private static final long MS = 1_000_000L;
+    private static final int EAN_13 = 32;
+    private static final int QR_CODE = 256;
+
+    @Test
+    public void distinctCodesAreReportedBackToBack() {
+        DuplicateFilter filter = new DuplicateFilter(16, 2000 * MS, 1);
+        assertTrue(filter.accept(EAN_13, "8410000000001", 0, 0));
+        assertTrue(filter.accept(EAN_13, "8410000000002", 1, 33 * MS));
+        assertTrue(filter.accept(EAN_13, "8410000000003", 2, 66 * MS));
+        assertEquals(3, filter.getMissCount());
+        assertEquals(0, filter.getHitCount());
+    }
+
+    @Test
+    public void repeatsAreSuppressedWhileSeenWithinTtl() {
+        DuplicateFilter filter = new DuplicateFilter(16, 500 * MS, 1);
+        assertTrue(filter.accept(EAN_13, "A", 0, 0));
+        for (int frame = 1; frame < 100; frame++) {
+            assertFalse(filter.accept(EAN_13, "A", frame, frame * 33 * MS));
+        }
+        assertEquals(99, filter.getHitCount());
+        assertEquals(99, filter.getSuppressedCount());
+        //Vuelve a notificarse cuando deja de verse durante más de ttl
+        assertTrue(filter.accept(EAN_13, "A", 200, 99 * 33 * MS + 501 * MS));
+    }
+
+    @Test
+    public void formatIsPartOfTheKey() {
+        DuplicateFilter filter = new DuplicateFilter(16, 1000 * MS, 1);
+        assertTrue(filter.accept(EAN_13, "123", 0, 0));
+        assertTrue(filter.accept(QR_CODE, "123", 0, 0));
+        assertFalse(filter.accept(QR_CODE, "123", 0, 0));
+    }
+
+    @Test
+    public void requiresConsecutiveConfirmations() {
+        DuplicateFilter filter = new DuplicateFilter(16, 1000 * MS, 3);
+        assertFalse(filter.accept(EAN_13, "A", 10, 0));
+        assertFalse(filter.accept(EAN_13, "A", 11, MS));
+        //El frame 12 no contiene el código, se reinicia la cuenta
+        assertFalse(filter.accept(EAN_13, "A", 13, 3 * MS));
+        assertFalse(filter.accept(EAN_13, "A", 14, 4 * MS));
+        assertTrue(filter.accept(EAN_13, "A", 15, 5 * MS));
+        assertFalse(filter.accept(EAN_13, "A", 16, 6 * MS));
+        assertEquals(1, filter.getAcceptedCount());
+    }
+
+    @Test
+    public void sameFrameDoesNotCountAsConfirmation() {
+        DuplicateFilter filter = new DuplicateFilter(16, 1000 * MS, 2);
+        assertFalse(filter.accept(EAN_13, "A", 1, 0));
+        assertFalse(filter.accept(EAN_13, "A", 1, 0));
+        assertTrue(filter.accept(EAN_13, "A", 2, MS));
+    }
+
+    @Test
+    public void stillImagesNeedNoConfirmationAndDoNotConfirmFrames() {
+        DuplicateFilter filter = new DuplicateFilter(16, 1000 * MS, 2);
+        assertTrue(filter.acceptStill(QR_CODE, "a", 0));
+        assertFalse(filter.acceptStill(QR_CODE, "a", 10 * MS));
+        //Una imagen no es el frame anterior de ningún frame de la cámara
+        assertFalse(filter.accept(QR_CODE, "b", 0, 20 * MS));
+        assertTrue(filter.acceptStill(QR_CODE, "b", 30 * MS));
+        assertFalse(filter.accept(QR_CODE, "b", 1, 40 * MS));
+        assertFalse(filter.accept(QR_CODE, "b", 2, 50 * MS));
+        assertFalse(filter.accept(QR_CODE, "c", 0, 60 * MS));
+        assertFalse(filter.acceptStill(QR_CODE, "a", 70 * MS));
+        assertFalse(filter.accept(QR_CODE, "c", 2, 80 * MS));
+        assertTrue(filter.accept(QR_CODE, "c", 3, 90 * MS));
+        //Vencido el ttl se vuelve a notificar
+        assertTrue(filter.acceptStill(QR_CODE, "a", 2000 * MS));
+    }
+
+    @Test
+    public void keyOfBinaryCodesMatchesBetweenSources() {
+        byte[] rawBytes = {(byte) 0x80, 0x01, (byte) 0xFF};
+        DecodedBarcode camera = new DecodedBarcode(BarcodeFormat.DATA_MATRIX, null, rawBytes, null, null, null);
+        DecodedBarcode file = new DecodedBarcode(BarcodeFormat.DATA_MATRIX, null, rawBytes.clone(), null, null, null);
+        assertEquals("\u0080\u0001\u00FF", DuplicateFilter.keyOf(camera));
+        assertEquals(DuplicateFilter.keyOf(camera), DuplicateFilter.keyOf(file));
+        assertEquals("", DuplicateFilter.keyOf(new DecodedBarcode(BarcodeFormat.QR_CODE, null, null, null, null, null)));
+
+        DuplicateFilter filter = new DuplicateFilter(16, 1000 * MS, 1);
+        assertTrue(filter.accept(BarcodeFormat.DATA_MATRIX.getMask(), DuplicateFilter.keyOf(camera), 0, 0));
+        assertFalse(filter.acceptStill(BarcodeFormat.DATA_MATRIX.getMask(), DuplicateFilter.keyOf(file), 10 * MS));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        DuplicateFilter filter = new DuplicateFilter(3, 10_000 * MS, 1);
+        filter.accept(EAN_13, "A", 0, 0);
+        filter.accept(EAN_13, "B", 0, 0);
+        filter.accept(EAN_13, "C", 0, 0);
+        //A pasa a ser el más reciente
+        assertFalse(filter.accept(EAN_13, "A", 1, MS));
+        //D expulsa a B
+        assertTrue(filter.accept(EAN_13, "D", 1, MS));
+        assertEquals(1, filter.getEvictionCount());
+        assertEquals(3, filter.size());
+        assertFalse(filter.accept(EAN_13, "A", 2, 2 * MS));
+        assertFalse(filter.accept(EAN_13, "C", 2, 2 * MS));
+        assertTrue(filter.accept(EAN_13, "B", 2, 2 * MS));
+    }
+
+    @Test
+    public void manyEvictionsKeepTableConsistent() {
+        DuplicateFilter filter = new DuplicateFilter(8, 10_000 * MS, 1);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.accept(EAN_13, Integer.toString(i), i, i));
+            assertFalse(filter.accept(EAN_13, Integer.toString(i), i + 1, i));
+        }
+        assertEquals(8, filter.size());
+        assertEquals(10_000 - 8, filter.getEvictionCount());
+    }
+
+    @Test
+    public void clearForgetsCodes() {
+        DuplicateFilter filter = new DuplicateFilter(4, 10_000 * MS, 1);
+        assertTrue(filter.accept(EAN_13, "A", 0, 0));
+        filter.clear();
+        assertEquals(0, filter.size());
+        assertTrue(filter.accept(EAN_13, "A", 1, MS));
+    }
+}
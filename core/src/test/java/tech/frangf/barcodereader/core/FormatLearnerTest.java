@@ -0,0 +1,110 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FormatLearnerTest {
+    private static final long MS = 1_000_000L;
+    private static final int EAN_13 = BarcodeFormat.EAN_13.getMask();
+    private static final int CODE_128 = BarcodeFormat.CODE_128.getMask();
+    private static final int QR_CODE = BarcodeFormat.QR_CODE.getMask();
+    private static final int ALL = BarcodeFormat.ALL_FORMATS_MASK;
+
+    private static FormatLearner learner() {
+        return new FormatLearner(ALL, 4, 3, 1000 * MS, 2);
+    }
+
+    @Test
+    public void searchesAllFormatsUntilSomethingIsLearned() {
+        FormatLearner learner = learner();
+        assertEquals(ALL, learner.getActiveFormatMask());
+        assertFalse(learner.onFrame(0, 0));
+        assertEquals(ALL, learner.getActiveFormatMask());
+        assertTrue(learner.onFrame(33 * MS, EAN_13 | CODE_128));
+        assertEquals(EAN_13 | CODE_128, learner.getActiveFormatMask());
+        assertEquals(EAN_13 | CODE_128, learner.getLearnedFormatMask());
+    }
+
+    @Test
+    public void fallsBackAfterEmptyFramesAndLearnsNewFormats() {
+        FormatLearner learner = learner();
+        learner.onFrame(0, EAN_13);
+        assertFalse(learner.onFrame(33 * MS, 0));
+        assertFalse(learner.onFrame(66 * MS, 0));
+        //Tercer frame vacío: se vuelven a buscar todos los formatos durante 2 frames
+        assertTrue(learner.onFrame(100 * MS, 0));
+        assertTrue(learner.isFallback());
+        assertEquals(ALL, learner.getActiveFormatMask());
+        assertFalse(learner.onFrame(133 * MS, QR_CODE));
+        assertTrue(learner.onFrame(166 * MS, 0));
+        assertFalse(learner.isFallback());
+        assertEquals(EAN_13 | QR_CODE, learner.getActiveFormatMask());
+        assertEquals(1, learner.getFallbackCount());
+        assertEquals(2.0 / 6, learner.getFallbackRate(), 1e-9);
+    }
+
+    @Test
+    public void fallsBackPeriodicallyEvenWhenReading() {
+        FormatLearner learner = learner();
+        long now = 0;
+        learner.onFrame(now, EAN_13);
+        for (int i = 0; i < 29; i++) {
+            learner.onFrame(now += 33 * MS, EAN_13);
+        }
+        assertEquals(EAN_13, learner.getActiveFormatMask());
+        assertTrue(learner.onFrame(now += 100 * MS, EAN_13));
+        assertTrue(learner.isFallback());
+    }
+
+    @Test
+    public void oldFormatsAreForgotten() {
+        FormatLearner learner = learner();
+        learner.onFrame(0, QR_CODE);
+        for (int i = 1; i <= 4; i++) {
+            learner.onFrame(i * MS, EAN_13);
+        }
+        assertEquals(EAN_13, learner.getLearnedFormatMask());
+    }
+
+    @Test
+    public void restoreAndClear() {
+        FormatLearner learner = learner();
+        learner.restore(CODE_128 | QR_CODE);
+        assertEquals(CODE_128 | QR_CODE, learner.getActiveFormatMask());
+        //El intervalo del fallback periódico empieza a contar en el primer frame
+        assertFalse(learner.onFrame(5000 * MS, CODE_128));
+        assertEquals(CODE_128 | QR_CODE, learner.getActiveFormatMask());
+        learner.clear();
+        assertEquals(0, learner.getLearnedFormatMask());
+        assertEquals(ALL, learner.getActiveFormatMask());
+    }
+
+    @Test
+    public void ignoresFormatsOutsideTheConfiguredSet() {
+        FormatLearner learner = new FormatLearner(EAN_13 | CODE_128, 4, 3, 1000 * MS, 2);
+        learner.onFrame(0, QR_CODE);
+        assertEquals(0, learner.getLearnedFormatMask());
+        assertEquals(EAN_13 | CODE_128, learner.getActiveFormatMask());
+    }
+
+    @Test
+    public void scannerMaskLimitsLearnedFormatsToTheOptions() {
+        FormatLearner learner = learner();
+        //Sin formatos aprendidos se usa el escáner de las opciones; 0 (FORMAT_ALL_FORMATS de ML Kit) son todos
+        assertEquals(ALL, learner.getScannerMask(0));
+        assertEquals(EAN_13 | QR_CODE, learner.getScannerMask(EAN_13 | QR_CODE));
+        learner.onFrame(0, EAN_13 | CODE_128);
+        assertEquals(EAN_13 | CODE_128, learner.getScannerMask(0));
+        assertEquals(EAN_13 | CODE_128, learner.getScannerMask(ALL));
+        assertEquals(EAN_13, learner.getScannerMask(EAN_13 | QR_CODE));
+        //Ningún formato aprendido está en las opciones
+        assertEquals(QR_CODE, learner.getScannerMask(QR_CODE));
+        //En un fallback se buscan todos los de las opciones
+        for (int i = 1; i <= 3; i++) {
+            learner.onFrame(i * 33 * MS, 0);
+        }
+        assertTrue(learner.isFallback());
+        assertEquals(ALL, learner.getScannerMask(0));
+    }
+}
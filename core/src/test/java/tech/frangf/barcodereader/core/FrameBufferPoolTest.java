@@ -0,0 +1,153 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void acquire_reusesReleasedBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        FrameBufferPool.Lease first = pool.acquire(1000);
+        assertTrue(first.getBuffer().isDirect());
+        assertEquals(1000, first.getBuffer().limit());
+        assertEquals(1, pool.getOutstandingLeases());
+        first.release();
+        assertEquals(0, pool.getOutstandingLeases());
+        assertEquals(1, pool.getPooledCount());
+
+        //En régimen estable todos los frames reutilizan el mismo buffer
+        for (int i = 0; i < 100; i++) {
+            FrameBufferPool.Lease lease = pool.acquire(1000);
+            assertSame(first, lease);
+            lease.release();
+        }
+        assertEquals(1, pool.getMisses());
+        assertEquals(100, pool.getHits());
+    }
+
+    @Test
+    public void release_returnsBufferOnlyAfterLastReference() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        FrameBufferPool.Lease lease = pool.acquire(64);
+        //El frame y el decodificador tienen cada uno su referencia
+        lease.retain();
+        assertEquals(2, lease.getRefCount());
+        lease.release();
+        assertEquals(1, pool.getOutstandingLeases());
+        assertEquals(0, pool.getPooledCount());
+        lease.release();
+        assertEquals(0, pool.getOutstandingLeases());
+        assertEquals(1, pool.getPooledCount());
+        try {
+            lease.release();
+            fail("Se esperaba IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Ya estaba en el pool
+        }
+        try {
+            lease.retain();
+            fail("Se esperaba IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Ya estaba en el pool
+        }
+    }
+
+    @Test
+    public void acquire_largerResolutionDiscardsSmallBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(4);
+        pool.acquire(100).release();
+        pool.acquire(100).release();
+        FrameBufferPool.Lease large = pool.acquire(400);
+        assertEquals(2, pool.getMisses());
+        assertEquals(0, pool.getPooledCount());
+        large.release();
+        //Un buffer grande sirve también para resoluciones menores
+        FrameBufferPool.Lease small = pool.acquire(100);
+        assertSame(large, small);
+        assertEquals(100, small.getBuffer().limit());
+        small.release();
+    }
+
+    @Test
+    public void release_keepsAtMostMaxPooled() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        FrameBufferPool.Lease a = pool.acquire(10);
+        FrameBufferPool.Lease b = pool.acquire(10);
+        FrameBufferPool.Lease c = pool.acquire(10);
+        assertEquals(3, pool.getOutstandingLeases());
+        a.release();
+        b.release();
+        c.release();
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(0, pool.getOutstandingLeases());
+    }
+
+    @Test
+    public void copyFrom_packsStridedPlane() {
+        int width = 6;
+        int height = 4;
+        for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+            int rowStride = width * pixelStride + 5;
+            ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    plane.put(y * rowStride + x * pixelStride, (byte) (x + 10 * y));
+                }
+            }
+            plane.position(3);
+            LuminanceImage source = new LuminanceImage().set(plane, 0, width, height, rowStride, pixelStride, 90);
+            FrameBufferPool pool = new FrameBufferPool(1);
+            FrameBufferPool.Lease lease = pool.acquire(width * height);
+            LuminanceImage copy = lease.copyFrom(source);
+            assertTrue(copy.isPacked());
+            assertEquals(90, copy.getRotationDegrees());
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(source.getLuminance(x, y), copy.getLuminance(x, y));
+                }
+            }
+            //La copia no altera la posición del plano
+            assertEquals(3, plane.position());
+            lease.release();
+        }
+    }
+
+    @Test
+    public void crop_writesNv21IntoLease() {
+        int width = 40;
+        int height = 30;
+        int rowStride = 48;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane.put(y * rowStride + x, (byte) (x + 7 * y));
+            }
+        }
+        CropRect rect = new CropRect(10, 6, 20, 12);
+        FrameBufferPool pool = new FrameBufferPool(1);
+        //Contenido previo que no debe quedar en la crominancia
+        FrameBufferPool.Lease dirty = pool.acquire(20 * 12 * 3 / 2);
+        for (int i = 0; i < dirty.getBuffer().limit(); i++) {
+            dirty.getBuffer().put(i, (byte) 1);
+        }
+        dirty.release();
+
+        FrameBufferPool.Lease lease = RoiCropper.crop(plane, rowStride, 1, rect, 180, pool);
+        byte[] expected = new RoiCropper().crop(plane, rowStride, 1, rect);
+        ByteBuffer buffer = lease.getBuffer();
+        assertEquals(expected.length, buffer.limit());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], buffer.get(i));
+        }
+        LuminanceImage image = lease.getImage();
+        assertEquals(20, image.getWidth());
+        assertEquals(12, image.getHeight());
+        assertEquals(180, image.getRotationDegrees());
+        assertEquals(1, pool.getHits());
+        lease.release();
+    }
+}
@@ -0,0 +1,143 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class FrameGateTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /**
+     * Frame con un código QR en la posición indicada sobre un fondo con ruido.
+     */
+    private static byte[] frame(int x, int y, int size, long seed) {
+        byte[] canvas = SyntheticCodes.canvas(WIDTH, HEIGHT, seed);
+        SyntheticCodes.draw(canvas, WIDTH, BarcodeFormat.QR_CODE, "https://example.com/gate", x, y, size, size);
+        return canvas;
+    }
+
+    /**
+     * Desenfoque: media de un cuadrado de size x size píxeles, con el ruido del sensor añadido después como en una
+     * cámara real.
+     */
+    private static byte[] blur(byte[] image, int size, long seed) {
+        byte[] noise = SyntheticCodes.canvas(WIDTH, HEIGHT, seed);
+        byte[] blurred = new byte[image.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = 0; dy < size && y + dy < HEIGHT; dy++) {
+                    for (int dx = 0; dx < size && x + dx < WIDTH; dx++) {
+                        sum += image[(y + dy) * WIDTH + x + dx] & 0xFF;
+                        count++;
+                    }
+                }
+                int value = sum / count + (noise[y * WIDTH + x] & 0xFF) - 200;
+                blurred[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        return blurred;
+    }
+
+    private static LuminanceImage image(byte[] luminance) {
+        return new LuminanceImage(luminance, WIDTH, HEIGHT, 90);
+    }
+
+    @Test
+    public void sharpCodePassesAndBlurIsSkipped() {
+        FrameGate gate = new FrameGate();
+        byte[] sharp = frame(500, 250, 200, 1);
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(sharp)));
+        float sharpness = gate.getLastSharpness();
+        assertEquals(FrameGate.Decision.BLURRY, gate.evaluate(image(blur(sharp, 12, 2))));
+        assertTrue(sharpness + " " + gate.getLastSharpness(), gate.getLastSharpness() < sharpness / 3);
+        assertEquals(1, gate.getBlurryCount());
+    }
+
+    @Test
+    public void tinyCodeOnPlainBackgroundIsSharp() {
+        FrameGate gate = new FrameGate();
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(frame(900, 500, 80, 3))));
+        assertEquals(FrameGate.Decision.BLURRY, gate.evaluate(image(SyntheticCodes.canvas(WIDTH, HEIGHT, 4))));
+    }
+
+    @Test
+    public void unchangedSceneIsSkippedUntilItChanges() {
+        FrameGate gate = new FrameGate();
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(frame(500, 250, 200, 1))));
+        //El mismo encuadre con otro ruido de sensor
+        assertEquals(FrameGate.Decision.UNCHANGED, gate.evaluate(image(frame(500, 250, 200, 2))));
+        assertEquals(FrameGate.Decision.UNCHANGED, gate.evaluate(image(frame(500, 250, 200, 3))));
+        //Aparece un código pequeño en una esquina, repartido entre cuatro celdas
+        byte[] newCode = frame(500, 250, 200, 4);
+        SyntheticCodes.draw(newCode, WIDTH, BarcodeFormat.QR_CODE, "https://example.com/new", 1100, 560, 80, 80);
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(newCode)));
+        assertEquals(2, gate.getUnchangedCount());
+        assertEquals(2, gate.getDecodeCount());
+        assertEquals(2, gate.getSkippedCount());
+    }
+
+    @Test
+    public void largeChangeBetweenFramesIsMotion() {
+        FrameGate gate = new FrameGate(24, 18, 2, 0f, 10f, 10f, 15);
+        byte[] bright = frame(500, 250, 200, 1);
+        byte[] dark = new byte[bright.length];
+        for (int i = 0; i < dark.length; i++) {
+            dark[i] = (byte) ((bright[i] & 0xFF) / 3);
+        }
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(bright)));
+        assertEquals(FrameGate.Decision.MOVING, gate.evaluate(image(dark)));
+        assertTrue(gate.getLastMotion() > 10);
+        //Ya quieto, el frame es distinto del último decodificado
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image(dark)));
+        assertEquals(1, gate.getMovingCount());
+    }
+
+    @Test
+    public void forcesDecodeAfterMaxConsecutiveSkips() {
+        FrameGate gate = new FrameGate(24, 18, 2, 24f, 40f, 10f, 3);
+        LuminanceImage plain = image(SyntheticCodes.canvas(WIDTH, HEIGHT, 5));
+        FrameGate.Decision[] decisions = new FrameGate.Decision[8];
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = gate.evaluate(plain);
+        }
+        assertArrayEquals(new FrameGate.Decision[]{FrameGate.Decision.BLURRY, FrameGate.Decision.BLURRY,
+                FrameGate.Decision.BLURRY, FrameGate.Decision.DECODE, FrameGate.Decision.BLURRY,
+                FrameGate.Decision.BLURRY, FrameGate.Decision.BLURRY, FrameGate.Decision.DECODE}, decisions);
+        assertEquals(2, gate.getForcedCount());
+        assertEquals(6, gate.getBlurryCount());
+        assertEquals(8, gate.getEvaluatedCount());
+    }
+
+    @Test
+    public void resetForgetsLastDecodedFrame() {
+        FrameGate gate = new FrameGate();
+        LuminanceImage image = image(frame(500, 250, 200, 1));
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image));
+        assertEquals(FrameGate.Decision.UNCHANGED, gate.evaluate(image));
+        gate.reset();
+        assertEquals(FrameGate.Decision.DECODE, gate.evaluate(image));
+    }
+
+    @Test
+    public void evaluateDoesNotAllocate() {
+        FrameGate gate = new FrameGate();
+        LuminanceImage[] images = {image(frame(500, 250, 200, 1)), image(frame(100, 400, 200, 2))};
+        for (int i = 0; i < 300; i++) {
+            gate.evaluate(images[i % 2]);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            gate.evaluate(images[i % 2]);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        //Margen para lo que reserva la propia medida
+        assertTrue("allocated=" + allocated, allocated < 1024);
+    }
+}
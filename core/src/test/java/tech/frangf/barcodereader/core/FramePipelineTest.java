@@ -0,0 +1,213 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+
+    static class SyntheticFrame extends Frame {
+        final AtomicInteger releases = new AtomicInteger();
+
+        SyntheticFrame(long sequence) {
+            super(sequence, System.nanoTime(), 640, 480, 90);
+        }
+
+        @Override
+        protected void release() {
+            releases.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void dropNewest_dropsFramesWhileBusy() {
+        List<Runnable> callbacks = new ArrayList<>();
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.DROP_NEWEST,
+                (frame, onDone) -> callbacks.add(onDone));
+        SyntheticFrame first = new SyntheticFrame(0);
+        SyntheticFrame second = new SyntheticFrame(1);
+        pipeline.onFrame(first);
+        pipeline.onFrame(second);
+
+        assertEquals(1, callbacks.size());
+        assertTrue(second.isClosed());
+        assertFalse(first.isClosed());
+        assertEquals(1, pipeline.getDroppedCount());
+
+        callbacks.get(0).run();
+        callbacks.get(0).run();
+        assertEquals(1, first.releases.get());
+        assertEquals(1, pipeline.getProcessedCount());
+        assertEquals(0, pipeline.getInFlightCount());
+    }
+
+    @Test
+    public void keepLatest_processesOnlyNewestPendingFrame() {
+        List<SyntheticFrame> seen = new ArrayList<>();
+        List<Runnable> callbacks = new ArrayList<>();
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.KEEP_LATEST,
+                (frame, onDone) -> {
+                    seen.add(frame);
+                    callbacks.add(onDone);
+                });
+        SyntheticFrame[] frames = new SyntheticFrame[4];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SyntheticFrame(i);
+            pipeline.onFrame(frames[i]);
+        }
+        assertTrue(frames[1].isClosed());
+        assertTrue(frames[2].isClosed());
+        assertFalse(frames[3].isClosed());
+
+        callbacks.get(0).run();
+        assertEquals(2, seen.size());
+        assertSame(frames[3], seen.get(1));
+        callbacks.get(1).run();
+
+        assertEquals(2, pipeline.getProcessedCount());
+        assertEquals(2, pipeline.getDroppedCount());
+        for (SyntheticFrame frame : frames) {
+            assertEquals(1, frame.releases.get());
+        }
+    }
+
+    @Test
+    public void close_releasesPendingAndRejectsNewFrames() {
+        List<Runnable> callbacks = new ArrayList<>();
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.KEEP_LATEST,
+                (frame, onDone) -> callbacks.add(onDone));
+        SyntheticFrame inFlight = new SyntheticFrame(0);
+        SyntheticFrame pending = new SyntheticFrame(1);
+        pipeline.onFrame(inFlight);
+        pipeline.onFrame(pending);
+        pipeline.close();
+        SyntheticFrame late = new SyntheticFrame(2);
+        pipeline.onFrame(late);
+
+        assertTrue(pending.isClosed());
+        assertTrue(late.isClosed());
+        assertFalse(inFlight.isClosed());
+        callbacks.get(0).run();
+        assertTrue(inFlight.isClosed());
+        assertEquals(1, callbacks.size());
+    }
+
+    @Test
+    public void setMaxInFlight_changesLimitWithoutRebuilding() {
+        List<Runnable> callbacks = new ArrayList<>();
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.KEEP_LATEST,
+                (frame, onDone) -> callbacks.add(onDone));
+        pipeline.setMaxInFlight(3);
+        for (int i = 0; i < 4; i++) {
+            pipeline.onFrame(new SyntheticFrame(i));
+        }
+        assertEquals(3, callbacks.size());
+        assertEquals(3, pipeline.getInFlightCount());
+
+        //Al reducirlo, el frame en espera solo entra cuando queda un hueco por debajo del nuevo límite
+        pipeline.setMaxInFlight(1);
+        callbacks.get(0).run();
+        assertEquals(2, pipeline.getInFlightCount());
+        callbacks.get(1).run();
+        assertEquals(1, pipeline.getInFlightCount());
+        assertEquals(3, callbacks.size());
+        callbacks.get(2).run();
+        assertEquals(4, callbacks.size());
+        assertEquals(1, pipeline.getInFlightCount());
+        callbacks.get(3).run();
+        assertEquals(0, pipeline.getInFlightCount());
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void processorException_stillClosesFrame() {
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(1, DropPolicy.DROP_NEWEST,
+                (frame, onDone) -> {
+                    throw new IllegalStateException("fallo");
+                });
+        SyntheticFrame frame = new SyntheticFrame(0);
+        try {
+            pipeline.onFrame(frame);
+            fail();
+        } catch (IllegalStateException expected) {
+            // esperado
+        }
+        assertTrue(frame.isClosed());
+        assertEquals(0, pipeline.getInFlightCount());
+    }
+
+    @Test
+    public void stress_everyFrameClosedExactlyOnce() throws Exception {
+        for (DropPolicy policy : DropPolicy.values()) {
+            stress(policy);
+        }
+    }
+
+    private void stress(DropPolicy policy) throws Exception {
+        final int producers = 4;
+        final int framesPerProducer = 5000;
+        final int maxInFlight = 3;
+        ExecutorService decoder = Executors.newFixedThreadPool(4);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        FramePipeline<SyntheticFrame> pipeline = new FramePipeline<>(maxInFlight, policy,
+                (frame, onDone) -> {
+                    int now = concurrent.incrementAndGet();
+                    maxConcurrent.accumulateAndGet(now, Math::max);
+                    decoder.execute(() -> {
+                        concurrent.decrementAndGet();
+                        onDone.run();
+                    });
+                });
+        SyntheticFrame[] frames = new SyntheticFrame[producers * framesPerProducer];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new SyntheticFrame(i);
+        }
+        CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int offset = p * framesPerProducer;
+            threads[p] = new Thread(() -> {
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < framesPerProducer; i++) {
+                    pipeline.onFrame(frames[offset + i]);
+                }
+            });
+            threads[p].start();
+        }
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        pipeline.close();
+        decoder.shutdown();
+        assertTrue(decoder.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(policy + ": excede maxInFlight", maxConcurrent.get() <= maxInFlight);
+        assertEquals(0, pipeline.getInFlightCount());
+        assertEquals(frames.length, pipeline.getReceivedCount());
+        assertEquals(frames.length, pipeline.getProcessedCount() + pipeline.getDroppedCount());
+        if (policy == DropPolicy.BLOCK) {
+            assertEquals(0, pipeline.getDroppedCount());
+        }
+        for (SyntheticFrame frame : frames) {
+            assertEquals(policy + ": frame " + frame.getSequence(), 1, frame.releases.get());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class FrameRecorderTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<RecordedFrame> readAll(File file) throws IOException {
+        List<RecordedFrame> frames = new ArrayList<>();
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            RecordedFrame frame;
+            while ((frame = reader.next()) != null) {
+                frames.add(frame);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] packed(LuminanceImage image) {
+        byte[] data = new byte[image.getWidth() * image.getHeight()];
+        image.copyPacked(data);
+        return data;
+    }
+
+    @Test
+    public void framesAreReadBackExactly() throws Exception {
+        File file = folder.newFile();
+        List<LuminanceImage> images = new ArrayList<>();
+        images.add(SyntheticCodes.grid(640, 480, 90, BarcodeFormat.QR_CODE, 1, 1).getImage());
+        images.add(SyntheticCodes.grid(640, 480, 0, BarcodeFormat.EAN_13, 2, 2).getImage());
+        //Plano con relleno entre filas y dos bytes por píxel, como algunos YUV_420_888
+        byte[] padded = new byte[(320 * 2 + 16) * 240];
+        for (int i = 0; i < padded.length; i++) {
+            padded[i] = (byte) (i * 7);
+        }
+        images.add(new LuminanceImage().set(ByteBuffer.wrap(padded), 0, 320, 240, 320 * 2 + 16, 2, 270));
+        FrameRecorder recorder = new FrameRecorder(file, 0, 4, Deflater.BEST_SPEED);
+        for (int i = 0; i < images.size(); i++) {
+            assertTrue(recorder.record(images.get(i), 1000 * MS + i * 33 * MS));
+        }
+        recorder.close();
+        assertNull(recorder.getFailure());
+        assertEquals(3, recorder.getWrittenCount());
+
+        List<RecordedFrame> frames = readAll(file);
+        assertEquals(3, frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            RecordedFrame frame = frames.get(i);
+            LuminanceImage expected = images.get(i);
+            assertEquals(i, frame.getSequence());
+            assertEquals(1000 * MS + i * 33 * MS, frame.getTimestampNanos());
+            assertEquals(expected.getWidth(), frame.getWidth());
+            assertEquals(expected.getHeight(), frame.getHeight());
+            assertEquals(expected.getRotationDegrees(), frame.getImage().getRotationDegrees());
+            assertArrayEquals(packed(expected), packed(frame.getImage()));
+        }
+        //Los fondos lisos con ruido se comprimen
+        assertTrue(recorder.toString(), recorder.getFileBytes() < recorder.getRawBytes() * 3 / 4);
+        assertEquals(file.length(), recorder.getFileBytes());
+    }
+
+    @Test
+    public void framesAreSampledByInterval() throws Exception {
+        File file = folder.newFile();
+        LuminanceImage image = new LuminanceImage(new byte[64 * 48], 64, 48, 0);
+        FrameRecorder recorder = new FrameRecorder(file, 100 * MS, 4, Deflater.BEST_SPEED);
+        int recorded = 0;
+        for (int i = 0; i < 10; i++) {
+            if (recorder.record(image, i * 33 * MS)) {
+                recorded++;
+            }
+        }
+        recorder.close();
+        //0, 132 y 264 ms
+        assertEquals(3, recorded);
+        assertEquals(7, recorder.getSkippedCount());
+        assertEquals(3, readAll(file).size());
+        assertFalse(recorder.record(image, 1000 * MS));
+        assertEquals(1, recorder.getDroppedCount());
+    }
+
+    @Test
+    public void truncatedOrCorruptTailIsIgnored() throws Exception {
+        File file = folder.newFile();
+        FrameRecorder recorder = new FrameRecorder(file, 0, 4, Deflater.BEST_SPEED);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(SyntheticCodes.grid(320, 240, 0, BarcodeFormat.QR_CODE, 1, i).getImage(), i * MS);
+        }
+        recorder.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 10);
+        }
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            assertNotNull(reader.next());
+            assertNotNull(reader.next());
+            assertNull(reader.next());
+            assertTrue(reader.isTruncated());
+            assertEquals(2, reader.getFrameCount());
+        }
+        //Un byte cambiado en el segundo frame
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = length * 2 / 3 - 100;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x55);
+        }
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            assertNotNull(reader.next());
+            assertNull(reader.next());
+            assertTrue(reader.isTruncated());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        File file = folder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x12345678);
+        }
+        new FrameRecordingReader(file).close();
+    }
+}
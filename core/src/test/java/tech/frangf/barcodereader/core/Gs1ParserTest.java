@@ -0,0 +1,105 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class Gs1ParserTest {
+    private static final String GS = String.valueOf(Gs1Parser.GS);
+
+    @Test
+    public void parsesFixedAndVariableLengthElements() {
+        Gs1Payload payload = Gs1Parser.parse("]C101095011015300031725013110AB-12" + GS + "21S123");
+        assertNotNull(payload);
+        assertEquals("09501101530003", payload.getGtin());
+        assertEquals("250131", payload.getExpiryDate());
+        assertEquals("AB-12", payload.getBatch());
+        assertEquals("S123", payload.getSerial());
+        assertEquals("(01)09501101530003(17)250131(10)AB-12(21)S123", payload.toHumanReadable());
+        assertEquals("GTIN", payload.getElement("01").getTitle());
+    }
+
+    @Test
+    public void parsesHumanReadableForm() {
+        Gs1Payload payload = Gs1Parser.parse("(00)106141412345678908(3103)001250(10)L1");
+        assertNotNull(payload);
+        assertEquals("106141412345678908", payload.getSscc());
+        Gs1Payload.Element weight = payload.getElement("3103");
+        assertEquals(3, weight.getDecimals());
+        assertEquals(new BigDecimal("1.250"), weight.getDecimalValue());
+        assertEquals("NET WEIGHT (kg)", weight.getTitle());
+        //La misma cadena codificada da los mismos elementos
+        assertEquals(payload, Gs1Parser.parse(GS + "0010614141234567890831030012501" + "0L1"));
+    }
+
+    @Test
+    public void fixedLengthElementMayBeFollowedBySeparator() {
+        Gs1Payload payload = Gs1Parser.parse("]d240212345678901234567" + GS + "10X");
+        assertNotNull(payload);
+        assertEquals("12345678901234567", payload.get("402"));
+        assertEquals("X", payload.getBatch());
+    }
+
+    @Test
+    public void currencyAmountsAndExpiryTime() {
+        //3912: 12,50 euros (978); 3931: 3,5 dólares (840); 7003 de longitud fija seguido de un lote
+        Gs1Payload payload = Gs1Parser.parse("]C139129781250" + GS + "393184035" + GS + "70032501311430" + "10L7");
+        assertNotNull(payload);
+        Gs1Payload.Element amount = payload.getElement("3912");
+        assertEquals("AMOUNT ISO", amount.getTitle());
+        assertEquals("9781250", amount.getValue());
+        assertEquals(2, amount.getDecimals());
+        assertEquals("978", amount.getCurrency());
+        assertEquals(new BigDecimal("12.50"), amount.getDecimalValue());
+        Gs1Payload.Element price = payload.getElement("3931");
+        assertEquals(1, price.getDecimals());
+        assertEquals("840", price.getCurrency());
+        assertEquals(new BigDecimal("3.5"), price.getDecimalValue());
+        assertEquals("2501311430", payload.get("7003"));
+        assertEquals("L7", payload.getBatch());
+        assertNull(payload.getElement("01"));
+        //Los importes sin moneda no la llevan
+        assertNull(Gs1Parser.parse("(3922)1250").getElement("3922").getCurrency());
+
+        //Importe sin dígitos tras la moneda, y fecha y hora incompleta
+        assertNull(Gs1Parser.parse("(3912)978"));
+        assertNull(Gs1Parser.parse("(7003)25013114"));
+    }
+
+    @Test
+    public void rejectsInvalidStrings() {
+        //Dígito de control erróneo
+        assertNull(Gs1Parser.parse("]C10109501101530004"));
+        //AI desconocido
+        assertNull(Gs1Parser.parse("]C1050000"));
+        //Dato de longitud fija incompleto
+        assertNull(Gs1Parser.parse("]C1010950110153"));
+        //Letras en un dato numérico
+        assertNull(Gs1Parser.parse("]C117ABCDEF"));
+        //Dato variable demasiado largo
+        assertNull(Gs1Parser.parse("]C110123456789012345678901"));
+        assertNull(Gs1Parser.parse("]C1"));
+        assertNull(Gs1Parser.parse("(01"));
+    }
+
+    @Test
+    public void checkDigit() {
+        assertTrue(Gs1Parser.isCheckDigitValid("09501101530003"));
+        assertTrue(Gs1Parser.isCheckDigitValid("106141412345678908"));
+        assertTrue(Gs1Parser.isCheckDigitValid("4006381333931"));
+        assertFalse(Gs1Parser.isCheckDigitValid("4006381333932"));
+    }
+
+    @Test
+    public void marks() {
+        assertTrue(Gs1Parser.isMarked("]C10109501101530003"));
+        assertTrue(Gs1Parser.isMarked("]Q30109501101530003"));
+        assertTrue(Gs1Parser.isMarked(GS + "0109501101530003"));
+        assertTrue(Gs1Parser.isMarked("(01)09501101530003"));
+        assertFalse(Gs1Parser.isMarked("0109501101530003"));
+        assertFalse(Gs1Parser.isMarked("(hola)"));
+        assertFalse(Gs1Parser.isMarked(""));
+    }
+}
@@ -0,0 +1,72 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverWholeRangeMonotonically() {
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            assertTrue(value <= LatencyHistogram.upperBound(index));
+            previous = index;
+        }
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+    }
+
+    @Test
+    public void percentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50_000_000L, histogram.getValueAtPercentile(50), 50_000_000L * 0.125);
+        assertEquals(95_000_000L, histogram.getValueAtPercentile(95), 95_000_000L * 0.125);
+        assertEquals(100_000_000L, histogram.getValueAtPercentile(100));
+        assertEquals(50_500_000.0, histogram.getMean(), 1);
+        assertEquals(100_000_000L, histogram.getMax());
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(5);
+        histogram.record(-3);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void concurrentRecordingLosesNoValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(random.nextInt(50_000_000));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.getCount());
+        assertTrue(histogram.getMax() < 50_000_000);
+        assertEquals(25_000_000L, histogram.getValueAtPercentile(50), 25_000_000L * 0.15);
+    }
+}
@@ -0,0 +1,67 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class LuminanceImageTest {
+
+    private static byte[] gradient(int width, int height) {
+        byte[] data = new byte[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 13);
+        }
+        return data;
+    }
+
+    @Test
+    public void copyUprightUndoesSensorRotation() {
+        int width = 6;
+        int height = 4;
+        byte[] upright = gradient(width, height);
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            LuminanceImage sensor = SyntheticCodes.toSensor(upright, width, height, rotation);
+            assertEquals(width, sensor.getUprightWidth());
+            assertEquals(height, sensor.getUprightHeight());
+            byte[] restored = new byte[width * height];
+            sensor.copyUpright(restored);
+            assertArrayEquals("rotación " + rotation, upright, restored);
+        }
+    }
+
+    @Test
+    public void rotation90MovesTopLeftToTopRight() {
+        //Sensor 3x2, la esquina superior izquierda del sensor queda arriba a la derecha al girar 90 grados
+        byte[] sensor = {1, 2, 3, 4, 5, 6};
+        LuminanceImage image = new LuminanceImage(sensor, 3, 2, 90);
+        byte[] upright = new byte[6];
+        image.copyUpright(upright);
+        assertArrayEquals(new byte[]{4, 1, 5, 2, 6, 3}, upright);
+    }
+
+    @Test
+    public void stridedViewWithoutCopy() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 + 2 * 10);
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 4; x++) {
+                buffer.put(3 + y * 10 + x * 2, (byte) (y * 4 + x));
+            }
+        }
+        LuminanceImage image = new LuminanceImage().set(buffer, 3, 4, 2, 10, 2, 0);
+        assertFalse(image.isPacked());
+        assertEquals(6, image.getLuminance(2, 1));
+        byte[] packed = new byte[8];
+        image.copyPacked(packed);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7}, packed);
+        byte[] rotated = new byte[8];
+        image.set(buffer, 3, 4, 2, 10, 2, 180).copyUpright(rotated);
+        assertArrayEquals(new byte[]{7, 6, 5, 4, 3, 2, 1, 0}, rotated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRotation() {
+        new LuminanceImage(new byte[4], 2, 2, 45);
+    }
+}
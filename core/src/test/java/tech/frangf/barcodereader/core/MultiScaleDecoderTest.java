@@ -0,0 +1,158 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MultiScaleDecoderTest {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int CODE_SIZE = 160;
+    private static final String[] VALUES = {"https://example.com/a", "https://example.com/b", "https://example.com/c"};
+    private static final int[][] POSITIONS = {{200, 150}, {2100, 1400}, {3700, 2750}};
+    //Zona en blanco de 4 módulos que dibuja SyntheticCodes alrededor de cada QR
+    private static final int QUIET_ZONE = 20;
+
+    /**
+     * Foto grande con tres códigos pequeños lejos unos de otros.
+     */
+    private static byte[] farCodes() {
+        byte[] canvas = SyntheticCodes.canvas(WIDTH, HEIGHT, 11);
+        for (int i = 0; i < VALUES.length; i++) {
+            SyntheticCodes.draw(canvas, WIDTH, BarcodeFormat.QR_CODE, VALUES[i], POSITIONS[i][0], POSITIONS[i][1],
+                    CODE_SIZE, CODE_SIZE);
+        }
+        return canvas;
+    }
+
+    @Test
+    public void findTiles_coversOnlyTheCodes() {
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new ZxingBarcodeDecoder(), 1);
+        List<CropRect> tiles = decoder.findTiles(new LuminanceImage(farCodes(), WIDTH, HEIGHT, 0));
+        assertEquals(tiles.toString(), 3, tiles.size());
+        long area = 0;
+        for (CropRect tile : tiles) {
+            area += (long) tile.getWidth() * tile.getHeight();
+        }
+        assertTrue("area=" + area, area < WIDTH * HEIGHT / 50);
+        for (int[] position : POSITIONS) {
+            boolean covered = false;
+            for (CropRect tile : tiles) {
+                covered |= tile.getLeft() <= position[0] + QUIET_ZONE && tile.getTop() <= position[1] + QUIET_ZONE
+                        && tile.getRight() >= position[0] + CODE_SIZE - QUIET_ZONE
+                        && tile.getBottom() >= position[1] + CODE_SIZE - QUIET_ZONE;
+            }
+            assertTrue(Arrays.toString(position) + " " + tiles, covered);
+        }
+    }
+
+    @Test
+    public void findTiles_emptyFrameHasNoTiles() throws BarcodeDecoderException {
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new ZxingBarcodeDecoder(), 1);
+        LuminanceImage image = new LuminanceImage(SyntheticCodes.canvas(1920, 1080, 3), 1920, 1080, 0);
+        assertTrue(decoder.findTiles(image).isEmpty());
+        assertTrue(decoder.decode(image).isEmpty());
+        assertEquals(1, decoder.getEmptyFrameCount());
+        assertEquals(0, decoder.getTileCount());
+    }
+
+    @Test
+    public void decode_findsTinyCodesWithFullFrameCoordinatesInAnyRotation() throws BarcodeDecoderException {
+        byte[] upright = farCodes();
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new ZxingBarcodeDecoder(), 3);
+        try {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                LuminanceImage image = SyntheticCodes.toSensor(upright, WIDTH, HEIGHT, rotation);
+                List<DecodedBarcode> barcodes = decoder.decode(image);
+                Set<String> found = new HashSet<>();
+                for (DecodedBarcode barcode : barcodes) {
+                    assertTrue("rotación " + rotation + ": repetido " + barcode, found.add(barcode.getRawValue()));
+                    int index = Arrays.asList(VALUES).indexOf(barcode.getRawValue());
+                    BoundingBox box = barcode.getBoundingBox();
+                    assertTrue("rotación " + rotation + ": " + box, box.getLeft() >= POSITIONS[index][0]
+                            && box.getRight() <= POSITIONS[index][0] + CODE_SIZE
+                            && box.getTop() >= POSITIONS[index][1]
+                            && box.getBottom() <= POSITIONS[index][1] + CODE_SIZE);
+                }
+                assertEquals("rotación " + rotation, new HashSet<>(Arrays.asList(VALUES)), found);
+            }
+            assertEquals(0, decoder.getFullFrameDecodeCount());
+            assertEquals(12, decoder.getTileCount());
+            assertTrue("ratio=" + decoder.getDecodedPixelRatio(), decoder.getDecodedPixelRatio() < 0.02);
+        } finally {
+            decoder.close();
+        }
+    }
+
+    @Test
+    public void decode_mergesOverlappingTilesAndDedupes() throws BarcodeDecoderException {
+        byte[] canvas = SyntheticCodes.canvas(1920, 1080, 5);
+        //Dos códigos con las zonas en blanco pegadas: sus teselas se solapan y se decodifican juntas
+        SyntheticCodes.draw(canvas, 1920, BarcodeFormat.QR_CODE, "https://example.com/left", 600, 400, 160, 160);
+        SyntheticCodes.draw(canvas, 1920, BarcodeFormat.QR_CODE, "https://example.com/right", 770, 400, 160, 160);
+        LuminanceImage image = new LuminanceImage(canvas, 1920, 1080, 0);
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new ZxingBarcodeDecoder(), 2);
+        try {
+            List<CropRect> tiles = decoder.findTiles(image);
+            assertEquals(tiles.toString(), 1, tiles.size());
+            List<String> values = new ArrayList<>();
+            for (DecodedBarcode barcode : decoder.decode(image)) {
+                values.add(barcode.getRawValue());
+            }
+            assertEquals(2, values.size());
+            assertTrue(values.containsAll(Arrays.asList("https://example.com/left", "https://example.com/right")));
+        } finally {
+            decoder.close();
+        }
+    }
+
+    @Test
+    public void decode_fallsBackToFullFrameWhenTilesCoverMostOfIt() throws BarcodeDecoderException {
+        SyntheticCodes.Sample sample = SyntheticCodes.grid(640, 480, 90, BarcodeFormat.QR_CODE, 1, 4);
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new ZxingBarcodeDecoder(), 1);
+        List<DecodedBarcode> barcodes = decoder.decode(sample.getImage());
+        assertTrue(DecoderHarness.containsAll(barcodes, sample.getExpectedValues()));
+        assertEquals(1, decoder.getFullFrameDecodeCount());
+        assertEquals(0, decoder.getTileCount());
+    }
+
+    @Test
+    public void decode_readsTinyCodesFromAFractionOfThePixels() throws BarcodeDecoderException {
+        LuminanceImage image = SyntheticCodes.toSensor(farCodes(), WIDTH, HEIGHT, 90);
+        ZxingBarcodeDecoder zxing = new ZxingBarcodeDecoder();
+        MultiScaleDecoder decoder = new MultiScaleDecoder(zxing, 1);
+        int fullFrame = zxing.decode(image).size();
+        int multiScale = decoder.decode(image).size();
+        assertEquals(VALUES.length, multiScale);
+        assertTrue(multiScale >= fullFrame);
+        //El coste de ZXing crece con los píxeles que recibe
+        assertTrue("ratio=" + decoder.getDecodedPixelRatio(), decoder.getDecodedPixelRatio() < 0.25);
+    }
+
+    @Test
+    public void sharedTileExecutor_survivesCloseOfEachDecoder() throws Exception {
+        LuminanceImage image = SyntheticCodes.toSensor(farCodes(), WIDTH, HEIGHT, 90);
+        ExecutorService tileExecutor = MultiScaleDecoder.newTileExecutor(3);
+        try {
+            MultiScaleDecoder first = new MultiScaleDecoder(new ZxingBarcodeDecoder(), tileExecutor);
+            MultiScaleDecoder second = new MultiScaleDecoder(new ZxingBarcodeDecoder(), tileExecutor);
+            assertEquals(VALUES.length, first.decode(image).size());
+            first.close();
+            assertFalse(tileExecutor.isShutdown());
+            assertEquals(VALUES.length, second.decode(image).size());
+            second.close();
+        } finally {
+            tileExecutor.shutdown();
+        }
+        assertTrue(tileExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(MultiScaleDecoder.newTileExecutor(1));
+    }
+}
@@ -0,0 +1,120 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PayloadParserTest {
+    private static DecodedBarcode barcode(BarcodeFormat format, String value) {
+        return new DecodedBarcode(format, value, value.getBytes(StandardCharsets.UTF_8), value, null, null);
+    }
+
+    @Test
+    public void urlsAreNormalized() {
+        UrlPayload url = (UrlPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "HTTPS://Example.COM:443");
+        assertEquals("https://example.com/", url.getUrl());
+        assertEquals("example.com", url.getHost());
+        url = (UrlPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "www.example.com/A?b=C#d");
+        assertEquals("http://www.example.com/A?b=C#d", url.getUrl());
+        url = (UrlPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "http://user@[::1]:8080?x");
+        assertEquals("http://user@[::1]:8080/?x", url.getUrl());
+        url = (UrlPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "MEBKM:TITLE:Ejemplo;URL:http\\://example.com;;");
+        assertEquals("http://example.com/", url.getUrl());
+        assertEquals("Ejemplo", url.getTitle());
+        assertEquals(ParsedPayload.Type.URL,
+                PayloadParser.parse(BarcodeFormat.QR_CODE, "urlto:https://example.com/x").getType());
+        //No son URL
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, "ftp://example.com").getType());
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, "http://").getType());
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, "http://a b").getType());
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, "http://a:x/").getType());
+    }
+
+    @Test
+    public void wifiFieldsAreUnescaped() {
+        WifiPayload wifi = (WifiPayload) PayloadParser.parse(BarcodeFormat.QR_CODE,
+                "WIFI:T:WPA;S:Mi\\;Red;P:cla\\:ve;H:true;;");
+        assertEquals("Mi;Red", wifi.getSsid());
+        assertEquals("cla:ve", wifi.getPassword());
+        assertEquals(WifiPayload.Encryption.WPA, wifi.getEncryption());
+        assertTrue(wifi.isHidden());
+        wifi = (WifiPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "WIFI:S:Abierta;T:nopass;P:;;");
+        assertEquals(WifiPayload.Encryption.OPEN, wifi.getEncryption());
+        assertNull(wifi.getPassword());
+        assertEquals(WifiPayload.Encryption.WEP,
+                ((WifiPayload) PayloadParser.parse(BarcodeFormat.QR_CODE, "WIFI:T:WEP;S:x;P:y;;")).getEncryption());
+        //Sin SSID no es una red
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, "WIFI:T:WPA;P:y;;").getType());
+    }
+
+    @Test
+    public void meCardContact() {
+        ContactPayload contact = (ContactPayload) PayloadParser.parse(BarcodeFormat.QR_CODE,
+                "MECARD:N:García,Ana;TEL:+34 600-12-34-56;EMAIL:Ana@Example.COM;ORG:ACME;;");
+        assertEquals("Ana García", contact.getName());
+        assertEquals(Arrays.asList("+34600123456"), contact.getPhones());
+        assertEquals(Arrays.asList("ana@example.com"), contact.getEmails());
+        assertEquals("ACME", contact.getOrganization());
+    }
+
+    @Test
+    public void vCardContact() {
+        ContactPayload contact = (ContactPayload) PayloadParser.parse(BarcodeFormat.QR_CODE,
+                "BEGIN:VCARD\r\nVERSION:3.0\r\nN:García;Ana;;;\r\nTEL;TYPE=CELL:(600) 123 456\r\n"
+                        + "item1.EMAIL;TYPE=INTERNET:ana@example.com\r\nADR;TYPE=WORK:;;Calle Mayor\\, 1;Madrid;;28001;\r\n"
+                        + "NOTE:Primera línea\r\n  sigue\r\nEND:VCARD");
+        assertEquals("Ana García", contact.getName());
+        assertEquals(Arrays.asList("600123456"), contact.getPhones());
+        assertEquals(Arrays.asList("ana@example.com"), contact.getEmails());
+        assertEquals(Arrays.asList("Calle Mayor, 1, Madrid, 28001"), contact.getAddresses());
+        assertEquals("Primera línea sigue", contact.getNote());
+        //FN tiene preferencia sobre N
+        contact = (ContactPayload) PayloadParser.parse(BarcodeFormat.QR_CODE,
+                "BEGIN:VCARD\nN:García;Ana\nFN:Dra. Ana García\nEND:VCARD");
+        assertEquals("Dra. Ana García", contact.getName());
+    }
+
+    @Test
+    public void unmarkedGs1OnlyForGs1Formats() {
+        String value = "0109501101530003" + "10LOT7";
+        Gs1Payload gs1 = (Gs1Payload) PayloadParser.parse(BarcodeFormat.CODE_128, value);
+        assertEquals("LOT7", gs1.getBatch());
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.QR_CODE, value).getType());
+        //Sin marca y sin GTIN ni SSCC al principio es texto aunque se pueda leer como GS1
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.CODE_128, "10LOT7").getType());
+        assertEquals(ParsedPayload.Type.GS1, PayloadParser.parse(BarcodeFormat.QR_CODE, "]Q3" + value).getType());
+        assertEquals(ParsedPayload.Type.TEXT, PayloadParser.parse(BarcodeFormat.EAN_13, "4006381333931").getType());
+    }
+
+    @Test
+    public void repeatedCodesAreParsedOnce() {
+        PayloadParser parser = new PayloadParser(2);
+        ParsedPayload first = parser.parse(barcode(BarcodeFormat.CODE_128, "]C10109501101530003"));
+        assertSame(first, parser.parse(barcode(BarcodeFormat.CODE_128, "]C10109501101530003")));
+        assertEquals(1, parser.getHitCount());
+        assertEquals(1, parser.getMissCount());
+        //El formato es parte de la clave
+        parser.parse(barcode(BarcodeFormat.DATA_MATRIX, "]C10109501101530003"));
+        assertEquals(2, parser.getMissCount());
+        //El tercer código distinto expulsa al menos usado
+        parser.parse(barcode(BarcodeFormat.QR_CODE, "https://example.com"));
+        assertEquals(1, parser.getEvictionCount());
+        assertEquals(2, parser.size());
+        assertNotSame(first, parser.parse(barcode(BarcodeFormat.CODE_128, "]C10109501101530003")));
+    }
+
+    @Test
+    public void codesWithoutTextAreKeyedByBytes() {
+        PayloadParser parser = new PayloadParser(4);
+        byte[] bytes = {0x01, (byte) 0xFF};
+        ParsedPayload payload = parser.parse(new DecodedBarcode(BarcodeFormat.PDF417, null, bytes, "", null, null));
+        assertEquals("\u0001ÿ", payload.getRawValue());
+        //Cambiar el array después no afecta a la caché
+        bytes[0] = 0x02;
+        parser.parse(new DecodedBarcode(BarcodeFormat.PDF417, null, new byte[]{0x01, (byte) 0xFF}, "", null, null));
+        assertEquals(1, parser.getHitCount());
+    }
+}
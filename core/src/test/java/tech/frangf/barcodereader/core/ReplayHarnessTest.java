@@ -0,0 +1,131 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class ReplayHarnessTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Graba frames de 640x480 con un QR distinto en cada uno y devuelve los valores esperados de cada frame.
+     */
+    private static List<String> record(File file, int frames, long intervalNanos) {
+        List<String> expected = new ArrayList<>();
+        FrameRecorder recorder = new FrameRecorder(file, 0, frames, Deflater.BEST_SPEED);
+        for (int i = 0; i < frames; i++) {
+            SyntheticCodes.Sample sample = SyntheticCodes.grid(640, 480, (i % 4) * 90, BarcodeFormat.QR_CODE, 1, i);
+            assertTrue(recorder.record(sample.getImage(), i * intervalNanos));
+            expected.add("QR_CODE:" + sample.getExpectedValues().get(0));
+        }
+        recorder.close();
+        assertNull(recorder.getFailure());
+        return expected;
+    }
+
+    @Test
+    public void fastReplayDecodesEveryFrameAndMatchesItsBaseline() throws Exception {
+        File recording = folder.newFile();
+        List<String> expected = record(recording, 6, 33 * MS);
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        ReplayHarness.Result result = ReplayHarness.run(recording, decoder, 2, false, null);
+        assertEquals(6, result.getFrames());
+        assertEquals(0, result.getDropped());
+        assertEquals(6, result.getMetrics().getDecodedFrames());
+        assertEquals(6, result.getMetrics().getStage(ScanStage.DETECT).getCount());
+        //Con dos hilos se pueden descartar resultados que terminan después que los de un frame posterior
+        assertTrue(result.getNotified() >= 1 && result.getNotified() <= 6);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(Collections.singletonList(expected.get(i)), result.getCodes().get((long) i));
+        }
+        //Con un hilo los resultados llegan en orden y se notifican todos
+        ReplayHarness.Result sequential = ReplayHarness.run(recording, decoder, 1, false, null);
+        decoder.close();
+        assertEquals(6, sequential.getNotified());
+        assertEquals(result.getCodes(), sequential.getCodes());
+
+        File baseline = folder.newFile();
+        ReplayHarness.writeBaseline(result.getCodes(), baseline);
+        assertEquals(result.getCodes(), ReplayHarness.readBaseline(baseline));
+        assertTrue(ReplayHarness.diff(ReplayHarness.readBaseline(baseline), result.getCodes()).isEmpty());
+
+        //Una regresión: el frame 3 deja de leerse
+        SortedMap<Long, List<String>> regressed = new TreeMap<>(result.getCodes());
+        regressed.put(3L, Collections.<String>emptyList());
+        List<String> differences = ReplayHarness.diff(result.getCodes(), regressed);
+        assertEquals(Arrays.asList("frame 3: -" + expected.get(3), "session: -" + expected.get(3)), differences);
+    }
+
+    @Test
+    public void baselineEscapesSeparators() throws Exception {
+        SortedMap<Long, List<String>> codes = new TreeMap<>();
+        codes.put(0L, Arrays.asList("QR_CODE:BEGIN:VCARD\r\nFN:Ana\tGarcía\\\r\nEND:VCARD", "EAN_13:8410000000011"));
+        codes.put(7L, Collections.<String>emptyList());
+        File baseline = folder.newFile();
+        ReplayHarness.writeBaseline(codes, baseline);
+        assertEquals(codes, ReplayHarness.readBaseline(baseline));
+    }
+
+    @Test
+    public void realTimeReplayFollowsTimestamps() throws Exception {
+        File recording = folder.newFile();
+        FrameRecorder recorder = new FrameRecorder(recording, 0, 8, Deflater.BEST_SPEED);
+        LuminanceImage image = new LuminanceImage(new byte[64 * 48], 64, 48, 0);
+        for (int i = 0; i < 5; i++) {
+            recorder.record(image, 5_000 * MS + i * 50 * MS);
+        }
+        recorder.close();
+        ReplayFrameSource source = new ReplayFrameSource(recording, true, 1);
+        long start = System.nanoTime();
+        //A la velocidad grabada no se espera a que se cierren los frames
+        List<RecordedFrame> frames = Collections.synchronizedList(new ArrayList<RecordedFrame>());
+        source.start(frames::add);
+        assertTrue(source.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(5, frames.size());
+        assertTrue(System.nanoTime() - start >= 190 * MS);
+        for (int i = 1; i < frames.size(); i++) {
+            long gap = frames.get(i).getDeliveredNanos() - frames.get(0).getDeliveredNanos();
+            assertTrue("gap=" + gap, gap >= i * 50 * MS - 5 * MS);
+        }
+    }
+
+    @Test
+    public void fastReplayWaitsForFramesToBeClosed() throws Exception {
+        File recording = folder.newFile();
+        FrameRecorder recorder = new FrameRecorder(recording, 0, 8, Deflater.BEST_SPEED);
+        LuminanceImage image = new LuminanceImage(new byte[64 * 48], 64, 48, 0);
+        for (int i = 0; i < 5; i++) {
+            recorder.record(image, i * 1000 * MS);
+        }
+        recorder.close();
+        ReplayFrameSource source = new ReplayFrameSource(recording, false, 2);
+        List<RecordedFrame> frames = Collections.synchronizedList(new ArrayList<RecordedFrame>());
+        source.start(frames::add);
+        assertFalse(source.awaitCompletion(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, source.getDeliveredCount());
+        frames.get(0).close();
+        frames.get(1).close();
+        //Cerrar dos veces el mismo frame no libera más hueco
+        frames.get(1).close();
+        Thread.sleep(100);
+        assertEquals(4, source.getDeliveredCount());
+        frames.get(2).close();
+        assertTrue(source.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(5, source.getDeliveredCount());
+    }
+}
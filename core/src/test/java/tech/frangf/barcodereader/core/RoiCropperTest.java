@@ -0,0 +1,119 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class RoiCropperTest {
+
+    /**
+     * Crea un plano Y sintético donde cada píxel vale (x + 7 * y) & 0xFF, con relleno al final de cada fila.
+     */
+    private static ByteBuffer yPlane(int width, int height, int rowStride, int pixelStride) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane.put(y * rowStride + x * pixelStride, luma(x, y));
+            }
+        }
+        return plane;
+    }
+
+    private static byte luma(int x, int y) {
+        return (byte) ((x + 7 * y) & 0xFF);
+    }
+
+    @Test
+    public void mapToSensor_noRotation_fullView() {
+        CropRect rect = RoiCropper.mapToSensor(new RegionOfInterest(0.25f, 0.5f, 0.75f, 1f), 640, 480, 0, 0, 0);
+        assertEquals(new CropRect(160, 240, 320, 240), rect);
+    }
+
+    @Test
+    public void mapToSensor_rotations() {
+        //Región en la esquina superior izquierda de la imagen derecha
+        RegionOfInterest roi = new RegionOfInterest(0f, 0f, 0.5f, 0.25f);
+        //90: la esquina superior izquierda visible es la inferior izquierda del sensor
+        assertEquals(new CropRect(0, 240, 160, 240), RoiCropper.mapToSensor(roi, 640, 480, 90, 0, 0));
+        //180: es la inferior derecha
+        assertEquals(new CropRect(320, 360, 320, 120), RoiCropper.mapToSensor(roi, 640, 480, 180, 0, 0));
+        //270: es la superior derecha
+        assertEquals(new CropRect(480, 0, 160, 240), RoiCropper.mapToSensor(roi, 640, 480, 270, 0, 0));
+    }
+
+    @Test
+    public void mapToSensor_fillCenterView() {
+        //Imagen derecha 480x640 (sensor 640x480 girado 90) mostrada en una vista cuadrada de 1000x1000:
+        //se escala a 1000x1333 y se recortan 166.6 px por arriba y por abajo.
+        CropRect full = RoiCropper.mapToSensor(RegionOfInterest.FULL, 640, 480, 90, 1000, 1000);
+        assertEquals(0, full.getTop());
+        assertEquals(480, full.getHeight());
+        assertEquals(80, full.getLeft());
+        assertEquals(480, full.getWidth());
+
+        CropRect center = RoiCropper.mapToSensor(RegionOfInterest.centered(0.5f, 0.5f), 640, 480, 90, 1000, 1000);
+        assertEquals(new CropRect(200, 120, 240, 240), center);
+    }
+
+    @Test
+    public void mapToSensor_alignsToEvenCoordinates() {
+        CropRect rect = RoiCropper.mapToSensor(new RegionOfInterest(0.101f, 0.333f, 0.5f, 0.9f), 641, 479, 0, 0, 0);
+        assertEquals(0, rect.getLeft() % 2);
+        assertEquals(0, rect.getTop() % 2);
+        assertEquals(0, rect.getWidth() % 2);
+        assertEquals(0, rect.getHeight() % 2);
+        assertTrue(rect.getRight() <= 641);
+        assertTrue(rect.getBottom() <= 479);
+    }
+
+    @Test
+    public void crop_packedPlaneWithRowPadding() {
+        ByteBuffer plane = yPlane(64, 48, 80, 1);
+        RoiCropper cropper = new RoiCropper();
+        CropRect rect = new CropRect(10, 20, 16, 8);
+        byte[] out = cropper.crop(plane, 80, 1, rect);
+
+        assertEquals(16, cropper.getWidth());
+        assertEquals(8, cropper.getHeight());
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 16; x++) {
+                assertEquals(luma(10 + x, 20 + y), out[y * 16 + x]);
+            }
+        }
+        for (int i = 16 * 8; i < 16 * 8 * 3 / 2; i++) {
+            assertEquals((byte) 128, out[i]);
+        }
+        assertEquals(0, plane.position());
+    }
+
+    @Test
+    public void crop_interleavedPixelStride() {
+        ByteBuffer plane = yPlane(32, 16, 70, 2);
+        RoiCropper cropper = new RoiCropper();
+        byte[] out = cropper.crop(plane, 70, 2, new CropRect(4, 2, 8, 4));
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 8; x++) {
+                assertEquals(luma(4 + x, 2 + y), out[y * 8 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void crop_reusesBuffer() {
+        ByteBuffer plane = yPlane(64, 48, 64, 1);
+        RoiCropper cropper = new RoiCropper();
+        byte[] first = cropper.crop(plane, 64, 1, new CropRect(0, 0, 32, 32));
+        byte[] second = cropper.crop(plane, 64, 1, new CropRect(2, 2, 32, 32));
+        byte[] transposed = cropper.crop(plane, 64, 1, new CropRect(0, 0, 64, 16));
+        byte[] square = cropper.crop(plane, 64, 1, new CropRect(0, 0, 32, 32));
+        assertSame(first, second);
+        assertSame(second, transposed);
+        assertSame(transposed, square);
+        assertEquals(32 * 32 * 3 / 2, square.length);
+        for (int i = 32 * 32; i < square.length; i++) {
+            assertEquals((byte) 128, square[i]);
+        }
+    }
+}
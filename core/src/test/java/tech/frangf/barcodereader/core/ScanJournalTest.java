@@ -0,0 +1,311 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScanJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ScanRecord scan(int i) {
+        return new ScanRecord(1_600_000_000_000L + i, BarcodeFormat.EAN_13, "84000000" + i,
+                ("84000000" + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<ScanRecord> readAll(ScanJournal journal, long from) throws Exception {
+        List<ScanRecord> records = new ArrayList<>();
+        try (ScanJournalReader reader = journal.openReader(from)) {
+            ScanRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void append_flush_readBack() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(journal.append(scan(i)));
+            }
+            journal.append(new ScanRecord(5, BarcodeFormat.QR_CODE, null, new byte[]{0, 1, (byte) 0xFF}));
+            journal.append(new ScanRecord(6, BarcodeFormat.CODE_128, "ñandú €", null));
+            journal.flush();
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(12, records.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 1, records.get(i).getSequence());
+                assertEquals(scan(i).getRawValue(), records.get(i).getRawValue());
+                assertEquals(scan(i).getTimestampMillis(), records.get(i).getTimestampMillis());
+            }
+            assertNull(records.get(10).getRawValue());
+            assertArrayEquals(new byte[]{0, 1, (byte) 0xFF}, records.get(10).getRawBytes());
+            assertEquals(BarcodeFormat.QR_CODE, records.get(10).getFormat());
+            assertEquals("ñandú €", records.get(11).getRawValue());
+            assertNull(records.get(11).getRawBytes());
+            //Lectura desde una secuencia intermedia
+            assertEquals(8, readAll(journal, 5).get(0).getSequence() + 3);
+            assertEquals(12, journal.getCommittedCount());
+        }
+    }
+
+    @Test
+    public void groupCommit_batchesForces() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 50, TimeUnit.SECONDS.toNanos(10),
+                ScanJournal.DEFAULT_SEGMENT_BYTES, 1000)) {
+            for (int i = 0; i < 500; i++) {
+                journal.append(scan(i));
+            }
+            journal.flush();
+            assertEquals(500, journal.getCommittedCount());
+            //Como mucho un force() por cada 50 lecturas, más el del flush
+            assertTrue("commits=" + journal.getCommitCount(), journal.getCommitCount() <= 11);
+        }
+    }
+
+    @Test
+    public void groupCommit_timeoutCommitsPartialBatch() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 1000, TimeUnit.MILLISECONDS.toNanos(20),
+                ScanJournal.DEFAULT_SEGMENT_BYTES, 1000)) {
+            journal.append(scan(1));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (journal.getCommittedCount() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, journal.getCommittedCount());
+            assertEquals(1, journal.getCommitCount());
+        }
+    }
+
+    @Test
+    public void reopen_continuesSequence() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(scan(i));
+            }
+        }
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            journal.append(scan(3));
+            journal.flush();
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(4, records.size());
+            assertEquals(4, records.get(3).getSequence());
+            assertEquals(0, journal.getRecoveredDiscardedBytes());
+        }
+    }
+
+    @Test
+    public void recover_truncatesTornTail() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(scan(i));
+            }
+        }
+        File segment = dir.listFiles()[0];
+        long goodLength = segment.length();
+        //Registro cortado por un cierre inesperado: cabecera completa y contenido a medias
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(goodLength);
+            raf.writeInt(40);
+            raf.writeInt(1234);
+            raf.write(new byte[10]);
+        }
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            assertEquals(5, readAll(journal, 0).size());
+            assertEquals(18, journal.getRecoveredDiscardedBytes());
+            assertEquals(goodLength, segment.length());
+            journal.append(scan(5));
+            journal.flush();
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(6, records.size());
+            assertEquals(6, records.get(5).getSequence());
+        }
+    }
+
+    @Test
+    public void recover_truncatesCorruptRecord() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(scan(i));
+            }
+        }
+        File segment = dir.listFiles()[0];
+        long length = segment.length();
+        //Se corrompe un byte del último registro: su CRC deja de coincidir
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(length - 3);
+            raf.write(0x55);
+        }
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(4, records.size());
+            assertTrue(journal.getRecoveredDiscardedBytes() > 0);
+        }
+    }
+
+    @Test
+    public void rotation_andStreamingAcrossSegments() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 10, TimeUnit.SECONDS.toNanos(10), 1024, 1000)) {
+            for (int i = 0; i < 200; i++) {
+                journal.append(scan(i));
+            }
+            journal.flush();
+            assertTrue("segments=" + journal.getSegmentCount(), journal.getSegmentCount() > 3);
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(200, records.size());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i + 1, records.get(i).getSequence());
+            }
+            List<ScanRecord> tail = readAll(journal, 150);
+            assertEquals(51, tail.size());
+            assertEquals(150, tail.get(0).getSequence());
+        }
+    }
+
+    @Test
+    public void compact_dropsExportedRecords() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 10, TimeUnit.SECONDS.toNanos(10), 1024, 1000)) {
+            for (int i = 0; i < 200; i++) {
+                journal.append(scan(i));
+            }
+            journal.flush();
+            int segmentsBefore = journal.getSegmentCount();
+            long freed = journal.compact(125);
+            assertTrue(freed > 0);
+            assertTrue(journal.getSegmentCount() < segmentsBefore);
+            List<ScanRecord> records = readAll(journal, 0);
+            assertEquals(75, records.size());
+            assertEquals(126, records.get(0).getSequence());
+            //Se sigue escribiendo después de compactar
+            journal.append(scan(200));
+            journal.flush();
+            assertEquals(201, readAll(journal, 200).get(1).getSequence());
+        }
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            assertEquals(76, readAll(journal, 0).size());
+        }
+    }
+
+    @Test
+    public void recover_finishesInterruptedCompaction() throws Exception {
+        File dir = folder.newFolder();
+        File crashed = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 10, TimeUnit.SECONDS.toNanos(10), 1024, 1000)) {
+            for (int i = 0; i < 200; i++) {
+                journal.append(scan(i));
+            }
+        }
+        List<String> before = Arrays.asList(dir.list());
+        for (String name : before) {
+            copy(new File(dir, name), new File(crashed, name));
+        }
+        try (ScanJournal journal = new ScanJournal(dir, 10, TimeUnit.SECONDS.toNanos(10), 1024, 1000)) {
+            journal.compact(125);
+        }
+        //El segmento reescrito es el único nuevo y su original, el último de los borrados
+        String rewritten = null;
+        for (String name : dir.list()) {
+            if (!before.contains(name)) {
+                rewritten = name;
+            }
+        }
+        String source = null;
+        for (String name : before) {
+            if (!new File(dir, name).exists() && (source == null || name.compareTo(source) > 0)) {
+                source = name;
+            }
+        }
+        assertNotNull(rewritten);
+        assertNotNull(source);
+        //Cierre inesperado después de publicar el segmento reescrito y antes de borrar el original
+        copy(new File(dir, rewritten), new File(crashed, rewritten));
+        File marker = new File(crashed, source + ".126" + ScanJournal.COMPACTION_SUFFIX);
+        assertTrue(marker.createNewFile());
+
+        long sourceFirst = Long.parseLong(source.substring(0, source.length() - ScanJournal.SEGMENT_SUFFIX.length()));
+        try (ScanJournal journal = new ScanJournal(crashed)) {
+            List<ScanRecord> records = readAll(journal, 0);
+            //Las lecturas de los segmentos anteriores y las del reescrito, sin repetir las del original
+            assertEquals(sourceFirst - 1 + 75, records.size());
+            for (int i = 1; i < records.size(); i++) {
+                assertTrue(records.get(i).getSequence() > records.get(i - 1).getSequence());
+            }
+            assertEquals(200, records.get(records.size() - 1).getSequence());
+        }
+        assertFalse(new File(crashed, source).exists());
+        assertFalse(marker.exists());
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (FileInputStream in = new FileInputStream(from); FileOutputStream out = new FileOutputStream(to)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    @Test
+    public void append_neverBlocksWhenQueueIsFull() throws Exception {
+        File dir = folder.newFolder();
+        try (ScanJournal journal = new ScanJournal(dir, 1, 0, ScanJournal.DEFAULT_SEGMENT_BYTES, 4)) {
+            for (int i = 0; i < 10_000; i++) {
+                journal.append(scan(i));
+            }
+            assertTrue(journal.getDroppedCount() > 0);
+            assertEquals(10_000, journal.getAppendedCount() + journal.getDroppedCount());
+            journal.flush();
+            assertEquals(journal.getAppendedCount(), readAll(journal, 0).size());
+        }
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        File dir = folder.newFolder();
+        int records = 20_000;
+        try (ScanJournal journal = new ScanJournal(dir, ScanJournal.DEFAULT_GROUP_COMMIT_RECORDS,
+                ScanJournal.DEFAULT_GROUP_COMMIT_NANOS, ScanJournal.DEFAULT_SEGMENT_BYTES, records)) {
+            for (int i = 0; i < records; i++) {
+                assertTrue(journal.append(scan(i)));
+            }
+            journal.flush();
+            assertEquals(records, journal.getCommittedCount());
+        }
+        try (ScanJournal journal = new ScanJournal(dir)) {
+            assertEquals(records, readAll(journal, 0).size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void flush_reportsWriteFailure() throws Exception {
+        File file = folder.newFile();
+        //El directorio es un fichero: no se puede abrir el diario
+        try (ScanJournal journal = new ScanJournal(file)) {
+            journal.flush();
+        }
+    }
+}
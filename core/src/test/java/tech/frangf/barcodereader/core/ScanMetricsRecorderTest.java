@@ -0,0 +1,49 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanMetricsRecorderTest {
+
+    @Test
+    public void snapshotAggregatesStagesAndCounters() {
+        ScanMetricsRecorder recorder = new ScanMetricsRecorder();
+        recorder.setStartNanos(0);
+        for (int i = 0; i < 90; i++) {
+            recorder.record(ScanStage.DETECT, 10_000_000L);
+            recorder.onFrameDecoded(i % 3 == 0 ? 2 : 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.record(ScanStage.DETECT, 80_000_000L);
+            recorder.onFrameFailed();
+        }
+        ScanMetrics metrics = recorder.snapshot(25, 4_000_000_000L);
+
+        assertEquals(90, metrics.getDecodedFrames());
+        assertEquals(30, metrics.getFramesWithCodes());
+        assertEquals(10, metrics.getFailedFrames());
+        assertEquals(25, metrics.getDroppedFrames());
+        assertEquals(0.3, metrics.getDecodeSuccessRatio(), 1e-9);
+        assertEquals(25.0, metrics.getFramesPerSecond(), 1e-9);
+
+        StageStats detect = metrics.getStage(ScanStage.DETECT);
+        assertEquals(100, detect.getCount());
+        assertEquals(10_000_000L, detect.getP50Nanos(), 10_000_000L * 0.125);
+        assertEquals(80_000_000L, detect.getP99Nanos(), 80_000_000L * 0.125);
+        assertEquals(0, metrics.getStage(ScanStage.CLOSE).getCount());
+        assertTrue(metrics.toString().contains("DETECT"));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        ScanMetricsRecorder recorder = new ScanMetricsRecorder();
+        recorder.record(ScanStage.CLOSE, 1000);
+        recorder.onFrameDecoded(1);
+        recorder.reset();
+        ScanMetrics metrics = recorder.snapshot(0);
+        assertEquals(0, metrics.getDecodedFrames());
+        assertEquals(0, metrics.getStage(ScanStage.CLOSE).getCount());
+        assertEquals(0, metrics.getDecodeSuccessRatio(), 0);
+    }
+}
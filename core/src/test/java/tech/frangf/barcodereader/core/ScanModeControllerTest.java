@@ -0,0 +1,174 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScanModeControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FRAME = 33 * MS;
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    /**
+     * Escena con un QR en la posición indicada sobre un fondo con ruido.
+     */
+    private static LuminanceImage scene(int x, int y, long seed) {
+        byte[] canvas = SyntheticCodes.canvas(WIDTH, HEIGHT, seed);
+        SyntheticCodes.draw(canvas, WIDTH, BarcodeFormat.QR_CODE, "https://example.com/modes", x, y, 160, 160);
+        return new LuminanceImage(canvas, WIDTH, HEIGHT, 90);
+    }
+
+    private static ScanModeController controller() {
+        return new ScanModeController(new ScanModeProfile(4, 1), new ScanModeProfile(1, 2), new ScanModeProfile(1, 4),
+                new FrameGate(24, 18, 4, 24f, 40f, 16f, 30), 1000 * MS, 500 * MS);
+    }
+
+    @Test
+    public void idlesAfterTimeoutAndWakesWhenSceneChanges() {
+        ScanModeController controller = controller();
+        LuminanceImage still = scene(100, 100, 1);
+        long now = 0;
+        for (int i = 0; i < 30; i++, now += FRAME) {
+            assertTrue(controller.onFrame(now, still));
+            controller.onFrameAnalyzed(now, 0, false);
+        }
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        //Tras un segundo sin actividad
+        now += 10 * FRAME;
+        controller.onFrame(now, still);
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        assertEquals(4, controller.getProfile().getFrameStride());
+        assertEquals(1, controller.getAnalyzedFrames(ScanMode.IDLE));
+
+        //En reposo solo se evalúa uno de cada 4 frames, y se analiza si la escena cambia: no cambia
+        int analyzed = 0;
+        for (int i = 0; i < 40; i++) {
+            now += FRAME;
+            if (controller.onFrame(now, scene(100, 100, 2 + i))) {
+                analyzed++;
+            }
+        }
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        assertEquals(0, analyzed);
+        assertEquals(41, controller.getReceivedFrames(ScanMode.IDLE));
+
+        //El código se mueve a otra parte del encuadre: se despierta en el siguiente frame evaluado
+        ScanMode[] changed = new ScanMode[2];
+        controller.setListener((previous, current) -> {
+            changed[0] = previous;
+            changed[1] = current;
+        });
+        int frames = 0;
+        while (controller.getMode() == ScanMode.IDLE && frames < 8) {
+            now += FRAME;
+            controller.onFrame(now, scene(400, 250, 100 + frames));
+            frames++;
+        }
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        assertArrayEquals(new ScanMode[]{ScanMode.IDLE, ScanMode.ACTIVE}, changed);
+        assertTrue(frames <= 4);
+        assertEquals(1, controller.getWakeUpCount());
+        assertEquals(1, controller.getEntryCount(ScanMode.IDLE));
+    }
+
+    @Test
+    public void codesKeepScannerActiveAndWakeItFromIdle() {
+        ScanModeController controller = controller();
+        LuminanceImage image = scene(100, 100, 1);
+        long now = 0;
+        //Un código cada medio segundo mantiene el modo activo
+        for (int i = 0; i < 60; i++, now += FRAME) {
+            controller.onFrame(now, image);
+            controller.onFrameAnalyzed(now, i % 15 == 0 ? 1 : 0, false);
+        }
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        assertEquals(4, controller.getFramesWithCodes(ScanMode.ACTIVE));
+
+        now += 2000 * MS;
+        controller.onFrame(now, image);
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        //Algo parecido a un código en un frame que termina en reposo
+        controller.onFrameAnalyzed(now + FRAME, 0, true);
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        assertEquals(0, controller.getWakeUpCount());
+    }
+
+    @Test
+    public void triggerBurstsThenReturnsToActive() {
+        ScanModeController controller = controller();
+        List<String> transitions = new ArrayList<>();
+        controller.setListener((previous, current) -> transitions.add(previous + ">" + current));
+        LuminanceImage image = scene(100, 100, 1);
+        assertEquals(4, controller.getMaxInFlight());
+
+        long now = 0;
+        controller.onFrame(now, image);
+        controller.trigger(now += FRAME);
+        assertEquals(ScanMode.BURST, controller.getMode());
+        assertEquals(4, controller.getProfile().getMaxInFlight());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(controller.onFrame(now += FRAME, image));
+        }
+        assertEquals(ScanMode.BURST, controller.getMode());
+        //Vence la ráfaga de 500 ms
+        now += 200 * MS;
+        controller.onFrame(now, image);
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        //Y después de 1 s sin actividad, a reposo
+        now += 1000 * MS;
+        controller.onFrame(now, image);
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        //Un disparo desde reposo pasa directamente a la ráfaga
+        controller.trigger(now += FRAME);
+
+        assertEquals(Arrays.asList("ACTIVE>BURST", "BURST>ACTIVE", "ACTIVE>IDLE", "IDLE>BURST"), transitions);
+        assertEquals(2, controller.getTriggerCount());
+        assertEquals(10, controller.getReceivedFrames(ScanMode.BURST));
+        assertEquals(530 * MS, controller.getResidencyNanos(ScanMode.BURST));
+        assertEquals(1033 * MS, controller.getResidencyNanos(ScanMode.ACTIVE));
+        assertEquals(33 * MS, controller.getResidencyNanos(ScanMode.IDLE));
+    }
+
+    @Test
+    public void activeKeepsConfiguredInFlightCount() {
+        ScanModeController controller = controller();
+        LuminanceImage image = scene(100, 100, 1);
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        assertEquals(3, controller.getMaxInFlight(controller.getMode(), 3));
+        assertEquals(2, controller.getMaxInFlight(ScanMode.ACTIVE, 1));
+        //La ráfaga conserva su perfil si es mayor y el reposo no sube aunque haya más configurados
+        assertEquals(4, controller.getMaxInFlight(ScanMode.BURST, 3));
+        controller.onFrame(0, image);
+        controller.onFrame(1500 * MS, image);
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        assertEquals(1, controller.getMaxInFlight(controller.getMode(), 3));
+    }
+
+    @Test
+    public void pauseStopsResidencyAndResumesActive() {
+        ScanModeController controller = controller();
+        LuminanceImage image = scene(100, 100, 1);
+        controller.onFrame(0, image);
+        controller.onFrame(1500 * MS, image);
+        assertEquals(ScanMode.IDLE, controller.getMode());
+        controller.onFrame(1600 * MS, image);
+        controller.pause(1700 * MS);
+        //La cámara ha estado parada 10 s
+        controller.onFrame(11_700 * MS, image);
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        controller.onFrame(11_800 * MS, image);
+        assertEquals(1600 * MS, controller.getResidencyNanos(ScanMode.ACTIVE));
+        assertEquals(200 * MS, controller.getResidencyNanos(ScanMode.IDLE));
+
+        controller.reset();
+        assertEquals(ScanMode.ACTIVE, controller.getMode());
+        assertEquals(0, controller.getResidencyNanos(ScanMode.ACTIVE));
+        assertEquals(0, controller.getReceivedFrames(ScanMode.IDLE));
+    }
+}
@@ -0,0 +1,70 @@
+package tech.frangf.barcodereader.core;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ZxingBarcodeDecoderTest {
+
+    @Test
+    public void decodesDefaultFormatsInEveryRotation() throws Exception {
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        for (BarcodeFormat format : ZxingBarcodeDecoder.DEFAULT_FORMATS) {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                SyntheticCodes.Sample sample = SyntheticCodes.grid(640, 480, rotation, format, 1, rotation + 1);
+                List<DecodedBarcode> barcodes = decoder.decode(sample.getImage());
+                assertEquals(format + " " + rotation, 1, barcodes.size());
+                DecodedBarcode barcode = barcodes.get(0);
+                assertEquals(format, barcode.getFormat());
+                assertEquals(sample.getExpectedValues().get(0), barcode.getRawValue());
+                assertNotNull(barcode.getBoundingBox());
+                assertTrue(barcode.getBoundingBox().getRight() <= 640);
+            }
+        }
+    }
+
+    @Test
+    public void decodesSeveralCodesPerImage() throws Exception {
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        for (BarcodeFormat format : new BarcodeFormat[]{BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128}) {
+            SyntheticCodes.Sample sample = SyntheticCodes.grid(1280, 720, 90, format, 4, 7);
+            List<DecodedBarcode> barcodes = decoder.decode(sample.getImage());
+            assertEquals(format.toString(), 4, barcodes.size());
+            assertTrue(DecoderHarness.containsAll(barcodes, sample.getExpectedValues()));
+        }
+    }
+
+    @Test
+    public void gs1Code128KeepsVariableLengthFieldsApart() throws Exception {
+        //FNC1 inicial y FNC1 separador tras el lote, que es de longitud variable
+        byte[] canvas = SyntheticCodes.canvas(640, 480, 3);
+        SyntheticCodes.draw(canvas, 640, BarcodeFormat.CODE_128, "\u00f110LOT42\u00f121SN7", 120, 180, 400, 120);
+        List<DecodedBarcode> barcodes = new ZxingBarcodeDecoder().decode(new LuminanceImage(canvas, 640, 480, 0));
+        assertEquals(1, barcodes.size());
+
+        Gs1Payload payload = (Gs1Payload) PayloadParser.parse(BarcodeFormat.CODE_128, barcodes.get(0).getRawValue());
+        assertEquals(2, payload.getElements().size());
+        assertEquals("10", payload.getElements().get(0).getAi());
+        assertEquals("LOT42", payload.getElements().get(0).getValue());
+        assertEquals("21", payload.getElements().get(1).getAi());
+        assertEquals("SN7", payload.getElements().get(1).getValue());
+    }
+
+    @Test
+    public void emptyImageReturnsNoCodes() throws Exception {
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        LuminanceImage image = new LuminanceImage(SyntheticCodes.canvas(320, 240, 1), 320, 240, 0);
+        assertTrue(decoder.decode(image).isEmpty());
+    }
+
+    @Test
+    public void harnessMeasuresCorpus() throws Exception {
+        List<SyntheticCodes.Sample> corpus = DecoderHarness.corpus(BarcodeFormat.EAN_13, 640, 480, 4);
+        DecoderHarness.Result result = DecoderHarness.run(new ZxingBarcodeDecoder(), corpus, 2);
+        assertEquals(8, result.getImages());
+        assertEquals(8, result.getDecoded());
+        assertTrue(result.getImagesPerSecond() > 0);
+    }
+}
@@ -0,0 +1,48 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Programa de línea de comandos del host que decodifica un directorio de imágenes con BulkDecoder.
+ */
+public final class BulkDecoderCli {
+    private BulkDecoderCli() {
+    }
+
+    /**
+     * Decodifica en el host un directorio de imágenes con ZXing y escribe una línea CSV por fichero:
+     * file,width,height,tiles,barcodes,duplicates,loadMillis,decodeMillis,values.
+     * Uso: BulkDecoderCli directorio [hilos].
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Uso: BulkDecoderCli directorio [hilos]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(1, Runtime.getRuntime().availableProcessors());
+        ZxingBarcodeDecoder decoder = new ZxingBarcodeDecoder();
+        BulkDecoder bulkDecoder = new BulkDecoder(decoder, new ImageIoImageLoader(), threads);
+        bulkDecoder.setDuplicateFilter(new DuplicateFilter(4096, Long.MAX_VALUE, 1));
+        System.out.println("file,width,height,tiles,barcodes,duplicates,loadMillis,decodeMillis,values");
+        BulkDecoder.Summary summary = bulkDecoder.decode(BulkDecoder.listImages(new File(args[0])), result -> {
+            StringBuilder values = new StringBuilder();
+            for (DecodedBarcode barcode : result.getBarcodes()) {
+                if (values.length() > 0) {
+                    values.append('|');
+                }
+                values.append(barcode.getRawValue());
+            }
+            if (result.getError() != null) {
+                values.append("ERROR ").append(result.getError().getMessage());
+            }
+            System.out.println(String.format(Locale.US, "%s,%d,%d,%d,%d,%d,%.1f,%.1f,%s",
+                    result.getFile().getName(), result.getWidth(), result.getHeight(), result.getTiles(),
+                    result.getBarcodes().size(), result.getDuplicates(), result.getLoadNanos() / 1e6,
+                    result.getDecodeNanos() / 1e6, values));
+        });
+        decoder.close();
+        System.err.println(summary);
+    }
+}
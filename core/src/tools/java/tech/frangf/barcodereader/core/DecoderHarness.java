@@ -0,0 +1,139 @@
+package tech.frangf.barcodereader.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Mide en el host el rendimiento de cualquier BarcodeDecoder sobre un corpus de imágenes sintéticas.
+ * Uso: DecoderHarness [clase del decodificador] [rondas]. Por defecto utiliza ZxingBarcodeDecoder.
+ * Escribe una línea CSV por resolución y formato: decoder,format,width,height,images,decoded,imagesPerSecond,meanMillis.
+ */
+public final class DecoderHarness {
+    private static final int[][] RESOLUTIONS = {{640, 480}, {1280, 720}, {1920, 1080}};
+    private static final BarcodeFormat[] FORMATS = {
+            BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.CODE_128, BarcodeFormat.QR_CODE};
+    private static final int SAMPLES_PER_CASE = 8;
+
+    private DecoderHarness() {
+    }
+
+    /**
+     * Resultado de ejecutar un decodificador sobre un corpus.
+     */
+    public static final class Result {
+        private final int images;
+        private final int decoded;
+        private final long elapsedNanos;
+
+        Result(int images, int decoded, long elapsedNanos) {
+            this.images = images;
+            this.decoded = decoded;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return imágenes decodificadas en total, contando todas las rondas.
+         */
+        public int getImages() {
+            return images;
+        }
+
+        /**
+         * @return imágenes en las que se han leído todos los códigos esperados.
+         */
+        public int getDecoded() {
+            return decoded;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getImagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : images * 1e9 / elapsedNanos;
+        }
+
+        public double getMeanMillis() {
+            return images == 0 ? 0 : elapsedNanos / 1e6 / images;
+        }
+    }
+
+    /**
+     * Decodifica el corpus varias veces midiendo el tiempo total.
+     * @param decoder decodificador a medir
+     * @param corpus imágenes con sus valores esperados
+     * @param rounds número de veces que se recorre el corpus
+     * @return el resultado de la medición
+     * @throws BarcodeDecoderException si el decodificador falla
+     */
+    public static Result run(BarcodeDecoder decoder, List<SyntheticCodes.Sample> corpus, int rounds)
+            throws BarcodeDecoderException {
+        int images = 0;
+        int decoded = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (SyntheticCodes.Sample sample : corpus) {
+                List<DecodedBarcode> barcodes = decoder.decode(sample.getImage());
+                images++;
+                if (containsAll(barcodes, sample.getExpectedValues())) {
+                    decoded++;
+                }
+            }
+        }
+        return new Result(images, decoded, System.nanoTime() - start);
+    }
+
+    /**
+     * Genera el corpus de un formato y una resolución con un código por imagen y rotaciones variadas.
+     * @param format formato de los códigos
+     * @param width ancho de la imagen derecha
+     * @param height alto de la imagen derecha
+     * @param samples número de imágenes
+     * @return el corpus
+     */
+    public static List<SyntheticCodes.Sample> corpus(BarcodeFormat format, int width, int height, int samples) {
+        List<SyntheticCodes.Sample> corpus = new ArrayList<>(samples);
+        for (int i = 0; i < samples; i++) {
+            corpus.add(SyntheticCodes.grid(width, height, (i % 4) * 90, format, 1, i));
+        }
+        return corpus;
+    }
+
+    /**
+     * @param barcodes códigos leídos
+     * @param expected valores esperados
+     * @return true si se han leído todos los valores esperados
+     */
+    public static boolean containsAll(List<DecodedBarcode> barcodes, List<String> expected) {
+        Set<String> values = new HashSet<>();
+        for (DecodedBarcode barcode : barcodes) {
+            values.add(barcode.getRawValue());
+        }
+        return values.containsAll(expected);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String decoderClass = args.length > 0 ? args[0] : ZxingBarcodeDecoder.class.getName();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        BarcodeDecoder decoder = (BarcodeDecoder) Class.forName(decoderClass).getDeclaredConstructor().newInstance();
+        try {
+            System.out.println("decoder,format,width,height,images,decoded,imagesPerSecond,meanMillis");
+            for (int[] resolution : RESOLUTIONS) {
+                for (BarcodeFormat format : FORMATS) {
+                    List<SyntheticCodes.Sample> corpus = corpus(format, resolution[0], resolution[1], SAMPLES_PER_CASE);
+                    //Una ronda de calentamiento para que el JIT compile el decodificador
+                    run(decoder, corpus, 1);
+                    Result result = run(decoder, corpus, rounds);
+                    System.out.println(String.format(Locale.US, "%s,%s,%d,%d,%d,%d,%.1f,%.3f",
+                            decoder.getClass().getSimpleName(), format, resolution[0], resolution[1],
+                            result.getImages(), result.getDecoded(), result.getImagesPerSecond(), result.getMeanMillis()));
+                }
+            }
+        } finally {
+            decoder.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Lector secuencial de una grabación de FrameRecorder. Cada frame se descomprime en un array nuevo, de forma que
+ * los frames leídos se pueden procesar a la vez en varios hilos.
+ * Si la grabación termina con un frame incompleto o corrupto, por ejemplo porque la aplicación se cerró mientras
+ * grababa, la lectura termina en el último frame válido e isTruncated() devuelve true.
+ * No es thread-safe.
+ */
+public final class FrameRecordingReader implements Closeable {
+    //Límite para no reservar memoria según una cabecera corrupta: 8192x8192
+    private static final int MAX_PIXELS = 1 << 26;
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[FrameRecorder.RECORD_HEADER_BYTES];
+    private byte[] compressed = new byte[0];
+    private long sequence;
+    private boolean truncated;
+    private boolean finished;
+
+    /**
+     * Abre una grabación y comprueba su cabecera.
+     * @param file fichero escrito por FrameRecorder
+     * @throws IOException si no se puede abrir o no es una grabación
+     */
+    public FrameRecordingReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != FrameRecorder.MAGIC || version != FrameRecorder.VERSION) {
+                throw new IOException("No es una grabación de frames: " + file);
+            }
+        } catch (IOException e) {
+            close();
+            throw e instanceof EOFException ? new IOException("No es una grabación de frames: " + file, e) : e;
+        }
+    }
+
+    /**
+     * @return el siguiente frame, o null al llegar al final o a un frame incompleto o corrupto.
+     * @throws IOException si falla la lectura del fichero
+     */
+    public RecordedFrame next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int first = in.read();
+        if (first < 0) {
+            //Final del fichero entre dos frames
+            finished = true;
+            return null;
+        }
+        try {
+            header[0] = (byte) first;
+            in.readFully(header, 1, header.length - 1);
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            long timestampNanos = fields.getLong();
+            int width = fields.getInt();
+            int height = fields.getInt();
+            int rotationDegrees = fields.getInt();
+            int checksum = fields.getInt();
+            int length = fields.getInt();
+            if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS || rotationDegrees % 90 != 0
+                    || rotationDegrees < 0 || rotationDegrees >= 360 || length <= 0 || length > 2 * MAX_PIXELS) {
+                return truncate();
+            }
+            if (compressed.length < length) {
+                compressed = new byte[length];
+            }
+            in.readFully(compressed, 0, length);
+            byte[] data = new byte[width * height];
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            if (inflater.inflate(data) != data.length || !inflater.finished()) {
+                return truncate();
+            }
+            FrameRecorder.unfilterSub(data, width, height);
+            crc.reset();
+            crc.update(data, 0, data.length);
+            if ((int) crc.getValue() != checksum) {
+                return truncate();
+            }
+            return new RecordedFrame(sequence++, timestampNanos, data, width, height, rotationDegrees);
+        } catch (EOFException | DataFormatException e) {
+            return truncate();
+        }
+    }
+
+    private RecordedFrame truncate() {
+        truncated = true;
+        finished = true;
+        return null;
+    }
+
+    /**
+     * @return frames leídos hasta ahora.
+     */
+    public long getFrameCount() {
+        return sequence;
+    }
+
+    /**
+     * @return true si la lectura se ha detenido en un frame incompleto o corrupto.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
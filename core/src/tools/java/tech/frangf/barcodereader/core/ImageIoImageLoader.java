@@ -0,0 +1,106 @@
+package tech.frangf.barcodereader.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * ImageLoader para el host basado en javax.imageio (PNG, JPEG, BMP, GIF...). No está disponible en Android.
+ * Las imágenes con más de maxPixels píxeles se leen submuestreadas, de forma que la memoria de cada imagen está acotada.
+ */
+public final class ImageIoImageLoader implements ImageLoader {
+    /**
+     * Píxeles por imagen por defecto: una foto de 48 megapíxeles se lee completa.
+     */
+    public static final long DEFAULT_MAX_PIXELS = 48_000_000L;
+
+    private final long maxPixels;
+
+    public ImageIoImageLoader() {
+        this(DEFAULT_MAX_PIXELS);
+    }
+
+    /**
+     * @param maxPixels píxeles que se leen como mucho de cada imagen
+     */
+    public ImageIoImageLoader(long maxPixels) {
+        if (maxPixels < 1) {
+            throw new IllegalArgumentException("maxPixels debe ser positivo: " + maxPixels);
+        }
+        this.maxPixels = maxPixels;
+    }
+
+    @Override
+    public LuminanceImage load(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("No se puede abrir " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Formato de imagen no soportado: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = 1;
+                while ((long) ceilDiv(width, subsampling) * ceilDiv(height, subsampling) > maxPixels) {
+                    subsampling++;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return toLuminance(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Convierte una imagen en su luminancia (BT.601). Las imágenes en escala de grises se copian directamente.
+     * @param image imagen a convertir
+     * @return la luminancia, sin rotación
+     */
+    public static LuminanceImage toLuminance(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] luminance = new byte[width * height];
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY
+                && image.getRaster().getDataBuffer() instanceof DataBufferByte
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            if (data.length == luminance.length) {
+                System.arraycopy(data, 0, luminance, 0, luminance.length);
+                return new LuminanceImage(luminance, width, height, 0);
+            }
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                luminance[y * width + x] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+            }
+        }
+        return new LuminanceImage(luminance, width, height, 0);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
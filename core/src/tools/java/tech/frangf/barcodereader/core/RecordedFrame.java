@@ -0,0 +1,52 @@
+package tech.frangf.barcodereader.core;
+
+/**
+ * Frame leído de una grabación de FrameRecorder, con su plano Y descomprimido en un array propio.
+ * getTimestampNanos() es la marca de tiempo con la que se grabó; ReplayFrameSource anota además el instante en que
+ * lo entrega, para medir la espera en el pipeline igual que con los frames de la cámara.
+ */
+public final class RecordedFrame extends Frame {
+    private final LuminanceImage image;
+    private volatile long deliveredNanos;
+    private volatile Runnable onRelease;
+
+    /**
+     * @param sequence posición del frame en la grabación, empezando en 0
+     * @param timestampNanos marca de tiempo con la que se grabó
+     * @param data luminancia sin relleno entre filas, width * height bytes
+     * @param width ancho en píxeles
+     * @param height alto en píxeles
+     * @param rotationDegrees rotación (0, 90, 180 o 270) necesaria para ver el frame derecho
+     */
+    public RecordedFrame(long sequence, long timestampNanos, byte[] data, int width, int height, int rotationDegrees) {
+        super(sequence, timestampNanos, width, height, rotationDegrees);
+        image = new LuminanceImage(data, width, height, rotationDegrees);
+    }
+
+    /**
+     * @return el plano Y del frame.
+     */
+    public LuminanceImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return el instante (System.nanoTime()) en que ReplayFrameSource entregó el frame, o 0 si no se ha entregado.
+     */
+    public long getDeliveredNanos() {
+        return deliveredNanos;
+    }
+
+    void onDelivered(long deliveredNanos, Runnable onRelease) {
+        this.deliveredNanos = deliveredNanos;
+        this.onRelease = onRelease;
+    }
+
+    @Override
+    protected void release() {
+        Runnable callback = onRelease;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fuente de frames que reproduce una grabación de FrameRecorder en un hilo propio, para pasar por el pipeline
+ * completo en el host lo que vio la cámara de un dispositivo.
+ * A la velocidad grabada, cada frame se entrega cuando le toca según su marca de tiempo, sin esperar a que se
+ * procesen los anteriores, igual que la cámara: si el pipeline no da abasto descarta frames según su DropPolicy.
+ * Lo más rápido posible, cada frame se entrega en cuanto hay menos de maxOutstanding frames sin cerrar, de forma
+ * que con un FramePipeline de al menos maxOutstanding frames en curso no se descarta ninguno y el resultado no
+ * depende de la velocidad de la máquina.
+ */
+public final class ReplayFrameSource implements FrameSource<RecordedFrame> {
+    private final File recording;
+    private final boolean realTime;
+    private final Semaphore outstanding;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private Thread thread;
+    private volatile boolean stopped;
+    private volatile long delivered;
+    private volatile boolean truncated;
+    private volatile IOException failure;
+
+    /**
+     * @param recording fichero escrito por FrameRecorder
+     * @param realTime true para entregar los frames a la velocidad grabada, false para entregarlos lo más rápido
+     *                 posible
+     * @param maxOutstanding frames entregados y sin cerrar como mucho cuando no es a la velocidad grabada
+     */
+    public ReplayFrameSource(File recording, boolean realTime, int maxOutstanding) {
+        if (maxOutstanding < 1) {
+            throw new IllegalArgumentException("maxOutstanding debe ser al menos 1: " + maxOutstanding);
+        }
+        this.recording = recording;
+        this.realTime = realTime;
+        this.outstanding = new Semaphore(maxOutstanding);
+    }
+
+    public File getRecording() {
+        return recording;
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    /**
+     * Empieza a reproducir la grabación en el hilo "frame-replay". Solo se puede llamar una vez.
+     * @param sink destino de los frames, que los debe cerrar
+     */
+    @Override
+    public synchronized void start(FrameSink<? super RecordedFrame> sink) {
+        if (thread != null) {
+            throw new IllegalStateException("La reproducción ya se ha iniciado");
+        }
+        thread = new Thread(() -> run(sink), "frame-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Detiene la reproducción sin entregar más frames.
+     */
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Espera a que se hayan entregado todos los frames de la grabación o se detenga la reproducción.
+     * @param timeout tiempo máximo de espera
+     * @param unit unidad de timeout
+     * @return true si la reproducción ha terminado
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * @return frames entregados.
+     */
+    public long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * @return true si la grabación terminaba en un frame incompleto o corrupto.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return el error de lectura que ha detenido la reproducción, o null si no ha fallado.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void run(FrameSink<? super RecordedFrame> sink) {
+        try (FrameRecordingReader reader = new FrameRecordingReader(recording)) {
+            long firstTimestamp = 0;
+            long startNanos = System.nanoTime();
+            RecordedFrame frame;
+            while (!stopped && (frame = reader.next()) != null) {
+                Runnable onRelease = null;
+                if (realTime) {
+                    if (delivered == 0) {
+                        firstTimestamp = frame.getTimestampNanos();
+                    }
+                    long wait = frame.getTimestampNanos() - firstTimestamp - (System.nanoTime() - startNanos);
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                } else {
+                    outstanding.acquire();
+                    onRelease = outstanding::release;
+                }
+                frame.onDelivered(System.nanoTime(), onRelease);
+                sink.onFrame(frame);
+                delivered++;
+            }
+            truncated = reader.isTruncated();
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            //stop()
+        } finally {
+            finished.countDown();
+        }
+    }
+}
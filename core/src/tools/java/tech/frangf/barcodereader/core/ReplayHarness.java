@@ -0,0 +1,434 @@
+package tech.frangf.barcodereader.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reproduce en el host una grabación de FrameRecorder por el pipeline completo (FrameGate opcional, FramePipeline,
+ * DecodeScheduler y DuplicateFilter) con cualquier BarcodeDecoder, y compara los códigos leídos en cada frame con
+ * los de una referencia guardada, para detectar regresiones de rendimiento y de lectura con sesiones reales sin
+ * necesidad de un dispositivo.
+ * <p>
+ * Uso: ReplayHarness grabación [--realtime] [--workers N] [--gate] [--decoder clase] [--baseline fichero]
+ * [--save-baseline fichero]. Escribe un informe con la latencia, la tasa de decodificación y las diferencias con la
+ * referencia, y termina con código 1 si hay diferencias.
+ * <p>
+ * La referencia es un fichero de texto con una línea por frame decodificado: su posición en la grabación y sus
+ * códigos (FORMATO:valor) separados por tabuladores. Lo más rápido posible se decodifican todos los frames, por lo
+ * que el resultado es el mismo en cualquier máquina; a la velocidad grabada los frames descartados dependen de la
+ * máquina y solo se comparan los frames decodificados en las dos ejecuciones.
+ */
+public final class ReplayHarness {
+    private ReplayHarness() {
+    }
+
+    /**
+     * Resultado de reproducir una grabación.
+     */
+    public static final class Result {
+        private final long frames;
+        private final long gated;
+        private final long dropped;
+        private final long notified;
+        private final long elapsedNanos;
+        private final boolean truncated;
+        private final ScanMetrics metrics;
+        private final SortedMap<Long, List<String>> codes;
+
+        Result(long frames, long gated, long dropped, long notified, long elapsedNanos, boolean truncated,
+               ScanMetrics metrics, SortedMap<Long, List<String>> codes) {
+            this.frames = frames;
+            this.gated = gated;
+            this.dropped = dropped;
+            this.notified = notified;
+            this.elapsedNanos = elapsedNanos;
+            this.truncated = truncated;
+            this.metrics = metrics;
+            this.codes = Collections.unmodifiableSortedMap(codes);
+        }
+
+        /**
+         * @return frames reproducidos.
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return frames descartados por el FrameGate.
+         */
+        public long getGated() {
+            return gated;
+        }
+
+        /**
+         * @return frames descartados por el FramePipeline por no dar abasto.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return códigos que habrían llegado al listener tras el DuplicateFilter. Con varios hilos depende del orden
+         * en el que terminan los frames, porque el DecodeScheduler descarta los resultados obsoletos; los códigos por
+         * frame de getCodes() no.
+         */
+        public long getNotified() {
+            return notified;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return true si la grabación terminaba en un frame incompleto o corrupto.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return latencias de espera (FRAME_ACQUIRE) y decodificación (DETECT) y contadores de frames.
+         */
+        public ScanMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return los códigos (FORMATO:valor, ordenados) de cada frame decodificado, por su posición en la grabación.
+         */
+        public SortedMap<Long, List<String>> getCodes() {
+            return codes;
+        }
+
+        /**
+         * @return los códigos distintos leídos en toda la grabación.
+         */
+        public SortedSet<String> getDistinctCodes() {
+            return distinct(codes);
+        }
+
+        /**
+         * @return frames decodificados por segundo de reproducción.
+         */
+        public double getFramesPerSecond() {
+            return elapsedNanos == 0 ? 0 : codes.size() * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * Reproduce una grabación por el pipeline y espera a que se decodifiquen todos sus frames.
+     * @param recording fichero escrito por FrameRecorder
+     * @param decoder decodificador, que se llama desde workers hilos a la vez
+     * @param workers hilos de decodificación y frames en curso en el FramePipeline
+     * @param realTime true para reproducir a la velocidad grabada, false para hacerlo lo más rápido posible
+     * @param gate filtro que se aplica antes del FramePipeline, o null para decodificar todos los frames
+     * @return el resultado de la reproducción
+     * @throws IOException si falla la lectura de la grabación
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public static Result run(File recording, final BarcodeDecoder decoder, int workers, boolean realTime,
+                             final FrameGate gate) throws IOException, InterruptedException {
+        final ScanMetricsRecorder metrics = new ScanMetricsRecorder();
+        final SortedMap<Long, List<String>> codes = Collections.synchronizedSortedMap(new TreeMap<Long, List<String>>());
+        //La misma configuración que BarCodeReader por defecto
+        final DuplicateFilter filter = new DuplicateFilter(64, TimeUnit.SECONDS.toNanos(2), 1);
+        final AtomicLong notified = new AtomicLong();
+        final AtomicLong gated = new AtomicLong();
+        DecodeScheduler<RecordedFrame, DecodedBarcode> scheduler = new DecodeScheduler<>(workers,
+                frame -> {
+                    long start = System.nanoTime();
+                    metrics.record(ScanStage.FRAME_ACQUIRE, start - frame.getDeliveredNanos());
+                    List<DecodedBarcode> barcodes = decoder.decode(frame.getImage());
+                    metrics.record(ScanStage.DETECT, System.nanoTime() - start);
+                    metrics.onFrameDecoded(barcodes.size());
+                    //Se guardan aquí y no al entregarse, porque el DecodeScheduler descarta resultados obsoletos
+                    List<String> keys = new ArrayList<>(barcodes.size());
+                    for (DecodedBarcode barcode : barcodes) {
+                        keys.add(key(barcode));
+                    }
+                    Collections.sort(keys);
+                    codes.put(frame.getSequence(), keys);
+                    return barcodes;
+                },
+                new DecodeScheduler.ResultListener<RecordedFrame, DecodedBarcode>() {
+                    @Override
+                    public void onResult(RecordedFrame frame, List<DecodedBarcode> barcodes) {
+                        for (DecodedBarcode barcode : barcodes) {
+                            String value = barcode.getRawValue() != null ? barcode.getRawValue()
+                                    : barcode.getRawBytes() == null ? ""
+                                    : new String(barcode.getRawBytes(), StandardCharsets.ISO_8859_1);
+                            if (filter.accept(barcode.getFormat().getMask(), value, frame.getSequence(),
+                                    frame.getTimestampNanos())) {
+                                notified.incrementAndGet();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onError(RecordedFrame frame, Exception e) {
+                        metrics.onFrameFailed();
+                    }
+                });
+        final FramePipeline<RecordedFrame> pipeline = new FramePipeline<>(workers, DropPolicy.KEEP_LATEST, scheduler);
+        ReplayFrameSource source = new ReplayFrameSource(recording, realTime, workers);
+        long start = System.nanoTime();
+        try {
+            source.start(frame -> {
+                if (gate != null && gate.evaluate(frame.getImage()) != FrameGate.Decision.DECODE) {
+                    gated.incrementAndGet();
+                    frame.close();
+                    return;
+                }
+                pipeline.onFrame(frame);
+            });
+            source.awaitCompletion(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            //El último frame puede estar aún en espera o decodificándose
+            while (pipeline.getProcessedCount() + pipeline.getDroppedCount() < pipeline.getReceivedCount()) {
+                Thread.sleep(1);
+            }
+        } finally {
+            source.stop();
+            pipeline.close();
+            scheduler.close();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (source.getFailure() != null) {
+            throw source.getFailure();
+        }
+        return new Result(source.getDeliveredCount(), gated.get(), pipeline.getDroppedCount(), notified.get(),
+                elapsed, source.isTruncated(), metrics.snapshot(pipeline.getDroppedCount()), new TreeMap<>(codes));
+    }
+
+    /**
+     * @param barcode código leído
+     * @return el formato y el valor del código, o sus bytes en hexadecimal si no es texto
+     */
+    static String key(DecodedBarcode barcode) {
+        if (barcode.getRawValue() != null) {
+            return barcode.getFormat() + ":" + barcode.getRawValue();
+        }
+        StringBuilder hex = new StringBuilder(barcode.getFormat() + ":0x");
+        byte[] bytes = barcode.getRawBytes();
+        if (bytes != null) {
+            for (byte b : bytes) {
+                hex.append(String.format(Locale.US, "%02x", b & 0xFF));
+            }
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Guarda los códigos de cada frame decodificado como referencia.
+     * @param codes códigos por frame, como los de Result.getCodes()
+     * @param file fichero de la referencia
+     * @throws IOException si falla la escritura
+     */
+    public static void writeBaseline(SortedMap<Long, List<String>> codes, File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (Map.Entry<Long, List<String>> entry : codes.entrySet()) {
+                out.write(Long.toString(entry.getKey()));
+                for (String code : entry.getValue()) {
+                    out.write('\t');
+                    out.write(escape(code));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @param file fichero escrito por writeBaseline()
+     * @return los códigos de cada frame decodificado
+     * @throws IOException si falla la lectura o el fichero no tiene el formato esperado
+     */
+    public static SortedMap<Long, List<String>> readBaseline(File file) throws IOException {
+        SortedMap<Long, List<String>> codes = new TreeMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                List<String> frameCodes = new ArrayList<>(fields.length - 1);
+                for (int i = 1; i < fields.length; i++) {
+                    frameCodes.add(unescape(fields[i]));
+                }
+                try {
+                    codes.put(Long.parseLong(fields[0]), frameCodes);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Línea no válida en " + file + ": " + line, e);
+                }
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Compara los códigos de cada frame con los de la referencia. Solo se comparan los frames decodificados en las
+     * dos ejecuciones; los códigos distintos de toda la grabación se comparan siempre.
+     * @param baseline códigos por frame de la referencia
+     * @param current códigos por frame de la ejecución actual
+     * @return una línea por cada diferencia, vacío si no hay ninguna
+     */
+    public static List<String> diff(SortedMap<Long, List<String>> baseline, SortedMap<Long, List<String>> current) {
+        List<String> differences = new ArrayList<>();
+        for (Map.Entry<Long, List<String>> entry : current.entrySet()) {
+            List<String> expected = baseline.get(entry.getKey());
+            if (expected != null && !expected.equals(entry.getValue())) {
+                differences.add("frame " + entry.getKey() + ": " + describe(expected, entry.getValue()));
+            }
+        }
+        SortedSet<String> expected = distinct(baseline);
+        SortedSet<String> actual = distinct(current);
+        if (!expected.equals(actual)) {
+            differences.add("session: " + describe(expected, actual));
+        }
+        return differences;
+    }
+
+    /**
+     * Describe lo que falta (-) y lo que sobra (+) en actual respecto a expected.
+     */
+    private static String describe(Iterable<String> expected, Iterable<String> actual) {
+        SortedSet<String> missing = new TreeSet<>();
+        SortedSet<String> added = new TreeSet<>();
+        for (String code : expected) {
+            missing.add(code);
+        }
+        for (String code : actual) {
+            if (!missing.remove(code)) {
+                added.add(code);
+            }
+        }
+        StringBuilder description = new StringBuilder();
+        for (String code : missing) {
+            description.append(description.length() == 0 ? "" : " ").append('-').append(escape(code));
+        }
+        for (String code : added) {
+            description.append(description.length() == 0 ? "" : " ").append('+').append(escape(code));
+        }
+        return description.toString();
+    }
+
+    private static SortedSet<String> distinct(SortedMap<Long, List<String>> codes) {
+        SortedSet<String> distinct = new TreeSet<>();
+        for (List<String> frameCodes : codes.values()) {
+            distinct.addAll(frameCodes);
+        }
+        return distinct;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Uso: ReplayHarness grabación [--realtime] [--workers N] [--gate] [--decoder clase]"
+                    + " [--baseline fichero] [--save-baseline fichero]");
+            System.exit(2);
+        }
+        File recording = new File(args[0]);
+        boolean realTime = false;
+        int workers = 1;
+        boolean useGate = false;
+        String decoderClass = ZxingBarcodeDecoder.class.getName();
+        File baselineFile = null;
+        File saveBaselineFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--realtime":
+                    realTime = true;
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--gate":
+                    useGate = true;
+                    break;
+                case "--decoder":
+                    decoderClass = args[++i];
+                    break;
+                case "--baseline":
+                    baselineFile = new File(args[++i]);
+                    break;
+                case "--save-baseline":
+                    saveBaselineFile = new File(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+        BarcodeDecoder decoder = (BarcodeDecoder) Class.forName(decoderClass).getDeclaredConstructor().newInstance();
+        Result result;
+        try {
+            result = run(recording, decoder, workers, realTime, useGate ? new FrameGate() : null);
+        } finally {
+            decoder.close();
+        }
+        ScanMetrics metrics = result.getMetrics();
+        System.out.println(String.format(Locale.US,
+                "recording=%s mode=%s workers=%d frames=%d decoded=%d gated=%d dropped=%d failed=%d elapsed=%.1fms%s",
+                recording.getName(), realTime ? "realtime" : "fast", workers, result.getFrames(),
+                metrics.getDecodedFrames(), result.getGated(), result.getDropped(), metrics.getFailedFrames(),
+                result.getElapsedNanos() / 1e6, result.isTruncated() ? " truncated" : ""));
+        System.out.println(String.format(Locale.US, "decodeRate=%.1f%% framesWithCodes=%d distinctCodes=%d"
+                        + " notified=%d fps=%.1f", metrics.getDecodeSuccessRatio() * 100, metrics.getFramesWithCodes(),
+                result.getDistinctCodes().size(), result.getNotified(), result.getFramesPerSecond()));
+        System.out.println("FRAME_ACQUIRE " + metrics.getStage(ScanStage.FRAME_ACQUIRE));
+        System.out.println("DETECT " + metrics.getStage(ScanStage.DETECT));
+        int exitCode = 0;
+        if (baselineFile != null) {
+            List<String> differences = diff(readBaseline(baselineFile), result.getCodes());
+            System.out.println("baseline=" + baselineFile.getName() + " differences=" + differences.size());
+            for (String difference : differences) {
+                System.out.println("  " + difference);
+            }
+            exitCode = differences.isEmpty() ? 0 : 1;
+        }
+        if (saveBaselineFile != null) {
+            writeBaseline(result.getCodes(), saveBaselineFile);
+        }
+        System.exit(exitCode);
+    }
+}
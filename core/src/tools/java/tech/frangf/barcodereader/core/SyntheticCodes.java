@@ -0,0 +1,197 @@
+package tech.frangf.barcodereader.core;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Genera imágenes de luminancia sintéticas con códigos de barras para probar y medir los decodificadores en el host.
+ */
+public final class SyntheticCodes {
+    private static final int BACKGROUND = 200;
+    private static final int NOISE = 24;
+
+    private SyntheticCodes() {
+    }
+
+    /**
+     * Imagen sintética junto con los valores de los códigos que contiene.
+     */
+    public static final class Sample {
+        private final LuminanceImage image;
+        private final List<String> expectedValues;
+
+        Sample(LuminanceImage image, List<String> expectedValues) {
+            this.image = image;
+            this.expectedValues = Collections.unmodifiableList(expectedValues);
+        }
+
+        /**
+         * @return la imagen en orientación del sensor.
+         */
+        public LuminanceImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return los valores de los códigos dibujados en la imagen.
+         */
+        public List<String> getExpectedValues() {
+            return expectedValues;
+        }
+    }
+
+    /**
+     * Obtiene un contenido válido para el formato indicado.
+     * @param format formato del código
+     * @param index índice que hace distinto cada contenido
+     * @return el contenido a codificar
+     */
+    public static String sampleContents(BarcodeFormat format, int index) {
+        switch (format) {
+            case EAN_13:
+                return withCheckDigit(String.format("84%010d", index % 1_000_000_000L));
+            case EAN_8:
+                return withCheckDigit(String.format("84%05d", index % 100_000));
+            case UPC_A:
+                return withCheckDigit(String.format("0%010d", index % 1_000_000_000L));
+            case QR_CODE:
+                return "https://example.com/item/" + index;
+            default:
+                return "ITEM-" + index;
+        }
+    }
+
+    /**
+     * Crea un fondo claro con ruido, como el de una etiqueta fotografiada.
+     * @param width ancho en píxeles
+     * @param height alto en píxeles
+     * @param seed semilla del ruido
+     * @return la luminancia de la imagen derecha, fila a fila
+     */
+    public static byte[] canvas(int width, int height, long seed) {
+        byte[] canvas = new byte[width * height];
+        Random random = new Random(seed);
+        for (int i = 0; i < canvas.length; i++) {
+            canvas[i] = (byte) (BACKGROUND + random.nextInt(NOISE) - NOISE / 2);
+        }
+        return canvas;
+    }
+
+    /**
+     * Dibuja un código en el lienzo. El tamaño final puede ser mayor si el formato no cabe en el indicado.
+     * @param canvas luminancia de la imagen derecha
+     * @param canvasWidth ancho del lienzo
+     * @param format formato del código
+     * @param contents contenido del código
+     * @param x columna de la esquina superior izquierda
+     * @param y fila de la esquina superior izquierda
+     * @param codeWidth ancho del código, incluida la zona en blanco
+     * @param codeHeight alto del código, incluida la zona en blanco
+     */
+    public static void draw(byte[] canvas, int canvasWidth, BarcodeFormat format, String contents,
+                            int x, int y, int codeWidth, int codeHeight) {
+        BitMatrix matrix;
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.MARGIN, format == BarcodeFormat.QR_CODE ? 4 : 10);
+        try {
+            matrix = new MultiFormatWriter().encode(contents, ZxingBarcodeDecoder.toZxing(format), codeWidth, codeHeight, hints);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("No se puede generar " + format + " con " + contents, e);
+        }
+        int canvasHeight = canvas.length / canvasWidth;
+        for (int row = 0; row < matrix.getHeight() && y + row < canvasHeight; row++) {
+            for (int col = 0; col < matrix.getWidth() && x + col < canvasWidth; col++) {
+                canvas[(y + row) * canvasWidth + x + col] = (byte) (matrix.get(col, row) ? 20 : 240);
+            }
+        }
+    }
+
+    /**
+     * Convierte una imagen derecha en la imagen que entregaría un sensor con la rotación indicada.
+     * @param upright luminancia de la imagen derecha
+     * @param width ancho de la imagen derecha
+     * @param height alto de la imagen derecha
+     * @param rotationDegrees rotación que hay que aplicar al resultado para volver a ver la imagen derecha
+     * @return la imagen en orientación del sensor
+     */
+    public static LuminanceImage toSensor(byte[] upright, int width, int height, int rotationDegrees) {
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int sensorWidth = swapped ? height : width;
+        int sensorHeight = swapped ? width : height;
+        byte[] sensor = new byte[upright.length];
+        for (int y = 0; y < sensorHeight; y++) {
+            for (int x = 0; x < sensorWidth; x++) {
+                int index;
+                switch (rotationDegrees) {
+                    case 0:
+                        index = y * width + x;
+                        break;
+                    case 90:
+                        index = x * width + (sensorHeight - 1 - y);
+                        break;
+                    case 180:
+                        index = (sensorHeight - 1 - y) * width + (sensorWidth - 1 - x);
+                        break;
+                    case 270:
+                        index = (sensorWidth - 1 - x) * width + y;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Rotación no soportada: " + rotationDegrees);
+                }
+                sensor[y * sensorWidth + x] = upright[index];
+            }
+        }
+        return new LuminanceImage(sensor, sensorWidth, sensorHeight, rotationDegrees);
+    }
+
+    /**
+     * Genera una imagen con varios códigos distintos colocados en rejilla.
+     * @param width ancho de la imagen derecha
+     * @param height alto de la imagen derecha
+     * @param rotationDegrees rotación del sensor
+     * @param format formato de los códigos
+     * @param codes número de códigos
+     * @param seed semilla del fondo y del contenido de los códigos
+     * @return la imagen con los valores esperados
+     */
+    public static Sample grid(int width, int height, int rotationDegrees, BarcodeFormat format, int codes, long seed) {
+        byte[] canvas = canvas(width, height, seed);
+        int columns = (int) Math.ceil(Math.sqrt(codes));
+        int rows = (int) Math.ceil((double) codes / columns);
+        int cellWidth = width / columns;
+        int cellHeight = height / rows;
+        boolean square = format == BarcodeFormat.QR_CODE || format == BarcodeFormat.DATA_MATRIX
+                || format == BarcodeFormat.AZTEC;
+        int codeWidth = cellWidth * 9 / 10;
+        int codeHeight = square ? Math.min(codeWidth, cellHeight * 9 / 10) : cellHeight * 6 / 10;
+        if (square) {
+            codeWidth = codeHeight;
+        }
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < codes; i++) {
+            String contents = sampleContents(format, (int) (seed * 1000 + i));
+            int x = (i % columns) * cellWidth + (cellWidth - codeWidth) / 2;
+            int y = (i / columns) * cellHeight + (cellHeight - codeHeight) / 2;
+            draw(canvas, width, format, contents, x, y, codeWidth, codeHeight);
+            values.add(contents);
+        }
+        return new Sample(toSensor(canvas, width, height, rotationDegrees), values);
+    }
+
+    private static String withCheckDigit(String digits) {
+        int sum = 0;
+        for (int i = digits.length() - 1, weight = 3; i >= 0; i--, weight = 4 - weight) {
+            sum += (digits.charAt(i) - '0') * weight;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}